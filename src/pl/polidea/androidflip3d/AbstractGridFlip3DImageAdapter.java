@@ -1,9 +1,15 @@
 package pl.polidea.androidflip3d;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView.RecyclerListener;
@@ -12,7 +18,10 @@ import android.widget.GridView;
 
 /**
  * Adapter for Flip Images displayed in Grid. Works around a nasty (really
- * nasty!) Android problem with many calls to the same item in a grid.
+ * nasty!) Android problem with many calls to the same item in a grid. States
+ * are kept in a {@link Flip3DViewStateProvider} - they can be set as a list,
+ * appended one by one or created lazily by a factory when the position is
+ * bound for the first time.
  * 
  * @param <State>
  *            state where information about view state are stored
@@ -22,28 +31,197 @@ import android.widget.GridView;
  */
 public abstract class AbstractGridFlip3DImageAdapter<State extends Flip3DViewState, FlipView extends Flip3DView>
         extends BaseAdapter implements RecyclerListener {
-    static final int MAX_IMAGES = 20;
+    private final Flip3DViewStateProvider<State> viewStates = new Flip3DViewStateProvider<State>();
 
-    private final List<State> viewStates = new ArrayList<State>(MAX_IMAGES);
+    private final List<State> viewStatesList = new AbstractList<State>() {
+        @Override
+        public State get(final int location) {
+            return getOrCreateViewState(location);
+        }
+
+        @Override
+        public int size() {
+            return getCount();
+        }
+    };
 
     private final int itemWidth;
 
+    private Flip3DSideStore sideStore;
+
+    /**
+     * States whose sides were still being loaded by the side store when they
+     * were created.
+     */
+    private final List<State> statesWaitingForSides = new ArrayList<State>();
+
+    private Handler mainHandler;
+
+    private final Flip3DSideStore.OnSidesLoadedListener sidesLoadedListener = new Flip3DSideStore.OnSidesLoadedListener() {
+        @Override
+        public void onSidesLoaded(final int fromId, final int toId) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    applyLoadedSides(fromId, toId);
+                }
+            });
+        }
+    };
+
+    private Flip3DFlipGroup flipGroup;
+
+    private Flip3DGridOverlay gridOverlay;
+
+    // backends of the views replaced by the grid overlay
+    private final Map<FlipView, Flip3DAnimationBackend> replacedBackends =
+            new WeakHashMap<FlipView, Flip3DAnimationBackend>();
+
+    private Flip3DQualityMonitor qualityMonitor;
+
+    private Flip3DViewPool<FlipView> viewPool;
+
     public AbstractGridFlip3DImageAdapter(final int itemWidth) {
         super();
         this.itemWidth = itemWidth;
     }
 
+    /**
+     * Replaces all the states with the ones given.
+     * 
+     * @param statesToSet
+     *            states of the items
+     */
     public synchronized void setViewStates(final List<State> statesToSet) {
+        statesWaitingForSides.clear();
         viewStates.clear();
+        viewStates.setFactory(null);
         for (final State state : statesToSet) {
-            viewStates.add(state);
+            addViewStateInternal(state);
         }
         notifyDataSetChanged();
     }
 
+    /**
+     * Appends item with the state given.
+     * 
+     * @param state
+     *            state of the new item
+     */
+    public synchronized void addViewState(final State state) {
+        addViewStateInternal(state);
+        notifyDataSetChanged();
+    }
+
+    private void addViewStateInternal(final State state) {
+        viewStates.add(state);
+        if (sideStore != null) {
+            attachSideStore(state, false);
+        }
+        if (flipGroup != null) {
+            flipGroup.add(state);
+        }
+    }
+
+    /**
+     * Sets factory creating states of the items when they are bound for the
+     * first time - items without state are on the front (or on the side
+     * restored with {@link #restoreViewStates(Flip3DViewStatesSnapshot)}).
+     * Replaces all the states.
+     * 
+     * @param factory
+     *            creates state of the position (with the position as id)
+     * @param count
+     *            number of items
+     */
+    public synchronized void setViewStateFactory(
+            final Flip3DViewStateProvider.Factory<State> factory, final int count) {
+        statesWaitingForSides.clear();
+        viewStates.clear();
+        viewStates.setFactory(factory);
+        viewStates.setCount(count);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Appends items whose states are created by the factory (see
+     * {@link #setViewStateFactory(Flip3DViewStateProvider.Factory, int)}).
+     * 
+     * @param added
+     *            number of items appended
+     */
+    public synchronized void appendItems(final int added) {
+        viewStates.append(added);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Returns state of the item, creating it when the item has no state yet.
+     * A state created while a side store is set gets its side from the store
+     * (unless the side is already known - restored from a snapshot or kept
+     * after eviction) and writes its flips to the store from then on.
+     * 
+     * @param position
+     *            position of the item
+     * @return the state
+     */
+    public synchronized State getOrCreateViewState(final int position) {
+        State state = viewStates.peek(position);
+        if (state == null) {
+            final boolean sideKnown = viewStates.hasStoredSide(position);
+            state = viewStates.get(position);
+            if (sideStore != null) {
+                attachSideStore(state, sideKnown);
+            }
+            if (flipGroup != null) {
+                flipGroup.add(state);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns state of the item, creating it when needed.
+     * 
+     * @param position
+     *            position of the item
+     * @return the state
+     * @deprecated the name hides that the state is created - use
+     *             {@link #getOrCreateViewState(int)}
+     */
+    @Deprecated
+    public State getViewState(final int position) {
+        return getOrCreateViewState(position);
+    }
+
+    /**
+     * Drops states of the items in range which are not shown (see
+     * {@link Flip3DViewStateProvider#evict(int, int, boolean)}) - they are
+     * created again with the same side when shown. With a flip group set,
+     * states on the back are kept, so that the group can still close them.
+     * 
+     * @param fromPosition
+     *            first position (inclusive)
+     * @param toPosition
+     *            last position (exclusive)
+     */
+    public synchronized void evictViewStates(final int fromPosition, final int toPosition) {
+        final List<State> evicted = viewStates.evict(fromPosition, toPosition, flipGroup != null);
+        for (final State state : evicted) {
+            if (flipGroup != null) {
+                flipGroup.remove(state);
+            }
+            state.setSideStore(null);
+            if (statesWaitingForSides.remove(state)) {
+                // its side in the side table is not the stored one
+                viewStates.clearStoredSide(state.getId());
+            }
+        }
+    }
+
     @Override
-    public int getCount() {
-        return viewStates.size();
+    public synchronized int getCount() {
+        return viewStates.getCount();
     }
 
     @Override
@@ -62,21 +240,230 @@ public abstract class AbstractGridFlip3DImageAdapter<State extends Flip3DViewSta
         if (checkifExtraCall(position, convertView)) { // DIRTY HACK ... BUT
                                                        // THIS IS THE ONLY WAY
                                                        // WITH GRID VIEW
-            return convertView == null ? createView() : convertView;
+            return convertView == null ? obtainView() : convertView;
         }
         FlipView newView;
         if (convertView == null) {
-            newView = createView();
+            newView = obtainView();
         } else {
             newView = (FlipView) convertView;
         }
         prepareView(position, newView);
+        setOverlayBackend(newView);
+        newView.setQualityMonitor(qualityMonitor);
         newView.setLayoutParams(new GridView.LayoutParams(itemWidth, itemWidth));
         return newView;
     }
 
+    /**
+     * Sets the grid overlay as animation backend of the view - or gives the
+     * view back the backend the overlay replaced when the overlay is removed.
+     */
+    private void setOverlayBackend(final FlipView view) {
+        final Flip3DAnimationBackend backend = view.getAnimationBackend();
+        final boolean overlaid = backend instanceof Flip3DGridOverlay;
+        if (gridOverlay != null) {
+            if (!overlaid) {
+                replacedBackends.put(view, backend);
+            }
+            view.setAnimationBackend(gridOverlay);
+        } else if (overlaid) {
+            final Flip3DAnimationBackend replaced = replacedBackends.remove(view);
+            view.setAnimationBackend(replaced == null ? new ViewAnimationBackend() : replaced);
+        }
+    }
+
+    /**
+     * Captures sides of all the states - to be stored in saved instance
+     * state.
+     *
+     * @return compact snapshot of the states
+     */
+    public synchronized Flip3DViewStatesSnapshot saveViewStates() {
+        return viewStates.capture();
+    }
+
+    /**
+     * Restores sides of all the states from previously saved snapshot. States
+     * not created yet get their sides when created.
+     *
+     * @param snapshot
+     *            snapshot to restore
+     */
+    public synchronized void restoreViewStates(final Flip3DViewStatesSnapshot snapshot) {
+        snapshot.restore(viewStates.getCreatedStates());
+        viewStates.setDefaultSides(snapshot);
+        if (sideStore != null) {
+            for (final State state : viewStates.getCreatedStates()) {
+                attachSideStore(state, true);
+            }
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Sets store of the sides of the states. States already created get their
+     * sides from the store now, the others when they are created (see
+     * {@link #getOrCreateViewState(int)}) - so sides are read lazily, only for the
+     * positions actually used. Sides still being loaded by the store are
+     * applied in the UI thread when they arrive (unless the state is flipping
+     * by then). Every state writes its side to the store when flipping
+     * finishes.
+     *
+     * @param sideStore
+     *            store to use (null to disable)
+     */
+    public synchronized void setSideStore(final Flip3DSideStore sideStore) {
+        if (this.sideStore != null) {
+            this.sideStore.setOnSidesLoadedListener(null);
+        }
+        this.sideStore = sideStore;
+        statesWaitingForSides.clear();
+        if (sideStore != null) {
+            if (mainHandler == null) {
+                mainHandler = new Handler(Looper.getMainLooper());
+            }
+            sideStore.setOnSidesLoadedListener(sidesLoadedListener);
+        }
+        for (final State state : viewStates.getCreatedStates()) {
+            if (sideStore == null) {
+                state.setSideStore(null);
+            } else {
+                attachSideStore(state, false);
+            }
+        }
+    }
+
+    /**
+     * Sets group enforcing how many states of the adapter can be open at the
+     * same time. All states of the adapter (current and set later) are added to
+     * the group.
+     *
+     * @param flipGroup
+     *            group to use (null to remove)
+     */
+    public synchronized void setFlipGroup(final Flip3DFlipGroup flipGroup) {
+        for (final State state : viewStates.getCreatedStates()) {
+            if (this.flipGroup != null) {
+                this.flipGroup.remove(state);
+            }
+            if (flipGroup != null) {
+                flipGroup.add(state);
+            }
+        }
+        this.flipGroup = flipGroup;
+    }
+
+    /**
+     * Sets overlay which draws flipping of all the cells of the grid (see
+     * {@link Flip3DGridOverlay}). It is set as animation backend of every
+     * view prepared by the adapter. When the overlay is removed, the views
+     * get back the backends they had before.
+     *
+     * @param gridOverlay
+     *            overlay placed over the grid
+     */
+    public synchronized void setGridOverlay(final Flip3DGridOverlay gridOverlay) {
+        this.gridOverlay = gridOverlay;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Sets monitor adapting quality of flipping to the frame times. It is set
+     * on every view prepared by the adapter (and should be set on the grid
+     * overlay as well).
+     *
+     * @param qualityMonitor
+     *            monitor shared by the views (null to disable)
+     */
+    public synchronized void setQualityMonitor(final Flip3DQualityMonitor qualityMonitor) {
+        this.qualityMonitor = qualityMonitor;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Sets pool of views created in advance - new views are taken from the
+     * pool instead of calling {@link #createView()} during layout.
+     *
+     * @param viewPool
+     *            pool to take views from (null to always create them)
+     */
+    public synchronized void setViewPool(final Flip3DViewPool<FlipView> viewPool) {
+        this.viewPool = viewPool;
+    }
+
+    private FlipView obtainView() {
+        return viewPool == null ? createView() : viewPool.obtain();
+    }
+
+    public synchronized Flip3DFlipGroup getFlipGroup() {
+        return flipGroup;
+    }
+
+    /**
+     * Attaches the side store to the state. Side of the state is read from the
+     * store, unless it is already known - then it is written to the store, so
+     * that the store does not keep an older side.
+     */
+    private void attachSideStore(final State state, final boolean sideKnown) {
+        if (sideKnown) {
+            sideStore.setViewIndex(state.getId(), state.getTargetViewIndex());
+        } else if (!state.isFlipping()) {
+            final int viewIndex = sideStore.getViewIndex(state.getId());
+            if (viewIndex == Flip3DSideStore.UNKNOWN) {
+                statesWaitingForSides.add(state);
+            } else {
+                state.restoreViewIndex(viewIndex);
+            }
+        }
+        state.setSideStore(sideStore);
+    }
+
+    /**
+     * Restores sides loaded by the side store to the states waiting for them.
+     * States flipped meanwhile are left alone - the store keeps the sides
+     * they have flipped to.
+     */
+    private synchronized void applyLoadedSides(final int fromId, final int toId) {
+        final Iterator<State> iterator = statesWaitingForSides.iterator();
+        while (iterator.hasNext()) {
+            final State state = iterator.next();
+            if (state.getId() < fromId || state.getId() >= toId) {
+                continue;
+            }
+            final int viewIndex = sideStore.getViewIndex(state.getId());
+            if (viewIndex == Flip3DSideStore.UNKNOWN) {
+                continue;
+            }
+            iterator.remove();
+            if (!state.isFlipping() && viewIndex != state.getTargetViewIndex()) {
+                state.restoreViewIndex(viewIndex);
+            }
+        }
+    }
+
+    /**
+     * Returns list of the states of all the items. Getting an item creates its
+     * state when needed.
+     * 
+     * @return unmodifiable list of the states
+     * @deprecated iterating the list creates states of all the items - use
+     *             {@link #getCreatedViewStates()} or
+     *             {@link #getOrCreateViewState(int)}
+     */
+    @Deprecated
     public synchronized List<State> getViewStates() {
-        return Collections.unmodifiableList(viewStates);
+        return viewStatesList;
+    }
+
+    /**
+     * Returns states created so far (and not evicted) - in no particular
+     * order. Does not create any state.
+     * 
+     * @return copy of the created states
+     */
+    public synchronized List<State> getCreatedViewStates() {
+        return Collections.unmodifiableList(new ArrayList<State>(viewStates.getCreatedStates()));
     }
 
     protected abstract FlipView createView();
@@ -92,9 +479,8 @@ public abstract class AbstractGridFlip3DImageAdapter<State extends Flip3DViewSta
         if (position == 0 && convertView != null && convertView.getId() == 0) {
             return true;
         }
-        State viewState = null;
-        if (position >= 0 && position < viewStates.size()) {
-            viewState = viewStates.get(position);
+        if (position >= 0 && position < viewStates.getCount()) {
+            final State viewState = viewStates.peek(position);
             if (viewState != null && viewState.getView() != null) {
                 return position == 0;
             }
@@ -104,8 +490,9 @@ public abstract class AbstractGridFlip3DImageAdapter<State extends Flip3DViewSta
 
     @Override
     public synchronized void onMovedToScrapHeap(final View view) {
-        for (final Flip3DViewState s : viewStates) {
-            s.detachView((Flip3DView) view);
+        final Flip3DViewState state = ((Flip3DView) view).getViewState();
+        if (state != null) {
+            state.detachView((Flip3DView) view);
         }
     }
 
@@ -0,0 +1,96 @@
+package pl.polidea.androidflip3d;
+
+import android.widget.AbsListView;
+import android.widget.AbsListView.OnScrollListener;
+
+/**
+ * Adapter for Flip Images displayed in Grid with item data loaded in pages
+ * (see {@link Flip3DPagedData}). Cells of items whose page is not loaded yet
+ * are prepared as placeholders and prepared again when the page arrives.
+ * States are created when the items are shown for the first time and dropped
+ * together with the pages evicted - their sides are kept in the side table of
+ * the {@link Flip3DViewStateProvider}, so items scrolled back into view are
+ * on the same side. Set the adapter as scroll listener of the grid, so that
+ * pages are prefetched and evicted while scrolling.
+ *
+ * @param <Item>
+ *            type of the item data
+ * @param <State>
+ *            state where information about view state are stored
+ * @param <FlipView>
+ *            the view itself
+ *
+ */
+public abstract class AbstractPagedFlip3DImageAdapter<Item, State extends Flip3DViewState, FlipView extends Flip3DView>
+        extends AbstractGridFlip3DImageAdapter<State, FlipView> implements Flip3DPagedData.PageListener,
+        OnScrollListener {
+
+    private final Flip3DPagedData<Item> pagedData;
+
+    public AbstractPagedFlip3DImageAdapter(final int itemWidth, final Flip3DPagedData<Item> pagedData,
+            final Flip3DViewStateProvider.Factory<State> stateFactory) {
+        super(itemWidth);
+        this.pagedData = pagedData;
+        pagedData.addPageListener(this);
+        setViewStateFactory(stateFactory, pagedData.getItemCount());
+    }
+
+    public Flip3DPagedData<Item> getPagedData() {
+        return pagedData;
+    }
+
+    /**
+     * Prepares view of the item whose data is loaded.
+     *
+     * @param position
+     *            position of the item
+     * @param item
+     *            data of the item
+     * @param view
+     *            view to prepare
+     */
+    protected abstract void prepareItemView(int position, Item item, FlipView view);
+
+    /**
+     * Prepares view of the item whose data is not loaded yet. The view is
+     * prepared again with {@link #prepareItemView(int, Object, Flip3DView)}
+     * when the data arrives.
+     *
+     * @param position
+     *            position of the item
+     * @param view
+     *            view to prepare
+     */
+    protected abstract void preparePlaceholderView(int position, FlipView view);
+
+    @Override
+    protected final void prepareView(final int position, final FlipView view) {
+        final Item item = pagedData.getItem(position);
+        if (item == null) {
+            preparePlaceholderView(position, view);
+        } else {
+            prepareItemView(position, item, view);
+        }
+    }
+
+    @Override
+    public void onPageLoaded(final int firstPosition, final int count) {
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public void onPageEvicted(final int firstPosition, final int count) {
+        evictViewStates(firstPosition, firstPosition + count);
+    }
+
+    @Override
+    public void onScroll(final AbsListView view, final int firstVisibleItem, final int visibleItemCount,
+            final int totalItemCount) {
+        pagedData.setVisibleRange(firstVisibleItem, firstVisibleItem + visibleItemCount - 1);
+    }
+
+    @Override
+    public void onScrollStateChanged(final AbsListView view, final int scrollState) {
+        // pages follow the visible range only
+    }
+}
@@ -0,0 +1,57 @@
+package pl.polidea.androidflip3d;
+
+import android.view.animation.Animation;
+import android.view.animation.AnimationUtils;
+
+/**
+ * Pause of a view animation, which cannot be paused by itself. While paused
+ * the animation is given the time of the pause instead of the drawing time,
+ * so that it stays on the frame shown then; on resume its start time is
+ * shifted by the length of the pause, so that it continues from that frame.
+ *
+ */
+public final class AnimationPause {
+
+    private static final long NOT_PAUSED = -1;
+
+    private long pauseTime = NOT_PAUSED;
+
+    public boolean isPaused() {
+        return pauseTime != NOT_PAUSED;
+    }
+
+    /**
+     * Returns time to animate to.
+     *
+     * @param currentTime
+     *            drawing time
+     * @return drawing time or the time of the pause when paused
+     */
+    public long getTime(final long currentTime) {
+        return isPaused() ? pauseTime : currentTime;
+    }
+
+    /**
+     * Pauses or resumes the animation.
+     *
+     * @param animation
+     *            animation paused
+     * @param paused
+     *            whether to pause
+     */
+    public void setPaused(final Animation animation, final boolean paused) {
+        if (paused == isPaused()) {
+            return;
+        }
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        if (paused) {
+            pauseTime = now;
+            return;
+        }
+        // not started yet when it has not been drawn since the pause
+        if (animation.getStartTime() != Animation.START_ON_FIRST_FRAME) {
+            animation.setStartTime(animation.getStartTime() + now - pauseTime);
+        }
+        pauseTime = NOT_PAUSED;
+    }
+}
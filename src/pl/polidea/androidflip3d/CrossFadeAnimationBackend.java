@@ -0,0 +1,99 @@
+package pl.polidea.androidflip3d;
+
+import android.view.View;
+import android.view.animation.AlphaAnimation;
+import android.view.animation.Animation;
+import android.view.animation.Animation.AnimationListener;
+import android.view.animation.Transformation;
+
+/**
+ * Cheapest way of flipping - the current side fades out while the other one
+ * fades in, without any 3D transformation. Used by {@link Flip3DView} under
+ * {@link Flip3DQuality#MINIMAL} quality for the views not flipped by the user.
+ *
+ */
+public class CrossFadeAnimationBackend implements Flip3DAnimationBackend {
+
+    /**
+     * Fade which can be paused.
+     */
+    private static final class FadeAnimation extends AlphaAnimation {
+        private final AnimationPause pause = new AnimationPause();
+
+        private FadeAnimation(final float fromAlpha, final float toAlpha) {
+            super(fromAlpha, toAlpha);
+        }
+
+        @Override
+        public boolean getTransformation(final long currentTime, final Transformation outTransformation) {
+            return super.getTransformation(pause.getTime(currentTime), outTransformation) || pause.isPaused();
+        }
+
+        private void setPaused(final boolean paused) {
+            pause.setPaused(this, paused);
+        }
+    }
+
+    @Override
+    public void startRotation(final Flip3DView view, final int currentViewIndex, final int direction,
+            final long animationLength, final AnimationListener finishFlippingListener) {
+        final View[] views = view.getViews();
+        final int theOtherViewIndex = ViewIndex.getTheOtherViewIndex(currentViewIndex);
+        final AlphaAnimation fadeOut = new FadeAnimation(1.0f, 0.0f);
+        fadeOut.setDuration(animationLength);
+        fadeOut.setFillAfter(true);
+        final AlphaAnimation fadeIn = new FadeAnimation(0.0f, 1.0f);
+        fadeIn.setDuration(animationLength);
+        fadeIn.setAnimationListener(new AnimationListener() {
+            @Override
+            public void onAnimationStart(final Animation animation) {
+                // do nothing
+            }
+
+            @Override
+            public void onAnimationRepeat(final Animation animation) {
+                // do nothing
+            }
+
+            @Override
+            public void onAnimationEnd(final Animation animation) {
+                views[currentViewIndex].setVisibility(View.INVISIBLE);
+                views[currentViewIndex].clearAnimation();
+                if (finishFlippingListener != null) {
+                    finishFlippingListener.onAnimationEnd(animation);
+                }
+            }
+        });
+        views[theOtherViewIndex].setVisibility(View.VISIBLE);
+        views[currentViewIndex].startAnimation(fadeOut);
+        views[theOtherViewIndex].startAnimation(fadeIn);
+    }
+
+    @Override
+    public void clearAllAnimations(final Flip3DView view) {
+        for (final View v : view.getViews()) {
+            if (v != null) {
+                v.clearAnimation();
+            }
+        }
+    }
+
+    @Override
+    public void setPaused(final Flip3DView view, final boolean paused) {
+        for (final View v : view.getViews()) {
+            if (v != null && v.getAnimation() instanceof FadeAnimation) {
+                ((FadeAnimation) v.getAnimation()).setPaused(paused);
+            }
+        }
+    }
+
+    @Override
+    public boolean getChildTransformation(final Flip3DView view, final View child, final Transformation t) {
+        return false;
+    }
+
+    @Override
+    public float getChildRotation(final Flip3DView view, final View child) {
+        return Float.NaN;
+    }
+}
@@ -0,0 +1,306 @@
+package pl.polidea.androidflip3d;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Side store keeping one bit per state id in a file. The file is read lazily,
+ * page by page, when states are first asked for, and changed pages are written
+ * back incrementally. All the I/O is done by a single background thread - the
+ * calling thread never waits for the file: sides of pages not loaded yet are
+ * {@link #UNKNOWN} (the listener is notified when the page arrives) and sides
+ * set meanwhile are kept aside and applied to the page when it is loaded. A
+ * page which failed to load is never written back, so the data in the file is
+ * not overwritten. Does not use any Android classes so it can be used on
+ * plain JVM.
+ *
+ */
+public class FileFlip3DSideStore implements Flip3DSideStore {
+
+    /**
+     * Default size of the page in bytes (32768 state ids per page).
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private static final int BITS_PER_BYTE = 8;
+
+    private static final int CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final File file;
+
+    private final int pageSize;
+
+    private final Map<Integer, byte[]> pages = new HashMap<Integer, byte[]>();
+
+    private final Set<Integer> loadingPages = new HashSet<Integer>();
+
+    private final Set<Integer> dirtyPages = new HashSet<Integer>();
+
+    /**
+     * Sides set for ids whose pages are not loaded yet.
+     */
+    private final Map<Integer, Integer> pendingSides = new HashMap<Integer, Integer>();
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "Flip3DSideStore");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushDirtyPages();
+        }
+    };
+
+    /**
+     * Loads page in the background thread.
+     */
+    private final class LoadPage implements Runnable {
+        private final int pageIndex;
+
+        private LoadPage(final int pageIndex) {
+            this.pageIndex = pageIndex;
+        }
+
+        @Override
+        public void run() {
+            loadPage(pageIndex);
+        }
+    }
+
+    /**
+     * Used by the background thread only (and by {@link #close()} after the
+     * thread has finished).
+     */
+    private RandomAccessFile randomAccessFile;
+
+    private boolean flushScheduled = false;
+
+    private IOException lastError;
+
+    private OnSidesLoadedListener onSidesLoadedListener;
+
+    public FileFlip3DSideStore(final File file) {
+        this(file, DEFAULT_PAGE_SIZE);
+    }
+
+    public FileFlip3DSideStore(final File file, final int pageSize) {
+        this.file = file;
+        this.pageSize = pageSize;
+    }
+
+    private int getPageIndex(final int id) {
+        return id / (pageSize * BITS_PER_BYTE);
+    }
+
+    private int getBitInPage(final int id) {
+        return id % (pageSize * BITS_PER_BYTE);
+    }
+
+    private RandomAccessFile getFile() throws IOException {
+        if (randomAccessFile == null) {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+        }
+        return randomAccessFile;
+    }
+
+    @Override
+    public synchronized void setOnSidesLoadedListener(final OnSidesLoadedListener listener) {
+        this.onSidesLoadedListener = listener;
+    }
+
+    @Override
+    public synchronized int getViewIndex(final int id) {
+        if (id < 0) {
+            return ViewIndex.FRONT_VIEW;
+        }
+        final Integer pendingSide = pendingSides.get(id);
+        if (pendingSide != null) {
+            return pendingSide;
+        }
+        final int pageIndex = getPageIndex(id);
+        final byte[] page = pages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return UNKNOWN;
+        }
+        final int bit = getBitInPage(id);
+        return (page[bit / BITS_PER_BYTE] & 1 << bit % BITS_PER_BYTE) == 0 ? ViewIndex.FRONT_VIEW
+                : ViewIndex.BACK_VIEW;
+    }
+
+    @Override
+    public synchronized void setViewIndex(final int id, final int viewIndex) {
+        if (id < 0) {
+            return;
+        }
+        final int pageIndex = getPageIndex(id);
+        final byte[] page = pages.get(pageIndex);
+        if (page == null) {
+            pendingSides.put(id, viewIndex);
+            requestPage(pageIndex);
+        } else if (setBit(page, getBitInPage(id), viewIndex)) {
+            dirtyPages.add(pageIndex);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Sets bit of the side in the page.
+     *
+     * @return true if the bit has changed
+     */
+    private static boolean setBit(final byte[] page, final int bit, final int viewIndex) {
+        final int mask = 1 << bit % BITS_PER_BYTE;
+        final byte old = page[bit / BITS_PER_BYTE];
+        if (viewIndex == ViewIndex.BACK_VIEW) {
+            page[bit / BITS_PER_BYTE] |= mask;
+        } else {
+            page[bit / BITS_PER_BYTE] &= ~mask;
+        }
+        return old != page[bit / BITS_PER_BYTE];
+    }
+
+    private synchronized void requestPage(final int pageIndex) {
+        if (!ioExecutor.isShutdown() && loadingPages.add(pageIndex)) {
+            ioExecutor.execute(new LoadPage(pageIndex));
+        }
+    }
+
+    /**
+     * Reads the page (in the background thread) and applies sides set while
+     * it was being loaded. When reading fails, the page is not kept - it is
+     * read again on the next request and the pending sides wait for it.
+     */
+    private void loadPage(final int pageIndex) {
+        final byte[] page = new byte[pageSize];
+        try {
+            final RandomAccessFile raf = getFile();
+            final long offset = (long) pageIndex * pageSize;
+            final long length = raf.length();
+            if (offset < length) {
+                raf.seek(offset);
+                raf.readFully(page, 0, (int) Math.min(pageSize, length - offset));
+            }
+        } catch (final IOException e) {
+            synchronized (this) {
+                lastError = e;
+                loadingPages.remove(pageIndex);
+            }
+            return;
+        }
+        final OnSidesLoadedListener listener;
+        synchronized (this) {
+            loadingPages.remove(pageIndex);
+            pages.put(pageIndex, page);
+            boolean changed = false;
+            final Iterator<Map.Entry<Integer, Integer>> iterator = pendingSides.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<Integer, Integer> entry = iterator.next();
+                if (getPageIndex(entry.getKey()) == pageIndex) {
+                    changed |= setBit(page, getBitInPage(entry.getKey()), entry.getValue());
+                    iterator.remove();
+                }
+            }
+            if (changed) {
+                dirtyPages.add(pageIndex);
+                scheduleFlush();
+            }
+            listener = onSidesLoadedListener;
+        }
+        if (listener != null) {
+            final int idsPerPage = pageSize * BITS_PER_BYTE;
+            listener.onSidesLoaded(pageIndex * idsPerPage, (pageIndex + 1) * idsPerPage);
+        }
+    }
+
+    private synchronized void scheduleFlush() {
+        if (!flushScheduled && !ioExecutor.isShutdown()) {
+            flushScheduled = true;
+            ioExecutor.execute(flushTask);
+        }
+    }
+
+    /**
+     * Writes changed pages to the file. Pages are copied while holding the
+     * lock, but written without it - so that UI thread is never blocked by
+     * I/O. Pages which could not be written stay dirty.
+     */
+    private void flushDirtyPages() {
+        final List<Integer> pageIndexes = new ArrayList<Integer>();
+        final List<byte[]> pageCopies = new ArrayList<byte[]>();
+        synchronized (this) {
+            flushScheduled = false;
+            for (final Integer pageIndex : dirtyPages) {
+                pageIndexes.add(pageIndex);
+                pageCopies.add(pages.get(pageIndex).clone());
+            }
+            dirtyPages.clear();
+        }
+        int written = 0;
+        try {
+            final RandomAccessFile raf = getFile();
+            for (; written < pageIndexes.size(); written++) {
+                raf.seek((long) pageIndexes.get(written) * pageSize);
+                raf.write(pageCopies.get(written));
+            }
+        } catch (final IOException e) {
+            synchronized (this) {
+                lastError = e;
+                dirtyPages.addAll(pageIndexes.subList(written, pageIndexes.size()));
+            }
+        }
+    }
+
+    /**
+     * Returns last I/O error encountered (if any). Errors do not break the
+     * store - sides are still kept in memory.
+     *
+     * @return last error or null
+     */
+    public synchronized IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Writes all pending changes and closes the file. Pages requested before
+     * are loaded first, so that sides set for them are written as well.
+     */
+    @Override
+    public void close() {
+        ioExecutor.shutdown();
+        try {
+            ioExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushDirtyPages();
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (final IOException e) {
+                synchronized (this) {
+                    lastError = e;
+                }
+            }
+            randomAccessFile = null;
+        }
+    }
+}
@@ -15,6 +15,8 @@ public class Flip3DAnimation extends Animation {
     private final float mCenterX;
     private final float mCenterY;
     private Camera mCamera;
+    private float mCurrentDegrees;
+    private final AnimationPause mPause = new AnimationPause();
 
     public Flip3DAnimation(final float fromDegrees, final float toDegrees, final float centerX, final float centerY) {
         super();
@@ -22,6 +24,7 @@ public class Flip3DAnimation extends Animation {
         mToDegrees = toDegrees;
         mCenterX = centerX;
         mCenterY = centerY;
+        mCurrentDegrees = fromDegrees;
     }
 
     @Override
@@ -34,13 +37,58 @@ public class Flip3DAnimation extends Animation {
     protected void applyTransformation(final float interpolatedTime, final Transformation t) {
         final float fromDegrees = mFromDegrees;
         final float degrees = fromDegrees + (mToDegrees - fromDegrees) * interpolatedTime;
+        mCurrentDegrees = degrees;
 
         final float centerX = mCenterX;
         final float centerY = mCenterY;
         final Camera camera = mCamera;
 
-        final Matrix matrix = t.getMatrix();
+        applyRotation(camera, degrees, centerX, centerY, t.getMatrix());
+    }
+
+    @Override
+    public boolean getTransformation(final long currentTime, final Transformation outTransformation) {
+        // a paused animation is not finished - it stays on its frame
+        return super.getTransformation(mPause.getTime(currentTime), outTransformation) || mPause.isPaused();
+    }
+
+    /**
+     * Pauses or resumes the animation - while paused it stays on the frame
+     * shown when it was paused.
+     * 
+     * @param paused
+     *            whether to pause
+     */
+    public void setPaused(final boolean paused) {
+        mPause.setPaused(this, paused);
+    }
+
+    /**
+     * Returns rotation applied in the last frame.
+     * 
+     * @return rotation in degrees
+     */
+    public float getCurrentDegrees() {
+        return mCurrentDegrees;
+    }
 
+    /**
+     * Computes matrix of rotation around Y axis going through the center
+     * given. Does not allocate - can be used in every frame.
+     * 
+     * @param camera
+     *            camera used for the computation
+     * @param degrees
+     *            rotation in degrees
+     * @param centerX
+     *            X of the rotation center
+     * @param centerY
+     *            Y of the rotation center
+     * @param matrix
+     *            matrix where the result is stored
+     */
+    public static void applyRotation(final Camera camera, final float degrees, final float centerX,
+            final float centerY, final Matrix matrix) {
         camera.save();
 
         camera.rotateY(degrees);
@@ -0,0 +1,77 @@
+package pl.polidea.androidflip3d;
+
+import android.view.View;
+import android.view.animation.Animation.AnimationListener;
+import android.view.animation.Transformation;
+
+/**
+ * Way in which {@link Flip3DView} animates flipping. Each half of the flip
+ * rotates one side by 90 degrees - at the middle the sides are swapped and
+ * when the other side is fully shown the finish listener is notified.
+ *
+ */
+public interface Flip3DAnimationBackend {
+
+    /**
+     * Starts rotation of the view from the side given to the other one.
+     *
+     * @param view
+     *            view to animate
+     * @param currentViewIndex
+     *            side from which to start
+     * @param direction
+     *            rotation direction (see {@link RotationDirection})
+     * @param animationLength
+     *            length of each half of the animation in milliseconds
+     * @param finishFlippingListener
+     *            notified via onAnimationEnd when the whole flip is finished
+     */
+    void startRotation(Flip3DView view, int currentViewIndex, int direction, long animationLength,
+            AnimationListener finishFlippingListener);
+
+    /**
+     * Cancels all rotations of the view. Finish listener is not notified.
+     *
+     * @param view
+     *            view to stop animating
+     */
+    void clearAllAnimations(Flip3DView view);
+
+    /**
+     * Pauses or resumes rotation of the view (for example when the window
+     * loses focus). Backends which cannot pause may ignore it.
+     *
+     * @param view
+     *            view to pause or resume
+     * @param paused
+     *            whether to pause
+     */
+    void setPaused(Flip3DView view, boolean paused);
+
+    /**
+     * Gives the backend a chance to transform a side of the view while it is
+     * drawn.
+     *
+     * @param view
+     *            the flip view
+     * @param child
+     *            side being drawn
+     * @param t
+     *            transformation to fill in
+     * @return true if the transformation was set
+     */
+    boolean getChildTransformation(Flip3DView view, View child, Transformation t);
+
+    /**
+     * Returns current rotation of a side, used to shade it (see
+     * {@link Flip3DShading}).
+     *
+     * @param view
+     *            the flip view
+     * @param child
+     *            side being drawn
+     * @return rotation in degrees or {@link Float#NaN} when the side is not
+     *         rotated by the backend
+     */
+    float getChildRotation(Flip3DView view, View child);
+}
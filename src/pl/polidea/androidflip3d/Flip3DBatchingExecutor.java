@@ -0,0 +1,52 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Executor which collects tasks and runs all of them in a single message
+ * posted to the UI thread - so that flipping events of many states (for
+ * example whole grid forced to front) are dispatched once per frame rather
+ * than one by one. Share single instance between all the states.
+ *
+ */
+public class Flip3DBatchingExecutor implements Executor {
+
+    private final Handler handler;
+
+    private final List<Runnable> pendingTasks = new ArrayList<Runnable>();
+
+    private final Runnable runPendingTasks = new Runnable() {
+        @Override
+        public void run() {
+            final List<Runnable> tasks;
+            synchronized (Flip3DBatchingExecutor.this) {
+                tasks = new ArrayList<Runnable>(pendingTasks);
+                pendingTasks.clear();
+            }
+            for (final Runnable task : tasks) {
+                task.run();
+            }
+        }
+    };
+
+    public Flip3DBatchingExecutor() {
+        this(new Handler(Looper.getMainLooper()));
+    }
+
+    public Flip3DBatchingExecutor(final Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable command) {
+        if (pendingTasks.isEmpty()) {
+            handler.post(runPendingTasks);
+        }
+        pendingTasks.add(command);
+    }
+}
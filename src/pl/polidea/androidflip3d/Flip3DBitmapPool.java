@@ -0,0 +1,127 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * Pool of bitmaps of the same few sizes (typically the size of a grid cell),
+ * so that snapshots taken for flipping reuse existing buffers rather than
+ * allocating new bitmaps for every flip.
+ *
+ */
+public class Flip3DBitmapPool {
+
+    private final long maxPooledBytes;
+
+    private final Map<Long, List<Bitmap>> pooledBitmaps = new HashMap<Long, List<Bitmap>>();
+
+    private long pooledBytes = 0;
+
+    /**
+     * Creates pool.
+     *
+     * @param maxPooledBytes
+     *            maximum number of bytes kept in unused bitmaps
+     */
+    public Flip3DBitmapPool(final long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    private static Long getKey(final int width, final int height) {
+        return Long.valueOf((long) width << 32 | height);
+    }
+
+    private static long getBytes(final Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Returns cleared ARGB_8888 bitmap of the size given - reused if possible.
+     *
+     * @param width
+     *            width of the bitmap
+     * @param height
+     *            height of the bitmap
+     * @return the bitmap
+     */
+    public synchronized Bitmap obtain(final int width, final int height) {
+        final List<Bitmap> bitmaps = pooledBitmaps.get(getKey(width, height));
+        if (bitmaps != null && !bitmaps.isEmpty()) {
+            final Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+            pooledBytes -= getBytes(bitmap);
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Returns bitmap to the pool. Bitmap is recycled if the pool is full.
+     *
+     * @param bitmap
+     *            bitmap no longer used
+     */
+    public synchronized void release(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        final long bytes = getBytes(bitmap);
+        if (pooledBytes + bytes > maxPooledBytes || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            bitmap.recycle();
+            return;
+        }
+        final Long key = getKey(bitmap.getWidth(), bitmap.getHeight());
+        List<Bitmap> bitmaps = pooledBitmaps.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<Bitmap>();
+            pooledBitmaps.put(key, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        pooledBytes += bytes;
+    }
+
+    /**
+     * Recycles pooled bitmaps until no more than the number of bytes given is
+     * kept in the pool.
+     *
+     * @param maxBytes
+     *            number of bytes the pool may keep
+     */
+    public synchronized void trimTo(final long maxBytes) {
+        final Iterator<List<Bitmap>> iterator = pooledBitmaps.values().iterator();
+        while (pooledBytes > maxBytes && iterator.hasNext()) {
+            final List<Bitmap> bitmaps = iterator.next();
+            while (pooledBytes > maxBytes && !bitmaps.isEmpty()) {
+                final Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+                pooledBytes -= getBytes(bitmap);
+                bitmap.recycle();
+            }
+            if (bitmaps.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Recycles all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        for (final List<Bitmap> bitmaps : pooledBitmaps.values()) {
+            for (final Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+        pooledBitmaps.clear();
+        pooledBytes = 0;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+}
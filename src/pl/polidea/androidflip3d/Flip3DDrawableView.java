@@ -0,0 +1,416 @@
+package pl.polidea.androidflip3d;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Camera;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.ImageView.ScaleType;
+
+/**
+ * Lightweight flip view showing two drawables - a single view without any
+ * children. Both faces are drawn directly in onDraw with the flip rotation
+ * applied to the canvas; internal padding, internal margin and scale type are
+ * handled by the view itself and clicks are ignored by state while flipping
+ * (instead of a foreground view swallowing them). Accepts the same attributes
+ * as {@link Flip3DView} and is driven by {@link Flip3DViewState} the same way
+ * (see {@link Flip3DViewState#setDrawableView(Flip3DDrawableView)}).
+ * 
+ */
+public class Flip3DDrawableView extends View implements Flip3DRenderer {
+
+    private static final String TAG = Flip3DDrawableView.class.getSimpleName();
+
+    private static final int DEFAULT_ANIMATION_LENGTH = 500;
+    private static final int DEFAULT_INTERNAL_PADDING = 0;
+    private static final int DEFAULT_INTERNAL_MARGIN = 0;
+
+    private static final int NOT_ROTATING = 0;
+    private static final int FIRST_HALF = 1;
+    private static final int SECOND_HALF = 2;
+
+    private final Drawable[] drawables = new Drawable[ViewIndex.VIEW_NUMBER];
+    private final boolean[] clickable = new boolean[ViewIndex.VIEW_NUMBER];
+
+    private final Camera camera = new Camera();
+    private final Matrix matrix = new Matrix();
+    private final Rect sideRect = new Rect();
+    private final Rect contentRect = new Rect();
+    private final Interpolator firstHalfInterpolator = new AccelerateInterpolator();
+    private final Interpolator secondHalfInterpolator = new DecelerateInterpolator();
+
+    private int internalPadding = DEFAULT_INTERNAL_PADDING;
+    private int internalMargin = DEFAULT_INTERNAL_MARGIN;
+    private long animationLength = DEFAULT_ANIMATION_LENGTH;
+    private int frontToBack = RotationDirection.ROTATE_LEFT;
+    private int backToFront = RotationDirection.ROTATE_RIGHT;
+    private ScaleType imageScaleType = ScaleType.FIT_CENTER;
+
+    private int displayedViewIndex = ViewIndex.FRONT_VIEW;
+    private boolean flipping = false;
+
+    private int phase = NOT_ROTATING;
+    private int direction;
+    private long startTime;
+    private boolean halfEndPosted;
+    private Runnable finishFlipping;
+    private Flip3DShading shading;
+
+    private final Runnable halfEnded = new Runnable() {
+        @Override
+        public void run() {
+            onHalfEnded();
+        }
+    };
+
+    public Flip3DDrawableView(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+        final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.Flip3DView);
+        try {
+            internalPadding = a.getDimensionPixelSize(R.styleable.Flip3DView_internal_padding,
+                    DEFAULT_INTERNAL_PADDING);
+            internalMargin = a.getDimensionPixelSize(R.styleable.Flip3DView_internal_margin,
+                    DEFAULT_INTERNAL_MARGIN);
+            initializeDrawables();
+            final Drawable front = a.getDrawable(R.styleable.Flip3DView_src_front);
+            if (front != null) {
+                setImageFrontDrawable(front);
+            }
+            final Drawable back = a.getDrawable(R.styleable.Flip3DView_src_back);
+            if (back != null) {
+                setImageBackDrawable(back);
+            }
+            animationLength = a.getInt(R.styleable.Flip3DView_animation_length_millis, DEFAULT_ANIMATION_LENGTH);
+            frontToBack = a.getInt(R.styleable.Flip3DView_front_to_back_flip_direction, frontToBack);
+            backToFront = a.getInt(R.styleable.Flip3DView_back_to_front_flip_direction, backToFront);
+        } finally {
+            a.recycle();
+        }
+    }
+
+    public Flip3DDrawableView(final Context context, final AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public Flip3DDrawableView(final Context context) {
+        super(context);
+        initializeDrawables();
+    }
+
+    private void initializeDrawables() {
+        setImageFrontDrawable(new ColorDrawable(Color.BLUE));
+        setImageBackDrawable(new ColorDrawable(Color.RED));
+        initializeViewState(ViewIndex.FRONT_VIEW);
+    }
+
+    /**
+     * Sets amount of internal padding.
+     * 
+     * @param internalPadding
+     *            internal padding in pixels
+     */
+    public synchronized void setInternalPadding(final int internalPadding) {
+        this.internalPadding = internalPadding;
+        invalidate();
+    }
+
+    /**
+     * Sets amount of internal margin.
+     * 
+     * @param internalMargin
+     *            internal margin in pixels
+     */
+    public synchronized void setInternalMargin(final int internalMargin) {
+        this.internalMargin = internalMargin;
+        invalidate();
+    }
+
+    /**
+     * Set image scale type. FIT_XY, FIT_CENTER, CENTER, CENTER_CROP and
+     * CENTER_INSIDE are supported, other types are treated as FIT_CENTER.
+     * 
+     * @param imageScaleType
+     *            image scale type
+     */
+    public synchronized void setImageScaleType(final ScaleType imageScaleType) {
+        this.imageScaleType = imageScaleType;
+        invalidate();
+    }
+
+    /**
+     * Sets length of each half of flipping.
+     * 
+     * @param animationLength
+     *            length of animation in milliseconds
+     */
+    public synchronized void setAnimationLength(final long animationLength) {
+        this.animationLength = animationLength;
+    }
+
+    /**
+     * Sets rotation mode for front to back change.
+     * 
+     * @param frontToBack
+     *            rotation direction (0 - LEFT, 1 - RIGHT)
+     */
+    public synchronized void setFrontToBack(final int frontToBack) {
+        this.frontToBack = frontToBack;
+    }
+
+    /**
+     * Sets rotation mode for back to front change.
+     * 
+     * @param backToFront
+     *            rotation direction (0 - LEFT, 1 - RIGHT)
+     */
+    public synchronized void setBackToFront(final int backToFront) {
+        this.backToFront = backToFront;
+    }
+
+    /**
+     * Sets image drawable for front.
+     * 
+     * @param drawable
+     *            drawable for front.
+     */
+    public synchronized void setImageFrontDrawable(final Drawable drawable) {
+        setImageDrawable(ViewIndex.FRONT_VIEW, drawable);
+    }
+
+    /**
+     * Sets image drawable for back.
+     * 
+     * @param drawable
+     *            drawable for back.
+     */
+    public synchronized void setImageBackDrawable(final Drawable drawable) {
+        setImageDrawable(ViewIndex.BACK_VIEW, drawable);
+    }
+
+    private void setImageDrawable(final int viewSide, final Drawable drawable) {
+        if (drawables[viewSide] != null) {
+            drawables[viewSide].setCallback(null);
+        }
+        drawables[viewSide] = drawable;
+        if (drawable != null) {
+            drawable.setCallback(this);
+        }
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected boolean verifyDrawable(final Drawable who) {
+        return who == drawables[ViewIndex.FRONT_VIEW] || who == drawables[ViewIndex.BACK_VIEW] // NOPMD
+                || super.verifyDrawable(who);
+    }
+
+    public synchronized int getDisplayedViewIndex() {
+        return displayedViewIndex;
+    }
+
+    @Override
+    public synchronized void initializeViewState(final int currentViewIndex) {
+        clearAllAnimations();
+        displayedViewIndex = currentViewIndex;
+        clickable[currentViewIndex] = true;
+        clickable[ViewIndex.getTheOtherViewIndex(currentViewIndex)] = false;
+        invalidate();
+    }
+
+    @Override
+    public synchronized void setFlipping(final boolean flipping) {
+        this.flipping = flipping;
+    }
+
+    @Override
+    public synchronized void setViewClickability(final int viewIndex, final boolean enable) {
+        if (viewIndex == ViewIndex.FRONT_VIEW || viewIndex == ViewIndex.BACK_VIEW) {
+            clickable[viewIndex] = enable;
+        }
+    }
+
+    @Override
+    public void requestViewIndexFocus(final int viewIndex) {
+        // single view - sides cannot be focused separately
+    }
+
+    @Override
+    public boolean performClick() {
+        synchronized (this) {
+            if (flipping || !clickable[displayedViewIndex]) {
+                Log.d(TAG, "Click ignored: " + ViewIndex.getViewType(displayedViewIndex));
+                return false;
+            }
+        }
+        return super.performClick();
+    }
+
+    @Override
+    public synchronized void startRotation(final int currentViewIndex, final Runnable finishFlippingRunnable) {
+        displayedViewIndex = currentViewIndex;
+        if (getWindowVisibility() != VISIBLE || !isShown()) {
+            // nobody can see it - finish immediately
+            phase = NOT_ROTATING;
+            displayedViewIndex = ViewIndex.getTheOtherViewIndex(currentViewIndex);
+            invalidate();
+            finishFlippingRunnable.run();
+            return;
+        }
+        direction = currentViewIndex == ViewIndex.FRONT_VIEW ? frontToBack : backToFront;
+        finishFlipping = finishFlippingRunnable;
+        startHalf(FIRST_HALF);
+    }
+
+    private void startHalf(final int half) {
+        phase = half;
+        startTime = -1;
+        halfEndPosted = false;
+        invalidate();
+    }
+
+    private synchronized void onHalfEnded() {
+        if (phase == FIRST_HALF) {
+            displayedViewIndex = ViewIndex.getTheOtherViewIndex(displayedViewIndex);
+            startHalf(SECOND_HALF);
+        } else if (phase == SECOND_HALF) {
+            phase = NOT_ROTATING;
+            invalidate();
+            final Runnable finish = finishFlipping;
+            finishFlipping = null;
+            if (finish != null) {
+                finish.run();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clearAllAnimations() {
+        if (phase != NOT_ROTATING) {
+            phase = NOT_ROTATING;
+            finishFlipping = null;
+            removeCallbacks(halfEnded);
+            invalidate();
+        }
+    }
+
+    /**
+     * Sets shading of the rotating face (see {@link Flip3DShading}).
+     * 
+     * @param shading
+     *            shading to use (null for none - the default)
+     */
+    public synchronized void setShading(final Flip3DShading shading) {
+        this.shading = shading;
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final Drawable front = drawables[ViewIndex.FRONT_VIEW];
+        final int inset = 2 * (internalMargin + internalPadding);
+        final int width = Math.max(0, front == null ? 0 : front.getIntrinsicWidth()) + inset + getPaddingLeft()
+                + getPaddingRight();
+        final int height = Math.max(0, front == null ? 0 : front.getIntrinsicHeight()) + inset + getPaddingTop()
+                + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected synchronized void onDraw(final Canvas canvas) {
+        super.onDraw(canvas);
+        final Drawable drawable = drawables[displayedViewIndex];
+        if (drawable == null) {
+            return;
+        }
+        sideRect.set(getPaddingLeft() + internalMargin, getPaddingTop() + internalMargin, getWidth()
+                - getPaddingRight() - internalMargin, getHeight() - getPaddingBottom() - internalMargin);
+        contentRect.set(sideRect.left + internalPadding, sideRect.top + internalPadding, sideRect.right
+                - internalPadding, sideRect.bottom - internalPadding);
+        if (contentRect.width() <= 0 || contentRect.height() <= 0) {
+            return;
+        }
+        final int saveCount = canvas.save();
+        final float degrees = phase == NOT_ROTATING ? Float.NaN : applyRotation(canvas);
+        canvas.clipRect(contentRect);
+        setDrawableBounds(drawable);
+        drawable.draw(canvas);
+        if (shading != null && !Float.isNaN(degrees)) {
+            canvas.translate(contentRect.left, contentRect.top);
+            shading.draw(canvas, degrees, contentRect.width(), contentRect.height());
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private float applyRotation(final Canvas canvas) {
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        if (startTime < 0) {
+            startTime = now;
+        }
+        final float progress = animationLength <= 0 ? 1.0f : Math.min(1.0f, (float) (now - startTime)
+                / animationLength);
+        final float halfRotation = RotationDirection.getMultiplier(direction) * 90;
+        final float degrees = phase == FIRST_HALF ? halfRotation * firstHalfInterpolator.getInterpolation(progress)
+                : -halfRotation * (1.0f - secondHalfInterpolator.getInterpolation(progress));
+        Flip3DAnimation.applyRotation(camera, degrees, sideRect.exactCenterX(), sideRect.exactCenterY(), matrix);
+        canvas.concat(matrix);
+        if (progress >= 1.0f) {
+            if (!halfEndPosted) {
+                halfEndPosted = true;
+                post(halfEnded);
+            }
+        } else {
+            invalidate();
+        }
+        return degrees;
+    }
+
+    private void setDrawableBounds(final Drawable drawable) {
+        final int width = drawable.getIntrinsicWidth();
+        final int height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0 || imageScaleType == ScaleType.FIT_XY) {
+            drawable.setBounds(contentRect);
+            return;
+        }
+        final float scaleX = (float) contentRect.width() / width;
+        final float scaleY = (float) contentRect.height() / height;
+        final float scale;
+        if (imageScaleType == ScaleType.CENTER) {
+            scale = 1.0f;
+        } else if (imageScaleType == ScaleType.CENTER_CROP) {
+            scale = Math.max(scaleX, scaleY);
+        } else if (imageScaleType == ScaleType.CENTER_INSIDE) {
+            scale = Math.min(1.0f, Math.min(scaleX, scaleY));
+        } else {
+            scale = Math.min(scaleX, scaleY);
+        }
+        final int scaledWidth = Math.round(width * scale);
+        final int scaledHeight = Math.round(height * scale);
+        final int left = contentRect.left + (contentRect.width() - scaledWidth) / 2;
+        final int top = contentRect.top + (contentRect.height() - scaledHeight) / 2;
+        drawable.setBounds(left, top, left + scaledWidth, top + scaledHeight);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(halfEnded);
+        // finish flipping so that no state is left flipping
+        if (phase == FIRST_HALF) {
+            displayedViewIndex = ViewIndex.getTheOtherViewIndex(displayedViewIndex);
+            phase = SECOND_HALF;
+        }
+        onHalfEnded();
+    }
+}
@@ -0,0 +1,81 @@
+package pl.polidea.androidflip3d;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import android.graphics.drawable.AnimationDrawable;
+
+/**
+ * Runs animated faces ({@link AnimationDrawable}) of {@link Flip3DView}s.
+ * Views ask to run the animation of the side the user actually sees and stop
+ * all the others; the manager caps the number of faces animating at the same
+ * time - when the cap is reached, the face started longest ago is stopped.
+ * Shared by all the views of a grid (or the whole application - see
+ * {@link #getDefault()}).
+ *
+ */
+public class Flip3DFaceAnimationManager {
+
+    private static final int DEFAULT_MAX_RUNNING = 6;
+
+    private static Flip3DFaceAnimationManager defaultManager;
+
+    private final int maxRunning;
+
+    private final Set<AnimationDrawable> running = new LinkedHashSet<AnimationDrawable>();
+
+    /**
+     * Creates manager.
+     *
+     * @param maxRunning
+     *            maximum number of faces animating at the same time
+     */
+    public Flip3DFaceAnimationManager(final int maxRunning) {
+        this.maxRunning = maxRunning;
+    }
+
+    /**
+     * Returns manager shared by all the views of the application.
+     *
+     * @return the manager
+     */
+    public static synchronized Flip3DFaceAnimationManager getDefault() {
+        if (defaultManager == null) {
+            defaultManager = new Flip3DFaceAnimationManager(DEFAULT_MAX_RUNNING);
+        }
+        return defaultManager;
+    }
+
+    /**
+     * Starts or stops animation of the face.
+     *
+     * @param drawable
+     *            animated face
+     * @param run
+     *            whether it should animate
+     */
+    public synchronized void setRunning(final AnimationDrawable drawable, final boolean run) {
+        if (!run) {
+            if (running.remove(drawable) || drawable.isRunning()) {
+                drawable.stop();
+            }
+            return;
+        }
+        if (running.contains(drawable)) {
+            return;
+        }
+        if (running.size() >= maxRunning) {
+            final Iterator<AnimationDrawable> iterator = running.iterator();
+            final AnimationDrawable oldest = iterator.next();
+            iterator.remove();
+            oldest.stop();
+        }
+        running.add(drawable);
+        drawable.start();
+    }
+
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+}
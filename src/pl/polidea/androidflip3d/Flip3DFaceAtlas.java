@@ -0,0 +1,523 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Atlas of small faces (icons, color swatches, thumbnails) packed into a few
+ * shared large bitmaps. Each face is drawn once into a region of a page and
+ * shown with a {@link FaceDrawable} drawing that region - so hundreds of cells
+ * share a few bitmaps instead of having one bitmap each. Faces are packed in
+ * shelves (rows of faces of similar height); regions of released faces are
+ * reused by new faces of the same shelf, pages without faces are returned to
+ * the {@link Flip3DBitmapPool} and when the pages get sparse, faces are
+ * repacked into fewer pages. Faces of the same key and size share a region.
+ * {@link Flip3DView} releases atlas faces it no longer shows.
+ *
+ */
+public class Flip3DFaceAtlas {
+
+    private static final int DEFAULT_PAGE_SIZE = 512;
+
+    /**
+     * Transparent border around each face, so that filtering does not blend
+     * neighbouring faces.
+     */
+    private static final int PADDING = 1;
+
+    /**
+     * Shelves are used for faces at least this fraction of their height.
+     */
+    private static final float MIN_SHELF_FILL = 0.5f;
+
+    private static final float REPACK_OCCUPANCY = 0.5f;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Approximate memory overhead of a single bitmap object (Java object and
+     * native header), used to compare the atlas with separate bitmaps.
+     */
+    private static final int BITMAP_OVERHEAD_BYTES = 128;
+
+    private final int pageSize;
+
+    private Flip3DBitmapPool bitmapPool;
+
+    private final List<Page> pages = new ArrayList<Page>();
+
+    private final Map<String, Region> regions = new HashMap<String, Region>();
+
+    private final Canvas canvas = new Canvas();
+
+    private final Rect slotRect = new Rect();
+
+    private int repackCount = 0;
+
+    /**
+     * Shared bitmap with faces.
+     */
+    private static final class Page {
+        private final Bitmap bitmap;
+        private final List<Shelf> shelves = new ArrayList<Shelf>();
+        private int usedHeight = 0;
+        private int liveRegions = 0;
+        private long liveArea = 0;
+
+        private Page(final Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    /**
+     * Row of faces of similar height.
+     */
+    private static final class Shelf {
+        private final int top;
+        private final int height;
+        private int nextLeft = 0;
+        private final List<Rect> freeSlots = new ArrayList<Rect>();
+
+        private Shelf(final int top, final int height) {
+            this.top = top;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Region of a page with a single face.
+     */
+    private static final class Region {
+        private final String key;
+        private final int width;
+        private final int height;
+        private final Rect bounds = new Rect();
+        private final List<FaceDrawable> drawables = new ArrayList<FaceDrawable>();
+        private Page page;
+        private Shelf shelf;
+        private int slotLeft;
+
+        private Region(final String key, final int width, final int height) {
+            this.key = key;
+            this.width = width;
+            this.height = height;
+        }
+
+        private int getSlotWidth() {
+            return width + 2 * PADDING;
+        }
+
+        private int getSlotHeight() {
+            return height + 2 * PADDING;
+        }
+    }
+
+    /**
+     * Drawable showing face from the atlas.
+     *
+     */
+    public final class FaceDrawable extends Drawable {
+        private final Region region;
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private boolean released = false;
+
+        private FaceDrawable(final Region region) {
+            this.region = region;
+        }
+
+        @Override
+        public void draw(final Canvas drawCanvas) {
+            synchronized (Flip3DFaceAtlas.this) {
+                if (!released) {
+                    drawCanvas.drawBitmap(region.page.bitmap, region.bounds, getBounds(), paint);
+                }
+            }
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return region.width;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return region.height;
+        }
+
+        @Override
+        public void setAlpha(final int alpha) {
+            paint.setAlpha(alpha);
+        }
+
+        @Override
+        public void setColorFilter(final ColorFilter cf) {
+            paint.setColorFilter(cf);
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+
+        /**
+         * Releases the face - the drawable draws nothing afterwards. Releasing
+         * twice does nothing.
+         */
+        public void release() {
+            Flip3DFaceAtlas.this.release(this);
+        }
+
+        /**
+         * Returns region of the page with the face.
+         *
+         * @return bounds of the face in the page
+         */
+        Rect getAtlasBounds() {
+            synchronized (Flip3DFaceAtlas.this) {
+                return new Rect(region.bounds);
+            }
+        }
+
+        /**
+         * Returns page with the face.
+         *
+         * @return bitmap of the page
+         */
+        Bitmap getAtlasPage() {
+            synchronized (Flip3DFaceAtlas.this) {
+                return region.page.bitmap;
+            }
+        }
+    }
+
+    public Flip3DFaceAtlas() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Creates atlas.
+     *
+     * @param pageSize
+     *            width and height of the pages in pixels
+     */
+    public Flip3DFaceAtlas(final int pageSize) {
+        this.pageSize = pageSize;
+        this.bitmapPool = new Flip3DBitmapPool((long) pageSize * pageSize * BYTES_PER_PIXEL);
+    }
+
+    /**
+     * Sets pool of the page bitmaps (to share it with other components).
+     *
+     * @param bitmapPool
+     *            the pool
+     */
+    public synchronized void setBitmapPool(final Flip3DBitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    /**
+     * Returns face drawn by the drawable given in the size given. The
+     * drawable is drawn into the atlas only the first time the key is used.
+     *
+     * @param key
+     *            key of the face (for example "color:" + color)
+     * @param source
+     *            drawable drawn into the atlas
+     * @param width
+     *            width of the face
+     * @param height
+     *            height of the face
+     * @return face drawable or the source itself when it is too large for the
+     *         atlas
+     */
+    public synchronized Drawable acquire(final String key, final Drawable source, final int width, final int height) {
+        final Region region = obtainRegion(key, width, height);
+        if (region == null) {
+            return source;
+        }
+        if (region.drawables.isEmpty()) {
+            prepareSlot(region);
+            source.setBounds(region.bounds);
+            source.draw(canvas);
+            canvas.restore();
+        }
+        return createDrawable(region);
+    }
+
+    /**
+     * Returns face showing the bitmap given (scaled to the size given). The
+     * bitmap is drawn into the atlas only the first time the key is used and
+     * can be recycled afterwards.
+     *
+     * @param key
+     *            key of the face (for example resource id)
+     * @param source
+     *            bitmap drawn into the atlas
+     * @param width
+     *            width of the face
+     * @param height
+     *            height of the face
+     * @return face drawable or null when it is too large for the atlas
+     */
+    public synchronized FaceDrawable acquire(final String key, final Bitmap source, final int width,
+            final int height) {
+        final Region region = obtainRegion(key, width, height);
+        if (region == null) {
+            return null;
+        }
+        if (region.drawables.isEmpty()) {
+            prepareSlot(region);
+            canvas.drawBitmap(source, null, region.bounds, null);
+            canvas.restore();
+        }
+        return createDrawable(region);
+    }
+
+    private FaceDrawable createDrawable(final Region region) {
+        final FaceDrawable drawable = new FaceDrawable(region);
+        drawable.setBounds(0, 0, region.width, region.height);
+        region.drawables.add(drawable);
+        return drawable;
+    }
+
+    /**
+     * Sets canvas to the slot of the region (clipped and cleared).
+     */
+    private void prepareSlot(final Region region) {
+        canvas.setBitmap(region.page.bitmap);
+        canvas.save();
+        slotRect.set(region.slotLeft, region.shelf.top, region.slotLeft + region.getSlotWidth(), region.shelf.top
+                + region.shelf.height);
+        canvas.clipRect(slotRect);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+    }
+
+    private Region obtainRegion(final String key, final int width, final int height) {
+        final String regionKey = key + '@' + width + 'x' + height;
+        Region region = regions.get(regionKey);
+        if (region != null) {
+            return region;
+        }
+        if (width <= 0 || height <= 0 || width + 2 * PADDING > pageSize / 2 || height + 2 * PADDING > pageSize / 2) {
+            return null;
+        }
+        region = new Region(regionKey, width, height);
+        place(region);
+        regions.put(regionKey, region);
+        return region;
+    }
+
+    private void place(final Region region) {
+        for (final Page page : pages) {
+            if (placeInPage(page, region)) {
+                return;
+            }
+        }
+        final Page page = new Page(bitmapPool.obtain(pageSize, pageSize));
+        pages.add(page);
+        placeInPage(page, region);
+    }
+
+    private boolean placeInPage(final Page page, final Region region) {
+        final int slotWidth = region.getSlotWidth();
+        final int slotHeight = region.getSlotHeight();
+        for (final Shelf shelf : page.shelves) {
+            if (shelf.height < slotHeight || shelf.height * MIN_SHELF_FILL > slotHeight) {
+                continue;
+            }
+            for (int i = 0; i < shelf.freeSlots.size(); i++) {
+                final Rect slot = shelf.freeSlots.get(i);
+                if (slot.width() >= slotWidth) {
+                    shelf.freeSlots.remove(i);
+                    if (slot.width() > slotWidth) {
+                        shelf.freeSlots.add(new Rect(slot.left + slotWidth, shelf.top, slot.right, shelf.top
+                                + shelf.height));
+                    }
+                    assign(region, page, shelf, slot.left);
+                    return true;
+                }
+            }
+            if (shelf.nextLeft + slotWidth <= pageSize) {
+                assign(region, page, shelf, shelf.nextLeft);
+                shelf.nextLeft += slotWidth;
+                return true;
+            }
+        }
+        if (page.usedHeight + slotHeight > pageSize) {
+            return false;
+        }
+        final Shelf shelf = new Shelf(page.usedHeight, slotHeight);
+        page.usedHeight += slotHeight;
+        page.shelves.add(shelf);
+        assign(region, page, shelf, 0);
+        shelf.nextLeft = slotWidth;
+        return true;
+    }
+
+    private void assign(final Region region, final Page page, final Shelf shelf, final int slotLeft) {
+        region.page = page;
+        region.shelf = shelf;
+        region.slotLeft = slotLeft;
+        region.bounds.set(slotLeft + PADDING, shelf.top + PADDING, slotLeft + PADDING + region.width, shelf.top
+                + PADDING + region.height);
+        page.liveRegions++;
+        page.liveArea += (long) region.width * region.height;
+    }
+
+    synchronized void release(final FaceDrawable drawable) {
+        if (drawable.released) {
+            return;
+        }
+        drawable.released = true;
+        final Region region = drawable.region;
+        region.drawables.remove(drawable);
+        if (!region.drawables.isEmpty()) {
+            return;
+        }
+        regions.remove(region.key);
+        free(region);
+        if (isSparse()) {
+            repack();
+        }
+    }
+
+    private void free(final Region region) {
+        final Page page = region.page;
+        final Shelf shelf = region.shelf;
+        page.liveRegions--;
+        page.liveArea -= (long) region.width * region.height;
+        if (page.liveRegions == 0) {
+            pages.remove(page);
+            bitmapPool.release(page.bitmap);
+            return;
+        }
+        final int slotRight = region.slotLeft + region.getSlotWidth();
+        if (slotRight == shelf.nextLeft) {
+            shelf.nextLeft = region.slotLeft;
+        } else {
+            shelf.freeSlots.add(new Rect(region.slotLeft, shelf.top, slotRight, shelf.top + shelf.height));
+        }
+    }
+
+    private boolean isSparse() {
+        if (pages.size() < 2) {
+            return false;
+        }
+        long liveArea = 0;
+        for (final Page page : pages) {
+            liveArea += page.liveArea;
+        }
+        return liveArea < pages.size() * getPageArea() * REPACK_OCCUPANCY;
+    }
+
+    private long getPageArea() {
+        return (long) pageSize * pageSize;
+    }
+
+    /**
+     * Moves faces of sparse pages into as few pages as possible. Drawables of
+     * the moved faces are invalidated.
+     */
+    public synchronized void repack() {
+        final List<Page> sparsePages = new ArrayList<Page>();
+        for (final Page page : pages) {
+            if (page.liveArea < getPageArea() * REPACK_OCCUPANCY) {
+                sparsePages.add(page);
+            }
+        }
+        if (sparsePages.size() < 2) {
+            return;
+        }
+        final List<Region> moved = new ArrayList<Region>();
+        for (final Region region : regions.values()) {
+            if (sparsePages.contains(region.page)) {
+                moved.add(region);
+            }
+        }
+        pages.removeAll(sparsePages);
+        // tallest first - fewer, fuller shelves
+        Collections.sort(moved, new Comparator<Region>() {
+            @Override
+            public int compare(final Region lhs, final Region rhs) {
+                return rhs.height - lhs.height;
+            }
+        });
+        final Rect oldBounds = new Rect();
+        for (final Region region : moved) {
+            final Bitmap oldBitmap = region.page.bitmap;
+            oldBounds.set(region.bounds);
+            place(region);
+            prepareSlot(region);
+            canvas.drawBitmap(oldBitmap, oldBounds, region.bounds, null);
+            canvas.restore();
+            for (final FaceDrawable drawable : region.drawables) {
+                drawable.invalidateSelf();
+            }
+        }
+        for (final Page page : sparsePages) {
+            bitmapPool.release(page.bitmap);
+        }
+        repackCount++;
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Returns number of distinct faces in the atlas.
+     *
+     * @return number of faces
+     */
+    public synchronized int getFaceCount() {
+        return regions.size();
+    }
+
+    public synchronized int getRepackCount() {
+        return repackCount;
+    }
+
+    /**
+     * Returns memory used by the pages of the atlas.
+     *
+     * @return bytes used
+     */
+    public synchronized long getAtlasBytes() {
+        return pages.size() * (getPageArea() * BYTES_PER_PIXEL + BITMAP_OVERHEAD_BYTES);
+    }
+
+    /**
+     * Returns memory the faces would use as separate bitmaps - one bitmap per
+     * face shown.
+     *
+     * @return bytes used by separate bitmaps
+     */
+    public synchronized long getIndividualBytes() {
+        long bytes = 0;
+        for (final Region region : regions.values()) {
+            bytes += region.drawables.size()
+                    * ((long) region.width * region.height * BYTES_PER_PIXEL + BITMAP_OVERHEAD_BYTES);
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Flip3DFaceAtlas [faces=" + regions.size() + ", pages=" + pages.size() + ", atlasBytes="
+                + getAtlasBytes() + ", individualBytes=" + getIndividualBytes() + ", repacks=" + repackCount + "]";
+    }
+}
@@ -0,0 +1,321 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * Cache of face bitmaps of {@link Flip3DView}s with a global memory budget.
+ * Bitmap resources are decoded downsampled to the size of the side they are
+ * shown on and faces of the same resource and size are shared between views.
+ * When the budget would be exceeded, faces no longer used by any view are
+ * dropped first, then faces of views detached from the window (they are
+ * loaded again when the view is attached), least recently used first. If it
+ * is still not enough, the new face is downsampled further - the budget is
+ * never exceeded. Dropped bitmaps go to a {@link Flip3DBitmapPool}, so that
+ * faces of the same size reuse the buffers. The budget covers the bitmaps kept
+ * in the pool and the bitmap decoded while a face is loaded as well - the pool
+ * is shrunk first when the cache needs room.
+ *
+ */
+public class Flip3DFaceCache {
+
+    private static final String TAG = Flip3DFaceCache.class.getSimpleName();
+
+    private static final int DEFAULT_MEMORY_FRACTION = 8;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static Flip3DFaceCache defaultCache;
+
+    /**
+     * View (or anything else) showing faces obtained from the cache.
+     *
+     */
+    public interface Holder {
+        /**
+         * Checks if the holder is attached - faces of detached holders can be
+         * dropped from the cache.
+         *
+         * @return true if faces are shown
+         */
+        boolean isHolderAttached();
+
+        /**
+         * Called (with the cache lock held) when face of the detached holder is
+         * dropped from the cache. The holder must stop using the bitmap
+         * immediately.
+         *
+         * @param face
+         *            bitmap dropped
+         */
+        void onFaceEvicted(Bitmap face);
+    }
+
+    /**
+     * Face cached for resource and size.
+     */
+    private static final class Entry {
+        private final Bitmap bitmap;
+        private final long bytes;
+        private final List<Holder> holders = new ArrayList<Holder>();
+
+        private Entry(final Bitmap bitmap) {
+            this.bitmap = bitmap;
+            this.bytes = (long) bitmap.getRowBytes() * bitmap.getHeight();
+        }
+    }
+
+    private final Resources resources;
+
+    private final long maxBytes;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private final Map<Bitmap, Entry> entriesByBitmap = new HashMap<Bitmap, Entry>();
+
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final Canvas canvas = new Canvas();
+
+    private final Rect destination = new Rect();
+
+    private Flip3DBitmapPool bitmapPool;
+
+    private long usedBytes = 0;
+
+    /**
+     * Creates cache.
+     *
+     * @param resources
+     *            resources faces are decoded from
+     * @param maxBytes
+     *            budget - maximum number of bytes of all cached faces, pooled
+     *            bitmaps and the face being loaded
+     */
+    public Flip3DFaceCache(final Resources resources, final long maxBytes) {
+        this.resources = resources;
+        this.maxBytes = maxBytes;
+        this.bitmapPool = new Flip3DBitmapPool(maxBytes / 4);
+    }
+
+    /**
+     * Returns cache shared by all the views of the application, with budget
+     * of 1/8 of the maximum heap.
+     *
+     * @param context
+     *            context of the application
+     * @return the cache
+     */
+    public static synchronized Flip3DFaceCache getDefault(final Context context) {
+        if (defaultCache == null) {
+            defaultCache = new Flip3DFaceCache(context.getResources(), Runtime.getRuntime().maxMemory()
+                    / DEFAULT_MEMORY_FRACTION);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Sets pool the dropped faces are returned to (to share it with other
+     * components). Bitmaps pooled by the other components count against the
+     * budget of the cache too.
+     *
+     * @param bitmapPool
+     *            the pool
+     */
+    public synchronized void setBitmapPool(final Flip3DBitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns number of bytes counted against the budget - of the cached faces
+     * and of the pooled bitmaps.
+     *
+     * @return number of bytes
+     */
+    public synchronized long getTotalBytes() {
+        return usedBytes + bitmapPool.getPooledBytes();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets face for bitmap resource downsampled to fit the size given.
+     *
+     * @param holder
+     *            holder which will show the face
+     * @param resId
+     *            id of bitmap resource
+     * @param width
+     *            width of the side
+     * @param height
+     *            height of the side
+     * @return the face or null if the resource is not a bitmap
+     */
+    public synchronized Bitmap acquire(final Holder holder, final int resId, final int width, final int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        final String key = resId + ":" + width + "x" + height;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            final Bitmap bitmap = decode(resId, width, height);
+            if (bitmap == null) {
+                return null;
+            }
+            entry = new Entry(bitmap);
+            entries.put(key, entry);
+            entriesByBitmap.put(bitmap, entry);
+            usedBytes += entry.bytes;
+        }
+        if (!entry.holders.contains(holder)) {
+            entry.holders.add(holder);
+        }
+        return entry.bitmap;
+    }
+
+    /**
+     * Marks face as no longer used by the holder. It stays cached until the
+     * memory is needed.
+     *
+     * @param holder
+     *            holder which showed the face
+     * @param face
+     *            the face
+     */
+    public synchronized void release(final Holder holder, final Bitmap face) {
+        final Entry entry = entriesByBitmap.get(face);
+        if (entry != null) {
+            entry.holders.remove(holder);
+        }
+    }
+
+    /**
+     * Drops all the faces not used by any holder.
+     */
+    public synchronized void trim() {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.holders.isEmpty()) {
+                iterator.remove();
+                drop(entry);
+            }
+        }
+    }
+
+    private Bitmap decode(final int resId, final int width, final int height) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // fit inside the side keeping aspect ratio
+        final float scale = Math.min(1.0f,
+                Math.min((float) width / options.outWidth, (float) height / options.outHeight));
+        int faceWidth = Math.max(1, (int) (options.outWidth * scale));
+        int faceHeight = Math.max(1, (int) (options.outHeight * scale));
+        long bytes = getLoadingBytes(options, faceWidth, faceHeight);
+        makeRoom(bytes);
+        while (getTotalBytes() + bytes > maxBytes && (faceWidth > 1 || faceHeight > 1)) {
+            faceWidth = Math.max(1, faceWidth / 2);
+            faceHeight = Math.max(1, faceHeight / 2);
+            bytes = getLoadingBytes(options, faceWidth, faceHeight);
+        }
+        if (getTotalBytes() + bytes > maxBytes) {
+            Log.w(TAG, "No room for face " + resId + " in " + maxBytes + " bytes");
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options, faceWidth, faceHeight);
+        final Bitmap decoded = BitmapFactory.decodeResource(resources, resId, options);
+        if (decoded == null) {
+            return null;
+        }
+        final Bitmap face = bitmapPool.obtain(faceWidth, faceHeight);
+        canvas.setBitmap(face);
+        destination.set(0, 0, faceWidth, faceHeight);
+        canvas.drawBitmap(decoded, null, destination, paint);
+        decoded.recycle();
+        return face;
+    }
+
+    private static int getSampleSize(final BitmapFactory.Options options, final int faceWidth,
+            final int faceHeight) {
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= faceWidth && options.outHeight / (sampleSize * 2) >= faceHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns number of bytes needed while the face is loaded - of the face
+     * and of the bitmap decoded before it is scaled to the face.
+     */
+    private static long getLoadingBytes(final BitmapFactory.Options options, final int faceWidth,
+            final int faceHeight) {
+        final int sampleSize = getSampleSize(options, faceWidth, faceHeight);
+        final long decodedWidth = (options.outWidth + sampleSize - 1) / sampleSize;
+        final long decodedHeight = (options.outHeight + sampleSize - 1) / sampleSize;
+        return ((long) faceWidth * faceHeight + decodedWidth * decodedHeight) * BYTES_PER_PIXEL;
+    }
+
+    private void makeRoom(final long bytes) {
+        if (getTotalBytes() + bytes <= maxBytes) {
+            return;
+        }
+        bitmapPool.trimTo(Math.max(0, maxBytes - usedBytes - bytes));
+        if (usedBytes + bytes <= maxBytes) {
+            return;
+        }
+        trim();
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (usedBytes + bytes > maxBytes && iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (isDetached(entry)) {
+                iterator.remove();
+                for (final Holder holder : entry.holders) {
+                    holder.onFaceEvicted(entry.bitmap);
+                }
+                drop(entry);
+            }
+        }
+        // dropped faces went to the pool
+        bitmapPool.trimTo(Math.max(0, maxBytes - usedBytes - bytes));
+    }
+
+    private static boolean isDetached(final Entry entry) {
+        for (final Holder holder : entry.holders) {
+            if (holder.isHolderAttached()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void drop(final Entry entry) {
+        entriesByBitmap.remove(entry.bitmap);
+        usedBytes -= entry.bytes;
+        bitmapPool.release(entry.bitmap);
+    }
+}
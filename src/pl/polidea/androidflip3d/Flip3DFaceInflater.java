@@ -0,0 +1,258 @@
+package pl.polidea.androidflip3d;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+/**
+ * Inflates layouts of {@link Flip3DView} faces (see
+ * {@link Flip3DView#setViewBackLayout(int, Flip3DView.FaceBinder)}) in a
+ * background thread and delivers them in the UI thread. Each face is inflated
+ * into its own padding frame, so that nothing has to be inflated when it is
+ * set on the view. Layouts containing views which cannot be created outside
+ * of the UI thread (for example views creating a Handler) are inflated again
+ * in the UI thread when delivered. Faces no longer used by the views are kept
+ * per layout and handed out again without inflation - so recycled grid cells
+ * showing the same layout reuse them. Faces are inflated with the context
+ * of the inflater, so they get the theme of its activity. All the inflaters
+ * share a single background thread.
+ *
+ */
+public class Flip3DFaceInflater {
+
+    private static final String TAG = Flip3DFaceInflater.class.getSimpleName();
+
+    private static final int DEFAULT_CACHED_FACES_PER_LAYOUT = 4;
+
+    /**
+     * Default inflaters of the contexts - kept while used by the views.
+     */
+    private static final Map<Context, WeakReference<Flip3DFaceInflater>> DEFAULT_INFLATERS =
+    new WeakHashMap<Context, WeakReference<Flip3DFaceInflater>>();
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Receives inflated faces.
+     *
+     */
+    public interface Callback {
+        /**
+         * Called in the UI thread when the face is inflated. The receiver owns
+         * the face and should give it back with
+         * {@link Flip3DFaceInflater#recycle(int, FrameLayout)} when it is not
+         * needed any more.
+         *
+         * @param layoutResId
+         *            layout inflated
+         * @param face
+         *            padding frame containing the inflated layout
+         */
+        void onFaceInflated(int layoutResId, FrameLayout face);
+    }
+
+    /**
+     * Inflation running in the background thread.
+     */
+    private final class InflateTask implements Runnable {
+        private final int layoutResId;
+        private final Callback callback;
+
+        private InflateTask(final int layoutResId, final Callback callback) {
+            this.layoutResId = layoutResId;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            FrameLayout face = null;
+            try {
+                face = inflateFace(backgroundInflater, layoutResId);
+            } catch (final RuntimeException e) {
+                Log.v(TAG, "Layout " + layoutResId + " cannot be inflated in background: " + e);
+            }
+            handler.post(new Delivery(layoutResId, face, callback));
+        }
+    }
+
+    /**
+     * Delivery of the inflated face in the UI thread.
+     */
+    private final class Delivery implements Runnable {
+        private final int layoutResId;
+        private final FrameLayout face;
+        private final Callback callback;
+
+        private Delivery(final int layoutResId, final FrameLayout face, final Callback callback) {
+            this.layoutResId = layoutResId;
+            this.face = face;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            FrameLayout delivered = face;
+            if (delivered == null) {
+                delivered = inflateFace(mainInflater, layoutResId);
+                synchronized (Flip3DFaceInflater.this) {
+                    mainThreadInflated++;
+                }
+            } else {
+                synchronized (Flip3DFaceInflater.this) {
+                    backgroundInflated++;
+                }
+            }
+            callback.onFaceInflated(layoutResId, delivered);
+        }
+    }
+
+    private final LayoutInflater mainInflater;
+    private final LayoutInflater backgroundInflater;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Map<Integer, List<FrameLayout>> cachedFaces = new HashMap<Integer, List<FrameLayout>>();
+
+    private int cachedFacesPerLayout = DEFAULT_CACHED_FACES_PER_LAYOUT;
+    private int backgroundInflated = 0;
+    private int mainThreadInflated = 0;
+    private int reused = 0;
+
+    public Flip3DFaceInflater(final Context context) {
+        this.mainInflater = LayoutInflater.from(context);
+        // inflaters are not thread safe - background thread has its own
+        this.backgroundInflater = mainInflater.cloneInContext(context);
+    }
+
+    /**
+     * Returns inflater shared by the views of the context given (usually an
+     * activity). The inflater does not keep the context alive - it is dropped
+     * together with the last view using it.
+     *
+     * @param context
+     *            context of the views
+     * @return the inflater
+     */
+    public static synchronized Flip3DFaceInflater getDefault(final Context context) {
+        final WeakReference<Flip3DFaceInflater> reference = DEFAULT_INFLATERS.get(context);
+        Flip3DFaceInflater inflater = reference == null ? null : reference.get();
+        if (inflater == null) {
+            inflater = new Flip3DFaceInflater(context);
+            DEFAULT_INFLATERS.put(context, new WeakReference<Flip3DFaceInflater>(inflater));
+        }
+        return inflater;
+    }
+
+    /**
+     * Sets how many unused faces of each layout are kept for reuse.
+     *
+     * @param cachedFacesPerLayout
+     *            number of faces kept per layout
+     */
+    public synchronized void setCachedFacesPerLayout(final int cachedFacesPerLayout) {
+        this.cachedFacesPerLayout = cachedFacesPerLayout;
+    }
+
+    /**
+     * Obtains face of the layout given. Must be called in the UI thread. If an
+     * unused face of the layout is cached, the callback is called immediately,
+     * otherwise the layout is inflated in the background.
+     *
+     * @param layoutResId
+     *            layout to inflate
+     * @param callback
+     *            receives the face
+     */
+    public void inflate(final int layoutResId, final Callback callback) {
+        final FrameLayout cached = takeCachedFace(layoutResId);
+        if (cached != null) {
+            callback.onFaceInflated(layoutResId, cached);
+            return;
+        }
+        EXECUTOR.execute(new InflateTask(layoutResId, callback));
+    }
+
+    private synchronized FrameLayout takeCachedFace(final int layoutResId) {
+        final List<FrameLayout> faces = cachedFaces.get(layoutResId);
+        if (faces == null || faces.isEmpty()) {
+            return null;
+        }
+        reused++;
+        return faces.remove(faces.size() - 1);
+    }
+
+    /**
+     * Gives back face which is not used any more, so that it can be reused.
+     * The face is removed from its parent.
+     *
+     * @param layoutResId
+     *            layout of the face
+     * @param face
+     *            the face
+     */
+    public synchronized void recycle(final int layoutResId, final FrameLayout face) {
+        if (face.getParent() instanceof ViewGroup) {
+            ((ViewGroup) face.getParent()).removeView(face);
+        }
+        List<FrameLayout> faces = cachedFaces.get(layoutResId);
+        if (faces == null) {
+            faces = new ArrayList<FrameLayout>();
+            cachedFaces.put(layoutResId, faces);
+        }
+        if (faces.size() < cachedFacesPerLayout && !faces.contains(face)) {
+            faces.add(face);
+        }
+    }
+
+    /**
+     * Drops all the cached faces.
+     */
+    public synchronized void clear() {
+        cachedFaces.clear();
+    }
+
+    private static FrameLayout inflateFace(final LayoutInflater inflater, final int layoutResId) {
+        final FrameLayout frame = (FrameLayout) inflater.inflate(R.layout.view_layout_with_padding, null);
+        inflater.inflate(layoutResId, frame, true);
+        return frame;
+    }
+
+    public synchronized int getBackgroundInflatedCount() {
+        return backgroundInflated;
+    }
+
+    public synchronized int getMainThreadInflatedCount() {
+        return mainThreadInflated;
+    }
+
+    public synchronized int getReusedCount() {
+        return reused;
+    }
+}
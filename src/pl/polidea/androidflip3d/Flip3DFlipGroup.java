@@ -0,0 +1,223 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pl.polidea.androidflip3d.Flip3DViewState.Flip3DViewListener;
+
+/**
+ * Group of flip3D view states with a common policy of how many of them can be
+ * open (on the back side) at the same time. Only the open states are tracked,
+ * so enforcing the policy costs as much as the number of open states - not the
+ * number of all states in the group.
+ *
+ * <pre>
+ * Supported policies:
+ *  exclusive - only one state may be open, opening another closes it
+ *  max open  - up to K states may be open, opening another closes the oldest
+ *  radio     - as exclusive, but the open state cannot be closed manually
+ *              (its back side does not react to clicks)
+ *  linked    - pair of states always flipped to opposite sides
+ * </pre>
+ *
+ */
+public class Flip3DFlipGroup implements Flip3DViewListener {
+
+    /**
+     * Number of open states for groups without limit.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final int maxOpen;
+
+    private final boolean keepOneOpen;
+
+    /**
+     * Open states - in order of opening.
+     */
+    private final Set<Flip3DViewState> openStates = new LinkedHashSet<Flip3DViewState>();
+
+    private final Map<Flip3DViewState, Flip3DViewState> linkedStates = new HashMap<Flip3DViewState, Flip3DViewState>();
+
+    /**
+     * The only open state when it must be kept open - its back side is not
+     * clickable.
+     */
+    private Flip3DViewState keptOpenState;
+
+    /**
+     * Creates group.
+     *
+     * @param maxOpen
+     *            maximum number of states open at the same time
+     * @param keepOneOpen
+     *            if true, the last open state cannot be closed manually
+     */
+    public Flip3DFlipGroup(final int maxOpen, final boolean keepOneOpen) {
+        if (maxOpen < 1) {
+            throw new IllegalArgumentException("At least one state must be allowed to open: " + maxOpen);
+        }
+        this.maxOpen = maxOpen;
+        this.keepOneOpen = keepOneOpen;
+    }
+
+    /**
+     * Creates group where only one state can be open at a time.
+     *
+     * @return the group
+     */
+    public static Flip3DFlipGroup exclusive() {
+        return new Flip3DFlipGroup(1, false);
+    }
+
+    /**
+     * Creates group where only one state can be open at a time and once
+     * opened, it can only be closed by opening another one.
+     *
+     * @return the group
+     */
+    public static Flip3DFlipGroup radio() {
+        return new Flip3DFlipGroup(1, true);
+    }
+
+    /**
+     * Adds state to the group.
+     *
+     * @param viewState
+     *            state to add
+     */
+    public void add(final Flip3DViewState viewState) {
+        viewState.addFlip3DViewListener(this);
+        if (viewState.getTargetViewIndex() == ViewIndex.BACK_VIEW) {
+            closeStates(markOpen(viewState));
+        }
+        updateKeptOpenState();
+    }
+
+    /**
+     * Removes state from the group.
+     *
+     * @param viewState
+     *            state to remove
+     */
+    public void remove(final Flip3DViewState viewState) {
+        viewState.removeFlip3DViewListener(this);
+        synchronized (this) {
+            openStates.remove(viewState);
+            final Flip3DViewState linked = linkedStates.remove(viewState);
+            if (linked != null) {
+                linkedStates.remove(linked);
+            }
+        }
+        updateKeptOpenState();
+    }
+
+    /**
+     * Links two states of the group - when one of them is flipped manually,
+     * the other one is forced to the opposite side.
+     *
+     * @param first
+     *            first state
+     * @param second
+     *            second state
+     */
+    public synchronized void link(final Flip3DViewState first, final Flip3DViewState second) {
+        linkedStates.put(first, second);
+        linkedStates.put(second, first);
+    }
+
+    /**
+     * Returns states which are open (or being opened) - in order of opening.
+     *
+     * @return open states
+     */
+    public synchronized List<Flip3DViewState> getOpenStates() {
+        return Collections.unmodifiableList(new ArrayList<Flip3DViewState>(openStates));
+    }
+
+    /**
+     * Marks state as open and returns states which should be closed because
+     * of that.
+     */
+    private synchronized List<Flip3DViewState> markOpen(final Flip3DViewState viewState) {
+        openStates.add(viewState);
+        final List<Flip3DViewState> toClose = new ArrayList<Flip3DViewState>();
+        final Iterator<Flip3DViewState> iterator = openStates.iterator();
+        while (openStates.size() - toClose.size() > maxOpen && iterator.hasNext()) {
+            final Flip3DViewState oldest = iterator.next();
+            if (oldest != viewState) { // NOPMD - identity intended
+                toClose.add(oldest);
+            }
+        }
+        openStates.removeAll(toClose);
+        return toClose;
+    }
+
+    /**
+     * Blocks clicks on the back side of the only open state if the group keeps
+     * one state open, and unblocks the state kept open before.
+     */
+    private void updateKeptOpenState() {
+        final Flip3DViewState previous;
+        final Flip3DViewState current;
+        synchronized (this) {
+            previous = keptOpenState;
+            current = keepOneOpen && openStates.size() == 1 ? openStates.iterator().next() : null;
+            keptOpenState = current;
+        }
+        if (previous == current) { // NOPMD - identity intended
+            return;
+        }
+        if (previous != null) {
+            previous.setSideClickable(ViewIndex.BACK_VIEW, true);
+        }
+        if (current != null) {
+            current.setSideClickable(ViewIndex.BACK_VIEW, false);
+        }
+    }
+
+    private static void closeStates(final List<Flip3DViewState> toClose) {
+        for (final Flip3DViewState state : toClose) {
+            state.forceFlipTo(ViewIndex.FRONT_VIEW);
+        }
+    }
+
+    @Override
+    public void onStartedFlipping(final Flip3DViewState viewState, final int startingSide,
+            final boolean manuallyTriggered) {
+        if (startingSide == ViewIndex.FRONT_VIEW) {
+            closeStates(markOpen(viewState));
+        } else {
+            synchronized (this) {
+                openStates.remove(viewState);
+            }
+        }
+        updateKeptOpenState();
+    }
+
+    @Override
+    public void onFinishedFlipping(final Flip3DViewState viewState, final int endingSide,
+            final boolean manuallyTriggered) {
+        final Flip3DViewState linked;
+        synchronized (this) {
+            linked = manuallyTriggered ? linkedStates.get(viewState) : null;
+        }
+        if (endingSide == ViewIndex.BACK_VIEW) {
+            closeStates(markOpen(viewState));
+        } else {
+            synchronized (this) {
+                openStates.remove(viewState);
+            }
+        }
+        updateKeptOpenState();
+        if (linked != null) {
+            linked.forceFlipTo(ViewIndex.getTheOtherViewIndex(endingSide));
+        }
+    }
+}
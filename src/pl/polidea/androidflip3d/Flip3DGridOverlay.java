@@ -0,0 +1,348 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Camera;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.Animation.AnimationListener;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.view.animation.Transformation;
+
+/**
+ * Animation backend drawing all the flipping cells of a grid in a single view
+ * placed over the grid (for example in a FrameLayout together with the grid).
+ * When a cell starts flipping, both of its sides are drawn once into pooled
+ * bitmaps, the cell side is hidden and the overlay draws the rotating snapshots
+ * of all flipping cells in one onDraw - so a wave of many flipping cells costs
+ * one invalidation per frame. Set it on the cells with
+ * {@link Flip3DView#setAnimationBackend(Flip3DAnimationBackend)} or with
+ * {@link AbstractGridFlip3DImageAdapter#setGridOverlay(Flip3DGridOverlay)}.
+ * Cells which cannot be snapshotted (not laid out yet, overlay not shown) are
+ * animated with the {@link ViewAnimationBackend}. With a
+ * {@link Flip3DQualityMonitor} set, snapshots are taken in lower resolution
+ * when frames are drawn too slowly. With a {@link Flip3DShading} set, the
+ * snapshots are shaded according to their rotation.
+ *
+ */
+public class Flip3DGridOverlay extends View implements Flip3DAnimationBackend {
+
+    private static final long DEFAULT_POOLED_BYTES = 4 * 1024 * 1024;
+
+    private final Camera camera = new Camera();
+    private final Matrix matrix = new Matrix();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Canvas snapshotCanvas = new Canvas();
+    private final int[] overlayLocation = new int[2];
+    private final int[] viewLocation = new int[2];
+    private final Interpolator firstHalfInterpolator = new AccelerateInterpolator();
+    private final Interpolator secondHalfInterpolator = new DecelerateInterpolator();
+    private final Flip3DAnimationBackend fallbackBackend = new ViewAnimationBackend();
+
+    private final List<FlipEntry> entries = new ArrayList<FlipEntry>();
+    private final List<FlipEntry> finishedEntries = new ArrayList<FlipEntry>();
+    private final List<FlipEntry> freeEntries = new ArrayList<FlipEntry>();
+
+    private Flip3DBitmapPool bitmapPool = new Flip3DBitmapPool(DEFAULT_POOLED_BYTES);
+
+    private Flip3DQualityMonitor qualityMonitor;
+
+    private Flip3DShading shading;
+
+    private boolean halfEndPosted = false;
+
+    private final Runnable processEndedHalves = new Runnable() {
+        @Override
+        public void run() {
+            onHalvesEnded();
+        }
+    };
+
+    /**
+     * Flip of a single cell drawn by the overlay.
+     */
+    private static final class FlipEntry {
+        private Flip3DView view;
+        private int viewIndex;
+        private int direction;
+        private long animationLength;
+        private AnimationListener finishFlippingListener;
+        private long startTime;
+        private boolean secondHalf;
+        private boolean halfEnded;
+        private boolean paused;
+        private long pauseTime;
+        private float snapshotScale;
+        private final Bitmap[] snapshots = new Bitmap[2];
+    }
+
+    public Flip3DGridOverlay(final Context context) {
+        super(context);
+    }
+
+    public Flip3DGridOverlay(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public Flip3DGridOverlay(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    /**
+     * Sets pool of the bitmaps used for snapshots (to share it with other
+     * components).
+     *
+     * @param bitmapPool
+     *            the pool
+     */
+    public void setBitmapPool(final Flip3DBitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    /**
+     * Sets monitor of frame times, which decides about resolution of the
+     * snapshots. Should be the same monitor as the one set on the views.
+     *
+     * @param qualityMonitor
+     *            monitor to use (null to always use full resolution)
+     */
+    public void setQualityMonitor(final Flip3DQualityMonitor qualityMonitor) {
+        this.qualityMonitor = qualityMonitor;
+    }
+
+    /**
+     * Sets shading of the rotating snapshots.
+     *
+     * @param shading
+     *            shading to use (null for none)
+     */
+    public void setShading(final Flip3DShading shading) {
+        this.shading = shading;
+        invalidate();
+    }
+
+    public int getFlippingCount() {
+        return entries.size();
+    }
+
+    @Override
+    public void startRotation(final Flip3DView view, final int currentViewIndex, final int direction,
+            final long animationLength, final AnimationListener finishFlippingListener) {
+        clearAllAnimations(view);
+        if (getWidth() == 0 || getWindowVisibility() != VISIBLE || view.getWidth() == 0) {
+            fallbackBackend.startRotation(view, currentViewIndex, direction, animationLength, finishFlippingListener);
+            return;
+        }
+        final FlipEntry entry = freeEntries.isEmpty() ? new FlipEntry() : freeEntries.remove(freeEntries.size() - 1);
+        entry.view = view;
+        entry.viewIndex = currentViewIndex;
+        entry.direction = direction;
+        entry.animationLength = animationLength;
+        entry.finishFlippingListener = finishFlippingListener;
+        entry.startTime = -1;
+        entry.secondHalf = false;
+        entry.halfEnded = false;
+        entry.paused = false;
+        entry.snapshotScale = qualityMonitor == null ? 1.0f : Flip3DQuality.getSnapshotScale(qualityMonitor
+                .getQuality());
+        final View[] views = view.getViews();
+        entry.snapshots[ViewIndex.FRONT_VIEW] = takeSnapshot(views[ViewIndex.FRONT_VIEW], entry.snapshotScale);
+        entry.snapshots[ViewIndex.BACK_VIEW] = takeSnapshot(views[ViewIndex.BACK_VIEW], entry.snapshotScale);
+        views[currentViewIndex].setVisibility(INVISIBLE);
+        entries.add(entry);
+        invalidate();
+    }
+
+    private Bitmap takeSnapshot(final View side, final float scale) {
+        final int width = (int) (side.getWidth() * scale);
+        final int height = (int) (side.getHeight() * scale);
+        if (width == 0 || height == 0) {
+            return null;
+        }
+        final Bitmap bitmap = bitmapPool.obtain(width, height);
+        snapshotCanvas.setBitmap(bitmap);
+        final int saveCount = snapshotCanvas.save();
+        snapshotCanvas.scale(scale, scale);
+        side.draw(snapshotCanvas);
+        snapshotCanvas.restoreToCount(saveCount);
+        return bitmap;
+    }
+
+    private void releaseEntry(final FlipEntry entry) {
+        for (int i = 0; i < entry.snapshots.length; i++) {
+            bitmapPool.release(entry.snapshots[i]);
+            entry.snapshots[i] = null;
+        }
+        entry.view = null;
+        entry.finishFlippingListener = null;
+        freeEntries.add(entry);
+    }
+
+    private int getShownViewIndex(final FlipEntry entry) {
+        return entry.secondHalf ? ViewIndex.getTheOtherViewIndex(entry.viewIndex) : entry.viewIndex;
+    }
+
+    @Override
+    public void clearAllAnimations(final Flip3DView view) {
+        fallbackBackend.clearAllAnimations(view);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final FlipEntry entry = entries.get(i);
+            if (entry.view == view) { // NOPMD - identity intended
+                entries.remove(i);
+                view.getViews()[getShownViewIndex(entry)].setVisibility(VISIBLE);
+                releaseEntry(entry);
+                invalidate();
+            }
+        }
+    }
+
+    @Override
+    public void setPaused(final Flip3DView view, final boolean paused) {
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        for (int i = 0; i < entries.size(); i++) {
+            final FlipEntry entry = entries.get(i);
+            if (entry.view != view || entry.paused == paused) { // NOPMD - identity intended
+                continue;
+            }
+            entry.paused = paused;
+            if (paused) {
+                entry.pauseTime = now;
+            } else if (entry.startTime >= 0) {
+                entry.startTime += now - entry.pauseTime;
+            }
+        }
+        fallbackBackend.setPaused(view, paused);
+        invalidate();
+    }
+
+    @Override
+    public boolean getChildTransformation(final Flip3DView view, final View child, final Transformation t) {
+        return fallbackBackend.getChildTransformation(view, child, t);
+    }
+
+    @Override
+    public float getChildRotation(final Flip3DView view, final View child) {
+        return fallbackBackend.getChildRotation(view, child);
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        super.onDraw(canvas);
+        if (entries.isEmpty()) {
+            return;
+        }
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        if (qualityMonitor != null) {
+            qualityMonitor.onFrame(getDrawingTime());
+        }
+        getLocationInWindow(overlayLocation);
+        boolean running = false;
+        boolean ended = false;
+        for (int i = 0; i < entries.size(); i++) {
+            final FlipEntry entry = entries.get(i);
+            final long time = entry.paused ? entry.pauseTime : now;
+            if (entry.startTime < 0) {
+                entry.startTime = time;
+            }
+            final float progress = entry.animationLength <= 0 ? 1.0f : Math.min(1.0f,
+                    (float) (time - entry.startTime) / entry.animationLength);
+            final float halfRotation = RotationDirection.getMultiplier(entry.direction) * 90;
+            final float degrees = entry.secondHalf ? -halfRotation
+                    * (1.0f - secondHalfInterpolator.getInterpolation(progress)) : halfRotation
+                    * firstHalfInterpolator.getInterpolation(progress);
+            drawEntry(canvas, entry, getShownViewIndex(entry), degrees);
+            if (entry.paused) {
+                continue;
+            }
+            if (progress >= 1.0f) {
+                entry.halfEnded = true;
+                ended = true;
+            } else {
+                running = true;
+            }
+        }
+        if (ended && !halfEndPosted) {
+            halfEndPosted = true;
+            post(processEndedHalves);
+        }
+        if (running) {
+            invalidate();
+        }
+    }
+
+    private void drawEntry(final Canvas canvas, final FlipEntry entry, final int shownViewIndex,
+            final float degrees) {
+        final Bitmap snapshot = entry.snapshots[shownViewIndex];
+        if (snapshot == null) {
+            return;
+        }
+        final View side = entry.view.getViews()[shownViewIndex];
+        entry.view.getLocationInWindow(viewLocation);
+        final float x = viewLocation[0] - overlayLocation[0] + side.getLeft();
+        final float y = viewLocation[1] - overlayLocation[1] + side.getTop();
+        Flip3DAnimation.applyRotation(camera, degrees, side.getWidth() / 2.0f, side.getHeight() / 2.0f, matrix);
+        matrix.preScale(1.0f / entry.snapshotScale, 1.0f / entry.snapshotScale);
+        matrix.postTranslate(x, y);
+        canvas.drawBitmap(snapshot, matrix, paint);
+        if (shading != null) {
+            // back to the side coordinates - same transformation as the bitmap
+            matrix.preScale(entry.snapshotScale, entry.snapshotScale);
+            final int saveCount = canvas.save();
+            canvas.concat(matrix);
+            shading.draw(canvas, degrees, side.getWidth(), side.getHeight());
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    private void onHalvesEnded() {
+        halfEndPosted = false;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final FlipEntry entry = entries.get(i);
+            if (!entry.halfEnded) {
+                continue;
+            }
+            entry.halfEnded = false;
+            if (entry.secondHalf) {
+                entries.remove(i);
+                finishedEntries.add(entry);
+            } else {
+                entry.secondHalf = true;
+                entry.startTime = -1;
+            }
+        }
+        invalidate();
+        // listeners may start new rotations - so they are notified at the end
+        for (int i = 0; i < finishedEntries.size(); i++) {
+            final FlipEntry entry = finishedEntries.get(i);
+            final AnimationListener listener = entry.finishFlippingListener;
+            entry.view.getViews()[getShownViewIndex(entry)].setVisibility(VISIBLE);
+            releaseEntry(entry);
+            if (listener != null) {
+                listener.onAnimationEnd(null);
+            }
+        }
+        finishedEntries.clear();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(processEndedHalves);
+        // finish all flips immediately so that no state is left flipping
+        for (int i = 0; i < entries.size(); i++) {
+            entries.get(i).secondHalf = true;
+            entries.get(i).halfEnded = true;
+        }
+        onHalvesEnded();
+        bitmapPool.clear();
+    }
+}
@@ -0,0 +1,387 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Camera;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.AdapterView;
+
+/**
+ * Animates changes of the items of an {@link AdapterView} (grid, list) as 3D
+ * flips from the old content of the item to the new one. Placed over the
+ * adapter view (for example in a FrameLayout together with it). Call
+ * {@link #beginChange(AdapterView, int[])} right before the data of the
+ * adapter is changed - the changed items are drawn into pooled bitmaps, and
+ * when the adapter view is laid out again with the new data, the new content
+ * is drawn as well and the item is hidden while the overlay draws it flipping.
+ * Changes are kept by adapter position - the item shown at the position is
+ * looked up again before every frame, so scrolling and recycling of the item
+ * views during the flip hide only the item currently showing the change.
+ * All changes are drawn in one onDraw of the overlay with the math of
+ * {@link Flip3DAnimation}, so a bulk refresh costs one invalidation per frame
+ * and no additional views.
+ *
+ */
+public class Flip3DItemChangeAnimator extends View {
+
+    private static final long DEFAULT_POOLED_BYTES = 2 * 1024 * 1024;
+    private static final int DEFAULT_ANIMATION_LENGTH = 500;
+
+    private final Camera camera = new Camera();
+    private final Matrix matrix = new Matrix();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Canvas snapshotCanvas = new Canvas();
+    private final int[] overlayLocation = new int[2];
+    private final int[] itemLocation = new int[2];
+    private final Interpolator firstHalfInterpolator = new AccelerateInterpolator();
+    private final Interpolator secondHalfInterpolator = new DecelerateInterpolator();
+
+    private final List<ChangeEntry> pendingEntries = new ArrayList<ChangeEntry>();
+    private final List<ChangeEntry> entries = new ArrayList<ChangeEntry>();
+    private final List<ChangeEntry> freeEntries = new ArrayList<ChangeEntry>();
+
+    private Flip3DBitmapPool bitmapPool = new Flip3DBitmapPool(DEFAULT_POOLED_BYTES);
+    private long animationLength = DEFAULT_ANIMATION_LENGTH;
+    private int direction = RotationDirection.ROTATE_LEFT;
+
+    private AdapterView<?> pendingAdapterView;
+    private AdapterView<?> changedAdapterView;
+    private boolean finishPosted = false;
+
+    private final ViewTreeObserver.OnPreDrawListener startChanges = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            startPendingChanges();
+            return true;
+        }
+    };
+
+    private final ViewTreeObserver.OnPreDrawListener followItems = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            updateItems();
+            return true;
+        }
+    };
+
+    private final Runnable finishChanges = new Runnable() {
+        @Override
+        public void run() {
+            finishEndedChanges(false);
+        }
+    };
+
+    /**
+     * Change of a single item drawn by the overlay.
+     */
+    private static final class ChangeEntry {
+        private int position;
+        // item showing the position in the current layout (hidden), if any
+        private View item;
+        private Bitmap oldSnapshot;
+        private Bitmap newSnapshot;
+        private long startTime;
+        private boolean secondHalf;
+        private boolean ended;
+    }
+
+    public Flip3DItemChangeAnimator(final Context context) {
+        super(context);
+    }
+
+    public Flip3DItemChangeAnimator(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public Flip3DItemChangeAnimator(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    /**
+     * Sets pool of the bitmaps used for snapshots (to share it with other
+     * components, for example {@link Flip3DGridOverlay}).
+     *
+     * @param bitmapPool
+     *            the pool
+     */
+    public void setBitmapPool(final Flip3DBitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    /**
+     * Sets length of each half of the flip.
+     *
+     * @param animationLength
+     *            length in milliseconds
+     */
+    public void setAnimationLength(final long animationLength) {
+        this.animationLength = animationLength;
+    }
+
+    /**
+     * Sets direction of the flips.
+     *
+     * @param direction
+     *            direction (0 - LEFT, 1 - RIGHT)
+     */
+    public void setDirection(final int direction) {
+        this.direction = direction;
+    }
+
+    public int getChangingCount() {
+        return entries.size() + pendingEntries.size();
+    }
+
+    /**
+     * Captures current content of the items about to change. Must be called
+     * before the adapter notifies about the change.
+     *
+     * @param adapterView
+     *            adapter view showing the items
+     * @param positions
+     *            adapter positions of the changed items (null for all the
+     *            visible items)
+     */
+    public void beginChange(final AdapterView<?> adapterView, final int[] positions) {
+        if (getWidth() == 0 || getWindowVisibility() != VISIBLE) {
+            return; // cannot draw - items simply change
+        }
+        if (pendingAdapterView != null && pendingAdapterView != adapterView) { // NOPMD
+            cancelPendingChanges();
+        }
+        if (changedAdapterView != null && changedAdapterView != adapterView) { // NOPMD
+            finishEndedChanges(true);
+        }
+        final int first = adapterView.getFirstVisiblePosition();
+        if (positions == null) {
+            for (int i = 0; i < adapterView.getChildCount(); i++) {
+                captureOldContent(adapterView, first + i);
+            }
+        } else {
+            for (final int position : positions) {
+                captureOldContent(adapterView, position);
+            }
+        }
+        if (!pendingEntries.isEmpty() && pendingAdapterView == null) {
+            pendingAdapterView = adapterView;
+            adapterView.getViewTreeObserver().addOnPreDrawListener(startChanges);
+        }
+    }
+
+    private void captureOldContent(final AdapterView<?> adapterView, final int position) {
+        final View item = adapterView.getChildAt(position - adapterView.getFirstVisiblePosition());
+        if (item == null || item.getWidth() == 0 || item.getHeight() == 0 || findEntry(pendingEntries, position) >= 0) {
+            return;
+        }
+        final int running = findEntry(entries, position);
+        if (running >= 0) {
+            // the item shows the previous change - finish it right away
+            final ChangeEntry entry = entries.remove(running);
+            showItem(entry);
+            releaseEntry(entry);
+        }
+        final Bitmap oldSnapshot = takeSnapshot(item);
+        if (oldSnapshot == null) {
+            return; // no bitmap - the item simply changes
+        }
+        final ChangeEntry entry = freeEntries.isEmpty() ? new ChangeEntry() : freeEntries
+                .remove(freeEntries.size() - 1);
+        entry.position = position;
+        entry.oldSnapshot = oldSnapshot;
+        entry.startTime = -1;
+        entry.secondHalf = false;
+        entry.ended = false;
+        pendingEntries.add(entry);
+    }
+
+    private static int findEntry(final List<ChangeEntry> list, final int position) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).position == position) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Bitmap takeSnapshot(final View item) {
+        final Bitmap bitmap = bitmapPool.obtain(item.getWidth(), item.getHeight());
+        if (bitmap == null) {
+            return null;
+        }
+        snapshotCanvas.setBitmap(bitmap);
+        item.draw(snapshotCanvas);
+        return bitmap;
+    }
+
+    private void startPendingChanges() {
+        final AdapterView<?> adapterView = pendingAdapterView;
+        pendingAdapterView = null;
+        adapterView.getViewTreeObserver().removeOnPreDrawListener(startChanges);
+        final int first = adapterView.getFirstVisiblePosition();
+        for (int i = 0; i < pendingEntries.size(); i++) {
+            final ChangeEntry entry = pendingEntries.get(i);
+            final View item = adapterView.getChildAt(entry.position - first);
+            if (item == null || item.getWidth() != entry.oldSnapshot.getWidth()
+                    || item.getHeight() != entry.oldSnapshot.getHeight()) {
+                // scrolled away or resized - no flip
+                releaseEntry(entry);
+                continue;
+            }
+            entry.newSnapshot = takeSnapshot(item);
+            if (entry.newSnapshot == null) {
+                releaseEntry(entry);
+                continue;
+            }
+            entry.item = item;
+            item.setVisibility(INVISIBLE);
+            entries.add(entry);
+        }
+        pendingEntries.clear();
+        if (!entries.isEmpty() && changedAdapterView == null) {
+            changedAdapterView = adapterView;
+            adapterView.getViewTreeObserver().addOnPreDrawListener(followItems);
+        }
+        invalidate();
+    }
+
+    /**
+     * Looks up items showing the changed positions after the adapter view is
+     * laid out (scrolled) - items no longer showing a change are shown again.
+     */
+    private void updateItems() {
+        final int first = changedAdapterView.getFirstVisiblePosition();
+        for (int i = 0; i < entries.size(); i++) {
+            final ChangeEntry entry = entries.get(i);
+            final View item = changedAdapterView.getChildAt(entry.position - first);
+            if (item != entry.item) {
+                showItem(entry);
+                entry.item = item;
+            }
+        }
+        // separately - an item recycled from one change to another stays hidden
+        for (int i = 0; i < entries.size(); i++) {
+            final View item = entries.get(i).item;
+            if (item != null && item.getVisibility() == VISIBLE) {
+                item.setVisibility(INVISIBLE);
+            }
+        }
+    }
+
+    private static void showItem(final ChangeEntry entry) {
+        if (entry.item != null) {
+            entry.item.setVisibility(VISIBLE);
+        }
+    }
+
+    private void cancelPendingChanges() {
+        pendingAdapterView.getViewTreeObserver().removeOnPreDrawListener(startChanges);
+        pendingAdapterView = null;
+        for (int i = 0; i < pendingEntries.size(); i++) {
+            releaseEntry(pendingEntries.get(i));
+        }
+        pendingEntries.clear();
+    }
+
+    private void releaseEntry(final ChangeEntry entry) {
+        bitmapPool.release(entry.oldSnapshot);
+        bitmapPool.release(entry.newSnapshot);
+        entry.oldSnapshot = null;
+        entry.newSnapshot = null;
+        entry.item = null;
+        freeEntries.add(entry);
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        super.onDraw(canvas);
+        if (entries.isEmpty()) {
+            return;
+        }
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        getLocationInWindow(overlayLocation);
+        final float halfRotation = RotationDirection.getMultiplier(direction) * 90;
+        boolean running = false;
+        boolean ended = false;
+        for (int i = 0; i < entries.size(); i++) {
+            final ChangeEntry entry = entries.get(i);
+            if (entry.startTime < 0) {
+                entry.startTime = now;
+            }
+            float progress = animationLength <= 0 ? 1.0f : Math.min(1.0f, (float) (now - entry.startTime)
+                    / animationLength);
+            if (progress >= 1.0f && !entry.secondHalf) {
+                entry.secondHalf = true;
+                entry.startTime = now;
+                progress = 0.0f;
+            }
+            final float degrees = entry.secondHalf ? -halfRotation
+                    * (1.0f - secondHalfInterpolator.getInterpolation(progress)) : halfRotation
+                    * firstHalfInterpolator.getInterpolation(progress);
+            if (entry.item != null) {
+                drawEntry(canvas, entry, degrees);
+            }
+            if (entry.secondHalf && progress >= 1.0f) {
+                entry.ended = true;
+                ended = true;
+            } else {
+                running = true;
+            }
+        }
+        if (ended && !finishPosted) {
+            finishPosted = true;
+            post(finishChanges);
+        }
+        if (running) {
+            invalidate();
+        }
+    }
+
+    private void drawEntry(final Canvas canvas, final ChangeEntry entry, final float degrees) {
+        final Bitmap snapshot = entry.secondHalf ? entry.newSnapshot : entry.oldSnapshot;
+        entry.item.getLocationInWindow(itemLocation);
+        Flip3DAnimation.applyRotation(camera, degrees, snapshot.getWidth() / 2.0f, snapshot.getHeight() / 2.0f,
+                matrix);
+        matrix.postTranslate(itemLocation[0] - overlayLocation[0], itemLocation[1] - overlayLocation[1]);
+        canvas.drawBitmap(snapshot, matrix, paint);
+    }
+
+    private void finishEndedChanges(final boolean all) {
+        finishPosted = false;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            final ChangeEntry entry = entries.get(i);
+            if (all || entry.ended) {
+                entries.remove(i);
+                showItem(entry);
+                releaseEntry(entry);
+            }
+        }
+        if (entries.isEmpty() && changedAdapterView != null) {
+            changedAdapterView.getViewTreeObserver().removeOnPreDrawListener(followItems);
+            changedAdapterView = null;
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(finishChanges);
+        if (pendingAdapterView != null) {
+            cancelPendingChanges();
+        }
+        finishEndedChanges(true);
+        bitmapPool.clear();
+    }
+}
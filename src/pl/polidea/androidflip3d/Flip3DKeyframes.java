@@ -0,0 +1,211 @@
+package pl.polidea.androidflip3d;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Precomputed keyframes of a flip - rotation of each half of the flip sampled
+ * at fixed steps of progress, with the interpolators used by the animation
+ * backends already applied. Sines and cosines are computed once, when the
+ * table is created, so that getting the transformation of a frame is a table
+ * lookup and a few multiplications.
+ * <p>
+ * Matrices are computed with a pure Java model of
+ * {@link Flip3DAnimation#applyRotation(android.graphics.Camera, float, float, float, android.graphics.Matrix)}
+ * - the Android camera is placed at z = -576 (8 inches at 72 dpi), so
+ * rotation around Y axis by angle t gives matrix [cos t, 0, 0; 0, 1, 0; sin t
+ * / 576, 0, 1], which is then translated to rotate around the center. Values
+ * are stored in the order of {@link android.graphics.Matrix#getValues(float[])}
+ * . No Android classes are used, so the model runs on plain JVM.
+ *
+ */
+public class Flip3DKeyframes {
+
+    /**
+     * First half of the flip - from 0 to 90 degrees, accelerating.
+     */
+    public static final int FIRST_HALF = 0;
+    /**
+     * Second half of the flip - from -90 to 0 degrees, decelerating.
+     */
+    public static final int SECOND_HALF = 1;
+
+    /**
+     * Number of values in a matrix.
+     */
+    public static final int MATRIX_SIZE = 9;
+
+    private static final float CAMERA_DISTANCE = 576.0f;
+
+    private static final int DEFAULT_FRAME_COUNT = 61;
+
+    private final int frameCount;
+
+    private final float[][] degrees;
+
+    private final float[][] cosines;
+
+    private final float[][] sines;
+
+    public Flip3DKeyframes() {
+        this(DEFAULT_FRAME_COUNT);
+    }
+
+    /**
+     * Creates table of keyframes.
+     *
+     * @param frameCount
+     *            number of frames of each half (at least 2)
+     */
+    public Flip3DKeyframes(final int frameCount) {
+        if (frameCount < 2) {
+            throw new IllegalArgumentException("At least 2 frames are needed: " + frameCount);
+        }
+        this.frameCount = frameCount;
+        this.degrees = new float[2][frameCount];
+        this.cosines = new float[2][frameCount];
+        this.sines = new float[2][frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            final float progress = (float) i / (frameCount - 1);
+            setFrame(FIRST_HALF, i, getDegrees(FIRST_HALF, progress, RotationDirection.ROTATE_RIGHT));
+            setFrame(SECOND_HALF, i, getDegrees(SECOND_HALF, progress, RotationDirection.ROTATE_RIGHT));
+        }
+    }
+
+    private void setFrame(final int half, final int frame, final float frameDegrees) {
+        final double radians = Math.toRadians(frameDegrees);
+        degrees[half][frame] = frameDegrees;
+        cosines[half][frame] = (float) Math.cos(radians);
+        sines[half][frame] = (float) Math.sin(radians);
+    }
+
+    /**
+     * Computes rotation of the half at the progress given, the way the
+     * animation backends do (accelerating first half, decelerating second
+     * half).
+     *
+     * @param half
+     *            half of the flip (0 - FIRST, 1 - SECOND)
+     * @param progress
+     *            progress of the half from 0 to 1
+     * @param direction
+     *            direction of the flip (0 - LEFT, 1 - RIGHT)
+     * @return rotation in degrees
+     */
+    public static float getDegrees(final int half, final float progress, final int direction) {
+        final float halfRotation = RotationDirection.getMultiplier(direction) * 90;
+        if (half == FIRST_HALF) {
+            return halfRotation * progress * progress; // AccelerateInterpolator
+        }
+        final float decelerated = 1.0f - (1.0f - progress) * (1.0f - progress); // DecelerateInterpolator
+        return -halfRotation * (1.0f - decelerated);
+    }
+
+    /**
+     * Computes matrix of rotation around Y axis going through the center
+     * given - the same as {@link Flip3DAnimation} computes with the camera.
+     *
+     * @param rotationDegrees
+     *            rotation in degrees
+     * @param centerX
+     *            X of the rotation center
+     * @param centerY
+     *            Y of the rotation center
+     * @param out
+     *            array of 9 values where the matrix is stored
+     */
+    public static void computeRotation(final float rotationDegrees, final float centerX, final float centerY,
+            final float[] out) {
+        final double radians = Math.toRadians(rotationDegrees);
+        setRotation((float) Math.cos(radians), (float) Math.sin(radians), centerX, centerY, out);
+    }
+
+    private static void setRotation(final float cos, final float sin, final float centerX, final float centerY,
+            final float[] out) {
+        final float perspective = sin / CAMERA_DISTANCE;
+        // translate(center) * camera * translate(-center)
+        out[0] = cos + centerX * perspective;
+        out[1] = 0;
+        out[2] = centerX * (1 - cos) - centerX * centerX * perspective;
+        out[3] = centerY * perspective;
+        out[4] = 1;
+        out[5] = -centerY * centerX * perspective;
+        out[6] = perspective;
+        out[7] = 0;
+        out[8] = 1 - centerX * perspective;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets frame nearest to the progress given.
+     *
+     * @param progress
+     *            progress of the half from 0 to 1
+     * @return index of the frame
+     */
+    public int getFrame(final float progress) {
+        final int frame = Math.round(progress * (frameCount - 1));
+        return Math.max(0, Math.min(frameCount - 1, frame));
+    }
+
+    /**
+     * Gets rotation of the frame.
+     *
+     * @param half
+     *            half of the flip (0 - FIRST, 1 - SECOND)
+     * @param frame
+     *            index of the frame
+     * @param direction
+     *            direction of the flip (0 - LEFT, 1 - RIGHT)
+     * @return rotation in degrees
+     */
+    public float getFrameDegrees(final int half, final int frame, final int direction) {
+        return RotationDirection.getMultiplier(direction) * degrees[half][frame];
+    }
+
+    /**
+     * Gets matrix of the frame nearest to the progress given. Does not
+     * allocate and does not compute any trigonometric functions.
+     *
+     * @param half
+     *            half of the flip (0 - FIRST, 1 - SECOND)
+     * @param progress
+     *            progress of the half from 0 to 1
+     * @param direction
+     *            direction of the flip (0 - LEFT, 1 - RIGHT)
+     * @param centerX
+     *            X of the rotation center
+     * @param centerY
+     *            Y of the rotation center
+     * @param out
+     *            array of 9 values where the matrix is stored
+     */
+    public void getMatrixValues(final int half, final float progress, final int direction, final float centerX,
+            final float centerY, final float[] out) {
+        final int frame = getFrame(progress);
+        setRotation(cosines[half][frame], RotationDirection.getMultiplier(direction) * sines[half][frame], centerX,
+                centerY, out);
+    }
+
+    /**
+     * Writes the table (rotation, cosine and sine of each frame of each half
+     * for flip to the right) as text - one frame per line.
+     *
+     * @param writer
+     *            where to write
+     * @throws IOException
+     *             when writing fails
+     */
+    public void write(final Writer writer) throws IOException {
+        writer.write("# half frame degrees cos sin\n");
+        for (int half = FIRST_HALF; half <= SECOND_HALF; half++) {
+            for (int i = 0; i < frameCount; i++) {
+                writer.write(half + " " + i + " " + degrees[half][i] + " " + cosines[half][i] + " "
+                        + sines[half][i] + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package pl.polidea.androidflip3d;
+
+import android.graphics.Camera;
+import android.graphics.Matrix;
+
+/**
+ * Computes flip transformation of a page of horizontally paged content from
+ * its position relative to the center (0 - page in the center, -1 - page one
+ * to the left, 1 - page one to the right), using the rotation of
+ * {@link Flip3DAnimation}. The page in the center rotates away while the
+ * neighbour rotates in - like the two sides of a {@link Flip3DView}. Only one
+ * of the two pages is visible at any time. No objects are allocated while
+ * transforming.
+ *
+ */
+public class Flip3DPageTransformer {
+
+    private final Camera camera = new Camera();
+
+    private int direction = RotationDirection.ROTATE_LEFT;
+
+    /**
+     * Sets direction of rotation when moving to the next page.
+     *
+     * @param direction
+     *            direction (0 - LEFT, 1 - RIGHT)
+     */
+    public void setDirection(final int direction) {
+        this.direction = direction;
+    }
+
+    public int getDirection() {
+        return direction;
+    }
+
+    /**
+     * Checks if the page is visible at the position given.
+     *
+     * @param position
+     *            position of the page relative to the center
+     * @return true if page should be drawn
+     */
+    public boolean isPageVisible(final float position) {
+        return position > -0.5f && position <= 0.5f;
+    }
+
+    /**
+     * Gets rotation of the page.
+     *
+     * @param position
+     *            position of the page relative to the center
+     * @return rotation in degrees
+     */
+    public float getRotation(final float position) {
+        return -RotationDirection.getMultiplier(direction) * 180 * position;
+    }
+
+    /**
+     * Computes transformation of the page.
+     *
+     * @param position
+     *            position of the page relative to the center
+     * @param width
+     *            width of the page
+     * @param height
+     *            height of the page
+     * @param out
+     *            matrix set to the transformation of the page
+     * @return false if the page is not visible and should not be drawn
+     */
+    public boolean transformPage(final float position, final int width, final int height, final Matrix out) {
+        if (!isPageVisible(position)) {
+            return false;
+        }
+        Flip3DAnimation.applyRotation(camera, getRotation(position), width / 2.0f, height / 2.0f, out);
+        return true;
+    }
+}
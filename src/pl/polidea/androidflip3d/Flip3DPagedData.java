@@ -0,0 +1,284 @@
+package pl.polidea.androidflip3d;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Item data of a grid loaded in pages from a {@link Source}. Pages are loaded
+ * in the background executor when their items are requested or when they get
+ * close to the visible range, and delivered in the delivery executor (usually
+ * the UI thread, for example {@link Flip3DBatchingExecutor}). Pages further
+ * than the given number of pages from the visible range are evicted. All
+ * methods except {@link Source#loadPage(int, int)} are meant to be called in
+ * the delivery thread.
+ *
+ * @param <Item>
+ *            type of the items
+ */
+public class Flip3DPagedData<Item> {
+
+    /**
+     * Source of the items.
+     *
+     * @param <Item>
+     *            type of the items
+     */
+    public interface Source<Item> {
+        /**
+         * Returns number of all the items.
+         *
+         * @return number of items
+         */
+        int getItemCount();
+
+        /**
+         * Loads items of a page (called in the background executor).
+         *
+         * @param firstPosition
+         *            position of the first item of the page
+         * @param count
+         *            number of items of the page
+         * @return items of the page
+         * @throws IOException
+         *             when the page cannot be loaded (it is loaded again when
+         *             requested)
+         */
+        List<Item> loadPage(int firstPosition, int count) throws IOException;
+    }
+
+    /**
+     * Listener of the pages loaded and evicted (called in the delivery
+     * executor).
+     *
+     */
+    public interface PageListener {
+        /**
+         * Called when items of the page become available.
+         *
+         * @param firstPosition
+         *            position of the first item of the page
+         * @param count
+         *            number of items of the page
+         */
+        void onPageLoaded(int firstPosition, int count);
+
+        /**
+         * Called when items of the page are dropped.
+         *
+         * @param firstPosition
+         *            position of the first item of the page
+         * @param count
+         *            number of items of the page
+         */
+        void onPageEvicted(int firstPosition, int count);
+    }
+
+    /**
+     * Loading of a page running in the background executor.
+     */
+    private final class LoadTask implements Runnable {
+        private final int page;
+
+        private LoadTask(final int page) {
+            this.page = page;
+        }
+
+        @Override
+        public void run() {
+            List<Item> items = null;
+            try {
+                items = source.loadPage(getFirstPosition(page), getPageCount(page));
+            } catch (final IOException e) {
+                items = null;
+            } catch (final RuntimeException e) {
+                items = null;
+            }
+            final List<Item> loaded = items;
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pageLoaded(page, loaded);
+                }
+            });
+        }
+    }
+
+    private final Source<Item> source;
+    private final int pageSize;
+    private final int keptPages;
+    private final Executor backgroundExecutor;
+    private final Executor deliveryExecutor;
+
+    private final Map<Integer, List<Item>> pages = new HashMap<Integer, List<Item>>();
+    private final Set<Integer> loadingPages = new HashSet<Integer>();
+    private final List<PageListener> listeners = new CopyOnWriteArrayList<PageListener>();
+
+    private int itemCount = -1;
+    private int firstVisiblePage = 0;
+    private int lastVisiblePage = 0;
+    private int loadsStarted = 0;
+    private int loadsFailed = 0;
+
+    /**
+     * Creates paged data.
+     *
+     * @param source
+     *            source of the items
+     * @param pageSize
+     *            number of items in a page
+     * @param keptPages
+     *            number of pages kept on each side of the visible range
+     * @param backgroundExecutor
+     *            executor loading the pages
+     * @param deliveryExecutor
+     *            executor delivering loaded pages (UI thread)
+     */
+    public Flip3DPagedData(final Source<Item> source, final int pageSize, final int keptPages,
+            final Executor backgroundExecutor, final Executor deliveryExecutor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page must have at least one item: " + pageSize);
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.keptPages = keptPages;
+        this.backgroundExecutor = backgroundExecutor;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    public void addPageListener(final PageListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removePageListener(final PageListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns number of the items (asks the source once).
+     *
+     * @return number of items
+     */
+    public int getItemCount() {
+        if (itemCount < 0) {
+            itemCount = source.getItemCount();
+        }
+        return itemCount;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    private int getFirstPosition(final int page) {
+        return page * pageSize;
+    }
+
+    private int getPageCount(final int page) {
+        return Math.min(pageSize, getItemCount() - getFirstPosition(page));
+    }
+
+    /**
+     * Returns item of the position, starting loading of its page when it is
+     * not loaded.
+     *
+     * @param position
+     *            position of the item
+     * @return the item or null when its page is not loaded yet
+     */
+    public Item getItem(final int position) {
+        final int page = position / pageSize;
+        final List<Item> items = pages.get(page);
+        if (items == null) {
+            requestPage(page);
+            return null;
+        }
+        final int index = position - getFirstPosition(page);
+        return index < items.size() ? items.get(index) : null;
+    }
+
+    /**
+     * Checks if the item is loaded (without starting loading).
+     *
+     * @param position
+     *            position of the item
+     * @return true if the page of the item is loaded
+     */
+    public boolean isLoaded(final int position) {
+        return pages.containsKey(position / pageSize);
+    }
+
+    /**
+     * Sets range of positions visible - pages next to it are prefetched and
+     * pages too far from it are evicted.
+     *
+     * @param firstPosition
+     *            first visible position
+     * @param lastPosition
+     *            last visible position
+     */
+    public void setVisibleRange(final int firstPosition, final int lastPosition) {
+        final int lastPage = (getItemCount() - 1) / pageSize;
+        firstVisiblePage = Math.max(0, firstPosition / pageSize);
+        lastVisiblePage = Math.min(lastPage, Math.max(firstPosition, lastPosition) / pageSize);
+        for (int page = Math.max(0, firstVisiblePage - 1); page <= Math.min(lastPage, lastVisiblePage + 1); page++) {
+            requestPage(page);
+        }
+        final List<Integer> evicted = new ArrayList<Integer>();
+        for (final Integer page : pages.keySet()) {
+            if (!isPageKept(page)) {
+                evicted.add(page);
+            }
+        }
+        for (final Integer page : evicted) {
+            pages.remove(page);
+            for (final PageListener listener : listeners) {
+                listener.onPageEvicted(getFirstPosition(page), getPageCount(page));
+            }
+        }
+    }
+
+    private boolean isPageKept(final int page) {
+        return page >= firstVisiblePage - keptPages && page <= lastVisiblePage + keptPages;
+    }
+
+    private void requestPage(final int page) {
+        if (pages.containsKey(page) || loadingPages.contains(page) || getFirstPosition(page) >= getItemCount()) {
+            return;
+        }
+        loadingPages.add(page);
+        loadsStarted++;
+        backgroundExecutor.execute(new LoadTask(page));
+    }
+
+    private void pageLoaded(final int page, final List<Item> items) {
+        loadingPages.remove(page);
+        if (items == null) {
+            loadsFailed++;
+            return;
+        }
+        // pages scrolled away while loading are evicted with the next range
+        pages.put(page, items);
+        for (final PageListener listener : listeners) {
+            listener.onPageLoaded(getFirstPosition(page), getPageCount(page));
+        }
+    }
+
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    public int getLoadsStarted() {
+        return loadsStarted;
+    }
+
+    public int getLoadsFailed() {
+        return loadsFailed;
+    }
+}
@@ -0,0 +1,383 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.Adapter;
+
+/**
+ * Horizontally paged content where pages are changed with a 3D flip driven by
+ * the scroll offset (see {@link Flip3DPageTransformer}). Pages come from an
+ * {@link Adapter} - only the current page and its neighbours are bound and
+ * the page views are recycled, so it can page through hundreds of pages.
+ * While the pager is dragged or settling, the pages are drawn from cached
+ * snapshots instead of drawing their view hierarchies, and nothing is
+ * allocated per frame.
+ *
+ */
+public class Flip3DPager extends ViewGroup {
+
+    private static final long DEFAULT_SETTLE_LENGTH = 500;
+    private static final float NEXT_PAGE_THRESHOLD = 0.2f;
+    private static final long DEFAULT_POOLED_BYTES = 2 * 1024 * 1024;
+
+    private final Flip3DPageTransformer transformer = new Flip3DPageTransformer();
+    private final Matrix matrix = new Matrix();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Canvas snapshotCanvas = new Canvas();
+    private final Interpolator settleInterpolator = new DecelerateInterpolator();
+    private final int touchSlop;
+
+    private final List<Page> pages = new ArrayList<Page>();
+    private final List<View> scrapViews = new ArrayList<View>();
+    private final List<Page> freePages = new ArrayList<Page>();
+
+    private Flip3DBitmapPool bitmapPool = new Flip3DBitmapPool(DEFAULT_POOLED_BYTES);
+    private Adapter adapter;
+    private long settleLength = DEFAULT_SETTLE_LENGTH;
+
+    private float offset = 0;
+    private boolean dragging = false;
+    private float dragStartX;
+    private float dragStartOffset;
+    private boolean settling = false;
+    private float settleFrom;
+    private float settleTo;
+    private long settleStartTime;
+
+    private final Runnable rebindPages = new Runnable() {
+        @Override
+        public void run() {
+            bindPages();
+        }
+    };
+
+    /**
+     * Page bound to the position of the adapter.
+     */
+    private static final class Page {
+        private int position;
+        private View view;
+        private Bitmap snapshot;
+    }
+
+    public Flip3DPager(final Context context) {
+        super(context);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    public Flip3DPager(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    public Flip3DPager(final Context context, final AttributeSet attrs, final int defStyle) {
+        super(context, attrs, defStyle);
+        touchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    /**
+     * Sets adapter providing the pages. Item views should not change type
+     * between positions, as they are reused.
+     *
+     * @param adapter
+     *            the adapter
+     */
+    public void setAdapter(final Adapter adapter) {
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            unbindPage(i);
+        }
+        scrapViews.clear();
+        this.adapter = adapter;
+        offset = 0;
+        settling = false;
+        bindPages();
+    }
+
+    public Adapter getAdapter() {
+        return adapter;
+    }
+
+    /**
+     * Sets pool of the bitmaps used for snapshots (to share it with other
+     * components).
+     *
+     * @param bitmapPool
+     *            the pool
+     */
+    public void setBitmapPool(final Flip3DBitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    public Flip3DPageTransformer getPageTransformer() {
+        return transformer;
+    }
+
+    /**
+     * Sets length of flipping to the next page when released.
+     *
+     * @param settleLength
+     *            length in milliseconds
+     */
+    public void setSettleLength(final long settleLength) {
+        this.settleLength = settleLength;
+    }
+
+    public int getCurrentPage() {
+        return Math.round(offset);
+    }
+
+    /**
+     * Flips to the page given.
+     *
+     * @param position
+     *            position of the page
+     * @param animate
+     *            whether to animate (only flips between neighbouring pages
+     *            are animated)
+     */
+    public void setCurrentPage(final int position, final boolean animate) {
+        if (adapter == null || adapter.getCount() == 0) {
+            return;
+        }
+        final int target = Math.max(0, Math.min(adapter.getCount() - 1, position));
+        if (animate && Math.abs(target - offset) <= 1) {
+            startSettling(target);
+        } else {
+            settling = false;
+            setOffset(target);
+        }
+    }
+
+    /**
+     * Drops cached snapshots of the pages - to be called when content of the
+     * bound pages has changed.
+     */
+    public void invalidateSnapshots() {
+        for (int i = 0; i < pages.size(); i++) {
+            releaseSnapshot(pages.get(i));
+        }
+        invalidate();
+    }
+
+    private void setOffset(final float newOffset) {
+        offset = newOffset;
+        bindPages();
+        invalidate();
+    }
+
+    private void bindPages() {
+        final int count = adapter == null ? 0 : adapter.getCount();
+        final int current = Math.round(offset);
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            final int position = pages.get(i).position;
+            if (position < current - 1 || position > current + 1 || position >= count) {
+                unbindPage(i);
+            }
+        }
+        for (int position = Math.max(0, current - 1); position <= Math.min(count - 1, current + 1); position++) {
+            if (findPage(position) == null) {
+                bindPage(position);
+            }
+        }
+    }
+
+    private Page findPage(final int position) {
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).position == position) {
+                return pages.get(i);
+            }
+        }
+        return null;
+    }
+
+    private void bindPage(final int position) {
+        final View convertView = scrapViews.isEmpty() ? null : scrapViews.remove(scrapViews.size() - 1);
+        final Page page = freePages.isEmpty() ? new Page() : freePages.remove(freePages.size() - 1);
+        page.position = position;
+        page.view = adapter.getView(position, convertView, this);
+        pages.add(page);
+        addView(page.view);
+    }
+
+    private void unbindPage(final int index) {
+        final Page page = pages.remove(index);
+        removeView(page.view);
+        scrapViews.add(page.view);
+        releaseSnapshot(page);
+        page.view = null;
+        freePages.add(page);
+    }
+
+    private void releaseSnapshot(final Page page) {
+        bitmapPool.release(page.snapshot);
+        page.snapshot = null;
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final int width = resolveSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        final int height = resolveSize(getSuggestedMinimumHeight(), heightMeasureSpec);
+        setMeasuredDimension(width, height);
+        final int childWidthSpec = MeasureSpec.makeMeasureSpec(width - getPaddingLeft() - getPaddingRight(),
+                MeasureSpec.EXACTLY);
+        final int childHeightSpec = MeasureSpec.makeMeasureSpec(height - getPaddingTop() - getPaddingBottom(),
+                MeasureSpec.EXACTLY);
+        for (int i = 0; i < getChildCount(); i++) {
+            getChildAt(i).measure(childWidthSpec, childHeightSpec);
+        }
+    }
+
+    @Override
+    protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
+        // all pages are in the same place - they are only rotated
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            child.layout(getPaddingLeft(), getPaddingTop(), getPaddingLeft() + child.getMeasuredWidth(),
+                    getPaddingTop() + child.getMeasuredHeight());
+        }
+        if (changed) {
+            invalidateSnapshots();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(final Canvas canvas) {
+        if (settling) {
+            final long now = AnimationUtils.currentAnimationTimeMillis();
+            if (settleStartTime < 0) {
+                settleStartTime = now;
+            }
+            final long length = (long) (settleLength * Math.abs(settleTo - settleFrom));
+            final float progress = length <= 0 ? 1.0f : Math.min(1.0f, (float) (now - settleStartTime) / length);
+            offset = settleFrom + (settleTo - settleFrom) * settleInterpolator.getInterpolation(progress);
+            if (progress >= 1.0f) {
+                settling = false;
+                offset = settleTo;
+                post(rebindPages);
+            }
+            invalidate();
+        }
+        super.dispatchDraw(canvas);
+    }
+
+    @Override
+    protected boolean drawChild(final Canvas canvas, final View child, final long drawingTime) {
+        final Page page = findPage(child);
+        if (page == null) {
+            return false;
+        }
+        final float position = page.position - offset;
+        if (!transformer.transformPage(position, child.getWidth(), child.getHeight(), matrix)) {
+            return false;
+        }
+        final boolean moving = dragging || settling || position != 0;
+        if (moving && page.snapshot == null && child.getWidth() > 0 && child.getHeight() > 0) {
+            page.snapshot = bitmapPool.obtain(child.getWidth(), child.getHeight());
+            snapshotCanvas.setBitmap(page.snapshot);
+            child.draw(snapshotCanvas);
+        }
+        final int saveCount = canvas.save();
+        canvas.translate(child.getLeft(), child.getTop());
+        canvas.concat(matrix);
+        boolean more = false;
+        if (moving && page.snapshot != null) {
+            canvas.drawBitmap(page.snapshot, 0, 0, paint);
+        } else {
+            canvas.translate(-child.getLeft(), -child.getTop());
+            more = super.drawChild(canvas, child, drawingTime);
+        }
+        canvas.restoreToCount(saveCount);
+        return more;
+    }
+
+    private Page findPage(final View child) {
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).view == child) { // NOPMD - identity intended
+                return pages.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(final MotionEvent event) {
+        switch (event.getAction()) {
+        case MotionEvent.ACTION_DOWN:
+            dragStartX = event.getX();
+            dragStartOffset = offset;
+            return settling;
+        case MotionEvent.ACTION_MOVE:
+            return Math.abs(event.getX() - dragStartX) > touchSlop;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(final MotionEvent event) {
+        if (adapter == null || adapter.getCount() == 0 || getWidth() == 0) {
+            return false;
+        }
+        switch (event.getAction()) {
+        case MotionEvent.ACTION_DOWN:
+            dragStartX = event.getX();
+            dragStartOffset = offset;
+            return true;
+        case MotionEvent.ACTION_MOVE:
+            if (!dragging) {
+                dragging = true;
+                settling = false;
+                dragStartX = event.getX();
+                dragStartOffset = offset;
+            }
+            final float dragged = (dragStartX - event.getX()) / getWidth();
+            final float maxOffset = adapter.getCount() - 1;
+            setOffset(Math.max(0, Math.min(maxOffset, dragStartOffset + dragged)));
+            return true;
+        case MotionEvent.ACTION_UP:
+        case MotionEvent.ACTION_CANCEL:
+            dragging = false;
+            final float moved = offset - dragStartOffset;
+            int target = Math.round(dragStartOffset);
+            if (moved > NEXT_PAGE_THRESHOLD) {
+                target++;
+            } else if (moved < -NEXT_PAGE_THRESHOLD) {
+                target--;
+            }
+            startSettling(Math.max(0, Math.min(adapter.getCount() - 1, target)));
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private void startSettling(final int target) {
+        settling = true;
+        settleFrom = offset;
+        settleTo = target;
+        settleStartTime = -1;
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(rebindPages);
+        invalidateSnapshots();
+        bitmapPool.clear();
+    }
+}
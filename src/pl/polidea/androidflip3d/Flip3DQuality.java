@@ -0,0 +1,73 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Levels of flip rendering quality in non-enum mode, chosen by
+ * {@link Flip3DQualityMonitor} depending on how fast frames are drawn.
+ * 
+ */
+public final class Flip3DQuality {
+
+    private Flip3DQuality() {
+        // no instantiation.
+    }
+
+    /**
+     * Full quality - full resolution snapshots and full animation length.
+     */
+    public static final int FULL = 0;
+    /**
+     * Reduced quality - half resolution snapshots and shorter animation.
+     */
+    public static final int REDUCED = 1;
+    /**
+     * Minimal quality - quarter resolution snapshots, shortest animation and
+     * cross-fade instead of rotation for the views not flipped by the user.
+     */
+    public static final int MINIMAL = 2;
+
+    private static final float[] DURATION_SCALES = { 1.0f, 0.6f, 0.4f };
+
+    private static final float[] SNAPSHOT_SCALES = { 1.0f, 0.5f, 0.25f };
+
+    /**
+     * Gets multiplier of the animation length for the quality given.
+     * 
+     * @param quality
+     *            quality (0 - FULL, 1 - REDUCED, 2 - MINIMAL)
+     * @return multiplier of animation length
+     */
+    public static float getDurationScale(final int quality) {
+        return DURATION_SCALES[quality];
+    }
+
+    /**
+     * Gets scale of the snapshots drawn for the quality given.
+     * 
+     * @param quality
+     *            quality (0 - FULL, 1 - REDUCED, 2 - MINIMAL)
+     * @return scale of snapshot resolution (1 is the size of the view)
+     */
+    public static float getSnapshotScale(final int quality) {
+        return SNAPSHOT_SCALES[quality];
+    }
+
+    /**
+     * Gets type of the quality as string.
+     * 
+     * @param quality
+     *            quality (0 - FULL, 1 - REDUCED, 2 - MINIMAL)
+     * @return string representation of the quality
+     */
+    public static String getQualityType(final int quality) {
+        switch (quality) {
+        case FULL:
+            return "FULL";
+        case REDUCED:
+            return "REDUCED";
+        case MINIMAL:
+            return "MINIMAL";
+        default:
+            return "UNKNOWN";
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Monitors how long frames take while views are flipping and keeps the
+ * quality of flip rendering chosen by {@link Flip3DQualityPolicy}. Shared by
+ * all the views of a grid (and its {@link Flip3DGridOverlay}). Frames are
+ * identified by the drawing time of the view hierarchy
+ * ({@link android.view.View#getDrawingTime()}), which is the same for all the
+ * views drawn in one frame - calls made by several views while drawing the
+ * same frame are counted once, however long drawing of the frame takes. Gaps
+ * longer than the idle time (nothing was flipping) are not counted as frames.
+ *
+ */
+public class Flip3DQualityMonitor {
+
+    private static final long IDLE_MILLIS = 250;
+
+    private final Flip3DQualityPolicy policy;
+
+    private int quality = Flip3DQuality.FULL;
+
+    private long lastFrameTime = -1;
+
+    public Flip3DQualityMonitor() {
+        this(new FrameTimeQualityPolicy());
+    }
+
+    /**
+     * Creates monitor.
+     *
+     * @param policy
+     *            policy choosing the quality
+     */
+    public Flip3DQualityMonitor(final Flip3DQualityPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Called when a frame with flipping views is drawn.
+     *
+     * @param drawingTime
+     *            drawing time of the frame in milliseconds (see
+     *            {@link android.view.View#getDrawingTime()})
+     */
+    public synchronized void onFrame(final long drawingTime) {
+        if (drawingTime == lastFrameTime) {
+            return; // the same frame drawn by another view
+        }
+        if (lastFrameTime >= 0) {
+            final long frameTime = drawingTime - lastFrameTime;
+            if (frameTime > 0 && frameTime <= IDLE_MILLIS) {
+                quality = policy.onFrameTime(frameTime, quality);
+            }
+        }
+        lastFrameTime = drawingTime;
+    }
+
+    public synchronized int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Gets animation length scaled down for the current quality.
+     *
+     * @param animationLength
+     *            animation length at full quality
+     * @return animation length to use
+     */
+    public synchronized long getAnimationLength(final long animationLength) {
+        return (long) (animationLength * Flip3DQuality.getDurationScale(quality));
+    }
+}
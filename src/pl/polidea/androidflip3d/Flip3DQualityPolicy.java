@@ -0,0 +1,20 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Decides which {@link Flip3DQuality} should be used based on the times of
+ * the recently drawn frames.
+ *
+ */
+public interface Flip3DQualityPolicy {
+
+    /**
+     * Called with the time of each frame drawn while flipping.
+     *
+     * @param frameTimeMillis
+     *            time between this frame and the previous one
+     * @param currentQuality
+     *            quality currently used
+     * @return quality to use from now on
+     */
+    int onFrameTime(long frameTimeMillis, int currentQuality);
+}
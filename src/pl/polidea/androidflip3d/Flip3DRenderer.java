@@ -0,0 +1,59 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Renders flipping driven by {@link Flip3DStateMachine}. Implemented by
+ * {@link Flip3DView}, but can be implemented without Android views (for example
+ * to test the state machine on plain JVM).
+ *
+ */
+public interface Flip3DRenderer {
+
+    /**
+     * Shows the side given without animation.
+     *
+     * @param currentViewIndex
+     *            side to show (0 - FRONT, 1 - BACK)
+     */
+    void initializeViewState(int currentViewIndex);
+
+    /**
+     * Marks renderer as flipping - it should ignore clicks while flipping.
+     *
+     * @param flipping
+     *            whether flipping is in progress
+     */
+    void setFlipping(boolean flipping);
+
+    /**
+     * Enables or disables clicks on the side given.
+     *
+     * @param viewIndex
+     *            side of the view
+     * @param enable
+     *            whether clicks should be enabled
+     */
+    void setViewClickability(int viewIndex, boolean enable);
+
+    /**
+     * Requests focus for the side given.
+     *
+     * @param viewIndex
+     *            side of the view
+     */
+    void requestViewIndexFocus(int viewIndex);
+
+    /**
+     * Starts rotation from the side given to the other one.
+     *
+     * @param currentViewIndex
+     *            side from which rotation starts
+     * @param finishFlipping
+     *            to be run when the other side is fully shown
+     */
+    void startRotation(int currentViewIndex, Runnable finishFlipping);
+
+    /**
+     * Cancels all running animations. The finish callback is not run.
+     */
+    void clearAllAnimations();
+}
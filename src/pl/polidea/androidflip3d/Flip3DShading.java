@@ -0,0 +1,158 @@
+package pl.polidea.androidflip3d;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+/**
+ * Angle dependent lighting of the flipping sides - the side gets darker as it
+ * turns away from the viewer and a specular highlight sweeps across it. All
+ * the gradients are computed once, for a small number of angle steps, so
+ * shading a side costs a single rectangle drawn over it with a shared paint
+ * and no allocation in a frame. Instances are meant to be shared by all the
+ * views (see {@link #getDefault()}) and used in the UI thread only. Set it
+ * with {@link Flip3DView#setShading(Flip3DShading)} or
+ * {@link Flip3DGridOverlay#setShading(Flip3DShading)}.
+ *
+ */
+public final class Flip3DShading {
+
+    /**
+     * Number of precomputed angle steps between 0 and 90 degrees.
+     */
+    public static final int ANGLE_STEPS = 16;
+
+    private static final int DEFAULT_MAX_SHADE_ALPHA = 160;
+    private static final int DEFAULT_HIGHLIGHT_ALPHA = 96;
+    private static final float HIGHLIGHT_HALF_WIDTH = 0.2f;
+    private static final float RIGHT_ANGLE = 90.0f;
+
+    private static Flip3DShading defaultShading;
+
+    private final Shader[] shaders = new Shader[ANGLE_STEPS + 1];
+    private final int[] shadeAlphas = new int[ANGLE_STEPS + 1];
+    private final Matrix localMatrix = new Matrix();
+    private final Paint paint = new Paint();
+    private int drawCount = 0;
+
+    /**
+     * Creates shading.
+     *
+     * @param maxShadeAlpha
+     *            alpha of the black drawn over the side turned by 90 degrees
+     *            (0 - 255)
+     * @param highlightAlpha
+     *            alpha of the white highlight in the middle of the half flip
+     *            (0 - 255, 0 for no highlight)
+     */
+    public Flip3DShading(final int maxShadeAlpha, final int highlightAlpha) {
+        for (int step = 1; step <= ANGLE_STEPS; step++) {
+            final double radians = Math.toRadians(RIGHT_ANGLE * step / ANGLE_STEPS);
+            final int shadeAlpha = (int) Math.round(maxShadeAlpha * (1.0 - Math.cos(radians)));
+            final int peakAlpha = (int) Math.round(highlightAlpha * Math.sin(2.0 * radians));
+            shadeAlphas[step] = shadeAlpha;
+            shaders[step] = createGradient(shadeAlpha, peakAlpha, (float) step / ANGLE_STEPS);
+        }
+    }
+
+    /**
+     * Creates gradient along X axis of the unit square - shade everywhere and
+     * the highlight (replacing the shade) around the position given.
+     */
+    private static Shader createGradient(final int shadeAlpha, final int peakAlpha, final float position) {
+        final int shade = Color.argb(shadeAlpha, 0, 0, 0);
+        if (peakAlpha <= 0) {
+            return new LinearGradient(0, 0, 1, 0, shade, shade, Shader.TileMode.CLAMP);
+        }
+        final int highlight = Color.argb(peakAlpha, 255, 255, 255);
+        final float from = Math.max(0.0f, position - HIGHLIGHT_HALF_WIDTH);
+        final float to = Math.min(1.0f, position + HIGHLIGHT_HALF_WIDTH);
+        return new LinearGradient(0, 0, 1, 0, new int[] { shade, highlight, shade }, new float[] { from,
+                position, to }, Shader.TileMode.CLAMP);
+    }
+
+    /**
+     * Returns shading shared by all the views, created on first use.
+     *
+     * @return the default shading
+     */
+    public static synchronized Flip3DShading getDefault() {
+        if (defaultShading == null) {
+            defaultShading = new Flip3DShading(DEFAULT_MAX_SHADE_ALPHA, DEFAULT_HIGHLIGHT_ALPHA);
+        }
+        return defaultShading;
+    }
+
+    /**
+     * Returns the angle step used for the rotation.
+     *
+     * @param degrees
+     *            rotation of the side in degrees (any sign)
+     * @return step between 0 (facing the viewer) and {@link #ANGLE_STEPS}
+     */
+    public static int getAngleStep(final float degrees) {
+        final float angle = Math.min(RIGHT_ANGLE, Math.abs(degrees));
+        return Math.round(angle * ANGLE_STEPS / RIGHT_ANGLE);
+    }
+
+    /**
+     * Returns alpha of the shade drawn over the side rotated by the angle
+     * given (without the highlight).
+     *
+     * @param degrees
+     *            rotation of the side in degrees
+     * @return alpha (0 - 255)
+     */
+    public int getShadeAlpha(final float degrees) {
+        return shadeAlphas[getAngleStep(degrees)];
+    }
+
+    /**
+     * Draws shading over the side. The canvas should be transformed the same
+     * way as the side (so that the side is in rectangle 0, 0, width, height).
+     * Nothing is drawn for the side facing the viewer.
+     *
+     * @param canvas
+     *            canvas to draw to
+     * @param degrees
+     *            rotation of the side in degrees - sign decides from which
+     *            edge the highlight comes
+     * @param width
+     *            width of the side
+     * @param height
+     *            height of the side
+     */
+    public void draw(final Canvas canvas, final float degrees, final int width, final int height) {
+        if (Float.isNaN(degrees)) {
+            return;
+        }
+        final int step = getAngleStep(degrees);
+        if (step == 0 || width <= 0 || height <= 0) {
+            return;
+        }
+        final Shader shader = shaders[step];
+        if (degrees < 0) {
+            // mirrored - highlight sweeps from the other edge
+            localMatrix.setScale(-width, 1.0f);
+            localMatrix.postTranslate(width, 0);
+        } else {
+            localMatrix.setScale(width, 1.0f);
+        }
+        shader.setLocalMatrix(localMatrix);
+        paint.setShader(shader);
+        canvas.drawRect(0, 0, width, height, paint);
+        drawCount++;
+    }
+
+    /**
+     * Returns number of sides shaded so far.
+     *
+     * @return number of draws
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+}
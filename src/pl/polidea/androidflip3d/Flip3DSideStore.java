@@ -0,0 +1,68 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Persistent storage of sides of flip3D view states, keyed by id of the state
+ * (see {@link Flip3DViewState#getId()}). Used when there are too many states to
+ * keep them in saved instance state. Methods are called on the UI thread, so
+ * implementations must not block on I/O - sides not loaded yet are reported
+ * as {@link #UNKNOWN} and the listener is notified when they are loaded.
+ *
+ */
+public interface Flip3DSideStore {
+
+    /**
+     * Side returned for ids whose sides are still being loaded.
+     */
+    int UNKNOWN = -1;
+
+    /**
+     * Notified when sides of a range of ids have been loaded.
+     */
+    interface OnSidesLoadedListener {
+        /**
+         * Called (on a background thread) when sides of the ids in range can
+         * be read without waiting.
+         *
+         * @param fromId
+         *            first id (inclusive)
+         * @param toId
+         *            last id (exclusive)
+         */
+        void onSidesLoaded(int fromId, int toId);
+    }
+
+    /**
+     * Reads side stored for the state. Starts loading the side if it is not
+     * loaded yet.
+     *
+     * @param id
+     *            id of the state
+     * @return stored side (0 - FRONT, 1 - BACK), FRONT if nothing stored or
+     *         {@link #UNKNOWN} when the side is being loaded
+     */
+    int getViewIndex(int id);
+
+    /**
+     * Stores side of the state. It is called on the UI thread when flipping
+     * is finished.
+     *
+     * @param id
+     *            id of the state
+     * @param viewIndex
+     *            side to store (0 - FRONT, 1 - BACK)
+     */
+    void setViewIndex(int id, int viewIndex);
+
+    /**
+     * Sets listener notified when sides are loaded.
+     *
+     * @param listener
+     *            listener (null to remove)
+     */
+    void setOnSidesLoadedListener(OnSidesLoadedListener listener);
+
+    /**
+     * Writes all pending changes and releases resources of the store.
+     */
+    void close();
+}
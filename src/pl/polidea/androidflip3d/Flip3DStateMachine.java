@@ -0,0 +1,493 @@
+package pl.polidea.androidflip3d;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * State machine of flipping, independent of Android views. It keeps the side
+ * the state is on, the side it flips to and whether it is being forced, and
+ * drives a {@link Flip3DRenderer} (if any is attached). Without renderer the
+ * flips finish immediately. Flipping events are collected during transitions
+ * and reported via {@link #onStartedFlipping(int, boolean)} and
+ * {@link #onFinishedFlipping(int, boolean)} after the transition is finished,
+ * without holding the lock. The renderer is referenced weakly - states kept
+ * in long-lived structures do not keep views alive. When the renderer is
+ * garbage collected, the state behaves as if it was detached.
+ *
+ */
+public class Flip3DStateMachine {
+
+    private final int id;
+
+    private final Runnable dispatchEvents = new Runnable() {
+        @Override
+        public void run() {
+            dispatchEventsNow();
+        }
+    };
+
+    /**
+     * Flipping event waiting to be dispatched.
+     *
+     */
+    private static final class FlipEvent {
+        private final boolean started;
+        private final int side;
+        private final boolean manuallyTriggered;
+
+        private FlipEvent(final boolean started, final int side, final boolean manuallyTriggered) {
+            this.started = started;
+            this.side = side;
+            this.manuallyTriggered = manuallyTriggered;
+        }
+    }
+
+    /**
+     * Callback run by the renderer when rotation to the other side has
+     * finished.
+     *
+     */
+    private final class SideFlipped implements Runnable {
+        private final int newStateViewIndex;
+
+        private SideFlipped(final int newStateViewIndex) {
+            this.newStateViewIndex = newStateViewIndex;
+        }
+
+        @Override
+        public void run() {
+            sideFlippingEnded(newStateViewIndex);
+        }
+    }
+
+    private WeakReference<Flip3DRenderer> rendererReference;
+
+    private int currentViewIndex = ViewIndex.FRONT_VIEW;
+
+    private int targetViewIndex = ViewIndex.FRONT_VIEW;
+
+    private boolean flipping = false;
+
+    private boolean beingForced = false;
+
+    private final List<FlipEvent> pendingEvents = new ArrayList<FlipEvent>();
+
+    private boolean dispatching = false;
+
+    private Executor eventExecutor = null;
+
+    private Flip3DSideStore sideStore = null;
+
+    private final boolean[] clickBlocked = new boolean[ViewIndex.VIEW_NUMBER];
+
+    public Flip3DStateMachine(final int id) {
+        this.id = id;
+    }
+
+    /**
+     * Get Id of the state.
+     *
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Called (without lock held) when flipping is started. Either on click or
+     * when forced (and previously set on the other side). It will not be
+     * triggered when forced and it is either on correct side or still
+     * flipping.
+     *
+     * @param startingSide
+     *            starting side of flipping (0 - FRONT, 1- BACK)
+     * @param manuallyTriggered
+     *            true when flipped manually and not forced to flip
+     */
+    protected void onStartedFlipping(final int startingSide, final boolean manuallyTriggered) {
+        // do nothing
+    }
+
+    /**
+     * Called (without lock held) when flipping is finally finished.
+     *
+     * @param endingSide
+     *            ending side of flipping (0 - FRONT, 1- BACK)
+     * @param manuallyTriggered
+     *            true when flipped manually and not forced to flip
+     */
+    protected void onFinishedFlipping(final int endingSide, final boolean manuallyTriggered) {
+        // do nothing
+    }
+
+    /**
+     * Logs transition of the state. Does nothing by default.
+     *
+     * @param message
+     *            message to log
+     * @param viewIndex
+     *            side the message refers to
+     */
+    protected void log(final String message, final int viewIndex) {
+        // do nothing
+    }
+
+    /**
+     * Sets executor used to dispatch events. By default (null) events are
+     * dispatched in the calling thread, right after the state transition.
+     *
+     * @param eventExecutor
+     *            executor (null to dispatch directly)
+     */
+    public synchronized void setEventExecutor(final Executor eventExecutor) {
+        this.eventExecutor = eventExecutor;
+    }
+
+    /**
+     * Sets store where side of the state is written every time flipping is
+     * finished.
+     *
+     * @param sideStore
+     *            store to use (null to stop storing)
+     */
+    public synchronized void setSideStore(final Flip3DSideStore sideStore) {
+        this.sideStore = sideStore;
+    }
+
+    public synchronized Flip3DSideStore getSideStore() {
+        return sideStore;
+    }
+
+    public synchronized int getCurrentViewIndex() {
+        return currentViewIndex;
+    }
+
+    public synchronized int getTargetViewIndex() {
+        return targetViewIndex;
+    }
+
+    public synchronized boolean isFlipping() {
+        return flipping;
+    }
+
+    public synchronized boolean isBeingForced() {
+        return beingForced;
+    }
+
+    public synchronized void setCurrentViewIndex(final int currentViewIndex) {
+        this.currentViewIndex = currentViewIndex;
+    }
+
+    public synchronized void setTargetViewIndex(final int targetViewIndex) {
+        this.targetViewIndex = targetViewIndex;
+    }
+
+    public synchronized void setFlipping(final boolean flipping) {
+        this.flipping = flipping;
+        final Flip3DRenderer renderer = getRenderer();
+        if (renderer != null) {
+            renderer.setFlipping(flipping);
+        }
+    }
+
+    public synchronized void setBeingForced(final boolean beingForced) {
+        this.beingForced = beingForced;
+    }
+
+    /**
+     * Sets whether clicking the side flips it. A side which is not clickable
+     * is still displayed, but clicks on it are ignored - it can only be
+     * flipped by forcing.
+     *
+     * @param viewIndex
+     *            side (0 - FRONT, 1 - BACK)
+     * @param clickable
+     *            whether the side is clickable
+     */
+    public synchronized void setSideClickable(final int viewIndex, final boolean clickable) {
+        clickBlocked[viewIndex] = !clickable;
+        final Flip3DRenderer renderer = getRenderer();
+        if (renderer != null && !flipping && currentViewIndex == viewIndex) {
+            renderer.setViewClickability(viewIndex, clickable);
+        }
+    }
+
+    public synchronized boolean isSideClickable(final int viewIndex) {
+        return !clickBlocked[viewIndex];
+    }
+
+    /**
+     * Shows current side on the renderer and enables clicks on it unless
+     * blocked.
+     */
+    private synchronized void enableCurrentSide(final Flip3DRenderer renderer) {
+        renderer.setViewClickability(currentViewIndex, true);
+        if (clickBlocked[currentViewIndex]) {
+            renderer.setViewClickability(currentViewIndex, false);
+        }
+    }
+
+    public synchronized Flip3DRenderer getRenderer() {
+        return rendererReference == null ? null : rendererReference.get();
+    }
+
+    /**
+     * Detaches renderer which has been garbage collected - flipping it was
+     * doing is treated as finished.
+     */
+    private synchronized void releaseCollectedRenderer() {
+        if (rendererReference != null && rendererReference.get() == null) {
+            log("Renderer collected - detaching at ", currentViewIndex);
+            setRendererInternal(null);
+        }
+    }
+
+    /**
+     * Attaches renderer to the state (or detaches when null). Flipping in
+     * progress on the previous renderer is treated as finished.
+     *
+     * @param renderer
+     *            renderer to attach
+     */
+    public void setRenderer(final Flip3DRenderer renderer) {
+        setRendererInternal(renderer);
+        dispatchPendingEvents();
+    }
+
+    protected synchronized void setRendererInternal(final Flip3DRenderer renderer) {
+        if (rendererReference != null) {
+            this.currentViewIndex = targetViewIndex;
+            if (flipping) {
+                setStateAfterFlippingFinished(!beingForced);
+            }
+        }
+        this.targetViewIndex = currentViewIndex;
+        this.flipping = false;
+        this.beingForced = false;
+        this.rendererReference = renderer == null ? null : new WeakReference<Flip3DRenderer>(renderer);
+        if (renderer != null) {
+            renderer.initializeViewState(currentViewIndex);
+            enableCurrentSide(renderer);
+        }
+    }
+
+    /**
+     * Restores side without animation and without notifying about flipping.
+     * Used when the state is recreated (for example after configuration
+     * change).
+     *
+     * @param viewIndex
+     *            side to restore (0 - FRONT, 1 - BACK)
+     */
+    public synchronized void restoreViewIndex(final int viewIndex) {
+        log("Restoring ", viewIndex);
+        releaseCollectedRenderer();
+        final Flip3DRenderer renderer = getRenderer();
+        if (flipping && renderer != null) {
+            renderer.clearAllAnimations();
+        }
+        this.currentViewIndex = viewIndex;
+        this.targetViewIndex = viewIndex;
+        this.flipping = false;
+        this.beingForced = false;
+        if (renderer != null) {
+            renderer.setFlipping(false);
+            renderer.initializeViewState(viewIndex);
+            enableCurrentSide(renderer);
+        }
+    }
+
+    /**
+     * Flips to the other side as if the view was clicked.
+     */
+    public void flipManually() {
+        synchronized (this) {
+            releaseCollectedRenderer();
+            targetViewIndex = ViewIndex.getTheOtherViewIndex(currentViewIndex);
+            startRotationToTheOtherSide(true, true);
+        }
+        dispatchPendingEvents();
+    }
+
+    /**
+     * Force specified side with animation (only does animation if needed - if
+     * already in desired state, does nothing).
+     *
+     * @param viewIndex
+     *            index to which
+     */
+    public void forceFlipTo(final int viewIndex) {
+        forceFlipToInternal(viewIndex);
+        dispatchPendingEvents();
+    }
+
+    private synchronized void forceFlipToInternal(final int viewIndex) {
+        releaseCollectedRenderer();
+        if (beingForced) {
+            log("Already forced to ", targetViewIndex);
+            return;
+        }
+        log("Forcing move to ", viewIndex);
+        targetViewIndex = viewIndex;
+        if (flipping) {
+            log("Already flipping. Set target to ", viewIndex);
+            beingForced = true;
+        } else if (currentViewIndex == targetViewIndex) {
+            log("Already in the right state: ", viewIndex);
+        } else {
+            log("Not flipping but need to flip back to ", viewIndex);
+            beingForced = true;
+            startRotationToTheOtherSide(true, false);
+        }
+    }
+
+    /**
+     * Renderer (animation or other means) should use it in order to notify
+     * that flipping of one side has finished.
+     *
+     * @param newStateIndex
+     *            index to which we just flipped
+     */
+    protected void sideFlippingEnded(final int newStateIndex) {
+        oneSideFlippingEnded(newStateIndex);
+        dispatchPendingEvents();
+    }
+
+    private synchronized void oneSideFlippingEnded(final int newStateIndex) {
+        log("Ended flipping to ", newStateIndex);
+        currentViewIndex = newStateIndex;
+        setFlipping(false);
+        if (beingForced) {
+            if (targetViewIndex == newStateIndex || getRenderer() == null) {
+                beingForced = false;
+                setStateAfterFlippingFinished(false);
+            } else {
+                log("Flipping back, forcibly to ", targetViewIndex);
+                startRotationToTheOtherSide(false, false);
+            }
+        } else {
+            setStateAfterFlippingFinished(true);
+        }
+    }
+
+    /**
+     * Set state after we know that flipping has actually been finished
+     * (finally).
+     *
+     * @param manuallyTriggered
+     *            if the flip has been manually triggered
+     */
+    private synchronized void setStateAfterFlippingFinished(final boolean manuallyTriggered) {
+        log(manuallyTriggered ? "<Manual>: Flipping finished to " : "<Forced>: Flipping finished to ",
+                targetViewIndex);
+        currentViewIndex = targetViewIndex;
+        final Flip3DRenderer renderer = getRenderer();
+        if (renderer != null) {
+            renderer.requestViewIndexFocus(currentViewIndex);
+            enableCurrentSide(renderer);
+        }
+        if (sideStore != null) {
+            sideStore.setViewIndex(id, currentViewIndex);
+        }
+        pendingEvents.add(new FlipEvent(false, currentViewIndex, manuallyTriggered));
+    }
+
+    private synchronized void startRotationToTheOtherSide(final boolean notifyListener, final boolean manuallyTriggered) {
+        setFlipping(true);
+        final int theOtherSide = ViewIndex.getTheOtherViewIndex(currentViewIndex);
+        final Flip3DRenderer renderer = getRenderer();
+        if (notifyListener) {
+            pendingEvents.add(new FlipEvent(true, currentViewIndex, manuallyTriggered));
+        }
+        if (renderer == null) {
+            log("Renderer is null so finishing immediately to ", theOtherSide);
+            oneSideFlippingEnded(ViewIndex.getTheOtherViewIndex(targetViewIndex));
+        } else {
+            renderer.setViewClickability(currentViewIndex, false);
+            renderer.startRotation(currentViewIndex, createSideFlippedCallback(theOtherSide));
+        }
+    }
+
+    /**
+     * Creates callback the renderer runs when rotation to the side given has
+     * finished.
+     *
+     * @param newStateViewIndex
+     *            side to which renderer rotates
+     * @return the callback
+     */
+    protected Runnable createSideFlippedCallback(final int newStateViewIndex) {
+        return new SideFlipped(newStateViewIndex);
+    }
+
+    /**
+     * Detaches renderer in case it is owned by the state. Rotation in progress
+     * is cancelled and the renderer stops blocking clicks, so that it can be
+     * reused for another state.
+     *
+     * @param detachedRenderer
+     *            renderer to detach
+     */
+    public synchronized void detachRenderer(final Flip3DRenderer detachedRenderer) {
+        if (flipping) {
+            detachedRenderer.clearAllAnimations();
+            detachedRenderer.setFlipping(false);
+        }
+    }
+
+    /**
+     * Dispatches events collected during state transition. Does nothing when
+     * called while holding the state lock (renderer finishing rotation
+     * synchronously) - the outer call dispatches the events after the lock is
+     * released. If called while events are being dispatched (listener
+     * flipping the same state), new events are appended to the queue and
+     * dispatched by the outer call.
+     */
+    protected void dispatchPendingEvents() {
+        if (Thread.holdsLock(this)) {
+            return;
+        }
+        final Executor executor;
+        synchronized (this) {
+            if (dispatching || pendingEvents.isEmpty()) {
+                return;
+            }
+            dispatching = true;
+            executor = eventExecutor;
+        }
+        if (executor == null) {
+            dispatchEventsNow();
+        } else {
+            executor.execute(dispatchEvents);
+        }
+    }
+
+    private void dispatchEventsNow() {
+        try {
+            FlipEvent event = pollPendingEvent();
+            while (event != null) {
+                if (event.started) {
+                    onStartedFlipping(event.side, event.manuallyTriggered);
+                } else {
+                    onFinishedFlipping(event.side, event.manuallyTriggered);
+                }
+                event = pollPendingEvent();
+            }
+        } catch (final RuntimeException e) {
+            synchronized (this) {
+                dispatching = false;
+            }
+            throw e;
+        }
+    }
+
+    private synchronized FlipEvent pollPendingEvent() {
+        if (pendingEvents.isEmpty()) {
+            dispatching = false;
+            return null;
+        }
+        return pendingEvents.remove(0);
+    }
+}
@@ -4,15 +4,25 @@ import java.util.Arrays;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Camera;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
 import android.graphics.drawable.AnimationDrawable;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
-import android.view.animation.AccelerateInterpolator;
+import android.view.animation.Animation;
 import android.view.animation.Animation.AnimationListener;
+import android.view.animation.Transformation;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
@@ -21,7 +31,7 @@ import android.widget.ImageView.ScaleType;
  * Views that can be swapped on click in 3D animation mode.
  * 
  */
-public class Flip3DView extends FrameLayout {
+public class Flip3DView extends FrameLayout implements Flip3DRenderer {
 
     private static final int IMAGE_VIEW_ID = 1;
 
@@ -36,6 +46,17 @@ public class Flip3DView extends FrameLayout {
 
     private static final ScaleType DEFAULT_SCALE_TYPE = ScaleType.FIT_CENTER;
 
+    /**
+     * Flipping animated with view animations (see {@link ViewAnimationBackend}).
+     */
+    public static final int ANIMATION_BACKEND_VIEW_ANIMATION = 0;
+
+    /**
+     * Flipping animated with rotation property (see
+     * {@link PropertyAnimationBackend}).
+     */
+    public static final int ANIMATION_BACKEND_PROPERTY = 1;
+
     private final FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(
             LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT);
 
@@ -55,12 +76,120 @@ public class Flip3DView extends FrameLayout {
     private int backToFront = DEFAULT_BACK_TO_FRONT;
     private int internalMargin = DEFAULT_INTERNAL_MARGIN;
     private ScaleType imageScaleType = DEFAULT_SCALE_TYPE;
+    private int displayedViewIndex = ViewIndex.FRONT_VIEW;
+    private Flip3DAnimationBackend animationBackend = new ViewAnimationBackend();
+    private boolean skipInvisibleFlips = true;
+    private final Rect visibleRect = new Rect();
+    private Flip3DQualityMonitor qualityMonitor;
+    private Flip3DAnimationBackend crossFadeBackend;
+    private boolean flipping = false;
+    private boolean clickInProgress = false;
+    private Flip3DFaceCache faceCache;
+    private final int[] faceResources = new int[ViewIndex.VIEW_NUMBER];
+    private final Bitmap[] faceBitmaps = new Bitmap[ViewIndex.VIEW_NUMBER];
+    // faces of the old size still shown until the new ones are loaded
+    private final Bitmap[] staleFaceBitmaps = new Bitmap[ViewIndex.VIEW_NUMBER];
+    private volatile boolean attached = false;
+    private Flip3DFaceAnimationManager faceAnimationManager;
+    private int rotationStartViewIndex = ViewIndex.FRONT_VIEW;
+    private Flip3DFaceInflater faceInflater;
+    private final int[] faceLayouts = new int[ViewIndex.VIEW_NUMBER];
+    private final int[] requestedFaceLayouts = new int[ViewIndex.VIEW_NUMBER];
+    private final FaceBinder[] faceBinders = new FaceBinder[ViewIndex.VIEW_NUMBER];
+    private final FrameLayout[] inflatedFaces = new FrameLayout[ViewIndex.VIEW_NUMBER];
+    private final int[] inflatedFaceLayouts = new int[ViewIndex.VIEW_NUMBER];
+    private final FrameLayout[] pendingFaces = new FrameLayout[ViewIndex.VIEW_NUMBER];
+    private final FrameLayout[] placeholders = new FrameLayout[ViewIndex.VIEW_NUMBER];
+    private final boolean[] clickEnabled = new boolean[ViewIndex.VIEW_NUMBER];
+    private int placeholderColor = Color.LTGRAY;
+    private Flip3DViewState viewState;
+    private Flip3DViewState detachedViewState;
+    private Flip3DShading shading;
+    private int flipLayoutCount = 0;
+    private final Camera shadingCamera = new Camera();
+    private final Matrix shadingMatrix = new Matrix();
+
+    /**
+     * Binds data to the face inflated from layout (see
+     * {@link Flip3DView#setViewBackLayout(int, FaceBinder)}).
+     *
+     */
+    public interface FaceBinder {
+        /**
+         * Called in the UI thread when the inflated face is set on the view
+         * and every time the same layout is set again.
+         *
+         * @param flipView
+         *            the view
+         * @param viewSide
+         *            side of the face
+         * @param face
+         *            root of the inflated layout
+         */
+        void bindFace(Flip3DView flipView, int viewSide, View face);
+    }
+
+    /**
+     * Receives face of one side from the inflater.
+     */
+    private final class FaceInflated implements Flip3DFaceInflater.Callback {
+        private final int viewSide;
+
+        private FaceInflated(final int viewSide) {
+            this.viewSide = viewSide;
+        }
+
+        @Override
+        public void onFaceInflated(final int layoutResId,
+                final FrameLayout face) {
+            faceInflated(viewSide, layoutResId, face);
+        }
+    }
+
+    private final FaceInflated[] faceInflatedCallbacks = {
+            new FaceInflated(ViewIndex.FRONT_VIEW),
+            new FaceInflated(ViewIndex.BACK_VIEW) };
+
+    private final Flip3DFaceCache.Holder faceHolder = new Flip3DFaceCache.Holder() {
+        @Override
+        public boolean isHolderAttached() {
+            return attached;
+        }
+
+        @Override
+        public void onFaceEvicted(final Bitmap face) {
+            for (int i = 0; i < faceBitmaps.length; i++) {
+                if (faceBitmaps[i] == face || staleFaceBitmaps[i] == face) { // NOPMD - identity intended
+                    faceBitmaps[i] = null;
+                    staleFaceBitmaps[i] = null;
+                    final ImageView imageView = getImageView(i);
+                    if (imageView != null) {
+                        stopFaceAnimation(i);
+                        imageView.setImageDrawable(null);
+                    }
+                }
+            }
+        }
+    };
+
+    private final Runnable loadFaces = new Runnable() {
+        @Override
+        public void run() {
+            loadFace(ViewIndex.FRONT_VIEW);
+            loadFace(ViewIndex.BACK_VIEW);
+        }
+    };
 
     private final OnClickListener listenerDelegate = new OnClickListener() {
         @Override
         public void onClick(final View v) {
             if (listener != null) {
-                listener.onClick(v);
+                clickInProgress = true;
+                try {
+                    listener.onClick(v);
+                } finally {
+                    clickInProgress = false;
+                }
             }
         }
     };
@@ -143,17 +272,29 @@ public class Flip3DView extends FrameLayout {
     }
 
     private synchronized void parseImageAttributes(final TypedArray a) {
-        final Drawable front = a.getDrawable(R.styleable.Flip3DView_src_front);
-        if (front != null) {
+        final int frontResId = a.getResourceId(
+                R.styleable.Flip3DView_src_front, 0);
+        final Drawable front = frontResId == 0 ? a
+                .getDrawable(R.styleable.Flip3DView_src_front) : null;
+        if (frontResId != 0) {
+            setImageResource(ViewIndex.FRONT_VIEW, frontResId);
+        } else if (front != null) {
             setImageDrawable(ViewIndex.FRONT_VIEW, front);
         }
-        final Drawable back = a.getDrawable(R.styleable.Flip3DView_src_back);
-        if (back != null) {
+        final int backResId = a.getResourceId(R.styleable.Flip3DView_src_back,
+                0);
+        final Drawable back = backResId == 0 ? a
+                .getDrawable(R.styleable.Flip3DView_src_back) : null;
+        if (backResId != 0) {
+            setImageResource(ViewIndex.BACK_VIEW, backResId);
+        } else if (back != null) {
             setImageDrawable(ViewIndex.BACK_VIEW, back);
         }
     }
 
     private synchronized void parseOtherAttributes(final TypedArray a) {
+        setAnimationBackend(a.getInt(R.styleable.Flip3DView_animation_backend,
+                ANIMATION_BACKEND_VIEW_ANIMATION));
         animationLength = a.getInt(
                 R.styleable.Flip3DView_animation_length_millis,
                 DEFAULT_ANIMATION_LENGTH);
@@ -197,6 +338,45 @@ public class Flip3DView extends FrameLayout {
         this.backToFront = direction;
     }
 
+    /**
+     * Sets backend used to animate flipping.
+     * 
+     * <pre>
+     * Accepted values are:
+     *  0 - VIEW ANIMATION
+     *  1 - PROPERTY
+     * </pre>
+     * 
+     * @param backendType
+     *            type of the backend
+     */
+    public synchronized void setAnimationBackend(final int backendType) {
+        setAnimationBackend(backendType == ANIMATION_BACKEND_PROPERTY ? new PropertyAnimationBackend()
+                : new ViewAnimationBackend());
+    }
+
+    /**
+     * Sets backend used to animate flipping. Flipping in progress is
+     * cancelled.
+     * 
+     * @param animationBackend
+     *            the backend
+     */
+    public synchronized void setAnimationBackend(
+            final Flip3DAnimationBackend animationBackend) {
+        if (this.animationBackend == animationBackend) { // NOPMD
+            return;
+        }
+        if (this.animationBackend != null) {
+            this.animationBackend.clearAllAnimations(this);
+        }
+        this.animationBackend = animationBackend;
+    }
+
+    public synchronized Flip3DAnimationBackend getAnimationBackend() {
+        return animationBackend;
+    }
+
     /**
      * Sets layout parameters of the image view depending on the type of the
      * Drawable.
@@ -232,8 +412,14 @@ public class Flip3DView extends FrameLayout {
      */
     private synchronized void setView(final int viewSide, final FrameLayout view) {
         if (this.views[viewSide] != null) {
+            releaseAtlasFace(viewSide);
             this.removeView(this.views[viewSide]);
         }
+        if (inflatedFaces[viewSide] != null && inflatedFaces[viewSide] != view) { // NOPMD
+            getFaceInflater().recycle(inflatedFaceLayouts[viewSide],
+                    inflatedFaces[viewSide]);
+            inflatedFaces[viewSide] = null;
+        }
         this.views[viewSide] = view;
         view.setId(viewSide);
         setViewParameters(view);
@@ -262,6 +448,7 @@ public class Flip3DView extends FrameLayout {
 
     private synchronized void setInternalView(final int viewSide,
             final View view) {
+        clearFaceLayout(viewSide);
         final FrameLayout frame = (FrameLayout) inflate(getContext(),
                 R.layout.view_layout_with_padding, null);
         frame.setPadding(internalPadding, internalPadding, internalPadding,
@@ -276,46 +463,17 @@ public class Flip3DView extends FrameLayout {
                 R.layout.image_layout_with_padding, null);
         frame.setPadding(internalPadding, internalPadding, internalPadding,
                 internalPadding);
-        final ImageView imageView = new ImageView(this.getContext()) {
-            @Override
-            public void onWindowFocusChanged(final boolean hasWindowFocus) {
-                super.onWindowFocusChanged(hasWindowFocus);
-                if (getDrawable() instanceof AnimationDrawable) {
-                    final AnimationDrawable a = (AnimationDrawable) getDrawable();
-                    if (hasWindowFocus) {
-                        a.start();
-                    } else {
-                        a.stop();
-                    }
-                }
-            }
-
-            @Override
-            protected void onDetachedFromWindow() {
-                super.onDetachedFromWindow();
-                if (getDrawable() instanceof AnimationDrawable) {
-                    final AnimationDrawable a = (AnimationDrawable) getDrawable();
-                    a.stop();
-                }
-            }
-
-            @Override
-            protected void onAttachedToWindow() {
-                super.onAttachedToWindow();
-                if (getDrawable() instanceof AnimationDrawable) {
-                    final AnimationDrawable a = (AnimationDrawable) getDrawable();
-                    a.start();
-                }
-            }
-        };
+        final ImageView imageView = new ImageView(this.getContext());
         imageView.setId(IMAGE_VIEW_ID);
         imageView.setLayoutParams(new FrameLayout.LayoutParams(
                 LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT));
         imageView.setScaleType(imageScaleType);
         Log.v(TAG, "Setting scale to " + imageScaleType);
         frame.addView(imageView);
+        stopFaceAnimation(viewSide);
         setImageParameters(imageView, drawable);
         setView(viewSide, frame);
+        updateFaceAnimations();
     }
 
     /**
@@ -325,6 +483,9 @@ public class Flip3DView extends FrameLayout {
      *            drawable for front.
      */
     public synchronized void setImageFrontDrawable(final Drawable drawable) {
+        releaseFace(ViewIndex.FRONT_VIEW);
+        faceResources[ViewIndex.FRONT_VIEW] = 0;
+        clearFaceLayout(ViewIndex.FRONT_VIEW);
         setImageDrawable(ViewIndex.FRONT_VIEW, drawable);
     }
 
@@ -335,17 +496,464 @@ public class Flip3DView extends FrameLayout {
      *            drawable for back.
      */
     public synchronized void setImageBackDrawable(final Drawable drawable) {
+        releaseFace(ViewIndex.BACK_VIEW);
+        faceResources[ViewIndex.BACK_VIEW] = 0;
+        clearFaceLayout(ViewIndex.BACK_VIEW);
         setImageDrawable(ViewIndex.BACK_VIEW, drawable);
     }
 
+    /**
+     * Sets image resource for front. Bitmaps are decoded downsampled to the
+     * size of the view, within the memory budget of the face cache (see
+     * {@link #setFaceCache(Flip3DFaceCache)}).
+     * 
+     * @param resId
+     *            id of drawable resource for front
+     */
+    public synchronized void setImageFrontResource(final int resId) {
+        setImageResource(ViewIndex.FRONT_VIEW, resId);
+    }
+
+    /**
+     * Sets image resource for back. Bitmaps are decoded downsampled to the
+     * size of the view, within the memory budget of the face cache (see
+     * {@link #setFaceCache(Flip3DFaceCache)}).
+     * 
+     * @param resId
+     *            id of drawable resource for back
+     */
+    public synchronized void setImageBackResource(final int resId) {
+        setImageResource(ViewIndex.BACK_VIEW, resId);
+    }
+
+    /**
+     * Sets cache the faces set as resources are taken from. By default the
+     * cache shared by the whole application is used (see
+     * {@link Flip3DFaceCache#getDefault(Context)}).
+     * 
+     * @param faceCache
+     *            the cache
+     */
+    public synchronized void setFaceCache(final Flip3DFaceCache faceCache) {
+        releaseFace(ViewIndex.FRONT_VIEW);
+        releaseFace(ViewIndex.BACK_VIEW);
+        this.faceCache = faceCache;
+        loadFaces.run();
+    }
+
+    private Flip3DFaceCache getFaceCache() {
+        if (faceCache == null) {
+            faceCache = Flip3DFaceCache.getDefault(getContext());
+        }
+        return faceCache;
+    }
+
+    private synchronized void setImageResource(final int viewSide,
+            final int resId) {
+        releaseFace(viewSide);
+        clearFaceLayout(viewSide);
+        faceResources[viewSide] = resId;
+        loadFace(viewSide);
+    }
+
+    /**
+     * Sets layout shown on the front. The layout is inflated in the background
+     * when the front is first needed (see {@link Flip3DFaceInflater}) and a
+     * cheap placeholder is shown until then. Faces of the same layout are
+     * reused between views, so the binder should set all the data on the face.
+     * 
+     * @param layoutResId
+     *            id of layout resource for front
+     * @param binder
+     *            binds data to the inflated face (may be null)
+     */
+    public synchronized void setViewFrontLayout(final int layoutResId,
+            final FaceBinder binder) {
+        setFaceLayout(ViewIndex.FRONT_VIEW, layoutResId, binder);
+    }
+
+    /**
+     * Sets layout shown on the back. The layout is inflated in the background
+     * when the back is first needed - usually just before it is flipped to -
+     * and a cheap placeholder is shown until then. Faces of the same layout
+     * are reused between views, so the binder should set all the data on the
+     * face.
+     * 
+     * @param layoutResId
+     *            id of layout resource for back
+     * @param binder
+     *            binds data to the inflated face (may be null)
+     */
+    public synchronized void setViewBackLayout(final int layoutResId,
+            final FaceBinder binder) {
+        setFaceLayout(ViewIndex.BACK_VIEW, layoutResId, binder);
+    }
+
+    /**
+     * Sets inflater of the face layouts. By default the inflater shared by the
+     * views of the same context is used (see
+     * {@link Flip3DFaceInflater#getDefault(Context)}).
+     * 
+     * @param faceInflater
+     *            the inflater
+     */
+    public synchronized void setFaceInflater(
+            final Flip3DFaceInflater faceInflater) {
+        this.faceInflater = faceInflater;
+    }
+
+    private Flip3DFaceInflater getFaceInflater() {
+        if (faceInflater == null) {
+            faceInflater = Flip3DFaceInflater.getDefault(getContext());
+        }
+        return faceInflater;
+    }
+
+    /**
+     * Sets color of the placeholder shown until face layout is inflated.
+     * 
+     * @param placeholderColor
+     *            the color
+     */
+    public synchronized void setPlaceholderColor(final int placeholderColor) {
+        this.placeholderColor = placeholderColor;
+        for (final FrameLayout placeholder : placeholders) {
+            if (placeholder != null) {
+                placeholder.setBackgroundDrawable(new ColorDrawable(
+                        placeholderColor));
+            }
+        }
+    }
+
+    /**
+     * Starts inflation of face layouts of both sides, so that they are ready
+     * before they are needed.
+     */
+    public synchronized void prefetchFaces() {
+        requestFace(ViewIndex.FRONT_VIEW);
+        requestFace(ViewIndex.BACK_VIEW);
+    }
+
+    private synchronized void setFaceLayout(final int viewSide,
+            final int layoutResId, final FaceBinder binder) {
+        faceBinders[viewSide] = binder;
+        if (faceLayouts[viewSide] == layoutResId
+                && (inflatedFaces[viewSide] != null || pendingFaces[viewSide] != null)) {
+            bindFace(viewSide);
+            return;
+        }
+        releaseFace(viewSide);
+        faceResources[viewSide] = 0;
+        clearFaceLayout(viewSide);
+        faceLayouts[viewSide] = layoutResId;
+        showPlaceholder(viewSide);
+        if (displayedViewIndex == viewSide) {
+            requestFace(viewSide);
+        }
+    }
+
+    private synchronized void clearFaceLayout(final int viewSide) {
+        faceLayouts[viewSide] = 0;
+        if (pendingFaces[viewSide] != null) {
+            getFaceInflater().recycle(inflatedFaceLayouts[viewSide],
+                    pendingFaces[viewSide]);
+            pendingFaces[viewSide] = null;
+        }
+    }
+
+    private synchronized void showPlaceholder(final int viewSide) {
+        if (views[viewSide] == placeholders[viewSide]) { // NOPMD
+            return;
+        }
+        if (placeholders[viewSide] == null) {
+            placeholders[viewSide] = new FrameLayout(getContext());
+            placeholders[viewSide].setBackgroundDrawable(new ColorDrawable(
+                    placeholderColor));
+        }
+        stopFaceAnimation(viewSide);
+        replaceSide(viewSide, placeholders[viewSide]);
+    }
+
+    /**
+     * Replaces side keeping its visibility and clickability.
+     */
+    private synchronized void replaceSide(final int viewSide,
+            final FrameLayout frame) {
+        final int visibility = views[viewSide].getVisibility();
+        setView(viewSide, frame);
+        frame.setVisibility(visibility);
+        setViewClickability(viewSide, clickEnabled[viewSide]);
+    }
+
+    private synchronized void requestFace(final int viewSide) {
+        final int layoutResId = faceLayouts[viewSide];
+        if (layoutResId == 0 || requestedFaceLayouts[viewSide] == layoutResId
+                || views[viewSide] != placeholders[viewSide] // NOPMD
+                || pendingFaces[viewSide] != null) {
+            return;
+        }
+        requestedFaceLayouts[viewSide] = layoutResId;
+        getFaceInflater().inflate(layoutResId,
+                faceInflatedCallbacks[viewSide]);
+    }
+
+    private synchronized void faceInflated(final int viewSide,
+            final int layoutResId, final FrameLayout face) {
+        if (requestedFaceLayouts[viewSide] == layoutResId) {
+            requestedFaceLayouts[viewSide] = 0;
+        }
+        if (faceLayouts[viewSide] != layoutResId
+                || views[viewSide] != placeholders[viewSide] // NOPMD
+                || pendingFaces[viewSide] != null) {
+            getFaceInflater().recycle(layoutResId, face);
+            return;
+        }
+        face.setPadding(internalPadding, internalPadding, internalPadding,
+                internalPadding);
+        inflatedFaceLayouts[viewSide] = layoutResId;
+        if (flipping) {
+            // sides are not replaced under running animation
+            pendingFaces[viewSide] = face;
+        } else {
+            applyFace(viewSide, face);
+        }
+    }
+
+    private synchronized void applyFace(final int viewSide,
+            final FrameLayout face) {
+        replaceSide(viewSide, face);
+        inflatedFaces[viewSide] = face;
+        bindFace(viewSide);
+    }
+
+    private synchronized void bindFace(final int viewSide) {
+        final FrameLayout face = inflatedFaces[viewSide];
+        if (faceBinders[viewSide] != null && face != null
+                && face.getChildCount() > 0) {
+            faceBinders[viewSide].bindFace(this, viewSide, face.getChildAt(0));
+        }
+    }
+
+    private synchronized void releaseFace(final int viewSide) {
+        if (faceBitmaps[viewSide] != null) {
+            getFaceCache().release(faceHolder, faceBitmaps[viewSide]);
+            faceBitmaps[viewSide] = null;
+        }
+        releaseStaleFace(viewSide);
+    }
+
+    /**
+     * Gives back face of the old size once it is not shown any more.
+     */
+    private synchronized void releaseStaleFace(final int viewSide) {
+        final Bitmap stale = staleFaceBitmaps[viewSide];
+        staleFaceBitmaps[viewSide] = null;
+        // the same face is acquired again when resized back before loading
+        if (stale != null && stale != faceBitmaps[viewSide]) { // NOPMD - identity intended
+            getFaceCache().release(faceHolder, stale);
+        }
+    }
+
+    private synchronized void loadFace(final int viewSide) {
+        final int resId = faceResources[viewSide];
+        if (resId == 0 || faceBitmaps[viewSide] != null) {
+            return;
+        }
+        final int inset = 2 * (internalMargin + internalPadding);
+        final int width = getWidth() - inset;
+        final int height = getHeight() - inset;
+        if (width <= 0 || height <= 0) {
+            return; // loaded when the size is known
+        }
+        final Bitmap face = getFaceCache().acquire(faceHolder, resId, width,
+                height);
+        if (face == null) {
+            Log.v(TAG, "Not a bitmap - loading drawable " + resId);
+            faceResources[viewSide] = 0;
+            setImageDrawable(viewSide, getResources().getDrawable(resId));
+            releaseStaleFace(viewSide);
+            return;
+        }
+        faceBitmaps[viewSide] = face;
+        final Drawable drawable = new BitmapDrawable(getResources(), face);
+        final ImageView imageView = getImageView(viewSide);
+        if (imageView == null) {
+            setImageDrawable(viewSide, drawable);
+        } else {
+            stopFaceAnimation(viewSide);
+            releaseAtlasFace(viewSide);
+            imageView.setImageDrawable(drawable);
+            updateFaceAnimations();
+        }
+        releaseStaleFace(viewSide);
+    }
+
+    /**
+     * Gives back face taken from {@link Flip3DFaceAtlas} which is replaced.
+     */
+    private void releaseAtlasFace(final int viewSide) {
+        final ImageView imageView = getImageView(viewSide);
+        final Drawable drawable = imageView == null ? null : imageView
+                .getDrawable();
+        if (drawable instanceof Flip3DFaceAtlas.FaceDrawable) {
+            ((Flip3DFaceAtlas.FaceDrawable) drawable).release();
+        }
+    }
+
+    private ImageView getImageView(final int viewSide) {
+        final View view = views[viewSide] == null ? null : views[viewSide]
+                .findViewById(IMAGE_VIEW_ID);
+        return view instanceof ImageView ? (ImageView) view : null;
+    }
+
+    @Override
+    protected void onSizeChanged(final int w, final int h, final int oldw,
+            final int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        for (int i = 0; i < faceBitmaps.length; i++) {
+            // still shown - kept acquired until the face of the new size is
+            // set, so that the cache cannot recycle or reuse it meanwhile
+            if (faceBitmaps[i] != null) {
+                releaseStaleFace(i);
+                staleFaceBitmaps[i] = faceBitmaps[i];
+                faceBitmaps[i] = null;
+            }
+        }
+        // not in the middle of layout
+        post(loadFaces);
+    }
+
+    /**
+     * Returns state the view is attached to.
+     * 
+     * @return the state or null if not attached
+     */
+    public synchronized Flip3DViewState getViewState() {
+        return viewState;
+    }
+
+    /**
+     * Called by the state when the view is attached to it or detached from it.
+     * 
+     * @param viewState
+     *            the state (null when detached)
+     */
+    synchronized void setViewState(final Flip3DViewState viewState) {
+        this.viewState = viewState;
+        this.detachedViewState = null;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        final Flip3DViewState state;
+        synchronized (this) {
+            state = detachedViewState;
+            detachedViewState = null;
+        }
+        // re-attached without being bound again - take the state back
+        if (state != null && state.getRenderer() == null) {
+            state.setView(this);
+        }
+        attached = true;
+        // faces might have been evicted while detached
+        post(loadFaces);
+        updateFaceAnimations();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // state lock is taken before the view lock - never the other way
+        final Flip3DViewState state = getViewState();
+        if (state != null) {
+            state.detachView(this);
+            synchronized (this) {
+                detachedViewState = state;
+            }
+        }
+        attached = false;
+        removeCallbacks(loadFaces);
+        updateFaceAnimations();
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(final int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateFaceAnimations();
+    }
+
+    /**
+     * Sets manager running animated faces ({@link AnimationDrawable}) of the
+     * view. By default the manager shared by the whole application is used
+     * (see {@link Flip3DFaceAnimationManager#getDefault()}).
+     * 
+     * @param faceAnimationManager
+     *            the manager
+     */
+    public synchronized void setFaceAnimationManager(
+            final Flip3DFaceAnimationManager faceAnimationManager) {
+        stopFaceAnimation(ViewIndex.FRONT_VIEW);
+        stopFaceAnimation(ViewIndex.BACK_VIEW);
+        this.faceAnimationManager = faceAnimationManager;
+        updateFaceAnimations();
+    }
+
+    private Flip3DFaceAnimationManager getFaceAnimationManager() {
+        if (faceAnimationManager == null) {
+            faceAnimationManager = Flip3DFaceAnimationManager.getDefault();
+        }
+        return faceAnimationManager;
+    }
+
+    private AnimationDrawable getFaceAnimation(final int viewSide) {
+        final ImageView imageView = getImageView(viewSide);
+        final Drawable drawable = imageView == null ? null : imageView
+                .getDrawable();
+        return drawable instanceof AnimationDrawable ? (AnimationDrawable) drawable
+                : null;
+    }
+
+    private void stopFaceAnimation(final int viewSide) {
+        final AnimationDrawable animation = getFaceAnimation(viewSide);
+        if (animation != null) {
+            getFaceAnimationManager().setRunning(animation, false);
+        }
+    }
+
+    /**
+     * Runs animated face only for the side which is seen - the visible side
+     * when not flipping or the incoming side while flipping - and only when
+     * the view is attached to a focused, visible window.
+     */
+    private synchronized void updateFaceAnimations() {
+        final boolean seen = attached && hasWindowFocus()
+                && getWindowVisibility() == VISIBLE;
+        final int incomingViewIndex = ViewIndex
+                .getTheOtherViewIndex(rotationStartViewIndex);
+        for (int i = ViewIndex.FRONT_VIEW; i <= ViewIndex.BACK_VIEW; i++) {
+            final AnimationDrawable animation = getFaceAnimation(i);
+            if (animation != null) {
+                final boolean sideSeen = flipping ? i == incomingViewIndex
+                        : views[i].getVisibility() == VISIBLE;
+                getFaceAnimationManager().setRunning(animation,
+                        seen && sideSeen);
+            }
+        }
+    }
+
     private synchronized void initializeViews() {
+        setStaticTransformationsEnabled(true);
+        setChildrenDrawingOrderEnabled(true);
         setImageDrawable(ViewIndex.FRONT_VIEW, new ColorDrawable(Color.BLUE));
         setImageDrawable(ViewIndex.BACK_VIEW, new ColorDrawable(Color.RED));
         setImageDrawable(ViewIndex.FOREGROUND_VIEW, new ColorDrawable(
                 Color.TRANSPARENT));
     }
 
-    protected synchronized void initializeViewState(final int currentViewIndex) {
+    @Override
+    public synchronized void initializeViewState(final int currentViewIndex) {
+        this.displayedViewIndex = currentViewIndex;
         views[ViewIndex.FOREGROUND_VIEW].setVisibility(View.INVISIBLE);
         setViewClickability(ViewIndex.FOREGROUND_VIEW, false);
         views[ViewIndex.BACK_VIEW]
@@ -358,28 +966,39 @@ public class Flip3DView extends FrameLayout {
                         : View.INVISIBLE);
         setViewClickability(ViewIndex.FRONT_VIEW,
                 currentViewIndex == ViewIndex.FRONT_VIEW);
+        requestFace(currentViewIndex);
+        updateFaceAnimations();
     }
 
+    @Override
     public synchronized void setViewClickability(final int viewIndex,
             final boolean enable) {
         final FrameLayout frameLayout = views[viewIndex];
+        clickEnabled[viewIndex] = enable;
         frameLayout.setClickable(true);
         if (enable) {
+            if (viewIndex != ViewIndex.FOREGROUND_VIEW) {
+                displayedViewIndex = viewIndex;
+            }
             if (viewIndex == ViewIndex.FOREGROUND_VIEW) {
                 // always ignore clicks on foreground view
                 frameLayout.setOnClickListener(clickHidingListener);
             } else {
                 frameLayout.setOnClickListener(listenerDelegate);
             }
-            frameLayout.bringToFront();
-            frameLayout.requestFocus();
+            // the side is brought to front by the drawing order - no layout
+            invalidate();
         } else {
             frameLayout.setOnClickListener(clickHidingListener);
         }
     }
 
+    @Override
     public void requestViewIndexFocus(final int viewIndex) {
-        views[viewIndex].requestFocus();
+        // focus follows the displayed side only when the view has it already
+        if (hasFocus()) {
+            views[viewIndex].requestFocus();
+        }
     }
 
     /**
@@ -391,31 +1010,272 @@ public class Flip3DView extends FrameLayout {
     public synchronized void startRotation(final int currentViewIndex) {
         final int direction = currentViewIndex == ViewIndex.FRONT_VIEW ? frontToBack
                 : backToFront;
+        rotationStartViewIndex = currentViewIndex;
+        requestFace(ViewIndex.getTheOtherViewIndex(currentViewIndex));
         setFlipping(true);
-        final float centerX = getWidth() / 2.0f;
-        final float centerY = getHeight() / 2.0f;
-        final Flip3DAnimation rotation = new Flip3DAnimation(0,
-                RotationDirection.getMultiplier(direction) * 90, centerX,
-                centerY);
-        rotation.setDuration(animationLength);
-        rotation.setFillAfter(true);
-        rotation.setInterpolator(new AccelerateInterpolator());
-        rotation.setAnimationListener(new GetToTheMiddleOfFlipping(
-                currentViewIndex, views, animationLength, direction,
-                finishFlippingListener));
-        views[currentViewIndex].startAnimation(rotation);
+        final int quality = qualityMonitor == null ? Flip3DQuality.FULL
+                : qualityMonitor.getQuality();
+        final long length = qualityMonitor == null ? animationLength
+                : qualityMonitor.getAnimationLength(animationLength);
+        if (skipInvisibleFlips && !isVisibleOnScreen()) {
+            Log.v(TAG, "Not visible - finishing flipping immediately");
+            final int theOtherViewIndex = ViewIndex
+                    .getTheOtherViewIndex(currentViewIndex);
+            views[currentViewIndex].setVisibility(INVISIBLE);
+            views[theOtherViewIndex].setVisibility(VISIBLE);
+            if (finishFlippingListener != null) {
+                finishFlippingListener.onAnimationEnd(null);
+            }
+            return;
+        }
+        if (quality == Flip3DQuality.MINIMAL && !clickInProgress
+                && !hasFocus()) {
+            if (crossFadeBackend == null) {
+                crossFadeBackend = new CrossFadeAnimationBackend();
+            }
+            crossFadeBackend.startRotation(this, currentViewIndex, direction,
+                    length, finishFlippingListener);
+            return;
+        }
+        animationBackend.startRotation(this, currentViewIndex, direction,
+                length, finishFlippingListener);
+    }
+
+    /**
+     * Enables adaptive quality - flips get shorter and cheaper when frames are
+     * drawn too slowly (see {@link Flip3DQualityMonitor}). The monitor should
+     * be shared by all the views which flip together.
+     * 
+     * @param qualityMonitor
+     *            monitor to use (null to always flip in full quality)
+     */
+    public synchronized void setQualityMonitor(
+            final Flip3DQualityMonitor qualityMonitor) {
+        this.qualityMonitor = qualityMonitor;
+    }
+
+    /**
+     * Sets shading of the rotating side (see {@link Flip3DShading}). The
+     * shading should be shared by all the views.
+     * 
+     * @param shading
+     *            shading to use (null for none - the default)
+     */
+    public synchronized void setShading(final Flip3DShading shading) {
+        this.shading = shading;
+        invalidate();
+    }
+
+    public synchronized Flip3DShading getShading() {
+        return shading;
+    }
+
+    @Override
+    protected boolean drawChild(final Canvas canvas, final View child,
+            final long drawingTime) {
+        final boolean more = super.drawChild(canvas, child, drawingTime);
+        final Flip3DShading currentShading = shading;
+        if (currentShading == null || !flipping
+                || child.getVisibility() != VISIBLE) {
+            return more;
+        }
+        // rotation is known only after the side is drawn in this frame
+        final float degrees = animationBackend.getChildRotation(this, child);
+        if (Float.isNaN(degrees)) {
+            return more;
+        }
+        final int saveCount = canvas.save();
+        canvas.translate(child.getLeft(), child.getTop());
+        Flip3DAnimation.applyRotation(shadingCamera, degrees,
+                child.getWidth() / 2.0f, child.getHeight() / 2.0f,
+                shadingMatrix);
+        canvas.concat(shadingMatrix);
+        currentShading.draw(canvas, degrees, child.getWidth(),
+                child.getHeight());
+        canvas.restoreToCount(saveCount);
+        return more;
+    }
+
+    @Override
+    protected void dispatchDraw(final Canvas canvas) {
+        super.dispatchDraw(canvas);
+        final Flip3DQualityMonitor monitor = qualityMonitor;
+        if (flipping && monitor != null) {
+            monitor.onFrame(getDrawingTime());
+        }
+    }
+
+    /**
+     * Checks if the view is actually visible to the user - shown, in a visible
+     * window and with some part of it on the screen.
+     * 
+     * @return true if visible
+     */
+    public boolean isVisibleOnScreen() {
+        return getWindowVisibility() == VISIBLE && isShown()
+                && getGlobalVisibleRect(visibleRect);
+    }
+
+    /**
+     * Sets whether flips of views which are not visible on screen should be
+     * finished immediately, without animation (true by default).
+     * 
+     * @param skipInvisibleFlips
+     *            whether to skip animation of invisible views
+     */
+    public synchronized void setSkipInvisibleFlips(
+            final boolean skipInvisibleFlips) {
+        this.skipInvisibleFlips = skipInvisibleFlips;
+    }
+
+    @Override
+    public void onWindowFocusChanged(final boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        animationBackend.setPaused(this, !hasWindowFocus);
+        updateFaceAnimations();
     }
 
+    @Override
+    protected boolean getChildStaticTransformation(final View child,
+            final Transformation t) {
+        return animationBackend.getChildTransformation(this, child, t);
+    }
+
+    /**
+     * Starts rotation according to direction and runs the callback when
+     * finished.
+     * 
+     * @param currentViewIndex
+     *            starting index of view which to animate
+     * @param finishFlipping
+     *            run when flipping is finished
+     */
+    @Override
+    public synchronized void startRotation(final int currentViewIndex,
+            final Runnable finishFlipping) {
+        if (finishFlipping instanceof AnimationListener) {
+            setFinishFlippingListener((AnimationListener) finishFlipping);
+        } else {
+            setFinishFlippingListener(new AnimationListener() {
+                @Override
+                public void onAnimationStart(final Animation animation) {
+                    // do nothing
+                }
+
+                @Override
+                public void onAnimationEnd(final Animation animation) {
+                    finishFlipping.run();
+                }
+
+                @Override
+                public void onAnimationRepeat(final Animation animation) {
+                    // do nothing
+                }
+            });
+        }
+        startRotation(currentViewIndex);
+    }
+
+    @Override
     public synchronized void setFlipping(final boolean flipping) {
-        final View foregroundView = views[ViewIndex.FOREGROUND_VIEW];
+        // clicks are blocked by intercepting touches while flipping - no
+        // view is shown, hidden or reordered, so flipping needs no layout
+        this.flipping = flipping;
+        if (!flipping) {
+            applyPendingFaces();
+        }
+        updateFaceAnimations();
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(final MotionEvent ev) {
+        return isFlipping() || super.onInterceptTouchEvent(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(final MotionEvent event) {
+        if (isFlipping()) {
+            if (event.getAction() == MotionEvent.ACTION_UP) {
+                Log.d(TAG, "Click ignored while flipping");
+            }
+            return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private synchronized boolean isFlipping() {
+        return flipping;
+    }
+
+    @Override
+    protected int getChildDrawingOrder(final int childCount, final int i) {
+        // other side, displayed side, foreground - whatever the child order
+        int drawn = 0;
+        for (int rank = 0; rank <= 2; rank++) {
+            for (int child = 0; child < childCount; child++) {
+                if (getDrawingRank(getChildAt(child)) == rank) {
+                    if (drawn == i) {
+                        return child;
+                    }
+                    drawn++;
+                }
+            }
+        }
+        return i;
+    }
+
+    private int getDrawingRank(final View child) {
+        if (child == views[ViewIndex.FOREGROUND_VIEW]) { // NOPMD
+            return 2;
+        }
+        return child == views[displayedViewIndex] ? 1 : 0; // NOPMD
+    }
+
+    @Override
+    public void requestLayout() {
+        super.requestLayout();
         if (flipping) {
-            // make sure the view is taking over all the clicks
-            setViewClickability(ViewIndex.FOREGROUND_VIEW, true);
-            foregroundView.setVisibility(VISIBLE);
-            foregroundView.bringToFront();
-        } else {
-            setViewClickability(ViewIndex.FOREGROUND_VIEW, false);
-            foregroundView.setVisibility(GONE);
+            flipLayoutCount++;
+        }
+    }
+
+    @Override
+    protected void onLayout(final boolean changed, final int left,
+            final int top, final int right, final int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        if (flipping) {
+            flipLayoutCount++;
+        }
+    }
+
+    /**
+     * Returns number of layout requests and layout passes of the view (and
+     * its sides) while it was flipping, since the counter was reset. Flipping
+     * itself does not need any layout, so it stays zero unless the content is
+     * changed during flipping. Meant for tests and instrumentation - called
+     * in the UI thread.
+     * 
+     * @return number of layout requests and passes
+     */
+    public int getFlipLayoutCount() {
+        return flipLayoutCount;
+    }
+
+    /**
+     * Resets counter of layouts during flipping (see
+     * {@link #getFlipLayoutCount()}).
+     */
+    public void resetFlipLayoutCount() {
+        flipLayoutCount = 0;
+    }
+
+    private synchronized void applyPendingFaces() {
+        for (int i = ViewIndex.FRONT_VIEW; i <= ViewIndex.BACK_VIEW; i++) {
+            final FrameLayout face = pendingFaces[i];
+            if (face != null) {
+                pendingFaces[i] = null;
+                applyFace(i, face);
+            }
         }
     }
 
@@ -448,17 +1308,90 @@ public class Flip3DView extends FrameLayout {
                 + ", listener=" + listener + "]";
     }
 
+    @Override
+    protected synchronized Parcelable onSaveInstanceState() {
+        final SavedState savedState = new SavedState(
+                super.onSaveInstanceState());
+        savedState.displayedViewIndex = displayedViewIndex;
+        return savedState;
+    }
+
+    @Override
+    protected synchronized void onRestoreInstanceState(
+            final Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        final SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        if (viewState != null) {
+            // the state restores the view and knows which side is displayed
+            viewState.restoreViewIndex(savedState.displayedViewIndex);
+            return;
+        }
+        clearAllAnimations();
+        setFlipping(false);
+        initializeViewState(savedState.displayedViewIndex);
+    }
+
+    /**
+     * Saved state of the view - stores side which is displayed.
+     *
+     */
+    static class SavedState extends BaseSavedState {
+        private int displayedViewIndex;
+
+        SavedState(final Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(final Parcel in) {
+            super(in);
+            displayedViewIndex = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(final Parcel out, final int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(displayedViewIndex);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = // NOPMD
+        new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(final Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(final int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
     /**
      * Cancels all animations running for the view.
      */
+    @Override
     public synchronized void clearAllAnimations() {
-        for (int i = 0; i < ViewIndex.VIEW_NUMBER; i++) {
-            if (views[i] != null) {
-                views[i].clearAnimation();
-            }
+        animationBackend.clearAllAnimations(this);
+        if (crossFadeBackend != null) {
+            crossFadeBackend.clearAllAnimations(this);
         }
     }
 
+    /**
+     * Returns all the views (front, back, foreground) - for the animation
+     * backends.
+     * 
+     * @return the views
+     */
+    FrameLayout[] getViews() {
+        return views;
+    }
+
     /**
      * Returns view of a given index.
      * 
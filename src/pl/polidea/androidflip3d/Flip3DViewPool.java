@@ -0,0 +1,179 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View.MeasureSpec;
+
+/**
+ * Pool of {@link Flip3DView}s created in advance, while the main thread is
+ * idle. Creating a flip view (parsing attributes, inflating the sides and
+ * creating the image views) is expensive - the pool creates and measures one
+ * view at each idle moment of the main thread, so that the adapter
+ * ({@link AbstractGridFlip3DImageAdapter#setViewPool(Flip3DViewPool)}) takes
+ * ready views instead of creating them during layout. Views are created in
+ * the main thread only, as views cannot be created in the background on
+ * Android. Pooled views hold the context they were created with - scope the
+ * pool to the activity whose context the factory uses and clear it when the
+ * activity is destroyed.
+ * 
+ * @param <FlipView>
+ *            type of the pooled views
+ */
+public class Flip3DViewPool<FlipView extends Flip3DView> {
+
+    /**
+     * Creates views for the pool.
+     * 
+     * @param <FlipView>
+     *            type of the views
+     */
+    public interface Factory<FlipView extends Flip3DView> {
+        /**
+         * Creates new view (called in the main thread).
+         * 
+         * @return the view
+         */
+        FlipView createView();
+    }
+
+    private final Factory<FlipView> factory;
+
+    private final List<FlipView> pooledViews = new ArrayList<FlipView>();
+
+    private int targetSize;
+
+    private int itemSize;
+
+    private boolean prewarming = false;
+
+    private int created = 0;
+
+    private int hits = 0;
+
+    private int misses = 0;
+
+    private final MessageQueue.IdleHandler prewarmHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            return prewarmOne();
+        }
+    };
+
+    /**
+     * Creates pool.
+     * 
+     * @param factory
+     *            factory of the views
+     * @param targetSize
+     *            number of views to create in advance
+     * @param itemSize
+     *            size the views are measured with in advance (0 to skip
+     *            measuring)
+     */
+    public Flip3DViewPool(final Factory<FlipView> factory, final int targetSize, final int itemSize) {
+        this.factory = factory;
+        this.targetSize = targetSize;
+        this.itemSize = itemSize;
+    }
+
+    /**
+     * Starts creating views in idle time of the main thread until there are
+     * target number of views in the pool. Must be called in the main thread.
+     */
+    public synchronized void prewarm() {
+        if (prewarming || pooledViews.size() >= targetSize) {
+            return;
+        }
+        prewarming = true;
+        Looper.myQueue().addIdleHandler(prewarmHandler);
+    }
+
+    /**
+     * Stops creating views in advance. Must be called in the main thread.
+     */
+    public synchronized void stop() {
+        if (prewarming) {
+            prewarming = false;
+            Looper.myQueue().removeIdleHandler(prewarmHandler);
+        }
+    }
+
+    private synchronized boolean prewarmOne() {
+        if (!prewarming) {
+            return false;
+        }
+        if (pooledViews.size() < targetSize) {
+            pooledViews.add(createView());
+        }
+        prewarming = pooledViews.size() < targetSize;
+        return prewarming;
+    }
+
+    private FlipView createView() {
+        final FlipView view = factory.createView();
+        created++;
+        if (itemSize > 0) {
+            final int spec = MeasureSpec.makeMeasureSpec(itemSize, MeasureSpec.EXACTLY);
+            view.measure(spec, spec);
+        }
+        return view;
+    }
+
+    /**
+     * Takes view from the pool or creates a new one if the pool is empty.
+     * 
+     * @return the view
+     */
+    public synchronized FlipView obtain() {
+        if (pooledViews.isEmpty()) {
+            misses++;
+            return createView();
+        }
+        hits++;
+        return pooledViews.remove(pooledViews.size() - 1);
+    }
+
+    /**
+     * Changes number of views created in advance and the size they are
+     * measured with.
+     * 
+     * @param targetSize
+     *            number of views
+     * @param itemSize
+     *            size of the views (0 to skip measuring)
+     */
+    public synchronized void setTargetSize(final int targetSize, final int itemSize) {
+        this.targetSize = targetSize;
+        this.itemSize = itemSize;
+        while (pooledViews.size() > targetSize) {
+            pooledViews.remove(pooledViews.size() - 1);
+        }
+    }
+
+    public synchronized int getPooledCount() {
+        return pooledViews.size();
+    }
+
+    public synchronized int getCreatedCount() {
+        return created;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Stops prewarming and drops all the pooled views.
+     */
+    public synchronized void clear() {
+        stop();
+        pooledViews.clear();
+    }
+}
@@ -1,6 +1,7 @@
 package pl.polidea.androidflip3d;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import android.util.Log;
 import android.view.View;
@@ -10,32 +11,33 @@ import android.view.animation.Animation.AnimationListener;
 /**
  * Stores state of the flip3D view. It is stored so that the view can actually
  * be detached from the information - and the views to be reused in classes like
- * gallery, list etc. - generally everywhere where views can be reused.
+ * gallery, list etc. - generally everywhere where views can be reused. The
+ * transitions themselves are implemented in {@link Flip3DStateMachine}. The
+ * state references its view weakly and the view detaches itself from the
+ * state when it is detached from the window, so states can be kept for as
+ * long as needed without keeping the views alive.
  * 
  */
-public class Flip3DViewState {
+public class Flip3DViewState extends Flip3DStateMachine {
 
     private static final String TAG = Flip3DViewState.class.getSimpleName();
 
     private final View.OnClickListener clickListener = new View.OnClickListener() {
         @Override
         public void onClick(final View view) {
-            targetViewIndex = ViewIndex.getTheOtherViewIndex(currentViewIndex);
-            startRotationToTheOtherSide(true, true);
+            flipManually();
         }
     };
 
-    private final int id;
-
     public Flip3DViewState(final int id) {
-        this.id = id;
+        super(id);
     }
 
     /**
      * Listener serving end of animation.
      * 
      */
-    public class FinishFlipping implements AnimationListener {
+    public class FinishFlipping implements AnimationListener, Runnable {
         private final int newStateViewIndex;
 
         public FinishFlipping(final int targetViewIndex) {
@@ -49,19 +51,19 @@ public class Flip3DViewState {
 
         @Override
         public void onAnimationEnd(final Animation animation) {
-            oneSideFlippingEnded(newStateViewIndex);
+            sideFlippingEnded(newStateViewIndex);
         }
 
         @Override
         public void onAnimationRepeat(final Animation animation) {
             // do nothing
         }
-    }
 
-    /**
-     * View attached to the state.
-     */
-    private Flip3DView view;
+        @Override
+        public void run() {
+            sideFlippingEnded(newStateViewIndex);
+        }
+    }
 
     /**
      * Listener to handle the flipping events.
@@ -101,189 +103,155 @@ public class Flip3DViewState {
         void onFinishedFlipping(Flip3DViewState viewState, int endingSide, boolean manuallyTriggered);
     }
 
-    private int currentViewIndex = ViewIndex.FRONT_VIEW;
-
-    private int targetViewIndex = ViewIndex.FRONT_VIEW;
-
-    private boolean flipping = false;
-
-    private boolean beingForced = false;
-
-    private Flip3DViewListener flip3dViewListener = null;
+    private final CopyOnWriteArrayList<Flip3DViewListener> listeners = new CopyOnWriteArrayList<Flip3DViewListener>();
 
+    /**
+     * Returns the first listener registered.
+     *
+     * @return listener or null if there are none
+     * @deprecated there can be more listeners, use
+     *             {@link #addFlip3DViewListener(Flip3DViewListener)}
+     */
+    @Deprecated
     public synchronized Flip3DViewListener getFlip3dViewListener() {
-        return flip3dViewListener;
+        return listeners.isEmpty() ? null : listeners.get(0);
     }
 
+    /**
+     * Replaces all listeners with the one given.
+     *
+     * @param flip3dViewListener
+     *            listener (null to remove all listeners)
+     * @deprecated use {@link #addFlip3DViewListener(Flip3DViewListener)}
+     */
+    @Deprecated
     public synchronized void setFlip3dViewListener(final Flip3DViewListener flip3dViewListener) {
-        this.flip3dViewListener = flip3dViewListener;
-    }
-
-    public synchronized int getCurrentViewIndex() {
-        return currentViewIndex;
+        listeners.clear();
+        if (flip3dViewListener != null) {
+            listeners.add(flip3dViewListener);
+        }
     }
 
-    public synchronized int getTargetViewIndex() {
-        return targetViewIndex;
+    /**
+     * Sets listener to fliping events.
+     * 
+     * @param flip3dViewListener
+     *            listener.
+     * @deprecated use {@link #addFlip3DViewListener(Flip3DViewListener)}
+     */
+    @Deprecated
+    public synchronized void setFlip3DViewListener(final Flip3DViewListener flip3dViewListener) {
+        setFlip3dViewListener(flip3dViewListener);
     }
 
-    public synchronized boolean isFlipping() {
-        return flipping;
+    /**
+     * Adds listener to flipping events. Listeners are called after the state
+     * transition is finished and without holding the state lock, so they can
+     * freely force flipping of this or other states. Use
+     * {@link #setEventExecutor(java.util.concurrent.Executor)} with
+     * {@link Flip3DBatchingExecutor} shared between many states to dispatch
+     * all events once per frame.
+     *
+     * @param flip3dViewListener
+     *            listener to add
+     */
+    public void addFlip3DViewListener(final Flip3DViewListener flip3dViewListener) {
+        listeners.addIfAbsent(flip3dViewListener);
     }
 
-    public synchronized boolean isBeingForced() {
-        return beingForced;
+    /**
+     * Removes listener of flipping events.
+     *
+     * @param flip3dViewListener
+     *            listener to remove
+     */
+    public void removeFlip3DViewListener(final Flip3DViewListener flip3dViewListener) {
+        listeners.remove(flip3dViewListener);
     }
 
-    public synchronized void setCurrentViewIndex(final int currentViewIndex) {
-        this.currentViewIndex = currentViewIndex;
+    @Override
+    protected void onStartedFlipping(final int startingSide, final boolean manuallyTriggered) {
+        for (final Flip3DViewListener listener : listeners) {
+            listener.onStartedFlipping(this, startingSide, manuallyTriggered);
+        }
     }
 
-    public synchronized void setTargetViewIndex(final int targetViewIndex) {
-        this.targetViewIndex = targetViewIndex;
+    @Override
+    protected void onFinishedFlipping(final int endingSide, final boolean manuallyTriggered) {
+        for (final Flip3DViewListener listener : listeners) {
+            listener.onFinishedFlipping(this, endingSide, manuallyTriggered);
+        }
     }
 
-    public synchronized void setFlipping(final boolean flipping) {
-        this.flipping = flipping;
-        if (view != null) {
-            view.setFlipping(flipping);
-        }
+    @Override
+    protected void log(final String message, final int viewIndex) {
+        Log.d(TAG, getId() + ": " + message + ViewIndex.getViewType(viewIndex));
     }
 
-    public synchronized void setBeingForced(final boolean beingForced) {
-        this.beingForced = beingForced;
+    @Override
+    protected Runnable createSideFlippedCallback(final int newStateViewIndex) {
+        return new FinishFlipping(newStateViewIndex);
     }
 
     public synchronized Flip3DView getView() {
-        return view;
+        final Flip3DRenderer renderer = getRenderer();
+        return renderer instanceof Flip3DView ? (Flip3DView) renderer : null;
     }
 
-    public synchronized void setView(final Flip3DView view) {
-        if (this.view != null) {
-            this.currentViewIndex = targetViewIndex;
-            if (flipping) {
-                setStateAfterFlippingFinished(!beingForced);
+    public void setView(final Flip3DView view) {
+        synchronized (this) {
+            releaseRenderer(view);
+            setRendererInternal(view);
+            if (view != null) {
+                view.setOnClickListener(clickListener);
+                view.setViewState(this);
             }
         }
-        this.targetViewIndex = currentViewIndex;
-        this.flipping = false;
-        this.beingForced = false;
-        this.view = view;
-        if (view != null) {
-            view.setOnClickListener(clickListener);
-            view.initializeViewState(currentViewIndex);
-        }
+        dispatchPendingEvents();
     }
 
     /**
-     * Force specified side of the view with animation (only does animation if
-     * needed - if view is already in desired state, does nothing).
-     * 
-     * @param viewIndex
-     *            index to which
+     * Clears references from the renderer which is replaced to the state, so
+     * that the renderer does not keep the state alive and clicks on it do not
+     * flip the state any more.
      */
-    public synchronized void forceFlipTo(final int viewIndex) {
-        if (beingForced) {
-            Log.d(TAG, id + ": Already forced to " + ViewIndex.getViewType(targetViewIndex));
+    private synchronized void releaseRenderer(final Flip3DRenderer newRenderer) {
+        final Flip3DRenderer oldRenderer = getRenderer();
+        if (oldRenderer == null || oldRenderer == newRenderer) { // NOPMD
             return;
         }
-        Log.d(TAG, id + ": Forcing move to " + ViewIndex.getViewType(viewIndex));
-        targetViewIndex = viewIndex;
-        if (flipping) {
-            Log.d(TAG, id + ": Already flipping. Set target to " + ViewIndex.getViewType(viewIndex));
-            beingForced = true;
-        } else if (currentViewIndex == targetViewIndex) {
-            Log.d(TAG, id + ": Already in the right state: " + ViewIndex.getViewType(viewIndex));
-        } else {
-            Log.d(TAG, id + ": Not flipping but need to flip back to " + ViewIndex.getViewType(viewIndex));
-            beingForced = true;
-            startRotationToTheOtherSide(true, false);
+        if (isFlipping()) {
+            oldRenderer.clearAllAnimations();
+            oldRenderer.setFlipping(false);
         }
-    }
-
-    /**
-     * Animation or other means should use it in order to notify that flipping
-     * has finished.
-     * 
-     * @param newStateIndex
-     *            index to which we just flipped
-     */
-    private synchronized void oneSideFlippingEnded(final int newStateIndex) {
-        Log.d(TAG, id + ": Ended flipping to " + ViewIndex.getViewType(newStateIndex));
-        currentViewIndex = newStateIndex;
-        setFlipping(false);
-        if (beingForced) {
-            if (targetViewIndex == newStateIndex || view == null) {
-                beingForced = false;
-                setStateAfterFlippingFinished(false);
-            } else {
-                Log.d(TAG, id + ": Flipping back, forcibly to " + ViewIndex.getViewType(targetViewIndex));
-                startRotationToTheOtherSide(false, false);
+        if (oldRenderer instanceof Flip3DView) {
+            final Flip3DView oldView = (Flip3DView) oldRenderer;
+            if (oldView.getViewState() == this) { // NOPMD
+                oldView.setOnClickListener(null);
+                oldView.setFinishFlippingListener(null);
+                oldView.setViewState(null);
             }
-        } else {
-            setStateAfterFlippingFinished(true);
+        } else if (oldRenderer instanceof Flip3DDrawableView) {
+            ((Flip3DDrawableView) oldRenderer).setOnClickListener(null);
         }
     }
 
-    private static String getMode(final boolean manuallyTriggered) {
-        return manuallyTriggered ? "<Manual>" : "<Forced>";
-    }
-
     /**
-     * Set state after we know that flipping has actually been finished
-     * (finally).
+     * Attaches lightweight drawable-only view to the state (instead of
+     * {@link Flip3DView}).
      * 
-     * @param manuallyTriggered
-     *            if the flip has been manually triggered
+     * @param drawableView
+     *            view to attach (null to detach)
      */
-    private synchronized void setStateAfterFlippingFinished(final boolean manuallyTriggered) {
-        Log.d(TAG,
-                id + ": " + getMode(manuallyTriggered) + ": Flipping finished to "
-                        + ViewIndex.getViewType(targetViewIndex));
-        currentViewIndex = targetViewIndex;
-        if (view != null) {
-            view.requestViewIndexFocus(currentViewIndex);
-            view.setViewClickability(currentViewIndex, true);
-        }
-        if (flip3dViewListener != null) {
-            flip3dViewListener.onFinishedFlipping(this, currentViewIndex, manuallyTriggered);
-        }
-    }
-
-    private synchronized void startRotationToTheOtherSide(final boolean notifyListener, final boolean manuallyTriggered) {
-        setFlipping(true);
-        final int theOtherSide = ViewIndex.getTheOtherViewIndex(currentViewIndex);
-        if (notifyListener && flip3dViewListener != null) {
-            flip3dViewListener.onStartedFlipping(this, currentViewIndex, manuallyTriggered);
-        }
-        if (view == null) {
-            Log.d(TAG, "View is null so finishing immediately");
-            oneSideFlippingEnded(ViewIndex.getTheOtherViewIndex(targetViewIndex));
-        } else {
-            Log.d(TAG, "View is not null so setting clikability now");
-            view.setViewClickability(currentViewIndex, false);
-            view.setFinishFlippingListener(new FinishFlipping(theOtherSide));
-            view.startRotation(currentViewIndex);
+    public void setDrawableView(final Flip3DDrawableView drawableView) {
+        synchronized (this) {
+            releaseRenderer(drawableView);
+            setRendererInternal(drawableView);
+            if (drawableView != null) {
+                drawableView.setOnClickListener(clickListener);
+            }
         }
-    }
-
-    /**
-     * Sets listener to fliping events.
-     * 
-     * @param flip3dViewListener
-     *            listener.
-     */
-    public synchronized void setFlip3DViewListener(final Flip3DViewListener flip3dViewListener) {
-        this.flip3dViewListener = flip3dViewListener;
-    }
-
-    /**
-     * Get Id of the control.
-     * 
-     * @return
-     */
-    public int getId() {
-        return id;
+        dispatchPendingEvents();
     }
 
     /**
@@ -302,24 +270,45 @@ public class Flip3DViewState {
      */
     public static <State extends Flip3DViewState> State attachViewToViewState(final int i,
             final List<State> viewStates, final Flip3DView view) {
-        final int oldViewId = view.getId();
-        if (oldViewId >= 0 && oldViewId < viewStates.size()) {
-            final State oldState = viewStates.get(oldViewId);
-            oldState.setView(view); // detach view from old state
+        return attachViewToViewState(viewStates.get(i), view);
+    }
+
+    /**
+     * Attaches or re-attaches view to the state - detaches it from the state it
+     * has been attached to before.
+     * 
+     * @param newState
+     *            state to attach the view to
+     * @param view
+     *            view to attach
+     * @param <State>
+     *            state type
+     * @return the state given - view should be set in it after preparing.
+     */
+    public static <State extends Flip3DViewState> State attachViewToViewState(final State newState,
+            final Flip3DView view) {
+        final Flip3DViewState oldState = view.getViewState();
+        if (oldState != null && oldState != newState) { // NOPMD
+            oldState.detachView(view);
         }
-        return viewStates.get(i);
+        return newState;
     }
 
     /**
-     * Detaches view in case it is owned by the state.
+     * Detaches view in case it is owned by the state. Flipping in progress is
+     * finished immediately.
      * 
      * @param view
      *            view to detach
      */
-    public synchronized void detachView(final Flip3DView view) {
-        if (flipping) {
-            view.clearAllAnimations();
+    public void detachView(final Flip3DView view) {
+        synchronized (this) {
+            if (getRenderer() != view) { // NOPMD - identity intended
+                return;
+            }
+            detachRenderer(view);
         }
+        setView(null);
     }
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,301 @@
+package pl.polidea.androidflip3d;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides states of the items of an adapter without building all of them up
+ * front. States are either added explicitly (appending is constant time) or
+ * created by the factory when the position is bound for the first time.
+ * Positions without a state are on the side stored in the default snapshot
+ * (see {@link #setDefaultSides(Flip3DViewStatesSnapshot)}) or on the front -
+ * so a grid of any size starts in constant time and only the states of the
+ * items actually shown exist. States of items far from the screen can be
+ * evicted - their sides are kept in a compact side table (two bits per
+ * position) and given to the states created again. States created by the
+ * factory should use their positions as ids.
+ *
+ * @param <State>
+ *            type of the states
+ */
+public class Flip3DViewStateProvider<State extends Flip3DStateMachine> {
+
+    /**
+     * Creates states of positions bound for the first time.
+     *
+     * @param <State>
+     *            type of the states
+     */
+    public interface Factory<State extends Flip3DStateMachine> {
+        /**
+         * Creates state of the position given.
+         *
+         * @param position
+         *            position of the item
+         * @return the state (its id should be the position)
+         */
+        State createViewState(int position);
+    }
+
+    private final Map<Integer, State> states = new HashMap<Integer, State>();
+
+    private Factory<State> factory;
+
+    private int count = 0;
+
+    private Flip3DViewStatesSnapshot defaultSides;
+
+    /**
+     * Positions whose sides are kept in the side table.
+     */
+    private final BitSet storedSides = new BitSet();
+
+    /**
+     * Positions kept in the side table which are on the back.
+     */
+    private final BitSet storedBackSides = new BitSet();
+
+    /**
+     * Sets factory of the states of positions without state.
+     *
+     * @param factory
+     *            the factory (null when all states are added explicitly)
+     */
+    public synchronized void setFactory(final Factory<State> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Sets sides of the positions whose states are not created yet. Applied
+     * to the states when they are created.
+     *
+     * @param defaultSides
+     *            snapshot of the sides (null for all on the front)
+     */
+    public synchronized void setDefaultSides(final Flip3DViewStatesSnapshot defaultSides) {
+        this.defaultSides = defaultSides;
+    }
+
+    public synchronized Flip3DViewStatesSnapshot getDefaultSides() {
+        return defaultSides;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Sets number of the items. States of positions beyond the new count are
+     * dropped.
+     *
+     * @param newCount
+     *            number of items
+     */
+    public synchronized void setCount(final int newCount) {
+        if (newCount < count && !states.isEmpty()) {
+            final Integer[] positions = states.keySet().toArray(new Integer[states.size()]);
+            for (final Integer position : positions) {
+                if (position >= newCount) {
+                    states.remove(position);
+                }
+            }
+        }
+        if (newCount < count) {
+            storedSides.clear(newCount, count);
+            storedBackSides.clear(newCount, count);
+        }
+        this.count = newCount;
+    }
+
+    /**
+     * Appends items whose states are created by the factory.
+     *
+     * @param added
+     *            number of items to append
+     */
+    public synchronized void append(final int added) {
+        count += added;
+    }
+
+    /**
+     * Appends item with the state given.
+     *
+     * @param state
+     *            state of the new item
+     * @return position of the item
+     */
+    public synchronized int add(final State state) {
+        states.put(count, state);
+        return count++;
+    }
+
+    /**
+     * Drops all items and states.
+     */
+    public synchronized void clear() {
+        states.clear();
+        storedSides.clear();
+        storedBackSides.clear();
+        count = 0;
+    }
+
+    /**
+     * Returns state of the position, without creating it.
+     *
+     * @param position
+     *            position of the item
+     * @return the state or null when not created yet
+     */
+    public synchronized State peek(final int position) {
+        return states.get(position);
+    }
+
+    /**
+     * Returns state of the position, creating it with the factory when
+     * needed.
+     *
+     * @param position
+     *            position of the item
+     * @return the state
+     * @throws IndexOutOfBoundsException
+     *             when the position is not in the provider
+     * @throws IllegalStateException
+     *             when the state has to be created and there is no factory
+     */
+    public synchronized State get(final int position) {
+        if (position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + count);
+        }
+        State state = states.get(position);
+        if (state == null) {
+            if (factory == null) {
+                throw new IllegalStateException("No state at " + position + " and no factory to create it");
+            }
+            state = factory.createViewState(position);
+            if (storedSides.get(position) || defaultSides != null) {
+                state.restoreViewIndex(getStoredViewIndex(position));
+            }
+            storedSides.clear(position);
+            storedBackSides.clear(position);
+            states.put(position, state);
+        }
+        return state;
+    }
+
+    /**
+     * Returns side of the position without creating its state.
+     *
+     * @param position
+     *            position of the item
+     * @return side the item is on or flipping to (0 - FRONT, 1 - BACK)
+     */
+    public synchronized int getViewIndex(final int position) {
+        final State state = states.get(position);
+        if (state != null) {
+            return state.getTargetViewIndex();
+        }
+        return getStoredViewIndex(position);
+    }
+
+    /**
+     * Checks if side of the position is known without its state - kept in the
+     * side table after eviction or set in the default sides.
+     *
+     * @param position
+     *            position of the item
+     * @return true if the state is created (or would be) on a known side
+     */
+    public synchronized boolean hasStoredSide(final int position) {
+        return storedSides.get(position) || defaultSides != null;
+    }
+
+    /**
+     * Forgets side of the position kept in the side table - state created
+     * again starts on the default side.
+     *
+     * @param position
+     *            position of the item
+     */
+    public synchronized void clearStoredSide(final int position) {
+        storedSides.clear(position);
+        storedBackSides.clear(position);
+    }
+
+    private int getStoredViewIndex(final int position) {
+        if (storedSides.get(position)) {
+            return storedBackSides.get(position) ? ViewIndex.BACK_VIEW : ViewIndex.FRONT_VIEW;
+        }
+        return defaultSides == null ? ViewIndex.FRONT_VIEW : defaultSides.getViewIndex(position);
+    }
+
+    /**
+     * Drops states of the positions in range (only when the factory can
+     * create them again), keeping their sides in the side table. States
+     * attached to views and states in the middle of flipping are kept.
+     *
+     * @param fromPosition
+     *            first position (inclusive)
+     * @param toPosition
+     *            last position (exclusive)
+     * @param keepBackSides
+     *            if true, states on the back are kept as well
+     * @return states dropped
+     */
+    public synchronized List<State> evict(final int fromPosition, final int toPosition,
+            final boolean keepBackSides) {
+        final List<State> evicted = new ArrayList<State>();
+        if (factory == null) {
+            return evicted;
+        }
+        for (int position = fromPosition; position < toPosition; position++) {
+            final State state = states.get(position);
+            if (state == null || state.getRenderer() != null || state.isFlipping()) {
+                continue;
+            }
+            final boolean back = state.getTargetViewIndex() == ViewIndex.BACK_VIEW;
+            if (back && keepBackSides) {
+                continue;
+            }
+            states.remove(position);
+            storedSides.set(position);
+            storedBackSides.set(position, back);
+            evicted.add(state);
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns states created so far (in no particular order).
+     *
+     * @return unmodifiable view of the states
+     */
+    public synchronized Collection<State> getCreatedStates() {
+        return Collections.unmodifiableCollection(states.values());
+    }
+
+    /**
+     * Captures sides of all the items - of the created states and the
+     * defaults of the others.
+     *
+     * @return snapshot of the sides
+     */
+    public synchronized Flip3DViewStatesSnapshot capture() {
+        final Flip3DViewStatesSnapshot base = defaultSides == null ? Flip3DViewStatesSnapshot
+                .fromBackSides(storedBackSides) : defaultSides.with(storedSides, storedBackSides);
+        return Flip3DViewStatesSnapshot.capture(states.values(), base);
+    }
+
+    /**
+     * Returns number of positions whose sides are kept in the side table.
+     *
+     * @return number of positions
+     */
+    public synchronized int getStoredSideCount() {
+        return storedSides.cardinality();
+    }
+}
@@ -0,0 +1,215 @@
+package pl.polidea.androidflip3d;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Compact, parcelable snapshot of the sides of many flip3D view states. Only
+ * one bit per state id is stored (set when the state is on its back side) and
+ * only the 32 bit words with some bit set are kept, together with their
+ * indexes - so the snapshot can be put in saved instance state even for grids
+ * with tens of thousands of items, and a few large or scattered ids (like
+ * database ids) take a few bytes each. States that are in the middle of
+ * flipping are stored with the side they are flipping to.
+ *
+ */
+public final class Flip3DViewStatesSnapshot implements Parcelable {
+
+    private static final int ADDRESS_BITS_PER_WORD = 5;
+
+    /**
+     * Indexes of the words kept, in ascending order.
+     */
+    private final int[] wordIndexes;
+
+    /**
+     * Non-zero words with bits of the states on the back.
+     */
+    private final int[] words;
+
+    private Flip3DViewStatesSnapshot(final int[] wordIndexes, final int[] words) {
+        this.wordIndexes = wordIndexes;
+        this.words = words;
+    }
+
+    /**
+     * Captures sides of the states given. Ids of the states are used as
+     * indexes of the bits - they should be non-negative.
+     *
+     * @param viewStates
+     *            states to capture
+     * @return snapshot of the states
+     */
+    public static Flip3DViewStatesSnapshot capture(final Collection<? extends Flip3DStateMachine> viewStates) {
+        return capture(viewStates, null);
+    }
+
+    /**
+     * Captures sides of the states given on top of a previous snapshot - sides
+     * of ids without state are taken from the previous snapshot.
+     *
+     * @param viewStates
+     *            states to capture
+     * @param base
+     *            snapshot with sides of the other ids (may be null)
+     * @return snapshot of the states
+     */
+    public static Flip3DViewStatesSnapshot capture(final Collection<? extends Flip3DStateMachine> viewStates,
+            final Flip3DViewStatesSnapshot base) {
+        final Map<Integer, Integer> wordMap = base == null ? new HashMap<Integer, Integer>() : base.toWordMap();
+        for (final Flip3DStateMachine state : viewStates) {
+            setBackSide(wordMap, state.getId(), state.getTargetViewIndex() == ViewIndex.BACK_VIEW);
+        }
+        return fromWordMap(wordMap);
+    }
+
+    /**
+     * Creates snapshot from set of ids of the states on the back.
+     *
+     * @param backSides
+     *            ids of the states on the back
+     * @return the snapshot
+     */
+    public static Flip3DViewStatesSnapshot fromBackSides(final BitSet backSides) {
+        final Map<Integer, Integer> wordMap = new HashMap<Integer, Integer>();
+        for (int id = backSides.nextSetBit(0); id >= 0; id = backSides.nextSetBit(id + 1)) {
+            setBackSide(wordMap, id, true);
+        }
+        return fromWordMap(wordMap);
+    }
+
+    /**
+     * Returns snapshot with sides of some ids replaced.
+     *
+     * @param ids
+     *            ids whose sides are replaced
+     * @param backSides
+     *            which of the ids are on the back
+     * @return new snapshot
+     */
+    Flip3DViewStatesSnapshot with(final BitSet ids, final BitSet backSides) {
+        final Map<Integer, Integer> wordMap = toWordMap();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            setBackSide(wordMap, id, backSides.get(id));
+        }
+        return fromWordMap(wordMap);
+    }
+
+    private static int wordIndex(final int id) {
+        return id >> ADDRESS_BITS_PER_WORD;
+    }
+
+    private static void setBackSide(final Map<Integer, Integer> wordMap, final int id, final boolean back) {
+        if (id < 0) {
+            return;
+        }
+        final Integer wordIndex = wordIndex(id);
+        final Integer word = wordMap.get(wordIndex);
+        final int oldWord = word == null ? 0 : word;
+        final int newWord = back ? oldWord | 1 << id : oldWord & ~(1 << id);
+        if (newWord == 0) {
+            wordMap.remove(wordIndex);
+        } else {
+            wordMap.put(wordIndex, newWord);
+        }
+    }
+
+    private Map<Integer, Integer> toWordMap() {
+        final Map<Integer, Integer> wordMap = new HashMap<Integer, Integer>();
+        for (int i = 0; i < wordIndexes.length; i++) {
+            wordMap.put(wordIndexes[i], words[i]);
+        }
+        return wordMap;
+    }
+
+    private static Flip3DViewStatesSnapshot fromWordMap(final Map<Integer, Integer> wordMap) {
+        final int[] wordIndexes = new int[wordMap.size()];
+        int i = 0;
+        for (final Integer wordIndex : wordMap.keySet()) {
+            wordIndexes[i++] = wordIndex;
+        }
+        Arrays.sort(wordIndexes);
+        final int[] words = new int[wordIndexes.length];
+        for (i = 0; i < wordIndexes.length; i++) {
+            words[i] = wordMap.get(wordIndexes[i]);
+        }
+        return new Flip3DViewStatesSnapshot(wordIndexes, words);
+    }
+
+    /**
+     * Returns side stored for the state with given id.
+     *
+     * @param id
+     *            id of the state
+     * @return stored side (0 - FRONT, 1 - BACK). FRONT for ids not stored.
+     */
+    public int getViewIndex(final int id) {
+        if (id < 0) {
+            return ViewIndex.FRONT_VIEW;
+        }
+        final int i = Arrays.binarySearch(wordIndexes, wordIndex(id));
+        if (i < 0) {
+            return ViewIndex.FRONT_VIEW;
+        }
+        return (words[i] & 1 << id) == 0 ? ViewIndex.FRONT_VIEW : ViewIndex.BACK_VIEW;
+    }
+
+    /**
+     * Restores sides of the states given (without animation).
+     *
+     * @param viewStates
+     *            states to restore
+     */
+    public void restore(final Collection<? extends Flip3DStateMachine> viewStates) {
+        for (final Flip3DStateMachine state : viewStates) {
+            state.restoreViewIndex(getViewIndex(state.getId()));
+        }
+    }
+
+    /**
+     * Returns number of ids stored on the back.
+     *
+     * @return number of states on the back
+     */
+    public int getBackSideCount() {
+        int count = 0;
+        for (final int word : words) {
+            count += Integer.bitCount(word);
+        }
+        return count;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+        dest.writeIntArray(wordIndexes);
+        dest.writeIntArray(words);
+    }
+
+    /**
+     * Creator used to recreate snapshot from parcel.
+     */
+    public static final Parcelable.Creator<Flip3DViewStatesSnapshot> CREATOR = // NOPMD
+    new Parcelable.Creator<Flip3DViewStatesSnapshot>() {
+        @Override
+        public Flip3DViewStatesSnapshot createFromParcel(final Parcel source) {
+            final int[] wordIndexes = source.createIntArray();
+            return new Flip3DViewStatesSnapshot(wordIndexes, source.createIntArray());
+        }
+
+        @Override
+        public Flip3DViewStatesSnapshot[] newArray(final int size) {
+            return new Flip3DViewStatesSnapshot[size];
+        }
+    };
+}
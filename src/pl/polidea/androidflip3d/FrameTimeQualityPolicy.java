@@ -0,0 +1,73 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Default quality policy. Averages times of the last few frames - lowers
+ * quality by one level when the average is above the degrade threshold and
+ * raises it by one level when it is below the restore threshold. After each
+ * change the window is started again, so that the quality does not jump
+ * between levels on a single slow frame.
+ *
+ */
+public class FrameTimeQualityPolicy implements Flip3DQualityPolicy {
+
+    private static final int DEFAULT_WINDOW_SIZE = 8;
+    private static final long DEFAULT_DEGRADE_FRAME_MILLIS = 24;
+    private static final long DEFAULT_RESTORE_FRAME_MILLIS = 18;
+
+    private final long[] frameTimes;
+    private final long degradeFrameMillis;
+    private final long restoreFrameMillis;
+
+    private int frameCount = 0;
+    private long frameTimesSum = 0;
+
+    public FrameTimeQualityPolicy() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_DEGRADE_FRAME_MILLIS, DEFAULT_RESTORE_FRAME_MILLIS);
+    }
+
+    /**
+     * Creates policy.
+     *
+     * @param windowSize
+     *            number of frames averaged
+     * @param degradeFrameMillis
+     *            average frame time above which quality is lowered
+     * @param restoreFrameMillis
+     *            average frame time below which quality is raised
+     */
+    public FrameTimeQualityPolicy(final int windowSize, final long degradeFrameMillis, final long restoreFrameMillis) {
+        if (windowSize <= 0 || restoreFrameMillis > degradeFrameMillis) {
+            throw new IllegalArgumentException("Wrong window size " + windowSize + " or thresholds "
+                    + restoreFrameMillis + "/" + degradeFrameMillis);
+        }
+        this.frameTimes = new long[windowSize];
+        this.degradeFrameMillis = degradeFrameMillis;
+        this.restoreFrameMillis = restoreFrameMillis;
+    }
+
+    @Override
+    public synchronized int onFrameTime(final long frameTimeMillis, final int currentQuality) {
+        final int slot = frameCount % frameTimes.length;
+        if (frameCount >= frameTimes.length) {
+            frameTimesSum -= frameTimes[slot];
+        }
+        frameTimes[slot] = frameTimeMillis;
+        frameTimesSum += frameTimeMillis;
+        frameCount++;
+        if (frameCount < frameTimes.length) {
+            return currentQuality;
+        }
+        final long average = frameTimesSum / frameTimes.length;
+        int quality = currentQuality;
+        if (average > degradeFrameMillis && quality < Flip3DQuality.MINIMAL) {
+            quality++;
+        } else if (average < restoreFrameMillis && quality > Flip3DQuality.FULL) {
+            quality--;
+        }
+        if (quality != currentQuality) {
+            frameCount = 0;
+            frameTimesSum = 0;
+        }
+        return quality;
+    }
+}
@@ -0,0 +1,189 @@
+package pl.polidea.androidflip3d;
+
+import android.graphics.Camera;
+import android.view.View;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.Animation.AnimationListener;
+import android.view.animation.AnimationUtils;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.view.animation.Transformation;
+
+/**
+ * Animates flipping by changing rotation of the side as a property of the
+ * {@link Flip3DView} - the rotation is applied as static transformation of the
+ * side while the flip view is drawn, and the animation is advanced on each
+ * draw. No {@link android.view.animation.Animation} objects are created, no
+ * fill-after state is left on the sides and only the flip view itself is
+ * invalidated in each frame. Each instance animates a single view.
+ *
+ */
+public class PropertyAnimationBackend implements Flip3DAnimationBackend {
+
+    private static final int NOT_ROTATING = 0;
+    private static final int FIRST_HALF = 1;
+    private static final int SECOND_HALF = 2;
+
+    private final Camera camera = new Camera();
+    private final Interpolator firstHalfInterpolator = new AccelerateInterpolator();
+    private final Interpolator secondHalfInterpolator = new DecelerateInterpolator();
+
+    private Flip3DView view;
+    private int phase = NOT_ROTATING;
+    private int rotatingViewIndex;
+    private int direction;
+    private long animationLength;
+    private long startTime;
+    private float rotation;
+    private boolean halfEndPosted;
+    private boolean paused;
+    private long pauseTime;
+    private AnimationListener finishFlippingListener;
+    private Flip3DKeyframes keyframes;
+    private final float[] matrixValues = new float[Flip3DKeyframes.MATRIX_SIZE];
+
+    private final Runnable halfEnded = new Runnable() {
+        @Override
+        public void run() {
+            onHalfEnded();
+        }
+    };
+
+    @Override
+    public void startRotation(final Flip3DView flipView, final int currentViewIndex, final int rotationDirection,
+            final long length, final AnimationListener listener) {
+        this.view = flipView;
+        this.rotatingViewIndex = currentViewIndex;
+        this.direction = rotationDirection;
+        this.animationLength = length;
+        this.finishFlippingListener = listener;
+        startHalf(FIRST_HALF);
+    }
+
+    /**
+     * Sets precomputed keyframes used instead of computing the rotation with
+     * the camera in every frame.
+     *
+     * @param keyframes
+     *            keyframes to use (null to compute every frame)
+     */
+    public void setKeyframes(final Flip3DKeyframes keyframes) {
+        this.keyframes = keyframes;
+    }
+
+    @Override
+    public void setPaused(final Flip3DView flipView, final boolean pause) {
+        if (flipView != view || pause == paused) { // NOPMD
+            return;
+        }
+        paused = pause;
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        if (pause) {
+            pauseTime = now;
+        } else {
+            if (startTime >= 0) {
+                startTime += now - pauseTime;
+            }
+            if (phase != NOT_ROTATING) {
+                view.invalidate();
+            }
+        }
+    }
+
+    private void startHalf(final int half) {
+        phase = half;
+        startTime = -1;
+        halfEndPosted = false;
+        rotation = half == FIRST_HALF ? 0 : -RotationDirection.getMultiplier(direction) * 90;
+        view.invalidate();
+    }
+
+    /**
+     * Returns current rotation of the rotating side in degrees.
+     *
+     * @return rotation (0 when not rotating)
+     */
+    public float getRotation() {
+        return phase == NOT_ROTATING ? 0 : rotation;
+    }
+
+    private void onHalfEnded() {
+        if (phase == FIRST_HALF) {
+            final View[] views = view.getViews();
+            final int theOtherViewIndex = ViewIndex.getTheOtherViewIndex(rotatingViewIndex);
+            views[rotatingViewIndex].setVisibility(View.INVISIBLE);
+            views[theOtherViewIndex].setVisibility(View.VISIBLE);
+            rotatingViewIndex = theOtherViewIndex;
+            startHalf(SECOND_HALF);
+        } else if (phase == SECOND_HALF) {
+            phase = NOT_ROTATING;
+            view.invalidate();
+            final AnimationListener listener = finishFlippingListener;
+            finishFlippingListener = null;
+            if (listener != null) {
+                listener.onAnimationEnd(null);
+            }
+        }
+    }
+
+    @Override
+    public void clearAllAnimations(final Flip3DView flipView) {
+        if (phase != NOT_ROTATING) {
+            phase = NOT_ROTATING;
+            finishFlippingListener = null;
+            flipView.removeCallbacks(halfEnded);
+            flipView.invalidate();
+        }
+    }
+
+    @Override
+    public boolean getChildTransformation(final Flip3DView flipView, final View child, final Transformation t) {
+        if (phase == NOT_ROTATING || flipView != view || child != view.getViews()[rotatingViewIndex]) { // NOPMD
+            return false;
+        }
+        final long now = paused ? pauseTime : AnimationUtils.currentAnimationTimeMillis();
+        if (startTime < 0) {
+            startTime = now;
+        }
+        final float progress = animationLength <= 0 ? 1.0f : Math.min(1.0f, (float) (now - startTime)
+                / animationLength);
+        t.clear();
+        t.setTransformationType(Transformation.TYPE_MATRIX);
+        if (keyframes == null) {
+            final float halfRotation = RotationDirection.getMultiplier(direction) * 90;
+            if (phase == FIRST_HALF) {
+                rotation = halfRotation * firstHalfInterpolator.getInterpolation(progress);
+            } else {
+                rotation = -halfRotation * (1.0f - secondHalfInterpolator.getInterpolation(progress));
+            }
+            Flip3DAnimation.applyRotation(camera, rotation, child.getWidth() / 2.0f, child.getHeight() / 2.0f,
+                    t.getMatrix());
+        } else {
+            final int half = phase == FIRST_HALF ? Flip3DKeyframes.FIRST_HALF : Flip3DKeyframes.SECOND_HALF;
+            rotation = keyframes.getFrameDegrees(half, keyframes.getFrame(progress), direction);
+            keyframes.getMatrixValues(half, progress, direction, child.getWidth() / 2.0f, child.getHeight() / 2.0f,
+                    matrixValues);
+            t.getMatrix().setValues(matrixValues);
+        }
+        if (paused) {
+            return true;
+        }
+        if (progress >= 1.0f) {
+            if (!halfEndPosted) {
+                halfEndPosted = true;
+                view.post(halfEnded);
+            }
+        } else {
+            view.invalidate();
+        }
+        return true;
+    }
+
+    @Override
+    public float getChildRotation(final Flip3DView flipView, final View child) {
+        if (phase == NOT_ROTATING || flipView != view || child != view.getViews()[rotatingViewIndex]) { // NOPMD
+            return Float.NaN;
+        }
+        return rotation;
+    }
+}
@@ -0,0 +1,63 @@
+package pl.polidea.androidflip3d;
+
+import android.view.View;
+import android.view.animation.AccelerateInterpolator;
+import android.view.animation.Animation;
+import android.view.animation.Animation.AnimationListener;
+import android.view.animation.Transformation;
+
+/**
+ * Animates flipping with {@link Flip3DAnimation} - the classic view animation
+ * started on the side views. This is the default backend.
+ *
+ */
+public class ViewAnimationBackend implements Flip3DAnimationBackend {
+
+    @Override
+    public void startRotation(final Flip3DView view, final int currentViewIndex, final int direction,
+            final long animationLength, final AnimationListener finishFlippingListener) {
+        final View[] views = view.getViews();
+        final float centerX = view.getWidth() / 2.0f;
+        final float centerY = view.getHeight() / 2.0f;
+        final Flip3DAnimation rotation = new Flip3DAnimation(0, RotationDirection.getMultiplier(direction) * 90,
+                centerX, centerY);
+        rotation.setDuration(animationLength);
+        rotation.setFillAfter(true);
+        rotation.setInterpolator(new AccelerateInterpolator());
+        rotation.setAnimationListener(new GetToTheMiddleOfFlipping(currentViewIndex, views, animationLength,
+                direction, finishFlippingListener));
+        views[currentViewIndex].startAnimation(rotation);
+    }
+
+    @Override
+    public void clearAllAnimations(final Flip3DView view) {
+        for (final View v : view.getViews()) {
+            if (v != null) {
+                v.clearAnimation();
+            }
+        }
+    }
+
+    @Override
+    public void setPaused(final Flip3DView view, final boolean paused) {
+        for (final View v : view.getViews()) {
+            if (v != null && v.getAnimation() instanceof Flip3DAnimation) {
+                ((Flip3DAnimation) v.getAnimation()).setPaused(paused);
+            }
+        }
+    }
+
+    @Override
+    public boolean getChildTransformation(final Flip3DView view, final View child, final Transformation t) {
+        return false;
+    }
+
+    @Override
+    public float getChildRotation(final Flip3DView view, final View child) {
+        final Animation animation = child.getAnimation();
+        if (animation instanceof Flip3DAnimation && animation.hasStarted() && !animation.hasEnded()) {
+            return ((Flip3DAnimation) animation).getCurrentDegrees();
+        }
+        return Float.NaN;
+    }
+}
@@ -15,7 +15,8 @@ public final class ViewIndex {
     public static final int BACK_VIEW = 1;
 
     /**
-     * Front transparent background view. Used to block clicks while flipping.
+     * Front transparent background view, kept invisible above the sides.
+     * Clicks while flipping are blocked by the flip view intercepting touches.
      */
     public static final int FOREGROUND_VIEW = 2;
 
@@ -0,0 +1,124 @@
+package pl.polidea.androidflip3d.testingactivity;
+
+import pl.polidea.androidflip3d.Flip3DDrawableView;
+import pl.polidea.androidflip3d.Flip3DShading;
+import pl.polidea.androidflip3d.Flip3DView;
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+/**
+ * Compares cost of measure, layout and draw of {@link Flip3DView} and the
+ * flattened {@link Flip3DDrawableView}, and measures cost of the
+ * {@link Flip3DShading} of a wave of flipping cells.
+ * 
+ */
+public class Flip3DBenchmarkActivity extends Activity {
+    private static final String TAG = Flip3DBenchmarkActivity.class.getSimpleName();
+    private static final int NUM_VIEWS = 50;
+    private static final int REPEATS = 20;
+    private static final int SIZE = 160;
+    private static final long FRAME_BUDGET_NANOS = 16666667;
+
+    @Override
+    protected void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        final TextView results = new TextView(this);
+        setContentView(results);
+        final StringBuilder text = new StringBuilder();
+        final View[] flipViews = new View[NUM_VIEWS];
+        final View[] drawableViews = new View[NUM_VIEWS];
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            flipViews[i] = new Flip3DView(this);
+        }
+        final long flipCreate = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < NUM_VIEWS; i++) {
+            drawableViews[i] = new Flip3DDrawableView(this);
+        }
+        final long drawableCreate = System.nanoTime() - start;
+        append(text, "create", flipCreate, drawableCreate);
+        append(text, "measure+layout", measureAndLayout(flipViews), measureAndLayout(drawableViews));
+        append(text, "draw", draw(flipViews), draw(drawableViews));
+        final long shadingNanos = shadeWave();
+        text.append("shading of ").append(NUM_VIEWS).append(" cells: ").append(shadingNanos / REPEATS / 1000)
+                .append(" us per frame, ").append(shadingNanos * 100 / REPEATS / FRAME_BUDGET_NANOS)
+                .append("% of frame budget\n");
+        text.append("views per cell: ").append(countViews(flipViews[0])).append(" vs ")
+                .append(countViews(drawableViews[0]));
+        Log.i(TAG, text.toString());
+        results.setText(text);
+    }
+
+    private static void append(final StringBuilder text, final String name, final long flipNanos,
+            final long drawableNanos) {
+        text.append(name).append(": Flip3DView ").append(flipNanos / 1000).append(" us, Flip3DDrawableView ")
+                .append(drawableNanos / 1000).append(" us\n");
+    }
+
+    private static long measureAndLayout(final View[] views) {
+        final long start = System.nanoTime();
+        for (int r = 0; r < REPEATS; r++) {
+            // alternate sizes so that measure is not skipped
+            final int size = SIZE + r % 2;
+            final int spec = MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY);
+            for (final View view : views) {
+                view.measure(spec, spec);
+                view.layout(0, 0, size, size);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long draw(final View[] views) {
+        final Bitmap bitmap = Bitmap.createBitmap(SIZE + 1, SIZE + 1, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final long start = System.nanoTime();
+        for (int r = 0; r < REPEATS; r++) {
+            for (final View view : views) {
+                view.draw(canvas);
+            }
+        }
+        final long time = System.nanoTime() - start;
+        bitmap.recycle();
+        return time;
+    }
+
+    /**
+     * Shades all cells in each frame, each cell turned by a different angle
+     * (as in a wave).
+     */
+    private static long shadeWave() {
+        final Flip3DShading shading = Flip3DShading.getDefault();
+        final Bitmap bitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final long start = System.nanoTime();
+        for (int r = 0; r < REPEATS; r++) {
+            for (int i = 0; i < NUM_VIEWS; i++) {
+                final float degrees = 180.0f * ((i + r) % NUM_VIEWS) / NUM_VIEWS - 90.0f;
+                shading.draw(canvas, degrees, SIZE, SIZE);
+            }
+        }
+        final long time = System.nanoTime() - start;
+        bitmap.recycle();
+        return time;
+    }
+
+    private static int countViews(final View view) {
+        int count = 1;
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                count += countViews(group.getChildAt(i));
+            }
+        }
+        return count;
+    }
+}
@@ -1,8 +1,12 @@
 package pl.polidea.androidflip3d.testingactivity;
 
+import java.util.Arrays;
+
+import pl.polidea.androidflip3d.Flip3DFlipGroup;
 import pl.polidea.androidflip3d.Flip3DView;
 import pl.polidea.androidflip3d.Flip3DViewState;
 import pl.polidea.androidflip3d.Flip3DViewState.Flip3DViewListener;
+import pl.polidea.androidflip3d.Flip3DViewStatesSnapshot;
 import pl.polidea.androidflip3d.R;
 import pl.polidea.androidflip3d.ViewIndex;
 import android.app.Activity;
@@ -15,35 +19,12 @@ import android.os.Bundle;
 public class Flip3DTestActivity extends Activity {
     private static final String PACKAGE_NAME = "pl.polidea.androidflip3d";
     private static final int NUM_VIEWS = 4;
+    private static final String VIEW_STATES_KEY = "viewStates";
     private final Flip3DViewState[] viewStates = new Flip3DViewState[NUM_VIEWS];
 
-    private final Flip3DViewListener[] listeners = { new Flip3DViewListener() {
-        @Override
-        public void onStartedFlipping(final Flip3DViewState view, final int startingSide,
-                final boolean manuallyTriggered) {
-            if (manuallyTriggered && startingSide == ViewIndex.FRONT_VIEW) {
-                viewStates[1].forceFlipTo(ViewIndex.FRONT_VIEW);
-            }
-        }
+    private final Flip3DFlipGroup exclusiveGroup = Flip3DFlipGroup.exclusive();
 
-        @Override
-        public void onFinishedFlipping(final Flip3DViewState view, final int endingSide, final boolean manuallyTriggered) {
-            // do nothing
-        }
-    }, new Flip3DViewListener() {
-        @Override
-        public void onStartedFlipping(final Flip3DViewState view, final int startingSide,
-                final boolean manuallyTriggered) {
-            if (manuallyTriggered) {
-                viewStates[0].forceFlipTo(ViewIndex.FRONT_VIEW);
-            }
-        }
-
-        @Override
-        public void onFinishedFlipping(final Flip3DViewState view, final int endingSide, final boolean manuallyTriggered) {
-            // do nothing
-        }
-    }, new Flip3DViewListener() {
+    private final Flip3DViewListener thirdViewListener = new Flip3DViewListener() {
         @Override
         public void onStartedFlipping(final Flip3DViewState view, final int startingSide,
                 final boolean manuallyTriggered) {
@@ -56,7 +37,9 @@ public class Flip3DTestActivity extends Activity {
                 viewStates[3].forceFlipTo(ViewIndex.BACK_VIEW);
             }
         }
-    }, new Flip3DViewListener() {
+    };
+
+    private final Flip3DViewListener fourthViewListener = new Flip3DViewListener() {
 
         @Override
         public void onStartedFlipping(final Flip3DViewState view, final int startingSide,
@@ -70,7 +53,7 @@ public class Flip3DTestActivity extends Activity {
                 viewStates[2].forceFlipTo(ViewIndex.BACK_VIEW);
             }
         }
-    } };
+    };
 
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
@@ -78,12 +61,25 @@ public class Flip3DTestActivity extends Activity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.main);
         final Flip3DView[] views = new Flip3DView[NUM_VIEWS];
+        final Flip3DViewStatesSnapshot snapshot = savedInstanceState == null ? null : savedInstanceState
+                .<Flip3DViewStatesSnapshot> getParcelable(VIEW_STATES_KEY);
         for (int i = 0; i < NUM_VIEWS; i++) {
             views[i] = (Flip3DView) findViewById(this.getResources().getIdentifier("view" + i, "id", PACKAGE_NAME));
             viewStates[i] = new Flip3DViewState(i);
+            if (snapshot != null) {
+                viewStates[i].restoreViewIndex(snapshot.getViewIndex(i));
+            }
             viewStates[i].setView(views[i]);
-            viewStates[i].setFlip3dViewListener(listeners[i]);
-
         }
+        exclusiveGroup.add(viewStates[0]);
+        exclusiveGroup.add(viewStates[1]);
+        viewStates[2].addFlip3DViewListener(thirdViewListener);
+        viewStates[3].addFlip3DViewListener(fourthViewListener);
+    }
+
+    @Override
+    protected void onSaveInstanceState(final Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(VIEW_STATES_KEY, Flip3DViewStatesSnapshot.capture(Arrays.asList(viewStates)));
     }
 }
@@ -1,8 +1,17 @@
 package pl.polidea.androidflip3d.testingactivity;
 
+import pl.polidea.androidflip3d.Flip3DGridOverlay;
+import pl.polidea.androidflip3d.Flip3DShading;
+import pl.polidea.androidflip3d.Flip3DQualityMonitor;
+import pl.polidea.androidflip3d.Flip3DView;
+import pl.polidea.androidflip3d.Flip3DViewPool;
+import pl.polidea.androidflip3d.Flip3DViewStatesSnapshot;
 import android.app.Activity;
+import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.ViewTreeObserver;
 import android.widget.GridView;
 
 /**
@@ -11,9 +20,16 @@ import android.widget.GridView;
  */
 public class GridTestActivity extends Activity {
     private static final String TAG = GridTestActivity.class.getSimpleName();
+    private static final String VIEW_STATES_KEY = "viewStates";
+    private static final int POOLED_VIEWS = 15;
+
+    private Flip3DViewPool<Flip3DView> viewPool;
+
+    private TestGridAdapter adapter;
 
     @Override
     protected void onCreate(final Bundle savedInstanceState) {
+        final long createStartTime = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(this.getResources().getIdentifier("test_activity_grid", "layout", "pl.polidea.androidflip3d"));
         final GridView gridView = (GridView) findViewById(this.getResources().getIdentifier("GridView", "id",
@@ -26,8 +42,54 @@ public class GridTestActivity extends Activity {
         gridView.setStretchMode(GridView.NO_STRETCH);
         gridView.setHorizontalSpacing(margin / 2);
         gridView.setVerticalSpacing(margin / 2);
-        final TestGridAdapter adapter = new TestGridAdapter(this, screenWidth / 3 - margin);
+        adapter = new TestGridAdapter(this, screenWidth / 3 - margin);
+        // views get the activity's theme - the pool lives with the activity
+        final Context context = this;
+        viewPool = new Flip3DViewPool<Flip3DView>(new Flip3DViewPool.Factory<Flip3DView>() {
+            @Override
+            public Flip3DView createView() {
+                return new Flip3DView(context);
+            }
+        }, POOLED_VIEWS, screenWidth / 3 - margin);
+        adapter.setViewPool(viewPool);
+        if (savedInstanceState != null) {
+            final Flip3DViewStatesSnapshot snapshot = savedInstanceState.getParcelable(VIEW_STATES_KEY);
+            if (snapshot != null) {
+                adapter.restoreViewStates(snapshot);
+            }
+        }
         gridView.setAdapter(adapter);
         gridView.setRecyclerListener(adapter);
+        final Flip3DGridOverlay gridOverlay = (Flip3DGridOverlay) findViewById(this.getResources().getIdentifier(
+                "GridOverlay", "id", "pl.polidea.androidflip3d"));
+        final Flip3DQualityMonitor qualityMonitor = new Flip3DQualityMonitor();
+        gridOverlay.setQualityMonitor(qualityMonitor);
+        gridOverlay.setShading(Flip3DShading.getDefault());
+        adapter.setGridOverlay(gridOverlay);
+        adapter.setQualityMonitor(qualityMonitor);
+        gridView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                gridView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(TAG, "First frame " + (SystemClock.uptimeMillis() - createStartTime) + " ms after onCreate, "
+                        + viewPool.getHits() + " views from pool, " + viewPool.getMisses() + " created");
+                // fill the pool for scrolling
+                viewPool.prewarm();
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        viewPool.clear();
+        Log.i(TAG, "Face atlas: " + adapter.getFaceAtlas());
+    }
+
+    @Override
+    protected void onSaveInstanceState(final Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(VIEW_STATES_KEY, adapter.saveViewStates());
     }
 }
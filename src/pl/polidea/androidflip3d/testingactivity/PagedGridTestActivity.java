@@ -0,0 +1,102 @@
+package pl.polidea.androidflip3d.testingactivity;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import pl.polidea.androidflip3d.Flip3DBatchingExecutor;
+import pl.polidea.androidflip3d.Flip3DPagedData;
+import pl.polidea.androidflip3d.Flip3DViewStatesSnapshot;
+import android.app.Activity;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.GridView;
+
+/**
+ * Shows large grid of Flip3D with colors loaded in pages from a slow source.
+ * 
+ */
+public class PagedGridTestActivity extends Activity {
+    private static final String TAG = PagedGridTestActivity.class.getSimpleName();
+    private static final String VIEW_STATES_KEY = "viewStates";
+    private static final int ITEM_COUNT = 100000;
+    private static final int PAGE_SIZE = 30;
+    private static final int KEPT_PAGES = 2;
+    private static final long LATENCY_MILLIS = 400;
+    private static final long SEED = 42;
+
+    /**
+     * Source of random colors, each page loaded with the same latency -
+     * simulates a catalog served page by page.
+     */
+    private static final class SlowColorSource implements Flip3DPagedData.Source<Integer> {
+        @Override
+        public int getItemCount() {
+            return ITEM_COUNT;
+        }
+
+        @Override
+        public List<Integer> loadPage(final int firstPosition, final int count) throws IOException {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Loading of page at " + firstPosition + " interrupted");
+            }
+            final List<Integer> colors = new ArrayList<Integer>(count);
+            for (int i = firstPosition; i < firstPosition + count; i++) {
+                colors.add(0xff000000 | new Random(SEED + i).nextInt(0x1000000));
+            }
+            return colors;
+        }
+    }
+
+    private final ExecutorService loadingExecutor = Executors.newSingleThreadExecutor();
+
+    private TestPagedGridAdapter adapter;
+
+    @Override
+    protected void onCreate(final Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(this.getResources().getIdentifier("test_activity_grid", "layout", "pl.polidea.androidflip3d"));
+        final GridView gridView = (GridView) findViewById(this.getResources().getIdentifier("GridView", "id",
+                "pl.polidea.androidflip3d"));
+        final int screenWidth = this.getWindow().getWindowManager().getDefaultDisplay().getWidth();
+        final int margin = 10;
+        gridView.setColumnWidth(screenWidth / 3 - margin * 2 / 3);
+        gridView.setStretchMode(GridView.NO_STRETCH);
+        gridView.setHorizontalSpacing(margin / 2);
+        gridView.setVerticalSpacing(margin / 2);
+        final Flip3DBatchingExecutor uiExecutor = new Flip3DBatchingExecutor();
+        final Flip3DPagedData<Integer> pagedData = new Flip3DPagedData<Integer>(new SlowColorSource(), PAGE_SIZE,
+                KEPT_PAGES, loadingExecutor, uiExecutor);
+        adapter = new TestPagedGridAdapter(this, screenWidth / 3 - margin, pagedData, uiExecutor);
+        if (savedInstanceState != null) {
+            final Flip3DViewStatesSnapshot snapshot = savedInstanceState.getParcelable(VIEW_STATES_KEY);
+            if (snapshot != null) {
+                adapter.restoreViewStates(snapshot);
+            }
+        }
+        gridView.setAdapter(adapter);
+        gridView.setRecyclerListener(adapter);
+        gridView.setOnScrollListener(adapter);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        loadingExecutor.shutdownNow();
+        Log.i(TAG, adapter.getPagedData().getLoadsStarted() + " pages loaded, "
+                + adapter.getPagedData().getLoadedPageCount() + " kept");
+    }
+
+    @Override
+    protected void onSaveInstanceState(final Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(VIEW_STATES_KEY, adapter.saveViewStates());
+    }
+}
@@ -1,44 +1,54 @@
 package pl.polidea.androidflip3d.testingactivity;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
 import pl.polidea.androidflip3d.AbstractGridFlip3DImageAdapter;
+import pl.polidea.androidflip3d.Flip3DBatchingExecutor;
+import pl.polidea.androidflip3d.Flip3DFaceAtlas;
+import pl.polidea.androidflip3d.Flip3DFlipGroup;
 import pl.polidea.androidflip3d.Flip3DView;
 import pl.polidea.androidflip3d.Flip3DViewState;
-import pl.polidea.androidflip3d.Flip3DViewState.Flip3DViewListener;
-import pl.polidea.androidflip3d.ViewIndex;
+import pl.polidea.androidflip3d.Flip3DViewStateProvider;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
-import android.util.Log;
 
 /**
  * Tests Flip3D in grid.
  * 
  */
 public class TestGridAdapter extends AbstractGridFlip3DImageAdapter<TestFlip3DViewState, Flip3DView> {
-    private static final String TAG = TestGridAdapter.class.getSimpleName();
     private static final int MAX = 300;
-    private final List<TestFlip3DViewState> states = new ArrayList<TestFlip3DViewState>(MAX);
+    private static final int SWATCH_SIZE = 8;
+    private static final int SWATCH_PAGE_SIZE = 64;
+    private static final int[] SWATCH_COLORS = { Color.BLACK, Color.DKGRAY, Color.GRAY, Color.LTGRAY, Color.WHITE,
+            Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.CYAN, Color.MAGENTA };
     private final Context context;
     private final int imageWidth;
+    private final Flip3DBatchingExecutor eventExecutor = new Flip3DBatchingExecutor();
+    private final Random random = new Random();
+    private final Flip3DFaceAtlas faceAtlas = new Flip3DFaceAtlas(SWATCH_PAGE_SIZE);
 
     public TestGridAdapter(final Context context, final int imageWidth) {
         super(imageWidth);
         this.context = context;
         this.imageWidth = imageWidth;
-        for (int i = 0; i < MAX; i++) {
-            final Random r = new Random();
-            final byte[] b = new byte[4];
-            r.nextBytes(b);
-            final int color = Color.argb(b[0], b[1], b[2], b[3]);
-            final TestFlip3DViewState state = new TestFlip3DViewState(i, color);
-            states.add(state);
-            setViewStates(states);
-        }
+        setFlipGroup(Flip3DFlipGroup.exclusive());
+        // states are created when the items are shown for the first time
+        setViewStateFactory(new Flip3DViewStateProvider.Factory<TestFlip3DViewState>() {
+            @Override
+            public TestFlip3DViewState createViewState(final int position) {
+                // cells of the same color share a swatch
+                final int color = SWATCH_COLORS[random.nextInt(SWATCH_COLORS.length)];
+                final TestFlip3DViewState state = new TestFlip3DViewState(position, color);
+                state.setEventExecutor(eventExecutor);
+                return state;
+            }
+        }, MAX);
+    }
 
+    public Flip3DFaceAtlas getFaceAtlas() {
+        return faceAtlas;
     }
 
     @Override
@@ -48,36 +58,16 @@ public class TestGridAdapter extends AbstractGridFlip3DImageAdapter<TestFlip3DVi
 
     @Override
     protected void prepareView(final int position, final Flip3DView view) {
-        final TestFlip3DViewState newState = Flip3DViewState.attachViewToViewState(position, states, view);
+        final TestFlip3DViewState newState = Flip3DViewState.attachViewToViewState(getOrCreateViewState(position),
+                view);
         view.setInternalPadding(0);
         view.setInternalMargin((imageWidth * 0));
         final int res = context.getResources().getIdentifier("icon", "drawable", "pl.polidea.androidflip3d");
-        view.setImageBackDrawable(context.getResources().getDrawable(res));
-        final int color = getViewStates().get(position).getColor();
-        view.setImageFrontDrawable(new ColorDrawable(color));
-        newState.setFlip3dViewListener(new Flip3DViewListener() {
-            @Override
-            public void onStartedFlipping(final Flip3DViewState viewState, final int startingSide,
-                    final boolean manuallyTriggered) {
-
-                if (manuallyTriggered) {
-                    Log.d(TAG, "Started flipping view " + view.getId());
-                    for (final Flip3DViewState flipViewState : getViewStates()) {
-                        if (position != flipViewState.getId()) {
-                            Log.v(TAG, "Forcing view " + flipViewState.getId() + " to front");
-                            flipViewState.forceFlipTo(ViewIndex.FRONT_VIEW);
-                        }
-                    }
-                }
-            }
-
-            @Override
-            public void onFinishedFlipping(final Flip3DViewState viewState, final int endingSide,
-                    final boolean manuallyTriggered) {
-                // we do nothing
-            }
-        });
-
+        view.setImageBackResource(res);
+        final int color = newState.getColor();
+        // swatches of all the cells share a single small atlas page
+        view.setImageFrontDrawable(faceAtlas.acquire("color:" + color, new ColorDrawable(color), SWATCH_SIZE,
+                SWATCH_SIZE));
         newState.setView(view);
 
     }
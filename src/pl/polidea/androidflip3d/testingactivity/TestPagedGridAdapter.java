@@ -0,0 +1,63 @@
+package pl.polidea.androidflip3d.testingactivity;
+
+import pl.polidea.androidflip3d.AbstractPagedFlip3DImageAdapter;
+import pl.polidea.androidflip3d.Flip3DBatchingExecutor;
+import pl.polidea.androidflip3d.Flip3DFlipGroup;
+import pl.polidea.androidflip3d.Flip3DPagedData;
+import pl.polidea.androidflip3d.Flip3DView;
+import pl.polidea.androidflip3d.Flip3DViewState;
+import pl.polidea.androidflip3d.Flip3DViewStateProvider;
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+
+/**
+ * Tests Flip3D in grid with colors loaded in pages.
+ * 
+ */
+public class TestPagedGridAdapter extends AbstractPagedFlip3DImageAdapter<Integer, Flip3DViewState, Flip3DView> {
+    private final Context context;
+
+    public TestPagedGridAdapter(final Context context, final int imageWidth, final Flip3DPagedData<Integer> pagedData,
+            final Flip3DBatchingExecutor eventExecutor) {
+        super(imageWidth, pagedData, new Flip3DViewStateProvider.Factory<Flip3DViewState>() {
+            @Override
+            public Flip3DViewState createViewState(final int position) {
+                final Flip3DViewState state = new Flip3DViewState(position);
+                state.setEventExecutor(eventExecutor);
+                return state;
+            }
+        });
+        this.context = context;
+        setFlipGroup(Flip3DFlipGroup.exclusive());
+    }
+
+    @Override
+    protected Flip3DView createView() {
+        return new Flip3DView(context);
+    }
+
+    private Flip3DViewState attach(final int position, final Flip3DView view) {
+        final Flip3DViewState newState = Flip3DViewState.attachViewToViewState(getOrCreateViewState(position), view);
+        view.setInternalPadding(0);
+        view.setInternalMargin(0);
+        return newState;
+    }
+
+    @Override
+    protected void prepareItemView(final int position, final Integer color, final Flip3DView view) {
+        final Flip3DViewState newState = attach(position, view);
+        final int res = context.getResources().getIdentifier("icon", "drawable", "pl.polidea.androidflip3d");
+        view.setImageBackResource(res);
+        view.setImageFrontDrawable(new ColorDrawable(color));
+        newState.setView(view);
+    }
+
+    @Override
+    protected void preparePlaceholderView(final int position, final Flip3DView view) {
+        final Flip3DViewState newState = attach(position, view);
+        view.setImageBackDrawable(new ColorDrawable(Color.DKGRAY));
+        view.setImageFrontDrawable(new ColorDrawable(Color.DKGRAY));
+        newState.setView(view);
+    }
+}
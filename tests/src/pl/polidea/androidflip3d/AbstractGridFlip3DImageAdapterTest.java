@@ -0,0 +1,44 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import pl.polidea.androidflip3d.testingactivity.TestGridAdapter;
+
+/**
+ * Animation backends of the views recycled by
+ * {@link AbstractGridFlip3DImageAdapter} when the grid overlay is set and
+ * removed.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class AbstractGridFlip3DImageAdapterTest {
+
+    @Test
+    public void givesRecycledViewsBackTheirBackendsWhenOverlayIsRemoved() {
+        final TestGridAdapter adapter = new TestGridAdapter(RuntimeEnvironment.application, 100);
+        final Flip3DGridOverlay overlay = new Flip3DGridOverlay(RuntimeEnvironment.application);
+        final Flip3DView view = (Flip3DView) adapter.getView(1, null, null);
+        final Flip3DAnimationBackend backend = new PropertyAnimationBackend();
+        view.setAnimationBackend(backend);
+
+        adapter.setGridOverlay(overlay);
+        assertSame(view, adapter.getView(2, view, null));
+        assertSame(overlay, view.getAnimationBackend());
+        // prepared again - the overlay is not remembered as the replaced backend
+        adapter.getView(3, view, null);
+        assertSame(overlay, view.getAnimationBackend());
+
+        adapter.setGridOverlay(null);
+        adapter.getView(4, view, null);
+        assertSame(backend, view.getAnimationBackend());
+        adapter.getView(5, view, null);
+        assertSame(backend, view.getAnimationBackend());
+    }
+}
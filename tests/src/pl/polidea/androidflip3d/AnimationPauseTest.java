@@ -0,0 +1,140 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.os.SystemClock;
+import android.view.animation.Animation;
+import android.view.animation.LinearInterpolator;
+import android.view.animation.Transformation;
+
+/**
+ * Pausing of the view animations of {@link ViewAnimationBackend} and
+ * {@link CrossFadeAnimationBackend} - when the window loses focus.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class AnimationPauseTest {
+
+    private static final long LENGTH = 100;
+    private static final float TOLERANCE = 1e-3f;
+
+    private final Transformation transformation = new Transformation();
+
+    private long start;
+
+    @Before
+    public void setUp() {
+        // animations started on the views are queued, not run at once
+        ShadowLooper.pauseMainLooper();
+        start = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Advances the animation clock.
+     */
+    private static void setTime(final long time) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(time - SystemClock.uptimeMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private static Flip3DAnimation createRotation() {
+        final Flip3DAnimation rotation = new Flip3DAnimation(0, 90, 50, 50);
+        rotation.setDuration(LENGTH);
+        rotation.setInterpolator(new LinearInterpolator());
+        rotation.initialize(100, 100, 100, 100);
+        return rotation;
+    }
+
+    @Test
+    public void pausedRotationStaysOnItsFrame() {
+        final Flip3DAnimation rotation = createRotation();
+        rotation.setStartTime(start);
+        assertTrue(rotation.getTransformation(start + 40, transformation));
+        assertEquals(36.0f, rotation.getCurrentDegrees(), TOLERANCE);
+        setTime(start + 40);
+        rotation.setPaused(true);
+        // long after the end - still on the frame and not finished
+        assertTrue(rotation.getTransformation(start + 1000, transformation));
+        assertEquals(36.0f, rotation.getCurrentDegrees(), TOLERANCE);
+        assertFalse(rotation.hasEnded());
+        setTime(start + 1040);
+        rotation.setPaused(false);
+        assertTrue(rotation.getTransformation(start + 1060, transformation));
+        assertEquals(54.0f, rotation.getCurrentDegrees(), TOLERANCE);
+        // the last frame is drawn once more after the end
+        rotation.getTransformation(start + 1100, transformation);
+        assertTrue(rotation.hasEnded());
+        assertFalse(rotation.getTransformation(start + 1110, transformation));
+    }
+
+    @Test
+    public void rotationPausedBeforeFirstFrameStartsOnResume() {
+        final Flip3DAnimation rotation = createRotation();
+        setTime(start);
+        rotation.setPaused(true);
+        setTime(start + 500);
+        rotation.setPaused(false);
+        assertTrue(rotation.getTransformation(start + 500, transformation));
+        assertTrue(rotation.getTransformation(start + 550, transformation));
+        assertEquals(45.0f, rotation.getCurrentDegrees(), TOLERANCE);
+    }
+
+    /**
+     * Returns rotation (absolute) of the rotation or alpha of the fade in the
+     * last frame.
+     */
+    private float getProgress(final Animation animation) {
+        if (animation instanceof Flip3DAnimation) {
+            return Math.abs(((Flip3DAnimation) animation).getCurrentDegrees());
+        }
+        return transformation.getAlpha();
+    }
+
+    private void checkPaused(final Flip3DAnimationBackend backend, final float halfway, final float at80) {
+        final Flip3DView view = new Flip3DView(RuntimeEnvironment.application);
+        backend.startRotation(view, ViewIndex.FRONT_VIEW, RotationDirection.ROTATE_LEFT, LENGTH, null);
+        // Robolectric would run the animations started to the end by itself
+        Robolectric.getForegroundThreadScheduler().reset();
+        ShadowLooper.pauseMainLooper();
+        final Animation animation = view.getView(ViewIndex.FRONT_VIEW).getAnimation();
+        animation.setInterpolator(new LinearInterpolator());
+        animation.initialize(100, 100, 100, 100);
+        final long begin = SystemClock.uptimeMillis();
+        animation.setStartTime(begin);
+        setTime(begin + 50);
+        animation.getTransformation(begin + 50, transformation);
+        assertEquals(halfway, getProgress(animation), TOLERANCE);
+        backend.setPaused(view, true);
+        setTime(begin + 5050);
+        assertTrue(animation.getTransformation(begin + 5050, transformation));
+        assertEquals(halfway, getProgress(animation), TOLERANCE);
+        backend.setPaused(view, false);
+        assertTrue(animation.getTransformation(begin + 5080, transformation));
+        assertEquals(at80, getProgress(animation), TOLERANCE);
+        backend.clearAllAnimations(view);
+    }
+
+    @Test
+    public void viewAnimationBackendPausesRotation() {
+        checkPaused(new ViewAnimationBackend(), 45.0f, 72.0f);
+    }
+
+    @Test
+    public void crossFadeBackendPausesFade() {
+        checkPaused(new CrossFadeAnimationBackend(), 0.5f, 0.2f);
+    }
+}
@@ -0,0 +1,93 @@
+package pl.polidea.androidflip3d;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * In-process source of item colors loading every page with a configurable
+ * latency - simulates a catalog served page by page. Loads can be made to
+ * fail.
+ *
+ */
+public class FakePagedSource implements Flip3DPagedData.Source<Integer> {
+
+    private final int itemCount;
+    private final long latencyMillis;
+    private final long seed;
+    private volatile int pagesLoaded = 0;
+    private volatile int pagesFailed = 0;
+    private volatile boolean failing = false;
+
+    /**
+     * Creates source.
+     *
+     * @param itemCount
+     *            number of items
+     * @param latencyMillis
+     *            time of loading each page
+     * @param seed
+     *            seed of the colors (the same item always has the same color)
+     */
+    public FakePagedSource(final int itemCount, final long latencyMillis, final long seed) {
+        this.itemCount = itemCount;
+        this.latencyMillis = latencyMillis;
+        this.seed = seed;
+    }
+
+    @Override
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    @Override
+    public List<Integer> loadPage(final int firstPosition, final int count) throws IOException {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading of page at " + firstPosition + " interrupted");
+        }
+        if (failing) {
+            pagesFailed++;
+            throw new IOException("Loading of page at " + firstPosition + " failed");
+        }
+        final List<Integer> colors = new ArrayList<Integer>(count);
+        for (int i = firstPosition; i < firstPosition + count; i++) {
+            colors.add(getColor(i));
+        }
+        pagesLoaded++;
+        return colors;
+    }
+
+    /**
+     * Returns color of the item (without latency).
+     *
+     * @param position
+     *            position of the item
+     * @return the color
+     */
+    public int getColor(final int position) {
+        return 0xff000000 | new Random(seed + position).nextInt(0x1000000);
+    }
+
+    /**
+     * Makes the following loads fail (or succeed again).
+     *
+     * @param failing
+     *            true if loads should fail
+     */
+    public void setFailing(final boolean failing) {
+        this.failing = failing;
+    }
+
+    public int getPagesLoaded() {
+        return pagesLoaded;
+    }
+
+    public int getPagesFailed() {
+        return pagesFailed;
+    }
+}
@@ -0,0 +1,190 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Storing sides in a file with {@link FileFlip3DSideStore}.
+ *
+ */
+public class FileFlip3DSideStoreTest {
+
+    private static final int PAGE_SIZE = 16;
+
+    private static final int IDS_PER_PAGE = PAGE_SIZE * 8;
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private FileFlip3DSideStore store;
+
+    /**
+     * Counts down when the range of ids is loaded.
+     */
+    private static final class LoadedLatch implements Flip3DSideStore.OnSidesLoadedListener {
+        private final int id;
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private LoadedLatch(final int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void onSidesLoaded(final int fromId, final int toId) {
+            if (id >= fromId && id < toId) {
+                latch.countDown();
+            }
+        }
+
+        private void await() throws InterruptedException {
+            assertTrue("Side of " + id + " not loaded", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+    }
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "sides.bin");
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private FileFlip3DSideStore openStore() {
+        store = new FileFlip3DSideStore(file, PAGE_SIZE);
+        return store;
+    }
+
+    private static int getLoadedViewIndex(final Flip3DSideStore store, final int id) throws InterruptedException {
+        final LoadedLatch loaded = new LoadedLatch(id);
+        store.setOnSidesLoadedListener(loaded);
+        final int viewIndex = store.getViewIndex(id);
+        if (viewIndex != Flip3DSideStore.UNKNOWN) {
+            return viewIndex;
+        }
+        loaded.await();
+        store.setOnSidesLoadedListener(null);
+        return store.getViewIndex(id);
+    }
+
+    private void writeSides(final int... backIds) {
+        final FileFlip3DSideStore writer = new FileFlip3DSideStore(file, PAGE_SIZE);
+        for (final int id : backIds) {
+            writer.setViewIndex(id, ViewIndex.BACK_VIEW);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void sidesOfNewFileAreFront() throws InterruptedException {
+        openStore();
+        assertEquals(ViewIndex.FRONT_VIEW, getLoadedViewIndex(store, 0));
+        assertEquals(ViewIndex.FRONT_VIEW, getLoadedViewIndex(store, 10 * IDS_PER_PAGE + 3));
+        assertEquals(ViewIndex.FRONT_VIEW, store.getViewIndex(-1));
+    }
+
+    @Test
+    public void pagesAreLoadedInTheBackground() throws InterruptedException {
+        writeSides(5);
+        openStore();
+        final LoadedLatch loaded = new LoadedLatch(5);
+        store.setOnSidesLoadedListener(loaded);
+        // nothing is read by the calling thread
+        assertEquals(Flip3DSideStore.UNKNOWN, store.getViewIndex(5));
+        loaded.await();
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(5));
+        assertEquals(ViewIndex.FRONT_VIEW, store.getViewIndex(6));
+    }
+
+    @Test
+    public void sidesSurviveReopening() throws InterruptedException {
+        final int[] backIds = { 1, 7, IDS_PER_PAGE - 1, IDS_PER_PAGE, 5 * IDS_PER_PAGE + 17 };
+        writeSides(backIds);
+        assertTrue(file.length() > 0);
+        openStore();
+        final Set<Integer> back = new HashSet<Integer>();
+        for (final int id : backIds) {
+            back.add(id);
+        }
+        for (int id = 0; id < 6 * IDS_PER_PAGE; id++) {
+            final int expected = back.contains(id) ? ViewIndex.BACK_VIEW : ViewIndex.FRONT_VIEW;
+            assertEquals("Id " + id, expected, getLoadedViewIndex(store, id));
+        }
+    }
+
+    @Test
+    public void sidesSetBeforeLoadingAreApplied() throws InterruptedException {
+        writeSides(3, 4);
+        openStore();
+        store.setViewIndex(4, ViewIndex.FRONT_VIEW);
+        store.setViewIndex(9, ViewIndex.BACK_VIEW);
+        // sides set are visible before the page is loaded
+        assertEquals(ViewIndex.FRONT_VIEW, store.getViewIndex(4));
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(9));
+        assertEquals(ViewIndex.BACK_VIEW, getLoadedViewIndex(store, 3));
+        assertEquals(ViewIndex.FRONT_VIEW, store.getViewIndex(4));
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(9));
+        store.close();
+        store = null;
+        openStore();
+        assertEquals(ViewIndex.BACK_VIEW, getLoadedViewIndex(store, 3));
+        assertEquals(ViewIndex.FRONT_VIEW, store.getViewIndex(4));
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(9));
+    }
+
+    @Test
+    public void closeWritesSidesOfPagesStillLoading() throws InterruptedException {
+        openStore();
+        store.setViewIndex(2 * IDS_PER_PAGE + 1, ViewIndex.BACK_VIEW);
+        store.close();
+        store = null;
+        openStore();
+        assertEquals(ViewIndex.BACK_VIEW, getLoadedViewIndex(store, 2 * IDS_PER_PAGE + 1));
+    }
+
+    @Test
+    public void pageWhichFailedToLoadIsNotWrittenOver() throws InterruptedException {
+        // the file cannot be opened while it is a directory
+        assertTrue(file.mkdir());
+        openStore();
+        store.setViewIndex(6, ViewIndex.BACK_VIEW);
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (store.getLastError() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(store.getLastError());
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(6));
+
+        // the file becomes readable - the page is read again, not taken
+        // from memory
+        assertTrue(file.delete());
+        writeSides(5);
+        assertEquals(ViewIndex.BACK_VIEW, getLoadedViewIndex(store, 5));
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(6));
+        store.close();
+        store = null;
+        openStore();
+        assertEquals(ViewIndex.BACK_VIEW, getLoadedViewIndex(store, 5));
+        assertEquals(ViewIndex.BACK_VIEW, store.getViewIndex(6));
+    }
+}
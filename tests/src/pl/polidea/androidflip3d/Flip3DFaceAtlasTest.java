@@ -0,0 +1,203 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import pl.polidea.androidflip3d.testingactivity.TestGridAdapter;
+import android.graphics.Rect;
+import android.graphics.drawable.ColorDrawable;
+
+/**
+ * Shelf packing of {@link Flip3DFaceAtlas} - reuse of released slots,
+ * returning empty pages to the pool and repacking of sparse pages.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class Flip3DFaceAtlasTest {
+
+    private static final int PAGE_SIZE = 64;
+    private static final int SWATCH_SIZE = 8;
+    // swatch with its padding
+    private static final int SLOT_SIZE = SWATCH_SIZE + 2;
+    private static final int SLOTS_PER_PAGE = (PAGE_SIZE / SLOT_SIZE) * (PAGE_SIZE / SLOT_SIZE);
+    private static final long PAGE_BYTES = (long) PAGE_SIZE * PAGE_SIZE * 4;
+
+    private final Flip3DBitmapPool pool = new Flip3DBitmapPool(Long.MAX_VALUE);
+
+    private Flip3DFaceAtlas createAtlas() {
+        final Flip3DFaceAtlas atlas = new Flip3DFaceAtlas(PAGE_SIZE);
+        atlas.setBitmapPool(pool);
+        return atlas;
+    }
+
+    private static Flip3DFaceAtlas.FaceDrawable acquire(final Flip3DFaceAtlas atlas, final String key,
+            final int width, final int height) {
+        return (Flip3DFaceAtlas.FaceDrawable) atlas.acquire(key, new ColorDrawable(), width, height);
+    }
+
+    private static String getRegionKey(final String key, final Flip3DFaceAtlas.FaceDrawable drawable) {
+        return key + '@' + drawable.getIntrinsicWidth() + 'x' + drawable.getIntrinsicHeight();
+    }
+
+    /**
+     * Checks that faces of the same key share a region and that the other
+     * faces do not overlap.
+     */
+    private static void assertPacked(final Flip3DFaceAtlas atlas, final List<String> keys,
+            final List<Flip3DFaceAtlas.FaceDrawable> drawables) {
+        final Map<String, Flip3DFaceAtlas.FaceDrawable> regions = new HashMap<String, Flip3DFaceAtlas.FaceDrawable>();
+        for (int i = 0; i < drawables.size(); i++) {
+            final Flip3DFaceAtlas.FaceDrawable drawable = drawables.get(i);
+            final String regionKey = getRegionKey(keys.get(i), drawable);
+            final Rect bounds = drawable.getAtlasBounds();
+            assertEquals(drawable.getIntrinsicWidth(), bounds.width());
+            assertEquals(drawable.getIntrinsicHeight(), bounds.height());
+            assertTrue(regionKey + " " + bounds, bounds.left > 0 && bounds.top > 0 && bounds.right < PAGE_SIZE
+                    && bounds.bottom < PAGE_SIZE);
+            final Flip3DFaceAtlas.FaceDrawable shared = regions.get(regionKey);
+            if (shared == null) {
+                regions.put(regionKey, drawable);
+            } else {
+                assertEquals(regionKey, shared.getAtlasBounds(), bounds);
+                assertSame(regionKey, shared.getAtlasPage(), drawable.getAtlasPage());
+            }
+        }
+        final List<Flip3DFaceAtlas.FaceDrawable> distinct = new ArrayList<Flip3DFaceAtlas.FaceDrawable>(
+                regions.values());
+        for (int i = 0; i < distinct.size(); i++) {
+            for (int j = i + 1; j < distinct.size(); j++) {
+                final Flip3DFaceAtlas.FaceDrawable first = distinct.get(i);
+                final Flip3DFaceAtlas.FaceDrawable second = distinct.get(j);
+                if (first.getAtlasPage() == second.getAtlasPage()) { // NOPMD - identity intended
+                    assertFalse(first.getAtlasBounds() + " overlaps " + second.getAtlasBounds(),
+                            Rect.intersects(first.getAtlasBounds(), second.getAtlasBounds()));
+                }
+            }
+        }
+        assertEquals(regions.size(), atlas.getFaceCount());
+    }
+
+    @Test
+    public void reusesSlotsOfReleasedFaces() {
+        final Flip3DFaceAtlas atlas = createAtlas();
+        final Flip3DFaceAtlas.FaceDrawable wide = acquire(atlas, "wide", 2 * SWATCH_SIZE + 2, SWATCH_SIZE);
+        final Flip3DFaceAtlas.FaceDrawable last = acquire(atlas, "last", SWATCH_SIZE, SWATCH_SIZE);
+        assertEquals(2 * SLOT_SIZE + 1, last.getAtlasBounds().left);
+
+        // not the last slot of the shelf - kept free and split by the faces
+        wide.release();
+        final Flip3DFaceAtlas.FaceDrawable first = acquire(atlas, "first", SWATCH_SIZE, SWATCH_SIZE);
+        final Flip3DFaceAtlas.FaceDrawable second = acquire(atlas, "second", SWATCH_SIZE, SWATCH_SIZE);
+        assertEquals(1, first.getAtlasBounds().left);
+        assertEquals(SLOT_SIZE + 1, second.getAtlasBounds().left);
+        assertEquals(1, second.getAtlasBounds().top);
+
+        // the last slot of the shelf - the shelf is shortened
+        last.release();
+        final Flip3DFaceAtlas.FaceDrawable next = acquire(atlas, "next", SWATCH_SIZE, SWATCH_SIZE);
+        assertEquals(2 * SLOT_SIZE + 1, next.getAtlasBounds().left);
+        assertEquals(1, next.getAtlasBounds().top);
+        assertEquals(1, atlas.getPageCount());
+    }
+
+    @Test
+    public void sharesRegionOfTheSameKeyAndReturnsEmptyPages() {
+        final Flip3DFaceAtlas atlas = createAtlas();
+        final Flip3DFaceAtlas.FaceDrawable first = acquire(atlas, "color:1", SWATCH_SIZE, SWATCH_SIZE);
+        final Flip3DFaceAtlas.FaceDrawable second = acquire(atlas, "color:1", SWATCH_SIZE, SWATCH_SIZE);
+        final Flip3DFaceAtlas.FaceDrawable larger = acquire(atlas, "color:1", SLOT_SIZE, SLOT_SIZE);
+        assertNotSame(first, second);
+        assertEquals(first.getAtlasBounds(), second.getAtlasBounds());
+        assertFalse(Rect.intersects(first.getAtlasBounds(), larger.getAtlasBounds()));
+        assertEquals(2, atlas.getFaceCount());
+
+        first.release();
+        first.release();
+        assertEquals(2, atlas.getFaceCount());
+        second.release();
+        larger.release();
+        assertEquals(0, atlas.getFaceCount());
+        assertEquals(0, atlas.getPageCount());
+        assertEquals(PAGE_BYTES, pool.getPooledBytes());
+        // the page is taken from the pool again
+        acquire(atlas, "color:2", SWATCH_SIZE, SWATCH_SIZE);
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void packsManyFacesWithoutOverlapping() {
+        final Flip3DFaceAtlas atlas = createAtlas();
+        final Random random = new Random(0);
+        final List<String> keys = new ArrayList<String>();
+        final List<Flip3DFaceAtlas.FaceDrawable> drawables = new ArrayList<Flip3DFaceAtlas.FaceDrawable>();
+        // Robolectric keeps description of everything drawn into a bitmap -
+        // pages repacked many times would take all the memory
+        for (int step = 0; step < 120; step++) {
+            if (random.nextInt(3) < 2 || drawables.isEmpty()) {
+                final String key = "face:" + random.nextInt(50);
+                final int width = 2 + random.nextInt(20);
+                final int height = 2 + 4 * random.nextInt(5);
+                keys.add(key);
+                drawables.add(acquire(atlas, key, width, height));
+            } else {
+                final int i = random.nextInt(drawables.size());
+                keys.remove(i);
+                drawables.remove(i).release();
+            }
+            assertPacked(atlas, keys, drawables);
+        }
+        assertTrue(atlas.toString(), atlas.getRepackCount() > 0);
+    }
+
+    @Test
+    public void repacksSparsePagesIntoFewerPages() {
+        final Flip3DFaceAtlas atlas = createAtlas();
+        final List<String> keys = new ArrayList<String>();
+        final List<Flip3DFaceAtlas.FaceDrawable> drawables = new ArrayList<Flip3DFaceAtlas.FaceDrawable>();
+        for (int i = 0; i < 3 * SLOTS_PER_PAGE; i++) {
+            keys.add("color:" + i);
+            drawables.add(acquire(atlas, "color:" + i, SWATCH_SIZE, SWATCH_SIZE));
+        }
+        assertEquals(3, atlas.getPageCount());
+        // a few faces left on each of the pages
+        for (int i = drawables.size() - 1; i >= 0; i--) {
+            if (i % SLOTS_PER_PAGE >= 4) {
+                keys.remove(i);
+                drawables.remove(i).release();
+            }
+        }
+        assertPacked(atlas, keys, drawables);
+        assertTrue(atlas.toString(), atlas.getRepackCount() > 0);
+        assertEquals(1, atlas.getPageCount());
+        // the sparse pages went back to the pool
+        assertTrue(pool.getPooledBytes() >= 2 * PAGE_BYTES);
+    }
+
+    @Test
+    @Config(manifest = "../AndroidManifest.xml", sdk = 18)
+    public void takesLessMemoryThanSeparateSwatches() {
+        final TestGridAdapter adapter = new TestGridAdapter(RuntimeEnvironment.application, 100);
+        for (int i = 0; i < adapter.getCount(); i++) {
+            adapter.getView(i, null, null);
+        }
+        final Flip3DFaceAtlas atlas = adapter.getFaceAtlas();
+        assertEquals(1, atlas.getPageCount());
+        assertTrue(atlas.toString(), atlas.getAtlasBytes() < atlas.getIndividualBytes());
+    }
+}
@@ -0,0 +1,211 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowBitmapFactory;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.app.Activity;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+/**
+ * Memory budget of {@link Flip3DFaceCache} - of the cached faces, the pooled
+ * bitmaps and the bitmap decoded while a face is loaded.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class Flip3DFaceCacheTest {
+
+    private static final int[] RESOURCES = { android.R.drawable.ic_menu_add, android.R.drawable.ic_menu_delete,
+            android.R.drawable.ic_menu_edit, android.R.drawable.ic_menu_save, android.R.drawable.ic_menu_search,
+            android.R.drawable.ic_menu_share };
+
+    private static final int RESOURCE_SIZE = 400;
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private Resources resources;
+
+    /**
+     * Holder attached or not.
+     */
+    private static final class TestHolder implements Flip3DFaceCache.Holder {
+        private boolean attached = true;
+        private final List<Bitmap> evicted = new ArrayList<Bitmap>();
+
+        @Override
+        public boolean isHolderAttached() {
+            return attached;
+        }
+
+        @Override
+        public void onFaceEvicted(final Bitmap face) {
+            evicted.add(face);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        resources = RuntimeEnvironment.application.getResources();
+        for (final int resId : RESOURCES) {
+            ShadowBitmapFactory.provideWidthAndHeightHints(resId, RESOURCE_SIZE, RESOURCE_SIZE);
+        }
+    }
+
+    private static long getBytes(final int width, final int height) {
+        return (long) width * height * BYTES_PER_PIXEL;
+    }
+
+    @Test
+    public void decodesFaceDownsampledToTheSide() {
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, getBytes(1000, 1000));
+        final TestHolder holder = new TestHolder();
+        final Bitmap face = cache.acquire(holder, RESOURCES[0], 100, 50);
+        assertEquals(50, face.getWidth());
+        assertEquals(50, face.getHeight());
+        assertSame(face, cache.acquire(new TestHolder(), RESOURCES[0], 100, 50));
+        assertEquals(getBytes(50, 50), cache.getUsedBytes());
+    }
+
+    @Test
+    public void countsBitmapDecodedWhileLoading() {
+        // room for the face, but not for the face and the bitmap decoded
+        // (downsampled 4 times to 100x100) together
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, getBytes(150, 100));
+        final Bitmap face = cache.acquire(new TestHolder(), RESOURCES[0], 100, 100);
+        assertNotNull(face);
+        assertEquals(50, face.getWidth());
+        assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void shrinksPoolWhenItNeedsRoom() {
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, getBytes(200, 120));
+        final Flip3DBitmapPool pool = new Flip3DBitmapPool(Long.MAX_VALUE);
+        pool.release(Bitmap.createBitmap(120, 120, Bitmap.Config.ARGB_8888));
+        cache.setBitmapPool(pool);
+        assertEquals(getBytes(120, 120), cache.getTotalBytes());
+        final Bitmap face = cache.acquire(new TestHolder(), RESOURCES[0], 100, 100);
+        assertEquals(100, face.getWidth());
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(getBytes(100, 100), cache.getTotalBytes());
+    }
+
+    @Test
+    public void dropsFacesOfDetachedHolders() {
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, getBytes(250, 100));
+        final TestHolder detached = new TestHolder();
+        final Bitmap detachedFace = cache.acquire(detached, RESOURCES[0], 100, 100);
+        detached.attached = false;
+        final TestHolder attached = new TestHolder();
+        final Bitmap attachedFace = cache.acquire(attached, RESOURCES[1], 100, 100);
+        assertEquals(100, attachedFace.getWidth());
+        assertEquals(1, detached.evicted.size());
+        assertSame(detachedFace, detached.evicted.get(0));
+        assertTrue(attached.evicted.isEmpty());
+        assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void givesUpWhenEverythingIsAttached() {
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, getBytes(1, 1));
+        assertNull(cache.acquire(new TestHolder(), RESOURCES[0], 100, 100));
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    public void neverExceedsBudget() {
+        final long maxBytes = getBytes(300, 300);
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, maxBytes);
+        cache.setBitmapPool(new Flip3DBitmapPool(maxBytes));
+        final Random random = new Random(0);
+        final List<TestHolder> holders = new ArrayList<TestHolder>();
+        final List<Bitmap> faces = new ArrayList<Bitmap>();
+        for (int step = 0; step < 2000; step++) {
+            final int operation = random.nextInt(10);
+            if (operation < 5 || holders.isEmpty()) {
+                final TestHolder holder = new TestHolder();
+                final int size = 20 + 20 * random.nextInt(10);
+                final Bitmap face = cache.acquire(holder, RESOURCES[random.nextInt(RESOURCES.length)], size, size);
+                if (face != null) {
+                    holders.add(holder);
+                    faces.add(face);
+                }
+            } else if (operation < 8) {
+                final int i = random.nextInt(holders.size());
+                cache.release(holders.remove(i), faces.remove(i));
+            } else {
+                final TestHolder holder = holders.get(random.nextInt(holders.size()));
+                holder.attached = !holder.attached;
+            }
+            assertTrue("Step " + step + ": " + cache.getTotalBytes() + " bytes used",
+                    cache.getTotalBytes() <= maxBytes);
+        }
+    }
+
+    private static Bitmap getShownFace(final Flip3DView view) {
+        // the only image view - of the front
+        final ImageView imageView = (ImageView) view.findViewById(1);
+        return ((BitmapDrawable) imageView.getDrawable()).getBitmap();
+    }
+
+    @Test
+    @Config(manifest = "../AndroidManifest.xml", sdk = 18)
+    public void keepsResizedFaceUntilTheNewOneIsShown() {
+        // room for the face shown and for loading one more
+        final Flip3DFaceCache cache = new Flip3DFaceCache(resources, getBytes(250, 100));
+        cache.setBitmapPool(new Flip3DBitmapPool(Long.MAX_VALUE));
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        final Flip3DView view = new Flip3DView(activity);
+        view.setInternalMargin(0);
+        view.setInternalPadding(0);
+        view.setFaceCache(cache);
+        view.setImageFrontResource(RESOURCES[0]);
+        final FrameLayout frame = new FrameLayout(activity);
+        frame.addView(view, new FrameLayout.LayoutParams(100, 100));
+        activity.setContentView(frame);
+        view.layout(0, 0, 100, 100);
+        final Bitmap shown = getShownFace(view);
+        assertEquals(100, shown.getWidth());
+
+        // the face of the new size is loaded after the layout
+        ShadowLooper.pauseMainLooper();
+        view.setLayoutParams(new FrameLayout.LayoutParams(60, 60));
+        view.layout(0, 0, 60, 60);
+        final TestHolder other = new TestHolder();
+        final Bitmap otherFace = cache.acquire(other, RESOURCES[1], 100, 100);
+        assertSame(shown, getShownFace(view));
+        assertFalse(shown.isRecycled());
+        assertNotSame(shown, otherFace);
+        assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+
+        cache.release(other, otherFace);
+        ShadowLooper.unPauseMainLooper();
+        assertEquals(60, getShownFace(view).getWidth());
+        // the old face is given back
+        cache.trim();
+        assertEquals(getBytes(60, 60), cache.getUsedBytes());
+    }
+}
@@ -0,0 +1,168 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Policies of {@link Flip3DFlipGroup} on states drawn by
+ * {@link SimulatedFlip3DRenderer}.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class Flip3DFlipGroupTest {
+
+    /**
+     * State counting flips forced on it.
+     */
+    private static final class CountingViewState extends Flip3DViewState {
+        private int forcedFlips = 0;
+
+        private CountingViewState(final int id) {
+            super(id);
+        }
+
+        @Override
+        public void forceFlipTo(final int viewIndex) {
+            forcedFlips++;
+            super.forceFlipTo(viewIndex);
+        }
+    }
+
+    private static void finishRotations(final SimulatedFlip3DRenderer... renderers) {
+        boolean finished = true;
+        while (finished) {
+            finished = false;
+            for (final SimulatedFlip3DRenderer renderer : renderers) {
+                finished |= renderer.finishRotation();
+            }
+        }
+    }
+
+    @Test
+    public void radioGroupBlocksClosingTheOnlyOpenState() {
+        final Flip3DViewState first = new Flip3DViewState(0);
+        final Flip3DViewState second = new Flip3DViewState(1);
+        final SimulatedFlip3DRenderer firstRenderer = new SimulatedFlip3DRenderer();
+        final SimulatedFlip3DRenderer secondRenderer = new SimulatedFlip3DRenderer();
+        first.setRenderer(firstRenderer);
+        second.setRenderer(secondRenderer);
+        final Flip3DFlipGroup group = Flip3DFlipGroup.radio();
+        group.add(first);
+        group.add(second);
+
+        first.flipManually();
+        finishRotations(firstRenderer, secondRenderer);
+        firstRenderer.checkInvariants(first);
+        assertEquals(ViewIndex.BACK_VIEW, first.getCurrentViewIndex());
+        // displayed, but clicks are ignored instead of flipping back and forth
+        assertFalse(firstRenderer.isClickable(ViewIndex.BACK_VIEW));
+        assertEquals(1, firstRenderer.getRotationsStarted());
+
+        second.flipManually();
+        finishRotations(firstRenderer, secondRenderer);
+        firstRenderer.checkInvariants(first);
+        secondRenderer.checkInvariants(second);
+        assertEquals(ViewIndex.FRONT_VIEW, first.getCurrentViewIndex());
+        assertEquals(ViewIndex.BACK_VIEW, second.getCurrentViewIndex());
+        assertEquals(Arrays.asList(second), group.getOpenStates());
+        assertTrue(first.isSideClickable(ViewIndex.BACK_VIEW));
+        assertFalse(secondRenderer.isClickable(ViewIndex.BACK_VIEW));
+
+        group.remove(second);
+        assertTrue(secondRenderer.isClickable(ViewIndex.BACK_VIEW));
+    }
+
+    @Test
+    public void exclusiveGroupLetsTheOpenStateClose() {
+        final Flip3DViewState state = new Flip3DViewState(0);
+        final SimulatedFlip3DRenderer renderer = new SimulatedFlip3DRenderer();
+        state.setRenderer(renderer);
+        final Flip3DFlipGroup group = Flip3DFlipGroup.exclusive();
+        group.add(state);
+        state.flipManually();
+        finishRotations(renderer);
+        assertTrue(renderer.isClickable(ViewIndex.BACK_VIEW));
+        state.flipManually();
+        finishRotations(renderer);
+        renderer.checkInvariants(state);
+        assertEquals(ViewIndex.FRONT_VIEW, state.getCurrentViewIndex());
+        assertTrue(group.getOpenStates().isEmpty());
+    }
+
+    @Test
+    public void maxOpenGroupClosesTheOldestState() {
+        final int maxOpen = 2;
+        final Flip3DFlipGroup group = new Flip3DFlipGroup(maxOpen, false);
+        final Flip3DViewState[] states = new Flip3DViewState[maxOpen + 2];
+        final SimulatedFlip3DRenderer[] renderers = new SimulatedFlip3DRenderer[states.length];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new Flip3DViewState(i);
+            renderers[i] = new SimulatedFlip3DRenderer();
+            states[i].setRenderer(renderers[i]);
+            group.add(states[i]);
+        }
+        for (int i = 0; i <= maxOpen; i++) {
+            states[i].flipManually();
+            finishRotations(renderers);
+        }
+        assertEquals(ViewIndex.FRONT_VIEW, states[0].getCurrentViewIndex());
+        assertEquals(ViewIndex.BACK_VIEW, states[1].getCurrentViewIndex());
+        assertEquals(ViewIndex.BACK_VIEW, states[2].getCurrentViewIndex());
+        assertEquals(Arrays.asList(states[1], states[2]), group.getOpenStates());
+
+        states[maxOpen + 1].flipManually();
+        finishRotations(renderers);
+        for (int i = 0; i < states.length; i++) {
+            renderers[i].checkInvariants(states[i]);
+        }
+        assertEquals(ViewIndex.FRONT_VIEW, states[1].getCurrentViewIndex());
+        assertEquals(Arrays.asList(states[2], states[3]), group.getOpenStates());
+        // closed by the group, never reopened
+        assertEquals(2, renderers[0].getRotationsStarted());
+        assertEquals(2, renderers[1].getRotationsStarted());
+    }
+
+    @Test
+    public void linkedStateFollowsWithoutFlippingBack() {
+        final CountingViewState first = new CountingViewState(0);
+        final CountingViewState second = new CountingViewState(1);
+        final SimulatedFlip3DRenderer firstRenderer = new SimulatedFlip3DRenderer();
+        final SimulatedFlip3DRenderer secondRenderer = new SimulatedFlip3DRenderer();
+        first.setRenderer(firstRenderer);
+        second.setRenderer(secondRenderer);
+        final Flip3DFlipGroup group = new Flip3DFlipGroup(Flip3DFlipGroup.UNLIMITED, false);
+        group.add(first);
+        group.add(second);
+        group.link(first, second);
+
+        second.flipManually();
+        finishRotations(firstRenderer, secondRenderer);
+        // the partner is already on the opposite side
+        assertEquals(ViewIndex.FRONT_VIEW, first.getCurrentViewIndex());
+        assertEquals(ViewIndex.BACK_VIEW, second.getCurrentViewIndex());
+        assertEquals(0, firstRenderer.getRotationsStarted());
+        assertEquals(1, first.forcedFlips);
+
+        first.flipManually();
+        finishRotations(firstRenderer, secondRenderer);
+        firstRenderer.checkInvariants(first);
+        secondRenderer.checkInvariants(second);
+        assertEquals(ViewIndex.BACK_VIEW, first.getCurrentViewIndex());
+        assertEquals(ViewIndex.FRONT_VIEW, second.getCurrentViewIndex());
+        // forced flip of the partner does not force the first one again
+        assertEquals(1, first.forcedFlips);
+        assertEquals(1, second.forcedFlips);
+        assertEquals(1, firstRenderer.getRotationsStarted());
+        assertEquals(2, secondRenderer.getRotationsStarted());
+        assertEquals(Arrays.asList(first), group.getOpenStates());
+    }
+}
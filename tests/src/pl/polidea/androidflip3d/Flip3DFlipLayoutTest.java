@@ -0,0 +1,109 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.widget.FrameLayout;
+
+/**
+ * Steps flips of a real {@link Flip3DView} frame by frame (drawing it after
+ * each frame of the clock) and checks that flipping causes no layout.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class Flip3DFlipLayoutTest {
+
+    private static final int SIZE = 100;
+    private static final long ANIMATION_LENGTH = 200;
+    private static final long FRAME_MILLIS = 16;
+    private static final int MAX_FRAMES = 100;
+
+    private View root;
+    private Flip3DView view;
+    private Flip3DViewState state;
+    private Canvas canvas;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        view = new Flip3DView(activity);
+        view.setAnimationBackend(new PropertyAnimationBackend());
+        view.setAnimationLength(ANIMATION_LENGTH);
+        final FrameLayout frame = new FrameLayout(activity);
+        frame.addView(view, new FrameLayout.LayoutParams(SIZE, SIZE));
+        activity.setContentView(frame);
+        // Robolectric does not show the window - the flips would be skipped
+        ReflectionHelpers.setField(ReflectionHelpers.getField(frame, "mAttachInfo"), "mWindowVisibility",
+                View.VISIBLE);
+        root = frame.getRootView();
+        canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        state = new Flip3DViewState(0);
+        state.setView(view);
+        layout();
+    }
+
+    /**
+     * Lays out the window if requested - as the traversal before each frame.
+     */
+    private void layout() {
+        if (!root.isLayoutRequested()) {
+            return;
+        }
+        final DisplayMetrics metrics = root.getResources().getDisplayMetrics();
+        root.measure(View.MeasureSpec.makeMeasureSpec(metrics.widthPixels, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(metrics.heightPixels, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, metrics.widthPixels, metrics.heightPixels);
+    }
+
+    /**
+     * Draws frames until the flip ends.
+     *
+     * @return number of frames drawn
+     */
+    private int stepFlip() {
+        int frames = 0;
+        while (state.isFlipping()) {
+            assertTrue("Flip not finished in " + MAX_FRAMES + " frames", frames < MAX_FRAMES);
+            Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+            layout();
+            // View.draw is replaced by Robolectric - the sides are drawn here
+            view.dispatchDraw(canvas);
+            frames++;
+        }
+        return frames;
+    }
+
+    @Test
+    public void flippingCausesNoLayout() {
+        view.resetFlipLayoutCount();
+        state.flipManually();
+        final int framesToBack = stepFlip();
+        assertEquals(ViewIndex.BACK_VIEW, state.getCurrentViewIndex());
+        state.flipManually();
+        final int framesToFront = stepFlip();
+        assertEquals(ViewIndex.FRONT_VIEW, state.getCurrentViewIndex());
+        // both halves animated over several frames
+        final int minFrames = (int) (2 * ANIMATION_LENGTH / FRAME_MILLIS) - 2;
+        assertTrue("Flipped to back in " + framesToBack + " frames", framesToBack >= minFrames);
+        assertTrue("Flipped to front in " + framesToFront + " frames", framesToFront >= minFrames);
+        assertFalse(view.isLayoutRequested());
+        assertEquals(0, view.getFlipLayoutCount());
+    }
+}
@@ -0,0 +1,219 @@
+package pl.polidea.androidflip3d;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Software renderer stepping flips frame by frame on a fake clock. It
+ * renders the flips of a {@link Flip3DStateMachine} like
+ * {@link PropertyAnimationBackend} does - each half takes the animation
+ * length and the second half starts in the frame after the first one has
+ * ended - but instead of drawing, it records rotation and transformation
+ * matrix of every frame (computed with the model of {@link Flip3DKeyframes}).
+ * Frames can be written as golden keyframes and compared with them later, so
+ * flip visuals can be verified on plain JVM without any device (see
+ * {@link Flip3DKeyframesGoldenTest}).
+ *
+ */
+public class Flip3DFrameStepper extends SimulatedFlip3DRenderer {
+
+    private final int width;
+    private final int height;
+    private final long animationLength;
+    private final long frameMillis;
+
+    private int frontToBack = RotationDirection.ROTATE_LEFT;
+    private int backToFront = RotationDirection.ROTATE_RIGHT;
+
+    private long now = 0;
+    private int half = -1;
+    private int direction;
+    private long halfStartTime;
+
+    private final List<float[]> frames = new ArrayList<float[]>();
+
+    /**
+     * Creates stepper.
+     *
+     * @param width
+     *            width of the simulated view
+     * @param height
+     *            height of the simulated view
+     * @param animationLength
+     *            length of each half in milliseconds
+     * @param frameMillis
+     *            time between frames in milliseconds
+     */
+    public Flip3DFrameStepper(final int width, final int height, final long animationLength, final long frameMillis) {
+        super();
+        this.width = width;
+        this.height = height;
+        this.animationLength = animationLength;
+        this.frameMillis = frameMillis;
+    }
+
+    /**
+     * Sets directions of flipping (as {@link Flip3DView} does).
+     *
+     * @param frontToBack
+     *            direction of flip from front to back
+     * @param backToFront
+     *            direction of flip from back to front
+     */
+    public void setDirections(final int frontToBack, final int backToFront) {
+        this.frontToBack = frontToBack;
+        this.backToFront = backToFront;
+    }
+
+    @Override
+    public void startRotation(final int currentViewIndex, final Runnable finishFlipping) {
+        super.startRotation(currentViewIndex, finishFlipping);
+        direction = currentViewIndex == ViewIndex.FRONT_VIEW ? frontToBack : backToFront;
+        half = Flip3DKeyframes.FIRST_HALF;
+        halfStartTime = -1;
+    }
+
+    @Override
+    public void clearAllAnimations() {
+        super.clearAllAnimations();
+        half = -1;
+    }
+
+    /**
+     * Advances the fake clock by one frame and renders the frame.
+     *
+     * @return false if nothing is rotating
+     */
+    public boolean stepFrame() {
+        if (!isRotating() || half < 0) {
+            return false;
+        }
+        if (halfStartTime < 0) {
+            halfStartTime = now;
+        }
+        final float progress = animationLength <= 0 ? 1.0f : Math.min(1.0f, (float) (now - halfStartTime)
+                / animationLength);
+        final float degrees = Flip3DKeyframes.getDegrees(half, progress, direction);
+        final float[] frame = new float[Flip3DKeyframes.MATRIX_SIZE + 3];
+        frame[0] = now;
+        frame[1] = half;
+        frame[2] = degrees;
+        final float[] matrix = new float[Flip3DKeyframes.MATRIX_SIZE];
+        Flip3DKeyframes.computeRotation(degrees, width / 2.0f, height / 2.0f, matrix);
+        System.arraycopy(matrix, 0, frame, 3, matrix.length);
+        frames.add(frame);
+        now += frameMillis;
+        if (progress >= 1.0f) {
+            if (half == Flip3DKeyframes.FIRST_HALF) {
+                half = Flip3DKeyframes.SECOND_HALF;
+                halfStartTime = -1;
+            } else {
+                half = -1;
+                finishRotation();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Steps frames until nothing is rotating (including flips started by
+     * finishing the previous ones).
+     *
+     * @param maxFrames
+     *            maximum number of frames to step
+     * @return number of frames stepped
+     */
+    public int stepUntilIdle(final int maxFrames) {
+        int count = 0;
+        while (count < maxFrames && stepFrame()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns recorded frames - each contains time, half, rotation in degrees
+     * and 9 values of the matrix.
+     *
+     * @return the frames
+     */
+    public List<float[]> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Writes recorded frames as golden keyframes - one frame per line.
+     *
+     * @param writer
+     *            where to write
+     * @throws IOException
+     *             when writing fails
+     */
+    public void writeFrames(final Writer writer) throws IOException {
+        writer.write("# time half degrees matrix[9]\n");
+        for (final float[] frame : frames) {
+            final StringBuilder line = new StringBuilder();
+            for (int i = 0; i < frame.length; i++) {
+                if (i > 0) {
+                    line.append(' ');
+                }
+                line.append(frame[i]);
+            }
+            line.append('\n');
+            writer.write(line.toString());
+        }
+    }
+
+    /**
+     * Compares recorded frames with golden keyframes.
+     *
+     * @param golden
+     *            golden keyframes written by {@link #writeFrames(Writer)}
+     * @param tolerance
+     *            maximum allowed difference of each value
+     * @return descriptions of the differences (empty if frames match)
+     * @throws IOException
+     *             when reading fails
+     */
+    public List<String> compareFrames(final Reader golden, final float tolerance) throws IOException {
+        final List<String> differences = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(golden);
+        int frameIndex = 0;
+        String line = reader.readLine();
+        while (line != null) {
+            if (line.length() > 0 && !line.startsWith("#")) {
+                if (frameIndex >= frames.size()) {
+                    differences.add("Missing frame " + frameIndex);
+                } else {
+                    compareFrame(frameIndex, line.trim().split(" "), tolerance, differences);
+                }
+                frameIndex++;
+            }
+            line = reader.readLine();
+        }
+        if (frameIndex < frames.size()) {
+            differences.add("Unexpected frames from " + frameIndex + " to " + (frames.size() - 1));
+        }
+        return differences;
+    }
+
+    private void compareFrame(final int frameIndex, final String[] values, final float tolerance,
+            final List<String> differences) {
+        final float[] frame = frames.get(frameIndex);
+        if (values.length != frame.length) {
+            differences.add("Frame " + frameIndex + ": " + values.length + " values instead of " + frame.length);
+            return;
+        }
+        for (int i = 0; i < frame.length; i++) {
+            final float expected = Float.parseFloat(values[i]);
+            if (Math.abs(expected - frame[i]) > tolerance) {
+                differences.add("Frame " + frameIndex + ", value " + i + ": " + frame[i] + " instead of "
+                        + expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+import android.app.Activity;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ArrayAdapter;
+import android.widget.FrameLayout;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Scrolls the list while its items change - only the items showing the
+ * changed positions may be hidden.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class Flip3DItemChangeAnimatorTest {
+
+    private static final int ITEMS = 100;
+    private static final int ITEM_HEIGHT = 20;
+    private static final int CHANGED = 3;
+
+    private ListView list;
+    private Flip3DItemChangeAnimator animator;
+    private ArrayAdapter<String> adapter;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        adapter = new ArrayAdapter<String>(activity, android.R.layout.simple_list_item_1) {
+            @Override
+            public View getView(final int position, final View convertView, final ViewGroup parent) {
+                final View view = super.getView(position, convertView, parent);
+                view.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ITEM_HEIGHT));
+                return view;
+            }
+        };
+        for (int i = 0; i < ITEMS; i++) {
+            adapter.add("item " + i);
+        }
+        list = new ListView(activity);
+        list.setAdapter(adapter);
+        animator = new Flip3DItemChangeAnimator(activity);
+        animator.setAnimationLength(1000);
+        final FrameLayout frame = new FrameLayout(activity);
+        frame.addView(list);
+        frame.addView(animator);
+        activity.setContentView(frame);
+        // Robolectric does not show the window
+        ReflectionHelpers.setField(ReflectionHelpers.getField(frame, "mAttachInfo"), "mWindowVisibility",
+                View.VISIBLE);
+        layout();
+    }
+
+    private void layout() {
+        // the size of the window laid out by Robolectric
+        final View root = list.getRootView();
+        final DisplayMetrics metrics = root.getResources().getDisplayMetrics();
+        root.measure(View.MeasureSpec.makeMeasureSpec(metrics.widthPixels, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(metrics.heightPixels, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, metrics.widthPixels, metrics.heightPixels);
+        list.getViewTreeObserver().dispatchOnPreDraw();
+    }
+
+    /**
+     * Scrolls item by item - items leaving the list are recycled for the ones
+     * entering it.
+     */
+    private void scrollTo(final int position) {
+        final int step = position > list.getFirstVisiblePosition() ? 1 : -1;
+        while (list.getFirstVisiblePosition() != position) {
+            list.setSelectionFromTop(list.getFirstVisiblePosition() + step, 0);
+            layout();
+            assertOnlyChangedHidden();
+        }
+    }
+
+    private View getShown(final int position) {
+        return list.getChildAt(position - list.getFirstVisiblePosition());
+    }
+
+    /**
+     * Checks that exactly the item showing the changed position is hidden.
+     */
+    private void assertOnlyChangedHidden() {
+        for (int i = 0; i < list.getChildCount(); i++) {
+            final int position = list.getFirstVisiblePosition() + i;
+            final int expected = position == CHANGED ? View.INVISIBLE : View.VISIBLE;
+            assertEquals("Item " + position, expected, list.getChildAt(i).getVisibility());
+        }
+    }
+
+    @Test
+    public void scrolledItemsAreNotLeftHidden() {
+        animator.beginChange(list, new int[] { CHANGED });
+        adapter.remove("item " + CHANGED);
+        adapter.insert("changed", CHANGED);
+        layout();
+        assertEquals(1, animator.getChangingCount());
+        assertOnlyChangedHidden();
+        // the hidden item is recycled for positions further down
+        scrollTo(ITEMS / 2);
+        scrollTo(1);
+        assertNotNull(getShown(CHANGED));
+        assertEquals(1, animator.getChangingCount());
+    }
+}
@@ -0,0 +1,86 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Frames of a flip to the back and back to the front of a 160x160 view (500
+ * ms halves, 16 ms frames) stepped by {@link Flip3DFrameStepper} compared with
+ * the golden keyframes. Run with -Dflip3d.golden.write=true (gradle test
+ * -Pflip3d.golden.write=true) to write the golden keyframes again after the
+ * rotation model has been changed on purpose.
+ *
+ */
+public class Flip3DKeyframesGoldenTest {
+
+    private static final File GOLDEN_FILE = new File("golden/flip3d_keyframes.txt");
+
+    private static final float TOLERANCE = 1e-4f;
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 160;
+    private static final long ANIMATION_LENGTH = 500;
+    private static final long FRAME_MILLIS = 16;
+
+    private static Flip3DFrameStepper stepFlips() {
+        final Flip3DFrameStepper stepper = new Flip3DFrameStepper(WIDTH, HEIGHT, ANIMATION_LENGTH, FRAME_MILLIS);
+        final Flip3DStateMachine state = new Flip3DStateMachine(0);
+        state.setRenderer(stepper);
+        state.flipManually();
+        stepper.stepUntilIdle(Integer.MAX_VALUE);
+        assertEquals(ViewIndex.BACK_VIEW, state.getCurrentViewIndex());
+        state.flipManually();
+        stepper.stepUntilIdle(Integer.MAX_VALUE);
+        assertEquals(ViewIndex.FRONT_VIEW, state.getCurrentViewIndex());
+        stepper.checkInvariants(state);
+        return stepper;
+    }
+
+    @Test
+    public void framesMatchGoldenKeyframes() throws IOException {
+        final Flip3DFrameStepper stepper = stepFlips();
+        if (Boolean.getBoolean("flip3d.golden.write")) {
+            final Writer writer = new FileWriter(GOLDEN_FILE);
+            try {
+                stepper.writeFrames(writer);
+            } finally {
+                writer.close();
+            }
+        }
+        final Reader reader = new FileReader(GOLDEN_FILE);
+        final List<String> differences;
+        try {
+            differences = stepper.compareFrames(reader, TOLERANCE);
+        } finally {
+            reader.close();
+        }
+        assertTrue(differences.toString(), differences.isEmpty());
+    }
+
+    @Test
+    public void firstHalfEndsEdgeOnAndSecondHalfFlat() {
+        final List<float[]> frames = stepFlips().getFrames();
+        assertFalse(frames.isEmpty());
+        int halvesEnded = 0;
+        for (int i = 1; i <= frames.size(); i++) {
+            final float[] previous = frames.get(i - 1);
+            if (i == frames.size() || frames.get(i)[1] != previous[1]) {
+                final float expected = previous[1] == Flip3DKeyframes.FIRST_HALF ? 90.0f : 0.0f;
+                assertEquals("Frame " + (i - 1), expected, Math.abs(previous[2]), TOLERANCE);
+                halvesEnded++;
+            }
+        }
+        assertEquals(4, halvesEnded);
+    }
+}
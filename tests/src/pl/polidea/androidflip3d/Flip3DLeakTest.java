@@ -0,0 +1,128 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+/**
+ * Binds and recycles thousands of views against long-lived states and checks
+ * with {@link Flip3DLeakWatcher} that none of the views is kept alive by the
+ * states - and that default face inflaters do not keep their contexts alive.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class Flip3DLeakTest {
+
+    private static final int SIMULATED_VIEWS = 5000;
+    private static final int VIEWS = 500;
+    private static final int STATES = 300;
+    private static final int BINDINGS_PER_VIEW = 3;
+    private static final int CONTEXTS = 20;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Checks that states whose views were collected are still usable.
+     */
+    private static void assertStatesUsable(final List<? extends Flip3DStateMachine> states) {
+        for (final Flip3DStateMachine state : states) {
+            state.forceFlipTo(ViewIndex.BACK_VIEW);
+            assertFalse("State " + state.getId() + " stuck", state.isFlipping());
+            assertEquals(ViewIndex.BACK_VIEW, state.getCurrentViewIndex());
+        }
+    }
+
+    @Test
+    public void recycledSimulatedViewsAreCollected() throws InterruptedException {
+        final List<Flip3DStateMachine> states = new ArrayList<Flip3DStateMachine>(STATES);
+        for (int i = 0; i < STATES; i++) {
+            states.add(new Flip3DStateMachine(i));
+        }
+        final Flip3DLeakWatcher watcher = new Flip3DLeakWatcher();
+        // each view is bound to a few states, some of the flips are left
+        // running, the last state stays attached to the view
+        int stateIndex = 0;
+        for (int i = 0; i < SIMULATED_VIEWS; i++) {
+            final SimulatedFlip3DRenderer view = new SimulatedFlip3DRenderer();
+            Flip3DStateMachine boundState = null;
+            for (int j = 0; j < BINDINGS_PER_VIEW; j++) {
+                if (boundState != null) {
+                    // recycled - detached from the previous state
+                    boundState.detachRenderer(view);
+                    boundState.setRenderer(null);
+                }
+                final Flip3DStateMachine state = states.get(stateIndex);
+                boundState = state;
+                stateIndex = (stateIndex + 1) % states.size();
+                state.setRenderer(view);
+                state.flipManually();
+                if ((i + j) % 2 == 0) {
+                    view.finishRotation();
+                }
+            }
+            watcher.watch(view, "view " + i);
+        }
+        final List<String> retained = watcher.findRetained(TIMEOUT_MILLIS);
+        assertTrue("Retained: " + retained, retained.isEmpty());
+        assertStatesUsable(states);
+    }
+
+    @Test
+    public void recycledFlip3DViewsAreCollected() throws InterruptedException {
+        final List<Flip3DViewState> states = new ArrayList<Flip3DViewState>(STATES);
+        for (int i = 0; i < STATES; i++) {
+            states.add(new Flip3DViewState(i));
+        }
+        final Flip3DLeakWatcher watcher = new Flip3DLeakWatcher();
+        int stateIndex = 0;
+        for (int i = 0; i < VIEWS; i++) {
+            final Flip3DView view = new Flip3DView(RuntimeEnvironment.application);
+            for (int j = 0; j < BINDINGS_PER_VIEW; j++) {
+                // bound the way the adapters do
+                final Flip3DViewState state = Flip3DViewState.attachViewToViewState(states.get(stateIndex), view);
+                stateIndex = (stateIndex + 1) % states.size();
+                state.setView(view);
+                if ((i + j) % 2 == 0) {
+                    // left flipping - the animation never runs in a detached
+                    // view
+                    state.flipManually();
+                }
+            }
+            watcher.watch(view, "view " + i);
+        }
+        final List<String> retained = watcher.findRetained(TIMEOUT_MILLIS);
+        assertTrue("Retained: " + retained, retained.isEmpty());
+        assertStatesUsable(states);
+    }
+
+    @Test
+    public void defaultFaceInflaterFollowsContextOfTheView() throws InterruptedException {
+        final Flip3DLeakWatcher watcher = new Flip3DLeakWatcher();
+        final Flip3DFaceInflater applicationInflater = Flip3DFaceInflater.getDefault(RuntimeEnvironment.application);
+        for (int i = 0; i < CONTEXTS; i++) {
+            // stands for an activity - themed views of its own
+            final Context context = new ContextThemeWrapper(RuntimeEnvironment.application,
+                    android.R.style.Theme_Light);
+            final Flip3DFaceInflater inflater = Flip3DFaceInflater.getDefault(context);
+            assertSame(inflater, Flip3DFaceInflater.getDefault(context));
+            assertNotSame(applicationInflater, inflater);
+            watcher.watch(context, "context " + i);
+        }
+        final List<String> retained = watcher.findRetained(TIMEOUT_MILLIS);
+        assertTrue("Retained: " + retained, retained.isEmpty());
+    }
+}
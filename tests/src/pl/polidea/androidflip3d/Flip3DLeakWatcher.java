@@ -0,0 +1,96 @@
+package pl.polidea.androidflip3d;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Watches objects which should become garbage collected (for example views
+ * thrown away by the adapter) and reports the ones still retained (see
+ * {@link Flip3DLeakTest}).
+ *
+ */
+public class Flip3DLeakWatcher {
+
+    private static final long GC_INTERVAL_MILLIS = 20;
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    private final Set<WatchedReference> watched = new HashSet<WatchedReference>();
+
+    /**
+     * Weak reference remembering what it refers to.
+     */
+    private static final class WatchedReference extends WeakReference<Object> {
+        private final String description;
+
+        private WatchedReference(final Object referent, final String description,
+                final ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.description = description;
+        }
+    }
+
+    /**
+     * Starts watching the object. It should not be referenced by anything
+     * anymore.
+     *
+     * @param object
+     *            object which should be collected
+     * @param description
+     *            description used in the report
+     */
+    public synchronized void watch(final Object object, final String description) {
+        watched.add(new WatchedReference(object, description, queue));
+    }
+
+    private synchronized void removeCollected() {
+        Reference<? extends Object> reference = queue.poll();
+        while (reference != null) {
+            watched.remove(reference);
+            reference = queue.poll();
+        }
+    }
+
+    /**
+     * Returns number of watched objects not collected yet (without forcing
+     * garbage collection).
+     *
+     * @return number of objects
+     */
+    public synchronized int getRetainedCount() {
+        removeCollected();
+        return watched.size();
+    }
+
+    /**
+     * Runs garbage collection until all the watched objects are collected or
+     * timeout passes.
+     *
+     * @param timeoutMillis
+     *            maximum time of waiting
+     * @return descriptions of objects which are still retained
+     * @throws InterruptedException
+     *             when interrupted while waiting
+     */
+    public List<String> findRetained(final long timeoutMillis) throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeoutMillis;
+        while (getRetainedCount() > 0 && System.currentTimeMillis() < end) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(GC_INTERVAL_MILLIS);
+        }
+        final List<String> retained = new ArrayList<String>();
+        synchronized (this) {
+            removeCollected();
+            for (final WatchedReference reference : watched) {
+                retained.add(reference.description);
+            }
+        }
+        return retained;
+    }
+}
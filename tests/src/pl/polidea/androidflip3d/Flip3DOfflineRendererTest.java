@@ -0,0 +1,93 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Flips rendered by {@link Flip3DOfflineRenderer} in parallel, written as
+ * PNG and read back.
+ *
+ */
+public class Flip3DOfflineRendererTest {
+
+    private static final int SIZE = 40;
+    private static final int CARDS = 3;
+    private static final int FRONT = 0xffff0000;
+    private static final int BACK = 0xff0000ff;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Flip3DRaster createFace(final int color) {
+        final Flip3DRaster face = new Flip3DRaster(SIZE / 2, SIZE / 4);
+        face.fill(color, 0, 0, face.getWidth(), face.getHeight());
+        return face;
+    }
+
+    private static List<Flip3DRaster[]> createCards() {
+        final List<Flip3DRaster[]> cards = new ArrayList<Flip3DRaster[]>();
+        for (int i = 0; i < CARDS; i++) {
+            cards.add(new Flip3DRaster[] { createFace(FRONT), createFace(BACK) });
+        }
+        return cards;
+    }
+
+    private static Flip3DOfflineRenderer createRenderer() {
+        final Flip3DOfflineRenderer renderer = new Flip3DOfflineRenderer(SIZE, SIZE);
+        renderer.setAnimationLength(48);
+        renderer.setFrameMillis(16);
+        renderer.setThreadCount(4);
+        return renderer;
+    }
+
+    private static int getCenter(final Flip3DRaster image, final int frame) {
+        return image.getPixel(frame * SIZE + SIZE / 2, SIZE / 2);
+    }
+
+    @Test
+    public void writesEachFrame() throws IOException {
+        final Flip3DOfflineRenderer renderer = createRenderer();
+        final File outputDir = new File(folder.getRoot(), "frames");
+        final int frameCount = renderer.getFrameCount();
+        assertEquals(CARDS * frameCount, renderer.renderCards(createCards(), outputDir, false));
+        assertEquals(CARDS * frameCount, outputDir.list().length);
+        for (int card = 0; card < CARDS; card++) {
+            final String name = String.format("card-%04d-frame-", card);
+            final Flip3DRaster first = Flip3DOfflineRenderer.readImage(new File(outputDir, name + "000.png"));
+            assertEquals(SIZE, first.getWidth());
+            assertEquals(SIZE, first.getHeight());
+            assertEquals(FRONT, getCenter(first, 0));
+            final Flip3DRaster last = Flip3DOfflineRenderer.readImage(new File(outputDir, String.format(
+                    "%s%03d.png", name, frameCount - 1)));
+            assertEquals(BACK, getCenter(last, 0));
+        }
+    }
+
+    @Test
+    public void writesStripOfEachCard() throws IOException {
+        final Flip3DOfflineRenderer renderer = createRenderer();
+        final File outputDir = new File(folder.getRoot(), "strips");
+        final int frameCount = renderer.getFrameCount();
+        assertEquals(CARDS, renderer.renderCards(createCards(), outputDir, true));
+        for (int card = 0; card < CARDS; card++) {
+            final Flip3DRaster strip = Flip3DOfflineRenderer.readImage(new File(outputDir, String.format(
+                    "card-%04d.png", card)));
+            assertEquals(SIZE * frameCount, strip.getWidth());
+            for (int frame = 0; frame < frameCount; frame++) {
+                final int expected = frame < renderer.getHalfFrameCount() ? FRONT : BACK;
+                // edge-on frames show nothing but the background
+                if (Math.abs(renderer.getFrameDegrees(frame)) < 80) {
+                    assertEquals("Frame " + frame, expected, getCenter(strip, frame));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Loading items in pages with {@link Flip3DPagedData} from a
+ * {@link FakePagedSource} with latency. The test thread plays the UI thread -
+ * it runs the delivered pages.
+ *
+ */
+public class Flip3DPagedDataTest {
+
+    private static final int ITEM_COUNT = 1000;
+
+    private static final int PAGE_SIZE = 30;
+
+    private static final long LATENCY_MILLIS = 50;
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final ExecutorService loadingExecutor = Executors.newFixedThreadPool(4);
+
+    private final BlockingQueue<Runnable> deliveries = new LinkedBlockingQueue<Runnable>();
+
+    private final Executor uiExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            deliveries.add(command);
+        }
+    };
+
+    private FakePagedSource source;
+
+    private int delivered = 0;
+
+    /**
+     * Records pages loaded and evicted.
+     */
+    private static final class RecordingListener implements Flip3DPagedData.PageListener {
+        private final List<Integer> loaded = new ArrayList<Integer>();
+        private final List<Integer> evicted = new ArrayList<Integer>();
+
+        @Override
+        public void onPageLoaded(final int firstPosition, final int count) {
+            loaded.add(firstPosition);
+        }
+
+        @Override
+        public void onPageEvicted(final int firstPosition, final int count) {
+            evicted.add(firstPosition);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        loadingExecutor.shutdownNow();
+    }
+
+    private Flip3DPagedData<Integer> createData(final long latencyMillis, final int keptPages) {
+        source = new FakePagedSource(ITEM_COUNT, latencyMillis, 42);
+        return new Flip3DPagedData<Integer>(source, PAGE_SIZE, keptPages, loadingExecutor, uiExecutor);
+    }
+
+    /**
+     * Runs pages delivered until all the pages started are loaded or failed.
+     */
+    private void deliverAll(final Flip3DPagedData<Integer> data) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (delivered < data.getLoadsStarted()) {
+            final Runnable delivery = deliveries.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            assertTrue("Only " + delivered + " of " + data.getLoadsStarted() + " pages delivered", delivery != null);
+            delivery.run();
+            delivered++;
+        }
+    }
+
+    @Test
+    public void loadsPageOfItemRequested() throws InterruptedException {
+        final Flip3DPagedData<Integer> data = createData(LATENCY_MILLIS, 1);
+        final RecordingListener listener = new RecordingListener();
+        data.addPageListener(listener);
+        assertEquals(ITEM_COUNT, data.getItemCount());
+        assertNull(data.getItem(65));
+        assertFalse(data.isLoaded(65));
+        // loading is in progress - asking again does not load it again
+        assertNull(data.getItem(70));
+        assertEquals(1, data.getLoadsStarted());
+        deliverAll(data);
+        assertTrue(data.isLoaded(65));
+        assertEquals(Integer.valueOf(source.getColor(65)), data.getItem(65));
+        assertEquals(Integer.valueOf(source.getColor(89)), data.getItem(89));
+        assertEquals(1, source.getPagesLoaded());
+        assertEquals(1, listener.loaded.size());
+        assertEquals(Integer.valueOf(60), listener.loaded.get(0));
+    }
+
+    @Test
+    public void lastPageIsShorter() throws InterruptedException {
+        final Flip3DPagedData<Integer> data = createData(0, 1);
+        data.getItem(ITEM_COUNT - 1);
+        deliverAll(data);
+        assertEquals(Integer.valueOf(source.getColor(ITEM_COUNT - 1)), data.getItem(ITEM_COUNT - 1));
+        assertNull(data.getItem(ITEM_COUNT));
+    }
+
+    @Test
+    public void prefetchesPagesNextToVisibleRange() throws InterruptedException {
+        final Flip3DPagedData<Integer> data = createData(LATENCY_MILLIS, 1);
+        data.setVisibleRange(100, 130);
+        // pages 3 and 4 visible, 2 and 5 prefetched
+        assertEquals(4, data.getLoadsStarted());
+        deliverAll(data);
+        for (int position = 2 * PAGE_SIZE; position < 6 * PAGE_SIZE; position++) {
+            assertTrue("Position " + position, data.isLoaded(position));
+        }
+        assertFalse(data.isLoaded(PAGE_SIZE - 1));
+        assertFalse(data.isLoaded(6 * PAGE_SIZE));
+    }
+
+    @Test
+    public void evictsPagesFarFromVisibleRange() throws InterruptedException {
+        final Flip3DPagedData<Integer> data = createData(0, 1);
+        final RecordingListener listener = new RecordingListener();
+        data.addPageListener(listener);
+        data.setVisibleRange(0, 20);
+        deliverAll(data);
+        assertEquals(2, data.getLoadedPageCount());
+        assertTrue(listener.evicted.isEmpty());
+        data.setVisibleRange(10 * PAGE_SIZE, 10 * PAGE_SIZE + 20);
+        deliverAll(data);
+        assertEquals(2, listener.evicted.size());
+        assertTrue(listener.evicted.contains(0));
+        assertTrue(listener.evicted.contains(PAGE_SIZE));
+        assertEquals(3, data.getLoadedPageCount());
+    }
+
+    @Test
+    public void visibleRangeDoesNotWaitForLatency() throws InterruptedException {
+        final long latencyMillis = 1000;
+        final Flip3DPagedData<Integer> data = createData(latencyMillis, 1);
+        final long start = System.currentTimeMillis();
+        data.setVisibleRange(0, 100);
+        assertNull(data.getItem(50));
+        assertTrue(System.currentTimeMillis() - start < latencyMillis / 2);
+        deliverAll(data);
+        assertEquals(Integer.valueOf(source.getColor(50)), data.getItem(50));
+    }
+
+    @Test
+    public void failedPageIsLoadedAgain() throws InterruptedException {
+        final Flip3DPagedData<Integer> data = createData(LATENCY_MILLIS, 1);
+        final RecordingListener listener = new RecordingListener();
+        data.addPageListener(listener);
+        source.setFailing(true);
+        assertNull(data.getItem(5));
+        deliverAll(data);
+        assertEquals(1, data.getLoadsFailed());
+        assertEquals(1, source.getPagesFailed());
+        assertFalse(data.isLoaded(5));
+        assertTrue(listener.loaded.isEmpty());
+        source.setFailing(false);
+        assertNull(data.getItem(5));
+        deliverAll(data);
+        assertEquals(Integer.valueOf(source.getColor(5)), data.getItem(5));
+        assertEquals(2, data.getLoadsStarted());
+    }
+}
@@ -0,0 +1,130 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.widget.ArrayAdapter;
+
+/**
+ * Flip transformation of the pages of {@link Flip3DPager} and the page it
+ * settles on after dragging.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class Flip3DPagerTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+    private static final int PAGES = 5;
+    private static final long SETTLE_LENGTH = 300;
+    private static final long FRAME_MILLIS = 16;
+    private static final float DELTA = 1e-3f;
+
+    private Flip3DPager pager;
+    private Canvas canvas;
+
+    @Before
+    public void setUp() {
+        pager = new Flip3DPager(RuntimeEnvironment.application);
+        final ArrayAdapter<String> adapter = new ArrayAdapter<String>(RuntimeEnvironment.application,
+                android.R.layout.simple_list_item_1);
+        for (int i = 0; i < PAGES; i++) {
+            adapter.add("page " + i);
+        }
+        pager.setAdapter(adapter);
+        pager.setSettleLength(SETTLE_LENGTH);
+        pager.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        pager.layout(0, 0, WIDTH, HEIGHT);
+        canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+    }
+
+    private static MotionEvent obtain(final int action, final float x) {
+        final long now = SystemClock.uptimeMillis();
+        return MotionEvent.obtain(now, now, action, x, HEIGHT / 2, 0);
+    }
+
+    /**
+     * Drags the pager by the fraction of its width given (positive to the
+     * next page) and draws frames until it settles.
+     */
+    private void dragAndSettle(final float fraction) {
+        final float startX = WIDTH / 2;
+        final float endX = startX - fraction * WIDTH;
+        pager.onTouchEvent(obtain(MotionEvent.ACTION_DOWN, startX));
+        pager.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, startX));
+        pager.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, (startX + endX) / 2));
+        pager.onTouchEvent(obtain(MotionEvent.ACTION_MOVE, endX));
+        pager.onTouchEvent(obtain(MotionEvent.ACTION_UP, endX));
+        for (long time = 0; time <= 2 * SETTLE_LENGTH; time += FRAME_MILLIS) {
+            pager.dispatchDraw(canvas);
+            Robolectric.getForegroundThreadScheduler().advanceBy(FRAME_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void showsOnlyOneOfTwoPagesRotatedByPosition() {
+        final Flip3DPageTransformer transformer = new Flip3DPageTransformer();
+        assertFalse(transformer.isPageVisible(-0.5f));
+        assertTrue(transformer.isPageVisible(0));
+        assertTrue(transformer.isPageVisible(0.5f));
+        // half way only the page coming in (at 0.5) is drawn
+        assertEquals(-90, transformer.getRotation(-0.5f), DELTA);
+        assertEquals(0, transformer.getRotation(0), DELTA);
+        assertEquals(90, transformer.getRotation(0.5f), DELTA);
+
+        transformer.setDirection(RotationDirection.ROTATE_RIGHT);
+        assertEquals(90, transformer.getRotation(-0.5f), DELTA);
+        assertEquals(0, transformer.getRotation(0), DELTA);
+        assertEquals(-90, transformer.getRotation(0.5f), DELTA);
+    }
+
+    @Test
+    public void settlesOnNextPageWhenDraggedPastThreshold() {
+        dragAndSettle(0.3f);
+        assertEquals(1, pager.getCurrentPage());
+        dragAndSettle(0.3f);
+        assertEquals(2, pager.getCurrentPage());
+        dragAndSettle(-0.3f);
+        assertEquals(1, pager.getCurrentPage());
+    }
+
+    @Test
+    public void settlesBackWhenDraggedShortOfThreshold() {
+        dragAndSettle(0.1f);
+        assertEquals(0, pager.getCurrentPage());
+        pager.setCurrentPage(2, false);
+        dragAndSettle(-0.1f);
+        assertEquals(2, pager.getCurrentPage());
+        dragAndSettle(0.1f);
+        assertEquals(2, pager.getCurrentPage());
+    }
+
+    @Test
+    @Config(qualifiers = "xxhdpi")
+    public void interceptsDragsLongerThanTouchSlop() {
+        // scaled to the density of the screen, not raw pixels
+        final int touchSlop = ViewConfiguration.get(RuntimeEnvironment.application).getScaledTouchSlop();
+        assertFalse(pager.onInterceptTouchEvent(obtain(MotionEvent.ACTION_DOWN, WIDTH / 2)));
+        assertFalse(pager.onInterceptTouchEvent(obtain(MotionEvent.ACTION_MOVE, WIDTH / 2 - touchSlop)));
+        assertTrue(pager.onInterceptTouchEvent(obtain(MotionEvent.ACTION_MOVE, WIDTH / 2 - touchSlop - 1)));
+    }
+}
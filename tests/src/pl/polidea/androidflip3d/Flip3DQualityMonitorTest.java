@@ -0,0 +1,105 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Switching quality of {@link Flip3DQualityMonitor} with the default
+ * {@link FrameTimeQualityPolicy} - frames are given fake drawing times.
+ *
+ */
+public class Flip3DQualityMonitorTest {
+
+    private static final int WINDOW_SIZE = 8;
+    private static final long SLOW_FRAME_MILLIS = 40;
+    private static final long FAST_FRAME_MILLIS = 16;
+    private static final long IDLE_GAP_MILLIS = 1000;
+    private static final long ANIMATION_LENGTH = 1000;
+
+    private final Flip3DQualityMonitor monitor = new Flip3DQualityMonitor();
+
+    private long drawingTime = 0;
+
+    /**
+     * Draws frames, each of them by the number of views given.
+     */
+    private void drawFrames(final int frames, final long frameMillis, final int views) {
+        for (int i = 0; i < frames; i++) {
+            drawingTime += frameMillis;
+            for (int j = 0; j < views; j++) {
+                monitor.onFrame(drawingTime);
+            }
+        }
+    }
+
+    private void drawFrames(final int frames, final long frameMillis) {
+        drawFrames(frames, frameMillis, 1);
+    }
+
+    @Test
+    public void slowFramesDegradeAndFastFramesRestore() {
+        monitor.onFrame(drawingTime);
+        drawFrames(WINDOW_SIZE - 1, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+        drawFrames(1, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.REDUCED, monitor.getQuality());
+        drawFrames(WINDOW_SIZE, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.MINIMAL, monitor.getQuality());
+        drawFrames(WINDOW_SIZE, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.MINIMAL, monitor.getQuality());
+
+        drawFrames(WINDOW_SIZE - 1, FAST_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.MINIMAL, monitor.getQuality());
+        drawFrames(1, FAST_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.REDUCED, monitor.getQuality());
+        drawFrames(WINDOW_SIZE, FAST_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+        drawFrames(WINDOW_SIZE, FAST_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+    }
+
+    @Test
+    public void countsFrameDrawnByManyViewsOnce() {
+        monitor.onFrame(drawingTime);
+        // each frame drawn by many views - the window is filled frame by frame
+        drawFrames(WINDOW_SIZE - 1, SLOW_FRAME_MILLIS, 20);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+        drawFrames(1, SLOW_FRAME_MILLIS, 20);
+        assertEquals(Flip3DQuality.REDUCED, monitor.getQuality());
+        drawFrames(WINDOW_SIZE, FAST_FRAME_MILLIS, 20);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+    }
+
+    @Test
+    public void ignoresIdleGaps() {
+        monitor.onFrame(drawingTime);
+        drawFrames(WINDOW_SIZE - 1, SLOW_FRAME_MILLIS);
+        // nothing flipped for a while - not the last frame of the window
+        drawFrames(1, IDLE_GAP_MILLIS);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+        drawFrames(1, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.REDUCED, monitor.getQuality());
+
+        // the gap would not let the quality be restored
+        drawFrames(WINDOW_SIZE / 2, FAST_FRAME_MILLIS);
+        drawFrames(1, IDLE_GAP_MILLIS);
+        drawFrames(WINDOW_SIZE / 2, FAST_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+    }
+
+    @Test
+    public void scalesAnimationLengthWithQuality() {
+        assertEquals(ANIMATION_LENGTH, monitor.getAnimationLength(ANIMATION_LENGTH));
+        monitor.onFrame(drawingTime);
+        drawFrames(WINDOW_SIZE, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.REDUCED, monitor.getQuality());
+        assertEquals(600, monitor.getAnimationLength(ANIMATION_LENGTH));
+        drawFrames(WINDOW_SIZE, SLOW_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.MINIMAL, monitor.getQuality());
+        assertEquals(400, monitor.getAnimationLength(ANIMATION_LENGTH));
+        drawFrames(2 * WINDOW_SIZE, FAST_FRAME_MILLIS);
+        assertEquals(Flip3DQuality.FULL, monitor.getQuality());
+        assertEquals(ANIMATION_LENGTH, monitor.getAnimationLength(ANIMATION_LENGTH));
+    }
+}
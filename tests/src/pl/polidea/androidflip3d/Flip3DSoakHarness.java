@@ -0,0 +1,532 @@
+package pl.polidea.androidflip3d;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import android.content.Context;
+import android.view.View;
+import android.view.animation.Animation.AnimationListener;
+import android.view.animation.Transformation;
+import android.widget.GridView;
+
+/**
+ * Soak test of the grid machinery. Runs a long random sequence of the
+ * operations a grid does with a real {@link AbstractGridFlip3DImageAdapter}
+ * and real {@link Flip3DView}s (needs Robolectric) - scrolling by rows the way
+ * the grid does it (views of the rows scrolled away go to the scrap heap via
+ * onMovedToScrapHeap, the rows scrolled in are bound by getView with views
+ * from the scrap heap, the rows still shown are left alone), clicks on the
+ * displayed sides, forced flips of any item, eviction of states far from the
+ * screen and frames of a fake clock which drives the rotations. After every
+ * operation the shown views are checked against their states, the recycled
+ * ones must be released and no view may be owned by two states; at the end
+ * all rotations are finished and every state must be on its target side.
+ * Heap growth, bytes allocated and latency percentiles of each operation are
+ * reported (see {@link Flip3DSoakTest}).
+ *
+ */
+public class Flip3DSoakHarness {
+
+    private static final long FRAME_MILLIS = 16;
+    private static final long ANIMATION_LENGTH = 250;
+    private static final int ITEM_WIDTH = 80;
+    private static final int MAX_SCROLL_ROWS = 3;
+    private static final int KEPT_MARGIN = 64;
+    private static final int MAX_DRAIN_FRAMES = 10000;
+
+    private static final int OP_SCROLL = 0;
+    private static final int OP_CLICK = 1;
+    private static final int OP_FORCE = 2;
+    private static final int OP_EVICT = 3;
+    private static final int OP_FRAME = 4;
+    private static final String[] OP_NAMES = { "scroll", "click", "force", "evict", "frame" };
+
+    /**
+     * Rotation of a view driven by the fake clock.
+     */
+    private static final class Rotation {
+        private final int currentViewIndex;
+        private final long start;
+        private final long length;
+        private final AnimationListener finishFlippingListener;
+        private boolean swapped = false;
+
+        private Rotation(final int currentViewIndex, final long start, final long length,
+                final AnimationListener finishFlippingListener) {
+            this.currentViewIndex = currentViewIndex;
+            this.start = start;
+            this.length = length;
+            this.finishFlippingListener = finishFlippingListener;
+        }
+    }
+
+    /**
+     * Backend rotating views on the fake clock - sides are swapped after the
+     * first half and the finish listener is notified after the second one,
+     * as {@link ViewAnimationBackend} does.
+     */
+    private final class ClockBackend implements Flip3DAnimationBackend {
+        private final Map<Flip3DView, Rotation> rotations = new IdentityHashMap<Flip3DView, Rotation>();
+
+        @Override
+        public void startRotation(final Flip3DView view, final int currentViewIndex, final int direction,
+                final long animationLength, final AnimationListener finishFlippingListener) {
+            if (rotations.containsKey(view)) {
+                throw new IllegalStateException("Rotation started while another one is in progress");
+            }
+            rotations.put(view, new Rotation(currentViewIndex, now, animationLength, finishFlippingListener));
+        }
+
+        @Override
+        public void clearAllAnimations(final Flip3DView view) {
+            rotations.remove(view);
+        }
+
+        @Override
+        public void setPaused(final Flip3DView view, final boolean paused) {
+            // the fake clock does not stop
+        }
+
+        @Override
+        public boolean getChildTransformation(final Flip3DView view, final View child, final Transformation t) {
+            return false;
+        }
+
+        @Override
+        public float getChildRotation(final Flip3DView view, final View child) {
+            return Float.NaN;
+        }
+
+        private boolean isRotating(final Flip3DView view) {
+            return rotations.containsKey(view);
+        }
+
+        /**
+         * Swaps sides and finishes rotations which took the time. Finishing
+         * may start the next rotation (forced flip back) - it is stepped in
+         * later frames.
+         */
+        private void step() {
+            final List<Map.Entry<Flip3DView, Rotation>> running = new ArrayList<Map.Entry<Flip3DView, Rotation>>(
+                    rotations.entrySet());
+            for (final Map.Entry<Flip3DView, Rotation> entry : running) {
+                final Flip3DView view = entry.getKey();
+                final Rotation rotation = entry.getValue();
+                if (rotations.get(view) != rotation) { // NOPMD - identity intended
+                    continue;
+                }
+                final long elapsed = now - rotation.start;
+                if (!rotation.swapped && elapsed >= rotation.length) {
+                    rotation.swapped = true;
+                    view.getView(rotation.currentViewIndex).setVisibility(View.INVISIBLE);
+                    view.getView(ViewIndex.getTheOtherViewIndex(rotation.currentViewIndex)).setVisibility(
+                            View.VISIBLE);
+                }
+                if (elapsed >= 2 * rotation.length) {
+                    rotations.remove(view);
+                    rotation.finishFlippingListener.onAnimationEnd(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adapter of the grid - states created lazily by the factory, views
+     * rotated by the clock backend.
+     */
+    private final class SoakAdapter extends AbstractGridFlip3DImageAdapter<Flip3DViewState, Flip3DView> {
+
+        private SoakAdapter() {
+            super(ITEM_WIDTH);
+            setViewStateFactory(new Flip3DViewStateProvider.Factory<Flip3DViewState>() {
+                @Override
+                public Flip3DViewState createViewState(final int position) {
+                    statesCreated++;
+                    final Flip3DViewState evicted = states.get(position);
+                    if (evicted != null) {
+                        statesEvicted++;
+                        evictedSides.put(position, evicted.getTargetViewIndex());
+                    }
+                    final Flip3DViewState state = new Flip3DViewState(position);
+                    states.put(position, state);
+                    return state;
+                }
+            }, itemCount);
+        }
+
+        @Override
+        protected Flip3DView createView() {
+            viewsCreated++;
+            final Flip3DView view = new Flip3DView(context);
+            // the views are never attached to a window
+            view.setSkipInvisibleFlips(false);
+            view.setAnimationLength(ANIMATION_LENGTH);
+            view.setAnimationBackend(backend);
+            return view;
+        }
+
+        @Override
+        protected void prepareView(final int position, final Flip3DView view) {
+            final Flip3DViewState state = Flip3DViewState.attachViewToViewState(getState(position), view);
+            // views with id 0 bound to the first item are taken for the
+            // measuring calls of the grid
+            view.setId(position + 1);
+            state.setView(view);
+        }
+    }
+
+    private final Context context;
+    private final Random random;
+    private final int itemCount;
+    private final int columns;
+    private final int cellCount;
+    private final ClockBackend backend = new ClockBackend();
+    private final SoakAdapter adapter;
+    private final GridView grid;
+
+    /**
+     * Latest state created for each position - replaced when the state was
+     * evicted and created again.
+     */
+    private final Map<Integer, Flip3DViewState> states = new HashMap<Integer, Flip3DViewState>();
+
+    /**
+     * Sides of the evicted states, checked when they are created again.
+     */
+    private final Map<Integer, Integer> evictedSides = new HashMap<Integer, Integer>();
+
+    private final Map<Integer, Flip3DView> shownViews = new HashMap<Integer, Flip3DView>();
+    private final Deque<Flip3DView> scrapHeap = new ArrayDeque<Flip3DView>();
+
+    private final long[][] latencies;
+    private final int[] operationCounts = new int[OP_NAMES.length];
+
+    private long now = 0;
+    private int firstVisible = 0;
+    private int statesCreated = 0;
+    private int statesEvicted = 0;
+    private int viewsCreated = 0;
+    private long allocatedBytes = -1;
+    private long heapGrowth = 0;
+
+    /**
+     * Creates harness and shows the first rows of the grid.
+     *
+     * @param context
+     *            context of the views
+     * @param seed
+     *            seed of the random sequence
+     * @param columns
+     *            number of columns of the grid
+     * @param rows
+     *            number of rows shown on the screen
+     * @param itemCount
+     *            number of items of the grid
+     * @param operations
+     *            number of operations to be run
+     */
+    public Flip3DSoakHarness(final Context context, final long seed, final int columns, final int rows,
+            final int itemCount, final int operations) {
+        this.context = context;
+        this.random = new Random(seed);
+        this.itemCount = itemCount;
+        this.columns = columns;
+        this.cellCount = columns * rows;
+        this.latencies = new long[OP_NAMES.length][operations];
+        this.adapter = new SoakAdapter();
+        this.grid = new GridView(context);
+        grid.setNumColumns(columns);
+        showRange(0);
+    }
+
+    private Flip3DViewState getState(final int position) {
+        final Flip3DViewState state = adapter.getOrCreateViewState(position);
+        final Integer evictedSide = evictedSides.remove(position);
+        if (evictedSide != null && evictedSide != state.getTargetViewIndex()) {
+            throw new IllegalStateException("Side of " + position + " lost by eviction");
+        }
+        return state;
+    }
+
+    private int getLastVisible() {
+        return Math.min(itemCount, firstVisible + cellCount);
+    }
+
+    /**
+     * Scrolls so that the first position is shown - only the views of the
+     * positions no longer shown are recycled and only the positions newly
+     * shown are bound.
+     */
+    private void showRange(final int newFirst) {
+        final int newLast = Math.min(itemCount, newFirst + cellCount);
+        for (int position = firstVisible; position < getLastVisible(); position++) {
+            if (position < newFirst || position >= newLast) {
+                final Flip3DView view = shownViews.remove(position);
+                if (view != null) {
+                    adapter.onMovedToScrapHeap(view);
+                    scrapHeap.push(view);
+                }
+            }
+        }
+        firstVisible = newFirst;
+        for (int position = newFirst; position < newLast; position++) {
+            if (!shownViews.containsKey(position)) {
+                final Flip3DView view = (Flip3DView) adapter.getView(position, scrapHeap.poll(), grid);
+                shownViews.put(position, view);
+            }
+        }
+    }
+
+    private void scroll() {
+        final int lastRow = (itemCount - 1) / columns;
+        final int maxFirst = Math.max(0, lastRow + 1 - cellCount / columns) * columns;
+        final int delta = (random.nextInt(2 * MAX_SCROLL_ROWS + 1) - MAX_SCROLL_ROWS) * columns;
+        final int newFirst = Math.max(0, Math.min(maxFirst, firstVisible + delta));
+        if (newFirst != firstVisible) {
+            showRange(newFirst);
+        }
+    }
+
+    private int getRandomShownPosition() {
+        return firstVisible + random.nextInt(getLastVisible() - firstVisible);
+    }
+
+    private void click() {
+        final Flip3DView view = shownViews.get(getRandomShownPosition());
+        final Flip3DViewState state = view.getViewState();
+        // flipping views ignore clicks (they intercept the touches)
+        if (state.isFlipping()) {
+            return;
+        }
+        view.getView(state.getCurrentViewIndex()).performClick();
+        if (!state.isFlipping()) {
+            throw new IllegalStateException("Click on " + ViewIndex.getViewType(state.getCurrentViewIndex())
+                    + " of " + state.getId() + " ignored");
+        }
+    }
+
+    private void force() {
+        final int position = random.nextBoolean() ? getRandomShownPosition() : random.nextInt(itemCount);
+        getState(position).forceFlipTo(random.nextBoolean() ? ViewIndex.FRONT_VIEW : ViewIndex.BACK_VIEW);
+    }
+
+    private void evict() {
+        adapter.evictViewStates(0, Math.max(0, firstVisible - KEPT_MARGIN));
+        adapter.evictViewStates(Math.min(itemCount, getLastVisible() + KEPT_MARGIN), itemCount);
+    }
+
+    /**
+     * Advances the fake clock by a frame.
+     *
+     * @return true if any view is still rotating
+     */
+    private boolean frame() {
+        now += FRAME_MILLIS;
+        backend.step();
+        return !backend.rotations.isEmpty();
+    }
+
+    private void checkViews() {
+        for (final Map.Entry<Integer, Flip3DView> entry : shownViews.entrySet()) {
+            final int position = entry.getKey();
+            final Flip3DView view = entry.getValue();
+            final Flip3DViewState state = view.getViewState();
+            if (state == null || state.getId() != position || state.getView() != view) { // NOPMD
+                throw new IllegalStateException("View at " + position + " not bound to its item");
+            }
+            if (state.isFlipping() != backend.isRotating(view)) {
+                throw new IllegalStateException("Item " + position + " flipping: " + state.isFlipping()
+                        + ", view rotating: " + backend.isRotating(view));
+            }
+            final int shown = state.getCurrentViewIndex();
+            if (!state.isFlipping()
+                    && (view.getView(shown).getVisibility() != View.VISIBLE || view.getView(
+                            ViewIndex.getTheOtherViewIndex(shown)).getVisibility() == View.VISIBLE)) {
+                throw new IllegalStateException("View at " + position + " does not show "
+                        + ViewIndex.getViewType(shown));
+            }
+        }
+        for (final Flip3DView view : scrapHeap) {
+            if (view.getViewState() != null || backend.isRotating(view)) {
+                throw new IllegalStateException("Recycled view still bound to " + view.getViewState());
+            }
+        }
+        for (final Flip3DViewState state : states.values()) {
+            final Flip3DView view = state.getView();
+            if (view != null && view.getViewState() != state) { // NOPMD - identity intended
+                throw new IllegalStateException("View of " + state.getId() + " owned by another state");
+            }
+        }
+    }
+
+    private void checkFinished() {
+        for (final Flip3DViewState state : states.values()) {
+            if (state.isFlipping() || state.isBeingForced()
+                    || state.getCurrentViewIndex() != state.getTargetViewIndex()) {
+                throw new IllegalStateException("State " + state.getId() + " not on its target side");
+            }
+        }
+        final List<Flip3DViewState> created = adapter.getCreatedViewStates();
+        for (final Flip3DViewState state : created) {
+            if (states.get(state.getId()) != state) { // NOPMD - identity intended
+                throw new IllegalStateException("Adapter keeps evicted state " + state.getId());
+            }
+        }
+        if (statesEvicted > 0 && created.size() >= itemCount) {
+            throw new IllegalStateException("No state dropped by eviction: " + created.size());
+        }
+    }
+
+    /**
+     * Runs the operations.
+     *
+     * @param operations
+     *            number of operations
+     * @throws IllegalStateException
+     *             when an invariant is broken
+     */
+    public void run(final int operations) {
+        final long heapBefore = getUsedHeap();
+        final long allocatedBefore = getAllocatedBytes();
+        for (int i = 0; i < operations; i++) {
+            final int operation = nextOperation();
+            final long start = System.nanoTime();
+            switch (operation) {
+            case OP_SCROLL:
+                scroll();
+                break;
+            case OP_CLICK:
+                click();
+                break;
+            case OP_FORCE:
+                force();
+                break;
+            case OP_EVICT:
+                evict();
+                break;
+            default:
+                frame();
+                break;
+            }
+            latencies[operation][operationCounts[operation]++] = System.nanoTime() - start;
+            try {
+                checkViews();
+            } catch (final IllegalStateException e) {
+                throw new IllegalStateException("Operation " + i + " (" + OP_NAMES[operation] + "): "
+                        + e.getMessage(), e);
+            }
+        }
+        final long allocatedAfter = getAllocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            allocatedBytes = allocatedAfter - allocatedBefore;
+        }
+        int frames = 0;
+        while (frame() && frames < MAX_DRAIN_FRAMES) {
+            frames++;
+        }
+        checkViews();
+        checkFinished();
+        heapGrowth = getUsedHeap() - heapBefore;
+    }
+
+    private int nextOperation() {
+        final int value = random.nextInt(100);
+        if (value < 20) {
+            return OP_SCROLL;
+        } else if (value < 35) {
+            return OP_CLICK;
+        } else if (value < 50) {
+            return OP_FORCE;
+        } else if (value < 52) {
+            return OP_EVICT;
+        }
+        return OP_FRAME;
+    }
+
+    /**
+     * Returns report of latency percentiles of the operations, of the states
+     * and views created and of the memory used.
+     *
+     * @return the report - one line per operation and the totals
+     */
+    public String getReport() {
+        final StringBuilder report = new StringBuilder();
+        int operations = 0;
+        for (int operation = 0; operation < OP_NAMES.length; operation++) {
+            final int count = operationCounts[operation];
+            if (count == 0) {
+                continue;
+            }
+            operations += count;
+            final long[] sorted = new long[count];
+            System.arraycopy(latencies[operation], 0, sorted, 0, count);
+            Arrays.sort(sorted);
+            report.append(OP_NAMES[operation]).append(": ").append(count).append(" ops, p50 ")
+                    .append(percentile(sorted, 50)).append(" us, p90 ").append(percentile(sorted, 90))
+                    .append(" us, p99 ").append(percentile(sorted, 99)).append(" us, max ")
+                    .append(sorted[count - 1] / 1000.0).append(" us\n");
+        }
+        report.append("states: ").append(statesCreated).append(" created, ").append(statesEvicted)
+                .append(" evicted and created again; views: ").append(viewsCreated).append(" created\n");
+        if (allocatedBytes >= 0 && operations > 0) {
+            report.append("allocated: ").append(allocatedBytes / operations).append(" bytes per operation\n");
+        }
+        report.append("heap growth: ").append(heapGrowth / 1024).append(" KB\n");
+        return report.toString();
+    }
+
+    private static double percentile(final long[] sorted, final int percent) {
+        final int index = Math.min(sorted.length - 1, (int) ((long) sorted.length * percent / 100));
+        return sorted[index] / 1000.0;
+    }
+
+    public int getStatesCreated() {
+        return statesCreated;
+    }
+
+    public int getStatesEvicted() {
+        return statesEvicted;
+    }
+
+    /**
+     * Returns number of views created by the adapter - views are recycled, so
+     * it stays close to the number of views shown.
+     *
+     * @return number of views
+     */
+    public int getViewsCreated() {
+        return viewsCreated;
+    }
+
+    private static long getUsedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns bytes allocated by the current thread so far (known on HotSpot
+     * only).
+     *
+     * @return allocated bytes or -1 when not known
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread()
+                    .getId());
+        }
+        return -1;
+    }
+}
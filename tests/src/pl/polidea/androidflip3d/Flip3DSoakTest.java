@@ -0,0 +1,56 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Runs {@link Flip3DSoakHarness} - run longer with
+ * -Dflip3d.soak.operations=N (gradle test -Pflip3d.soak.operations=N), other
+ * sequences with -Dflip3d.soak.seed=N. The report of the run is written to
+ * build/reports/soak/flip3d_soak.txt.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class Flip3DSoakTest {
+
+    private static final int OPERATIONS = Integer.getInteger("flip3d.soak.operations", 20000);
+    private static final long SEED = Long.getLong("flip3d.soak.seed", 1);
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 6;
+    private static final int ITEMS = 10000;
+    private static final File REPORT_FILE = new File(System.getProperty("flip3d.soak.report",
+            "build/reports/soak/flip3d_soak.txt"));
+
+    private static void writeReport(final String report) throws IOException {
+        REPORT_FILE.getParentFile().mkdirs();
+        final Writer writer = new FileWriter(REPORT_FILE);
+        try {
+            writer.write(report);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void scrollsAndFlipsWithoutBreakingInvariants() throws IOException {
+        final Flip3DSoakHarness harness = new Flip3DSoakHarness(RuntimeEnvironment.application, SEED, COLUMNS,
+                ROWS, ITEMS, OPERATIONS);
+        harness.run(OPERATIONS);
+        final String report = harness.getReport();
+        writeReport(report);
+        // views are recycled - one spare row at most while scrolling
+        assertTrue(report, harness.getViewsCreated() <= COLUMNS * (ROWS + 1));
+        assertTrue(report, harness.getStatesEvicted() > 0);
+    }
+}
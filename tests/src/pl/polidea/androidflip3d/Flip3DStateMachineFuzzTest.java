@@ -0,0 +1,163 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Randomized sequences of clicks, forced flips, finished rotations, restores
+ * and renderer changes, checking after every step that the state machine and
+ * the {@link SimulatedFlip3DRenderer} agree with each other. Number of the
+ * transitions can be changed with flip3d.fuzz.transitions system property.
+ *
+ */
+public class Flip3DStateMachineFuzzTest {
+
+    private static final int DEFAULT_TRANSITIONS = 200000;
+
+    private static final int TRANSITIONS_PER_SEED = 1000;
+
+    /**
+     * State checking the events it reports.
+     */
+    private static final class CheckedState extends Flip3DStateMachine {
+        private CheckedState(final int id) {
+            super(id);
+        }
+
+        @Override
+        protected void onStartedFlipping(final int startingSide, final boolean manuallyTriggered) {
+            assertFalse("Started event reported with lock held", Thread.holdsLock(this));
+        }
+
+        @Override
+        protected void onFinishedFlipping(final int endingSide, final boolean manuallyTriggered) {
+            assertFalse("Finished event reported with lock held", Thread.holdsLock(this));
+            assertEquals("Finished on a side the state is not on", getCurrentViewIndex(), endingSide);
+        }
+    }
+
+    private static int getTransitions() {
+        return Integer.getInteger("flip3d.fuzz.transitions", DEFAULT_TRANSITIONS);
+    }
+
+    @Test
+    public void machineAndRendererAgree() {
+        final int seeds = Math.max(1, getTransitions() / TRANSITIONS_PER_SEED);
+        for (int seed = 0; seed < seeds; seed++) {
+            runSequence(seed);
+        }
+    }
+
+    private static void runSequence(final long seed) {
+        final Random random = new Random(seed);
+        final CheckedState state = new CheckedState((int) seed);
+        SimulatedFlip3DRenderer renderer = new SimulatedFlip3DRenderer();
+        state.setRenderer(renderer);
+        for (int step = 0; step < TRANSITIONS_PER_SEED; step++) {
+            try {
+                renderer = runStep(random, state, renderer);
+                if (renderer != null) {
+                    renderer.checkInvariants(state);
+                } else {
+                    assertFalse(state.isFlipping());
+                    assertEquals(state.getTargetViewIndex(), state.getCurrentViewIndex());
+                }
+            } catch (final RuntimeException e) {
+                throw new AssertionError("Seed " + seed + ", step " + step + ": " + e.getMessage(), e);
+            } catch (final AssertionError e) {
+                throw new AssertionError("Seed " + seed + ", step " + step + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Runs random transition.
+     *
+     * @return renderer attached after the transition
+     */
+    private static SimulatedFlip3DRenderer runStep(final Random random, final Flip3DStateMachine state,
+            final SimulatedFlip3DRenderer renderer) {
+        final int side = random.nextInt(ViewIndex.VIEW_NUMBER);
+        switch (random.nextInt(8)) {
+        case 0:
+        case 1:
+            // click - only reaches the state when the displayed side takes
+            // clicks
+            if (renderer == null || !renderer.isFlipping() && renderer.isClickable(renderer.getDisplayedViewIndex())) {
+                state.flipManually();
+            }
+            return renderer;
+        case 2:
+        case 3:
+            state.forceFlipTo(side);
+            return renderer;
+        case 4:
+        case 5:
+            if (renderer != null) {
+                renderer.finishRotation();
+            }
+            return renderer;
+        case 6:
+            state.restoreViewIndex(side);
+            return renderer;
+        default:
+            // view recycled - detached and bound to a new renderer or left
+            // without one
+            if (renderer != null) {
+                state.detachRenderer(renderer);
+            }
+            final SimulatedFlip3DRenderer newRenderer = random.nextBoolean() ? new SimulatedFlip3DRenderer() : null;
+            state.setRenderer(newRenderer);
+            return newRenderer;
+        }
+    }
+
+    @Test
+    public void forcedFlipDuringManualFlipEndsOnForcedSide() {
+        final Flip3DStateMachine state = new Flip3DStateMachine(0);
+        final SimulatedFlip3DRenderer renderer = new SimulatedFlip3DRenderer();
+        state.setRenderer(renderer);
+        state.flipManually();
+        state.forceFlipTo(ViewIndex.FRONT_VIEW);
+        renderer.checkInvariants(state);
+        assertTrue(renderer.finishRotation());
+        // flips back to the forced side
+        assertTrue(renderer.isRotating());
+        assertTrue(renderer.finishRotation());
+        assertFalse(renderer.finishRotation());
+        renderer.checkInvariants(state);
+        assertEquals(ViewIndex.FRONT_VIEW, state.getCurrentViewIndex());
+        assertEquals(2, renderer.getRotationsStarted());
+    }
+
+    @Test
+    public void stateWithoutRendererFlipsImmediately() {
+        final Flip3DStateMachine state = new Flip3DStateMachine(0);
+        state.forceFlipTo(ViewIndex.BACK_VIEW);
+        assertFalse(state.isFlipping());
+        assertEquals(ViewIndex.BACK_VIEW, state.getCurrentViewIndex());
+        state.flipManually();
+        assertEquals(ViewIndex.FRONT_VIEW, state.getCurrentViewIndex());
+    }
+
+    @Test
+    public void rebindingDuringFlipFinishesIt() {
+        final Flip3DStateMachine state = new Flip3DStateMachine(0);
+        final SimulatedFlip3DRenderer first = new SimulatedFlip3DRenderer();
+        state.setRenderer(first);
+        state.flipManually();
+        state.detachRenderer(first);
+        assertFalse(first.isRotating());
+        assertFalse(first.isFlipping());
+        final SimulatedFlip3DRenderer second = new SimulatedFlip3DRenderer();
+        state.setRenderer(second);
+        second.checkInvariants(state);
+        assertEquals(ViewIndex.BACK_VIEW, second.getDisplayedViewIndex());
+        assertFalse("Rotation of the detached renderer still pending", first.finishRotation());
+    }
+}
@@ -0,0 +1,37 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.os.Parcelable;
+
+/**
+ * Restoring saved side of a {@link Flip3DView} - the state bound to the view
+ * follows the side restored.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../AndroidManifest.xml", sdk = 18)
+public class Flip3DViewSavedStateTest {
+
+    @Test
+    public void restoresSideThroughTheBoundState() {
+        final Flip3DView view = new Flip3DView(RuntimeEnvironment.application);
+        final Flip3DViewState state = new Flip3DViewState(0);
+        state.setView(view);
+        state.restoreViewIndex(ViewIndex.BACK_VIEW);
+        final Parcelable saved = view.onSaveInstanceState();
+        state.restoreViewIndex(ViewIndex.FRONT_VIEW);
+
+        view.onRestoreInstanceState(saved);
+        assertEquals(ViewIndex.BACK_VIEW, state.getCurrentViewIndex());
+        assertEquals(ViewIndex.BACK_VIEW, state.getTargetViewIndex());
+        assertFalse(state.isFlipping());
+    }
+}
@@ -0,0 +1,177 @@
+package pl.polidea.androidflip3d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.os.Parcel;
+
+/**
+ * Saving and restoring sides of the states with
+ * {@link Flip3DViewStatesSnapshot}.
+ *
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class Flip3DViewStatesSnapshotTest {
+
+    private static final int STATE_COUNT = 1000;
+
+    private static List<Flip3DStateMachine> createStates(final int... ids) {
+        final List<Flip3DStateMachine> states = new ArrayList<Flip3DStateMachine>();
+        for (final int id : ids) {
+            states.add(new Flip3DStateMachine(id));
+        }
+        return states;
+    }
+
+    private static List<Flip3DStateMachine> createStates(final int count) {
+        final int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+        }
+        return createStates(ids);
+    }
+
+    private static boolean isBack(final int id) {
+        return id % 3 == 0 || id % 7 == 1;
+    }
+
+    private static Flip3DViewStatesSnapshot parcelled(final Flip3DViewStatesSnapshot snapshot) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(snapshot, 0);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(Flip3DViewStatesSnapshot.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static int parcelledSize(final Flip3DViewStatesSnapshot snapshot) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            snapshot.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void restoresSidesOfCapturedStates() {
+        final List<Flip3DStateMachine> states = createStates(STATE_COUNT);
+        for (final Flip3DStateMachine state : states) {
+            if (isBack(state.getId())) {
+                state.restoreViewIndex(ViewIndex.BACK_VIEW);
+            }
+        }
+        final Flip3DViewStatesSnapshot snapshot = parcelled(Flip3DViewStatesSnapshot.capture(states));
+        final List<Flip3DStateMachine> restored = createStates(STATE_COUNT);
+        snapshot.restore(restored);
+        int backSides = 0;
+        for (final Flip3DStateMachine state : restored) {
+            final int expected = isBack(state.getId()) ? ViewIndex.BACK_VIEW : ViewIndex.FRONT_VIEW;
+            assertEquals("State " + state.getId(), expected, state.getCurrentViewIndex());
+            assertEquals("State " + state.getId(), expected, state.getTargetViewIndex());
+            backSides += expected;
+        }
+        assertEquals(backSides, snapshot.getBackSideCount());
+    }
+
+    @Test
+    public void capturesSideStateIsFlippingTo() {
+        final Flip3DStateMachine state = new Flip3DStateMachine(5);
+        final SimulatedFlip3DRenderer renderer = new SimulatedFlip3DRenderer();
+        state.setRenderer(renderer);
+        state.flipManually();
+        assertTrue(state.isFlipping());
+        final Flip3DViewStatesSnapshot snapshot = Flip3DViewStatesSnapshot.capture(Arrays.asList(state));
+        assertEquals(ViewIndex.BACK_VIEW, parcelled(snapshot).getViewIndex(5));
+    }
+
+    @Test
+    public void keepsLargeAndScatteredIdsSmall() {
+        final int[] ids = { 3, 1000000, 123456789, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+        final List<Flip3DStateMachine> states = createStates(ids);
+        for (final Flip3DStateMachine state : states) {
+            state.restoreViewIndex(ViewIndex.BACK_VIEW);
+        }
+        final Flip3DViewStatesSnapshot snapshot = Flip3DViewStatesSnapshot.capture(states);
+        // two arrays with lengths and four words each
+        assertTrue("Parcelled in " + parcelledSize(snapshot) + " bytes", parcelledSize(snapshot) <= 40);
+        final Flip3DViewStatesSnapshot restored = parcelled(snapshot);
+        assertEquals(ids.length, restored.getBackSideCount());
+        for (final int id : ids) {
+            assertEquals(ViewIndex.BACK_VIEW, restored.getViewIndex(id));
+            assertEquals(ViewIndex.FRONT_VIEW, restored.getViewIndex(id - 2));
+        }
+        assertEquals(ViewIndex.FRONT_VIEW, restored.getViewIndex(-1));
+    }
+
+    @Test
+    public void emptySnapshotIsAlmostEmpty() {
+        final List<Flip3DStateMachine> states = createStates(STATE_COUNT);
+        final Flip3DViewStatesSnapshot snapshot = Flip3DViewStatesSnapshot.capture(states);
+        assertEquals(0, snapshot.getBackSideCount());
+        assertTrue(parcelledSize(snapshot) <= 8);
+    }
+
+    @Test
+    public void capturesOnTopOfBase() {
+        final List<Flip3DStateMachine> baseStates = createStates(7, 8, 500);
+        for (final Flip3DStateMachine state : baseStates) {
+            state.restoreViewIndex(ViewIndex.BACK_VIEW);
+        }
+        final Flip3DViewStatesSnapshot base = Flip3DViewStatesSnapshot.capture(baseStates);
+        final List<Flip3DStateMachine> states = createStates(7, 9);
+        states.get(1).restoreViewIndex(ViewIndex.BACK_VIEW);
+        final Flip3DViewStatesSnapshot snapshot = Flip3DViewStatesSnapshot.capture(states, base);
+        assertEquals(ViewIndex.FRONT_VIEW, snapshot.getViewIndex(7));
+        assertEquals(ViewIndex.BACK_VIEW, snapshot.getViewIndex(8));
+        assertEquals(ViewIndex.BACK_VIEW, snapshot.getViewIndex(9));
+        assertEquals(ViewIndex.BACK_VIEW, snapshot.getViewIndex(500));
+        assertEquals(3, snapshot.getBackSideCount());
+    }
+
+    @Test
+    public void providerCapturesEvictedStates() {
+        final Flip3DViewStateProvider<Flip3DStateMachine> provider = new Flip3DViewStateProvider<Flip3DStateMachine>();
+        provider.setFactory(new Flip3DViewStateProvider.Factory<Flip3DStateMachine>() {
+            @Override
+            public Flip3DStateMachine createViewState(final int position) {
+                return new Flip3DStateMachine(position);
+            }
+        });
+        provider.setCount(STATE_COUNT);
+        for (int position = 0; position < STATE_COUNT; position++) {
+            if (isBack(position)) {
+                provider.get(position).restoreViewIndex(ViewIndex.BACK_VIEW);
+            }
+        }
+        provider.evict(0, STATE_COUNT / 2, false);
+        final Flip3DViewStatesSnapshot snapshot = parcelled(provider.capture());
+
+        final Flip3DViewStateProvider<Flip3DStateMachine> restored = new Flip3DViewStateProvider<Flip3DStateMachine>();
+        restored.setFactory(new Flip3DViewStateProvider.Factory<Flip3DStateMachine>() {
+            @Override
+            public Flip3DStateMachine createViewState(final int position) {
+                return new Flip3DStateMachine(position);
+            }
+        });
+        restored.setCount(STATE_COUNT);
+        restored.setDefaultSides(snapshot);
+        for (int position = 0; position < STATE_COUNT; position++) {
+            final int expected = isBack(position) ? ViewIndex.BACK_VIEW : ViewIndex.FRONT_VIEW;
+            assertEquals("Position " + position, expected, restored.get(position).getCurrentViewIndex());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package pl.polidea.androidflip3d;
+
+/**
+ * Deterministic renderer without any views - rotations never finish by
+ * themselves, they are finished by calling {@link #finishRotation()}. Meant
+ * for driving {@link Flip3DStateMachine} in tests on plain JVM and for
+ * checking that the machine and the renderer agree with each other.
+ *
+ */
+public class SimulatedFlip3DRenderer implements Flip3DRenderer {
+
+    private int displayedViewIndex = ViewIndex.FRONT_VIEW;
+
+    private final boolean[] clickable = new boolean[ViewIndex.VIEW_NUMBER];
+
+    private boolean flipping = false;
+
+    private Runnable pendingFinish = null;
+
+    private int rotationsStarted = 0;
+
+    private int rotationsCancelled = 0;
+
+    @Override
+    public void initializeViewState(final int currentViewIndex) {
+        displayedViewIndex = currentViewIndex;
+        clickable[currentViewIndex] = true;
+        clickable[ViewIndex.getTheOtherViewIndex(currentViewIndex)] = false;
+    }
+
+    @Override
+    public void setFlipping(final boolean flipping) {
+        this.flipping = flipping;
+    }
+
+    @Override
+    public void setViewClickability(final int viewIndex, final boolean enable) {
+        clickable[viewIndex] = enable;
+    }
+
+    @Override
+    public void requestViewIndexFocus(final int viewIndex) {
+        // nothing to focus
+    }
+
+    @Override
+    public void startRotation(final int currentViewIndex, final Runnable finishFlipping) {
+        if (pendingFinish != null) {
+            throw new IllegalStateException("Rotation started while another one is in progress");
+        }
+        if (currentViewIndex != displayedViewIndex) {
+            throw new IllegalStateException("Rotation started from " + ViewIndex.getViewType(currentViewIndex)
+                    + " while " + ViewIndex.getViewType(displayedViewIndex) + " is displayed");
+        }
+        rotationsStarted++;
+        pendingFinish = finishFlipping;
+    }
+
+    @Override
+    public void clearAllAnimations() {
+        if (pendingFinish != null) {
+            rotationsCancelled++;
+            pendingFinish = null;
+        }
+    }
+
+    /**
+     * Finishes rotation in progress - shows the other side and runs the finish
+     * callback.
+     *
+     * @return false if there was no rotation in progress
+     */
+    public boolean finishRotation() {
+        final Runnable finish = pendingFinish;
+        if (finish == null) {
+            return false;
+        }
+        pendingFinish = null;
+        displayedViewIndex = ViewIndex.getTheOtherViewIndex(displayedViewIndex);
+        finish.run();
+        return true;
+    }
+
+    public boolean isRotating() {
+        return pendingFinish != null;
+    }
+
+    public boolean isFlipping() {
+        return flipping;
+    }
+
+    public int getDisplayedViewIndex() {
+        return displayedViewIndex;
+    }
+
+    public boolean isClickable(final int viewIndex) {
+        return clickable[viewIndex];
+    }
+
+    public int getRotationsStarted() {
+        return rotationsStarted;
+    }
+
+    public int getRotationsCancelled() {
+        return rotationsCancelled;
+    }
+
+    /**
+     * Checks that the renderer is consistent with the state machine it is
+     * attached to.
+     *
+     * @param stateMachine
+     *            state machine driving this renderer
+     * @throws IllegalStateException
+     *             when invariant is broken
+     */
+    public void checkInvariants(final Flip3DStateMachine stateMachine) {
+        synchronized (stateMachine) {
+            if (stateMachine.getRenderer() != this) { // NOPMD - identity intended
+                throw new IllegalStateException("Renderer is not attached to state " + stateMachine.getId());
+            }
+            if (stateMachine.isFlipping()) {
+                check(isRotating(), stateMachine, "flipping but not rotating");
+                check(flipping, stateMachine, "flipping but renderer does not block clicks");
+                check(displayedViewIndex == stateMachine.getCurrentViewIndex(), stateMachine,
+                        "rotating from the wrong side");
+            } else {
+                check(!isRotating(), stateMachine, "rotating but not flipping");
+                check(!flipping, stateMachine, "not flipping but renderer blocks clicks");
+                check(!stateMachine.isBeingForced(), stateMachine, "forced but not flipping");
+                check(stateMachine.getCurrentViewIndex() == stateMachine.getTargetViewIndex(), stateMachine,
+                        "not flipping but not on the target side");
+                check(displayedViewIndex == stateMachine.getCurrentViewIndex(), stateMachine,
+                        "displaying the wrong side");
+                check(clickable[displayedViewIndex] == stateMachine.isSideClickable(displayedViewIndex), stateMachine,
+                        "clickability of the displayed side differs from the state");
+            }
+        }
+    }
+
+    private void check(final boolean condition, final Flip3DStateMachine stateMachine, final String message) {
+        if (!condition) {
+            throw new IllegalStateException("State " + stateMachine.getId() + ": " + message + " (current="
+                    + ViewIndex.getViewType(stateMachine.getCurrentViewIndex()) + ", target="
+                    + ViewIndex.getViewType(stateMachine.getTargetViewIndex()) + ", displayed="
+                    + ViewIndex.getViewType(displayedViewIndex) + ")");
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package pl.polidea.androidflip3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Renders flips of cards offline - for preview assets and QA - without any
+ * device. Frames are timed like the frame stepper of the tests steps them
+ * (each half takes the animation length, frames every frame period, the
+ * second half starts in the frame after the first one has ended) and drawn
+ * with the rotation model of {@link Flip3DKeyframes} into
+ * {@link Flip3DRaster}s backed by the buffers of {@link BufferedImage}s, then
+ * written as PNG files with {@link ImageIO}. Frames of all the cards are
+ * rendered in parallel in a {@link ForkJoinPool} (split in halves until a few
+ * frames are left); each thread keeps its own frame buffer. Each card is
+ * written either as separate frame images or as a strip with all the frames
+ * side by side.
+ * <p>
+ * Run as a program: <code>Flip3DOfflineRenderer [options] outputDir
+ * front.png back.png [front2.png back2.png ...]</code> or with
+ * <code>-demo count</code> instead of the images (see {@link #main(String[])}
+ * for the options).
+ *
+ */
+public class Flip3DOfflineRenderer {
+
+    /**
+     * Maps progress of a half of the flip to rotation progress - like
+     * {@link android.view.animation.Interpolator}, which is not available
+     * outside Android.
+     *
+     */
+    public interface Interpolation {
+        /**
+         * Returns rotation progress.
+         *
+         * @param input
+         *            time progress from 0 to 1
+         * @return rotation progress (0 - not rotated, 1 - rotated by 90
+         *         degrees)
+         */
+        float getInterpolation(float input);
+    }
+
+    /**
+     * Constant speed.
+     */
+    public static final Interpolation LINEAR = new Interpolation() {
+        @Override
+        public float getInterpolation(final float input) {
+            return input;
+        }
+    };
+
+    /**
+     * Same as {@link android.view.animation.AccelerateInterpolator} - used by
+     * the first half.
+     */
+    public static final Interpolation ACCELERATE = new Interpolation() {
+        @Override
+        public float getInterpolation(final float input) {
+            return input * input;
+        }
+    };
+
+    /**
+     * Same as {@link android.view.animation.DecelerateInterpolator} - used by
+     * the second half.
+     */
+    public static final Interpolation DECELERATE = new Interpolation() {
+        @Override
+        public float getInterpolation(final float input) {
+            return 1.0f - (1.0f - input) * (1.0f - input);
+        }
+    };
+
+    /**
+     * Same as {@link android.view.animation.AccelerateDecelerateInterpolator}.
+     */
+    public static final Interpolation ACCELERATE_DECELERATE = new Interpolation() {
+        @Override
+        public float getInterpolation(final float input) {
+            return (float) (Math.cos((input + 1) * Math.PI) / 2.0) + 0.5f;
+        }
+    };
+
+    private static final long DEFAULT_ANIMATION_LENGTH = 500;
+    private static final long DEFAULT_FRAME_MILLIS = 16;
+    private static final int DEFAULT_BACKGROUND = 0xffffffff;
+    private static final int DEMO_SIZE = 160;
+    private static final int FRAMES_PER_TASK = 8;
+
+    private final int width;
+    private final int height;
+    private long animationLength = DEFAULT_ANIMATION_LENGTH;
+    private long frameMillis = DEFAULT_FRAME_MILLIS;
+    private int direction = RotationDirection.ROTATE_LEFT;
+    private Interpolation firstHalfInterpolation = ACCELERATE;
+    private Interpolation secondHalfInterpolation = DECELERATE;
+    private int background = DEFAULT_BACKGROUND;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Buffers of a rendering thread, kept between frames.
+     */
+    private final class Worker {
+        private final BufferedImage image = createImage(width, height);
+        private final Flip3DRaster frame = wrap(image);
+        private final float[] matrix = new float[Flip3DKeyframes.MATRIX_SIZE];
+    }
+
+    /**
+     * Creates renderer of frames of the size given (faces are scaled to it).
+     *
+     * @param width
+     *            width of the frames
+     * @param height
+     *            height of the frames
+     */
+    public Flip3DOfflineRenderer(final int width, final int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Wrong frame size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets length of each half of the flip - as
+     * {@link Flip3DView#setAnimationLength(long)}.
+     *
+     * @param animationLength
+     *            length in milliseconds
+     */
+    public void setAnimationLength(final long animationLength) {
+        this.animationLength = animationLength;
+    }
+
+    /**
+     * Sets time between frames.
+     *
+     * @param frameMillis
+     *            time in milliseconds
+     */
+    public void setFrameMillis(final long frameMillis) {
+        if (frameMillis <= 0) {
+            throw new IllegalArgumentException("Frame time must be positive: " + frameMillis);
+        }
+        this.frameMillis = frameMillis;
+    }
+
+    /**
+     * Sets direction of the flip (see {@link RotationDirection}).
+     *
+     * @param direction
+     *            direction (0 - LEFT, 1 - RIGHT)
+     */
+    public void setDirection(final int direction) {
+        this.direction = direction;
+    }
+
+    /**
+     * Sets interpolations of the halves of the flip (accelerate and
+     * decelerate by default - as the animation backends).
+     *
+     * @param firstHalf
+     *            interpolation of the first half
+     * @param secondHalf
+     *            interpolation of the second half
+     */
+    public void setInterpolations(final Interpolation firstHalf, final Interpolation secondHalf) {
+        this.firstHalfInterpolation = firstHalf;
+        this.secondHalfInterpolation = secondHalf;
+    }
+
+    /**
+     * Sets color drawn behind the card.
+     *
+     * @param background
+     *            ARGB color
+     */
+    public void setBackground(final int background) {
+        this.background = background;
+    }
+
+    /**
+     * Sets number of rendering threads (number of processors by default).
+     *
+     * @param threadCount
+     *            number of threads
+     */
+    public void setThreadCount(final int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Returns number of frames of each half of the flip.
+     *
+     * @return number of frames
+     */
+    public int getHalfFrameCount() {
+        if (animationLength <= 0) {
+            return 1;
+        }
+        return (int) ((animationLength + frameMillis - 1) / frameMillis) + 1;
+    }
+
+    /**
+     * Returns number of frames of the whole flip.
+     *
+     * @return number of frames
+     */
+    public int getFrameCount() {
+        return 2 * getHalfFrameCount();
+    }
+
+    /**
+     * Returns rotation of the face shown in the frame.
+     *
+     * @param frame
+     *            frame index
+     * @return rotation in degrees
+     */
+    public float getFrameDegrees(final int frame) {
+        final int halfFrames = getHalfFrameCount();
+        final boolean firstHalf = frame < halfFrames;
+        final long time = (firstHalf ? frame : frame - halfFrames) * frameMillis;
+        final float progress = animationLength <= 0 ? 1.0f : Math.min(1.0f, (float) time / animationLength);
+        final float halfRotation = RotationDirection.getMultiplier(direction) * 90;
+        if (firstHalf) {
+            return halfRotation * firstHalfInterpolation.getInterpolation(progress);
+        }
+        return -halfRotation * (1.0f - secondHalfInterpolation.getInterpolation(progress));
+    }
+
+    /**
+     * Renders frame of the flip from the front to the back into region of the
+     * target.
+     *
+     * @param front
+     *            face shown first
+     * @param back
+     *            face shown at the end
+     * @param frame
+     *            frame index
+     * @param target
+     *            raster to draw to
+     * @param left
+     *            left edge of the frame in the target
+     * @param top
+     *            top edge of the frame in the target
+     * @param matrix
+     *            array of 9 values used for the computation
+     */
+    public void renderFrame(final Flip3DRaster front, final Flip3DRaster back, final int frame,
+            final Flip3DRaster target, final int left, final int top, final float[] matrix) {
+        target.fill(background, left, top, left + width, top + height);
+        final Flip3DRaster face = frame < getHalfFrameCount() ? front : back;
+        Flip3DKeyframes.computeRotation(getFrameDegrees(frame), width / 2.0f, height / 2.0f, matrix);
+        // face scaled to the frame before rotation
+        final float scaleX = (float) width / face.getWidth();
+        final float scaleY = (float) height / face.getHeight();
+        for (int row = 0; row < 3; row++) {
+            matrix[3 * row] *= scaleX;
+            matrix[3 * row + 1] *= scaleY;
+        }
+        target.drawTransformed(face, matrix, left, top, width, height);
+    }
+
+    /**
+     * Renders flips of the cards and writes them to the directory - as
+     * card-NNNN-frame-NNN.png or, for strips, card-NNNN.png.
+     *
+     * @param cards
+     *            front and back face of each card
+     * @param outputDir
+     *            directory to write to (created when needed)
+     * @param strips
+     *            whether to write each card as a single strip
+     * @return number of images written
+     * @throws IOException
+     *             when an image cannot be written
+     */
+    public int renderCards(final List<Flip3DRaster[]> cards, final File outputDir, final boolean strips)
+            throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create " + outputDir);
+        }
+        final int frameCount = getFrameCount();
+        final List<Frame> frames = new ArrayList<Frame>(cards.size() * frameCount);
+        for (int i = 0; i < cards.size(); i++) {
+            final Flip3DRaster[] card = cards.get(i);
+            final String name = String.format("card-%04d", i);
+            final Strip strip = strips ? new Strip(new File(outputDir, name + ".png"), frameCount) : null;
+            for (int frame = 0; frame < frameCount; frame++) {
+                final File file = strips ? null : new File(outputDir, String.format("%s-frame-%03d.png", name,
+                        frame));
+                frames.add(new Frame(card, frame, strip, file));
+            }
+        }
+        final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+            @Override
+            protected Worker initialValue() {
+                return new Worker();
+            }
+        };
+        final ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            return pool.invoke(new RenderTask(frames, 0, frames.size(), workers));
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates image to render to - without alpha when the background is
+     * opaque (the frames are opaque then and such images are written
+     * several times faster).
+     */
+    private BufferedImage createImage(final int imageWidth, final int imageHeight) {
+        return new BufferedImage(imageWidth, imageHeight, background >>> 24 == 0xff ? BufferedImage.TYPE_INT_RGB
+                : BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static Flip3DRaster wrap(final BufferedImage image) {
+        return new Flip3DRaster(image.getWidth(), image.getHeight(), ((DataBufferInt) image.getRaster()
+                .getDataBuffer()).getData());
+    }
+
+    /**
+     * Strip of a card - allocated when its first frame is rendered and
+     * written by the thread rendering its last frame.
+     */
+    private final class Strip {
+        private final File file;
+        private final AtomicInteger remainingFrames;
+        private BufferedImage image;
+        private Flip3DRaster raster;
+
+        private Strip(final File file, final int frameCount) {
+            this.file = file;
+            this.remainingFrames = new AtomicInteger(frameCount);
+        }
+
+        private synchronized Flip3DRaster getRaster() {
+            if (raster == null) {
+                image = createImage(width * getFrameCount(), height);
+                raster = wrap(image);
+            }
+            return raster;
+        }
+
+        private boolean frameDone() {
+            return remainingFrames.decrementAndGet() == 0;
+        }
+
+        private synchronized BufferedImage release() {
+            final BufferedImage result = image;
+            image = null;
+            raster = null;
+            return result;
+        }
+    }
+
+    /**
+     * Single frame of a card.
+     */
+    private final class Frame {
+        private final Flip3DRaster[] card;
+        private final int frame;
+        private final Strip strip;
+        private final File file;
+
+        private Frame(final Flip3DRaster[] card, final int frame, final Strip strip, final File file) {
+            this.card = card;
+            this.frame = frame;
+            this.strip = strip;
+            this.file = file;
+        }
+
+        /**
+         * Renders the frame and writes the image when it is complete.
+         *
+         * @return number of images written
+         */
+        private int render(final Worker worker) throws IOException {
+            if (strip == null) {
+                renderFrame(card[ViewIndex.FRONT_VIEW], card[ViewIndex.BACK_VIEW], frame, worker.frame, 0, 0,
+                        worker.matrix);
+                write(worker.image, file);
+                return 1;
+            }
+            renderFrame(card[ViewIndex.FRONT_VIEW], card[ViewIndex.BACK_VIEW], frame, strip.getRaster(), frame
+                    * width, 0, worker.matrix);
+            if (!strip.frameDone()) {
+                return 0;
+            }
+            write(strip.release(), strip.file);
+            return 1;
+        }
+    }
+
+    /**
+     * Renders range of the frames - split in halves until a few frames are
+     * left.
+     */
+    private final class RenderTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Frame> frames;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<Worker> workers;
+
+        private RenderTask(final List<Frame> frames, final int from, final int to,
+                final ThreadLocal<Worker> workers) {
+            this.frames = frames;
+            this.from = from;
+            this.to = to;
+            this.workers = workers;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from > FRAMES_PER_TASK) {
+                final int middle = (from + to) >>> 1;
+                final RenderTask second = new RenderTask(frames, middle, to, workers);
+                second.fork();
+                final int written = new RenderTask(frames, from, middle, workers).compute();
+                return written + second.join();
+            }
+            final Worker worker = workers.get();
+            int written = 0;
+            try {
+                for (int i = from; i < to; i++) {
+                    written += frames.get(i).render(worker);
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return written;
+        }
+    }
+
+    private static void write(final BufferedImage image, final File file) throws IOException {
+        if (!ImageIO.write(image, "png", file)) {
+            throw new IOException("No PNG writer for " + file);
+        }
+    }
+
+    /**
+     * Reads image (PNG or any other format ImageIO knows).
+     *
+     * @param file
+     *            file to read
+     * @return the image
+     * @throws IOException
+     *             when the file cannot be read
+     */
+    public static Flip3DRaster readImage(final File file) throws IOException {
+        final BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Not an image: " + file);
+        }
+        final int imageWidth = image.getWidth();
+        final int imageHeight = image.getHeight();
+        return new Flip3DRaster(imageWidth, imageHeight, image.getRGB(0, 0, imageWidth, imageHeight, null, 0,
+                imageWidth));
+    }
+
+    /**
+     * Creates face of a demo card - a frame of one color with a diagonal of
+     * the other.
+     */
+    private static Flip3DRaster createDemoFace(final int index, final int side) {
+        final Flip3DRaster face = new Flip3DRaster(DEMO_SIZE, DEMO_SIZE);
+        final int hue = (index * 47 + side * 128) & 0xff;
+        final int color = 0xff000000 | hue << 16 | (255 - hue) << 8 | (hue * 3) & 0xff;
+        final int border = 0xff202020;
+        face.fill(border, 0, 0, DEMO_SIZE, DEMO_SIZE);
+        face.fill(color, 8, 8, DEMO_SIZE - 8, DEMO_SIZE - 8);
+        for (int i = 8; i < DEMO_SIZE - 8; i++) {
+            face.setPixel(i, side == ViewIndex.FRONT_VIEW ? i : DEMO_SIZE - 1 - i, border);
+        }
+        return face;
+    }
+
+    /**
+     * Renders cards given as pairs of PNG files (or demo cards).
+     * <p>
+     * Options: <code>-strip</code> (single strip per card),
+     * <code>-threads n</code>, <code>-size WxH</code> (size of the front face
+     * by default), <code>-length ms</code> (of each half),
+     * <code>-frame ms</code>, <code>-direction left|right</code>,
+     * <code>-linear</code> (no acceleration), <code>-demo count</code>
+     * (generated cards instead of the files).
+     *
+     * @param args
+     *            options, output directory and the face images
+     * @throws IOException
+     *             when reading or writing fails
+     */
+    public static void main(final String[] args) throws IOException {
+        boolean strips = false;
+        int threads = 0;
+        int frameWidth = 0;
+        int frameHeight = 0;
+        long length = DEFAULT_ANIMATION_LENGTH;
+        long frame = DEFAULT_FRAME_MILLIS;
+        int flipDirection = RotationDirection.ROTATE_LEFT;
+        boolean linear = false;
+        int demoCards = 0;
+        int argument = 0;
+        while (argument < args.length && args[argument].startsWith("-")) {
+            final String option = args[argument++];
+            if ("-strip".equals(option)) {
+                strips = true;
+            } else if ("-linear".equals(option)) {
+                linear = true;
+            } else if (argument < args.length) {
+                final String value = args[argument++];
+                if ("-threads".equals(option)) {
+                    threads = Integer.parseInt(value);
+                } else if ("-size".equals(option)) {
+                    final String[] size = value.split("x");
+                    frameWidth = Integer.parseInt(size[0]);
+                    frameHeight = Integer.parseInt(size[1]);
+                } else if ("-length".equals(option)) {
+                    length = Long.parseLong(value);
+                } else if ("-frame".equals(option)) {
+                    frame = Long.parseLong(value);
+                } else if ("-direction".equals(option)) {
+                    flipDirection = "right".equals(value) ? RotationDirection.ROTATE_RIGHT
+                            : RotationDirection.ROTATE_LEFT;
+                } else if ("-demo".equals(option)) {
+                    demoCards = Integer.parseInt(value);
+                } else {
+                    argument = args.length + 1;
+                }
+            }
+        }
+        final int faceArguments = args.length - argument - 1;
+        if (argument >= args.length || (demoCards == 0 && (faceArguments <= 0 || faceArguments % 2 != 0))) {
+            System.err.println("Usage: Flip3DOfflineRenderer [-strip] [-threads n] [-size WxH] [-length ms] "
+                    + "[-frame ms] [-direction left|right] [-linear] [-demo count] outputDir "
+                    + "[front.png back.png ...]");
+            System.exit(2);
+        }
+        final File outputDir = new File(args[argument]);
+        final List<Flip3DRaster[]> cards = new ArrayList<Flip3DRaster[]>();
+        for (int i = 0; i < demoCards; i++) {
+            cards.add(new Flip3DRaster[] { createDemoFace(i, ViewIndex.FRONT_VIEW),
+                    createDemoFace(i, ViewIndex.BACK_VIEW) });
+        }
+        for (int i = argument + 1; i + 1 < args.length; i += 2) {
+            cards.add(new Flip3DRaster[] { readImage(new File(args[i])), readImage(new File(args[i + 1])) });
+        }
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            frameWidth = cards.get(0)[ViewIndex.FRONT_VIEW].getWidth();
+            frameHeight = cards.get(0)[ViewIndex.FRONT_VIEW].getHeight();
+        }
+        final Flip3DOfflineRenderer renderer = new Flip3DOfflineRenderer(frameWidth, frameHeight);
+        renderer.setAnimationLength(length);
+        renderer.setFrameMillis(frame);
+        renderer.setDirection(flipDirection);
+        if (linear) {
+            renderer.setInterpolations(LINEAR, LINEAR);
+        }
+        if (threads > 0) {
+            renderer.setThreadCount(threads);
+        }
+        final long start = System.nanoTime();
+        final int written = renderer.renderCards(cards, outputDir, strips);
+        final long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println(cards.size() + " cards, " + renderer.getFrameCount() + " frames each, " + written
+                + " images written to " + outputDir + " in " + elapsed + " ms using " + renderer.threadCount
+                + " threads");
+    }
+}
@@ -0,0 +1,261 @@
+package pl.polidea.androidflip3d;
+
+import java.util.Arrays;
+
+/**
+ * Image in memory - ARGB pixels (not premultiplied) in an int array, row
+ * after row. Used by the {@link Flip3DOfflineRenderer} to draw flip frames
+ * without any Android classes, so it runs on plain JVM.
+ *
+ */
+public final class Flip3DRaster {
+
+    private static final double SINGULAR = 1e-9;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    /**
+     * Creates transparent raster.
+     *
+     * @param width
+     *            width in pixels
+     * @param height
+     *            height in pixels
+     */
+    public Flip3DRaster(final int width, final int height) {
+        this(width, height, new int[width * height]);
+    }
+
+    /**
+     * Creates raster using the pixels given (not copied).
+     *
+     * @param width
+     *            width in pixels
+     * @param height
+     *            height in pixels
+     * @param pixels
+     *            ARGB pixels, row after row
+     */
+    public Flip3DRaster(final int width, final int height, final int[] pixels) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Wrong raster " + width + "x" + height + " with " + pixels.length
+                    + " pixels");
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getPixel(final int x, final int y) {
+        return pixels[y * width + x];
+    }
+
+    public void setPixel(final int x, final int y, final int color) {
+        pixels[y * width + x] = color;
+    }
+
+    /**
+     * Fills rectangle with the color.
+     *
+     * @param color
+     *            ARGB color
+     * @param left
+     *            left edge (inclusive)
+     * @param top
+     *            top edge (inclusive)
+     * @param right
+     *            right edge (exclusive)
+     * @param bottom
+     *            bottom edge (exclusive)
+     */
+    public void fill(final int color, final int left, final int top, final int right, final int bottom) {
+        for (int y = Math.max(0, top); y < Math.min(height, bottom); y++) {
+            Arrays.fill(pixels, y * width + Math.max(0, left), y * width + Math.min(width, right), color);
+        }
+    }
+
+    /**
+     * Draws the source transformed by the perspective matrix over the region
+     * of this raster (source over, with bilinear filtering and smooth edges).
+     * Nothing is allocated.
+     *
+     * @param source
+     *            raster to draw
+     * @param matrix
+     *            9 values of the matrix mapping source coordinates to region
+     *            coordinates (in order of
+     *            {@link android.graphics.Matrix#getValues(float[])})
+     * @param regionLeft
+     *            left edge of the region in this raster
+     * @param regionTop
+     *            top edge of the region in this raster
+     * @param regionWidth
+     *            width of the region (drawing is clipped to it)
+     * @param regionHeight
+     *            height of the region (drawing is clipped to it)
+     */
+    public void drawTransformed(final Flip3DRaster source, final float[] matrix, final int regionLeft,
+            final int regionTop, final int regionWidth, final int regionHeight) {
+        final double m0 = matrix[0];
+        final double m1 = matrix[1];
+        final double m2 = matrix[2];
+        final double m3 = matrix[3];
+        final double m4 = matrix[4];
+        final double m5 = matrix[5];
+        final double m6 = matrix[6];
+        final double m7 = matrix[7];
+        final double m8 = matrix[8];
+        // inverse by adjugate
+        final double a0 = m4 * m8 - m5 * m7;
+        final double a1 = m2 * m7 - m1 * m8;
+        final double a2 = m1 * m5 - m2 * m4;
+        final double a3 = m5 * m6 - m3 * m8;
+        final double a4 = m0 * m8 - m2 * m6;
+        final double a5 = m2 * m3 - m0 * m5;
+        final double a6 = m3 * m7 - m4 * m6;
+        final double a7 = m1 * m6 - m0 * m7;
+        final double a8 = m0 * m4 - m1 * m3;
+        final double determinant = m0 * a0 + m1 * a3 + m2 * a6;
+        if (Math.abs(determinant) < SINGULAR) {
+            return; // seen edge on
+        }
+        // bounding box of the transformed source
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int corner = 0; corner < 4; corner++) {
+            final double sx = (corner & 1) == 0 ? 0 : source.width;
+            final double sy = (corner & 2) == 0 ? 0 : source.height;
+            final double w = m6 * sx + m7 * sy + m8;
+            if (w <= 0) {
+                return; // behind the camera
+            }
+            final double x = (m0 * sx + m1 * sy + m2) / w;
+            final double y = (m3 * sx + m4 * sy + m5) / w;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        final int fromX = Math.max(0, (int) Math.floor(minX));
+        final int fromY = Math.max(0, (int) Math.floor(minY));
+        final int toX = Math.min(Math.min(regionWidth, width - regionLeft), (int) Math.ceil(maxX));
+        final int toY = Math.min(Math.min(regionHeight, height - regionTop), (int) Math.ceil(maxY));
+        for (int y = fromY; y < toY; y++) {
+            final double py = y + 0.5;
+            final double px = fromX + 0.5;
+            // homogeneous source coordinates change linearly along the row
+            double nx = a0 * px + a1 * py + a2;
+            double ny = a3 * px + a4 * py + a5;
+            double w = a6 * px + a7 * py + a8;
+            int index = (regionTop + y) * width + regionLeft + fromX;
+            for (int x = fromX; x < toX; x++, index++, nx += a0, ny += a3, w += a6) {
+                final double inverseW = 1.0 / w;
+                final double sx = nx * inverseW - 0.5;
+                final double sy = ny * inverseW - 0.5;
+                if (sx <= -1 || sy <= -1 || sx >= source.width || sy >= source.height) {
+                    continue;
+                }
+                final int color = source.sample(sx, sy);
+                if (color >>> 24 != 0) {
+                    pixels[index] = blend(color, pixels[index]);
+                }
+            }
+        }
+    }
+
+    private int getPixelOrTransparent(final int x, final int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        return pixels[y * width + x];
+    }
+
+    /**
+     * Samples with bilinear filtering, interpolating premultiplied colors, so
+     * that transparent pixels outside the raster give smooth edges.
+     */
+    private int sample(final double x, final double y) {
+        // coordinates are above -1, so shifted truncation is floor
+        final int x0 = (int) (x + 1) - 1;
+        final int y0 = (int) (y + 1) - 1;
+        final double fx = x - x0;
+        final double fy = y - y0;
+        if (x0 >= 0 && y0 >= 0 && x0 + 1 < width && y0 + 1 < height) {
+            final int index = y0 * width + x0;
+            final int c00 = pixels[index];
+            final int c10 = pixels[index + 1];
+            final int c01 = pixels[index + width];
+            final int c11 = pixels[index + width + 1];
+            if ((c00 & c10 & c01 & c11) >>> 24 == 255) {
+                // opaque inside - fixed point interpolation of the channels
+                final int wx = (int) (fx * 256);
+                final int wy = (int) (fy * 256);
+                return 0xff000000 | lerp(c00, c10, c01, c11, wx, wy, 16) << 16 | lerp(c00, c10, c01, c11, wx, wy, 8)
+                        << 8 | lerp(c00, c10, c01, c11, wx, wy, 0);
+            }
+        }
+        double alpha = 0;
+        double red = 0;
+        double green = 0;
+        double blue = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            final int dx = corner & 1;
+            final int dy = corner >> 1;
+            final double weight = (dx == 0 ? 1 - fx : fx) * (dy == 0 ? 1 - fy : fy);
+            final int color = getPixelOrTransparent(x0 + dx, y0 + dy);
+            final double a = (color >>> 24) * weight;
+            alpha += a;
+            red += ((color >> 16) & 0xff) * a;
+            green += ((color >> 8) & 0xff) * a;
+            blue += (color & 0xff) * a;
+        }
+        if (alpha <= 0) {
+            return 0;
+        }
+        return (int) (alpha + 0.5) << 24 | (int) (red / alpha + 0.5) << 16 | (int) (green / alpha + 0.5) << 8
+                | (int) (blue / alpha + 0.5);
+    }
+
+    private static int lerp(final int c00, final int c10, final int c01, final int c11, final int wx,
+            final int wy, final int shift) {
+        final int top = ((c00 >> shift) & 0xff) * (256 - wx) + ((c10 >> shift) & 0xff) * wx;
+        final int bottom = ((c01 >> shift) & 0xff) * (256 - wx) + ((c11 >> shift) & 0xff) * wx;
+        return (top * (256 - wy) + bottom * wy + 32768) >> 16;
+    }
+
+    private static int blend(final int source, final int destination) {
+        final int sourceAlpha = source >>> 24;
+        if (sourceAlpha == 255) {
+            return source;
+        }
+        final int destinationAlpha = (destination >>> 24) * (255 - sourceAlpha) / 255;
+        final int alpha = sourceAlpha + destinationAlpha;
+        if (alpha == 0) {
+            return 0;
+        }
+        int result = alpha << 24;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            final int channel = (((source >> shift) & 0xff) * sourceAlpha + ((destination >> shift) & 0xff)
+                    * destinationAlpha)
+                    / alpha;
+            result |= channel << shift;
+        }
+        return result;
+    }
+}